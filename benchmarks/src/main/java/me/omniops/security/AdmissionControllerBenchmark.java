@@ -0,0 +1,78 @@
+package me.omniops.security;
+
+import me.omniops.admission.AdmissionController;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Admission checks of a secured request, shared by four threads: the subject and origin service
+ * buckets of an admitted request, the same for a service that is over its limit, and taking and
+ * returning a concurrency permit.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = BenchmarkSupport.JBOSS_LOG_MANAGER)
+@Threads(4)
+public class AdmissionControllerBenchmark extends BenchmarkSupport {
+
+    private static final String ENDPOINT = BenchResource.class.getName() + "#get";
+
+    private AdmissionController admissionController;
+    private String[] subjects;
+
+    @State(Scope.Thread)
+    public static class Caller {
+        int next;
+    }
+
+    @Setup
+    public void setUp() {
+        admissionController = JwtFixtures.admissionController(
+                "portal.admission.enabled=true",
+                "portal.admission.service.rate=1000000000",
+                "portal.admission.services.triton.rate=1",
+                "portal.admission.services.triton.burst=1",
+                "portal.admission.subject.rate=1000000000",
+                "portal.admission.concurrency.enabled=true",
+                "portal.admission.concurrency.max-limit=1000000");
+        subjects = new String[1024];
+        for (int i = 0; i < subjects.length; i++) {
+            subjects[i] = UUID.randomUUID().toString();
+        }
+    }
+
+    @Benchmark
+    public AdmissionController.Rejection admit(Caller caller) {
+        String subject = subjects[caller.next++ & (subjects.length - 1)];
+        return admissionController.admit(ENDPOINT, "dashboard", subject);
+    }
+
+    @Benchmark
+    public AdmissionController.Rejection rejectService() {
+        return admissionController.admit(ENDPOINT, "triton", null);
+    }
+
+    @Benchmark
+    public boolean concurrencyPermit() {
+        boolean acquired = admissionController.tryAcquire(ENDPOINT, "dashboard");
+        if (acquired) {
+            admissionController.release(1_000);
+        }
+        return acquired;
+    }
+}
@@ -0,0 +1,13 @@
+package me.omniops.security;
+
+/**
+ * Resource used to resolve a realistic {@link EndpointPolicy} in the benchmarks.
+ */
+@Authorization(roles = {Role.Admin, Role.MEMBER}, modules = {Modules.AIRFLOW, Modules.MINIO},
+        services = {Services.DASHBOARD, Services.NOTIFICATIONS})
+public class BenchResource {
+
+    public String get() {
+        return "ok";
+    }
+}
@@ -0,0 +1,16 @@
+package me.omniops.security;
+
+import java.util.logging.LogManager;
+
+/**
+ * Base of the benchmarks. Installs the JBoss LogManager with {@code logging.properties} before any
+ * logger is created, so DEBUG statements are disabled exactly as in a running service.
+ */
+public abstract class BenchmarkSupport {
+
+    static final String JBOSS_LOG_MANAGER = "-Djava.util.logging.manager=org.jboss.logmanager.LogManager";
+
+    static {
+        LogManager.getLogManager();
+    }
+}
@@ -0,0 +1,65 @@
+package me.omniops.security;
+
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Role and module matching: compiling claim arrays to masks and checking endpoint requirements.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = BenchmarkSupport.JBOSS_LOG_MANAGER)
+public class ClaimMatchingBenchmark extends BenchmarkSupport {
+
+    @Param({"SMALL", "LARGE"})
+    TokenSize size;
+
+    private JsonArray roles;
+    private JsonArray modules;
+    private long grantedRoles;
+    private long grantedModules;
+    private AccessRequirement roleRequirement;
+    private AccessRequirement moduleRequirement;
+
+    @Setup
+    public void setUp() {
+        JsonObject claims = JwtFixtures.claims(size);
+        roles = claims.getJsonArray("roles");
+        modules = claims.getJsonArray("modules");
+        grantedRoles = ClaimIndex.ROLES.mask(roles);
+        grantedModules = ClaimIndex.MODULES.mask(modules);
+        roleRequirement = AccessRequirement.anyOf(ClaimIndex.ROLES, Role.Admin, Role.MEMBER);
+        moduleRequirement = new AccessRequirement(ClaimIndex.MODULES.mask(Modules.AIRFLOW, Modules.MINIO), MatchMode.ALL);
+    }
+
+    @Benchmark
+    public long compileRoleClaims() {
+        return ClaimIndex.ROLES.mask(roles);
+    }
+
+    @Benchmark
+    public long compileModuleClaims() {
+        return ClaimIndex.MODULES.mask(modules);
+    }
+
+    @Benchmark
+    public boolean matchRequirements() {
+        return roleRequirement.matches(grantedRoles) && moduleRequirement.matches(grantedModules);
+    }
+}
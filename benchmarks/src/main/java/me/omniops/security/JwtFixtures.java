@@ -0,0 +1,165 @@
+package me.omniops.security;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.quarkus.oidc.AccessTokenCredential;
+import io.quarkus.runtime.configuration.DurationConverter;
+import io.quarkus.runtime.configuration.MemorySize;
+import io.quarkus.runtime.configuration.MemorySizeConverter;
+import io.quarkus.security.identity.SecurityIdentity;
+import io.quarkus.security.runtime.QuarkusPrincipal;
+import io.quarkus.security.runtime.QuarkusSecurityIdentity;
+import io.smallrye.config.SmallRyeConfig;
+import io.smallrye.config.SmallRyeConfigBuilder;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import me.omniops.admission.AdmissionConfig;
+import me.omniops.admission.AdmissionController;
+import me.omniops.audit.AuditConfig;
+import me.omniops.audit.AuditLog;
+import me.omniops.revocation.RevocationConfig;
+import me.omniops.revocation.RevocationList;
+
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.Signature;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Base64;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * RS256-signed access tokens shaped like the ones Keycloak issues for the portal realm.
+ */
+final class JwtFixtures {
+
+    private static final Base64.Encoder URL_ENCODER = Base64.getUrlEncoder().withoutPadding();
+    private static final KeyPair KEY_PAIR = generateKeyPair();
+
+    private JwtFixtures() {
+    }
+
+    static String token(TokenSize size) {
+        JsonObject header = new JsonObject()
+                .put("alg", "RS256")
+                .put("typ", "JWT")
+                .put("kid", "bench-key");
+        JsonObject claims = claims(size);
+        String signingInput = encode(header.encode()) + "." + encode(claims.encode());
+        try {
+            Signature signature = Signature.getInstance("SHA256withRSA");
+            signature.initSign(KEY_PAIR.getPrivate());
+            signature.update(signingInput.getBytes(StandardCharsets.US_ASCII));
+            return signingInput + "." + URL_ENCODER.encodeToString(signature.sign());
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    static JsonObject claims(TokenSize size) {
+        long now = Instant.now().getEpochSecond();
+        JsonArray roles = new JsonArray().add("admin").add("MEMBER");
+        for (int i = 2; i < size.roles; i++) {
+            roles.add("realm-role-" + i);
+        }
+        JsonArray groups = new JsonArray();
+        for (int i = 0; i < size.groups; i++) {
+            groups.add("/portal/team-" + i);
+        }
+        JsonArray modules = new JsonArray();
+        Modules[] known = Modules.values();
+        for (int i = 0; i < size.modules; i++) {
+            modules.add(i < known.length ? known[i].name().toLowerCase() : "extra-module-" + i);
+        }
+        return new JsonObject()
+                .put("exp", now + 3600)
+                .put("iat", now)
+                .put("jti", UUID.randomUUID().toString())
+                .put("iss", "https://sso.example.org/realms/omniops")
+                .put("aud", "account")
+                .put("sub", UUID.randomUUID().toString())
+                .put("typ", "Bearer")
+                .put("azp", "portal")
+                .put("sid", UUID.randomUUID().toString())
+                .put("preferred_username", "jane.doe")
+                .put("email", "jane.doe@example.org")
+                .put("given_name", "Jane")
+                .put("family_name", "Doe")
+                .put("roles", roles)
+                .put("groups", groups)
+                .put("modules", modules);
+    }
+
+    static SecurityIdentity identity(String token) {
+        return QuarkusSecurityIdentity.builder()
+                .setPrincipal(new QuarkusPrincipal("jane.doe"))
+                .addCredential(new AccessTokenCredential(token))
+                .build();
+    }
+
+    /**
+     * Builds {@link SecurityConfig} from its defaults plus the given {@code key=value} overrides.
+     */
+    static SecurityConfig securityConfig(String... overrides) {
+        return configMapping(SecurityConfig.class, overrides);
+    }
+
+    /**
+     * Audit log configured from its defaults plus the given {@code key=value} overrides.
+     */
+    static AuditLog auditLog(String... overrides) {
+        return new AuditLog(configMapping(AuditConfig.class, overrides), new SimpleMeterRegistry());
+    }
+
+    /**
+     * Metrics backed by an in-memory registry, so recording costs the same as in production.
+     */
+    static SecurityMetrics metrics() {
+        return new SecurityMetrics(new SimpleMeterRegistry());
+    }
+
+    /**
+     * Revocation list configured from its defaults plus the given {@code key=value} overrides,
+     * without feeds.
+     */
+    static RevocationList revocationList(String... overrides) {
+        return new RevocationList(configMapping(RevocationConfig.class, overrides), List.of(), new SimpleMeterRegistry(), Clock.systemUTC());
+    }
+
+    /**
+     * Admission control configured from its defaults plus the given {@code key=value} overrides.
+     */
+    static AdmissionController admissionController(String... overrides) {
+        return new AdmissionController(configMapping(AdmissionConfig.class, overrides), new SimpleMeterRegistry());
+    }
+
+    private static <T> T configMapping(Class<T> type, String... overrides) {
+        SmallRyeConfigBuilder builder = new SmallRyeConfigBuilder()
+                .withConverter(Duration.class, 100, new DurationConverter())
+                .withConverter(MemorySize.class, 100, new MemorySizeConverter())
+                .withMapping(type);
+        for (String override : overrides) {
+            int separator = override.indexOf('=');
+            builder.withDefaultValue(override.substring(0, separator), override.substring(separator + 1));
+        }
+        SmallRyeConfig config = builder.build();
+        return config.getConfigMapping(type);
+    }
+
+    private static String encode(String json) {
+        return URL_ENCODER.encodeToString(json.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static KeyPair generateKeyPair() {
+        try {
+            KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+            generator.initialize(2048);
+            return generator.generateKeyPair();
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,68 @@
+package me.omniops.security;
+
+import me.omniops.revocation.Revocation;
+import me.omniops.revocation.RevocationList;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Revocation check of a validated token against a list holding {@code entries} revoked
+ * sessions and subjects: a token that is not revoked, answered by the filter alone, and a
+ * revoked one, confirmed in the exact set.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = BenchmarkSupport.JBOSS_LOG_MANAGER)
+public class RevocationListBenchmark extends BenchmarkSupport {
+
+    @Param({"1000", "100000"})
+    int entries;
+
+    private RevocationList revocationList;
+    private long issuedAt;
+    private String subject;
+    private String sessionId;
+    private String tokenId;
+    private String revokedSubject;
+
+    @Setup
+    public void setUp() {
+        revocationList = JwtFixtures.revocationList("portal.revocation.enabled=true");
+        long now = System.currentTimeMillis() / 1000;
+        for (int i = 0; i < entries; i++) {
+            Revocation.Type type = i % 2 == 0 ? Revocation.Type.SESSION : Revocation.Type.SUBJECT;
+            revocationList.revoke(new Revocation(type, UUID.randomUUID().toString(), now));
+        }
+        revokedSubject = UUID.randomUUID().toString();
+        revocationList.revoke(Revocation.subject(revokedSubject, now));
+        issuedAt = now - 60;
+        subject = UUID.randomUUID().toString();
+        sessionId = UUID.randomUUID().toString();
+        tokenId = UUID.randomUUID().toString();
+    }
+
+    @Benchmark
+    public boolean notRevoked() {
+        return revocationList.isRevoked(subject, sessionId, tokenId, issuedAt);
+    }
+
+    @Benchmark
+    public boolean revoked() {
+        return revocationList.isRevoked(revokedSubject, sessionId, tokenId, issuedAt);
+    }
+}
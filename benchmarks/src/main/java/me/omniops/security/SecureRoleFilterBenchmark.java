@@ -0,0 +1,122 @@
+package me.omniops.security;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.quarkus.vertx.http.runtime.CurrentVertxRequest;
+import jakarta.ws.rs.container.ResourceInfo;
+import me.omniops.audit.AuditLog;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Full {@link SecureRoleFilter} invocation against a stub {@link ResourceInfo}: policy lookup,
+ * service check, token validation and header encoding, plus the rejection of a caller whose
+ * origin service is not allowed. With {@code audit}, every decision is also queued for an
+ * {@link AuditLog} writing to a temporary file; events the writer cannot keep up with are dropped,
+ * as with the default backpressure.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = BenchmarkSupport.JBOSS_LOG_MANAGER)
+public class SecureRoleFilterBenchmark extends BenchmarkSupport {
+
+    @Param({"SMALL", "LARGE"})
+    TokenSize size;
+
+    @Param({"true", "false"})
+    boolean claimsCache;
+
+    @Param({"false", "true"})
+    boolean audit;
+
+    private SecureRoleFilter filter;
+    private AuditLog auditLog;
+    private Path auditDirectory;
+    private StubRequestContext requestContext;
+    private StubRequestContext unknownServiceContext;
+
+    @Setup
+    public void setUp() throws ReflectiveOperationException, IOException {
+        String token = JwtFixtures.token(size);
+        SecurityConfig config = JwtFixtures.securityConfig("portal.security.claims-cache.enabled=" + claimsCache);
+        Method method = BenchResource.class.getMethod("get");
+
+        filter = new SecureRoleFilter();
+        filter.securityConfig = config;
+        PolicyStore policyStore = new PolicyStore(config);
+        filter.endpointPolicyRegistry = new EndpointPolicyRegistry(policyStore);
+        filter.securityMetrics = JwtFixtures.metrics();
+        filter.userContextCodec = new UserContextCodec(config, policyStore);
+        filter.admissionController = JwtFixtures.admissionController();
+        filter.currentVertxRequest = new CurrentVertxRequest();
+        auditDirectory = Files.createTempDirectory("audit-bench");
+        auditLog = JwtFixtures.auditLog("portal.audit.enabled=" + audit,
+                "portal.audit.file=" + auditDirectory.resolve("audit.jsonl"),
+                "portal.audit.max-file-size=16M",
+                "portal.audit.max-files=1");
+        filter.tokenValidationService = new TokenValidationService(JwtFixtures.identity(token), new VerifiedClaimsCache(config, new SimpleMeterRegistry()), filter.securityMetrics, policyStore, config,
+                auditLog, JwtFixtures.revocationList());
+        Field resourceInfo = SecureRoleFilter.class.getDeclaredField("resourceInfo");
+        resourceInfo.setAccessible(true);
+        resourceInfo.set(filter, new ResourceInfo() {
+            @Override
+            public Method getResourceMethod() {
+                return method;
+            }
+
+            @Override
+            public Class<?> getResourceClass() {
+                return BenchResource.class;
+            }
+        });
+        requestContext = new StubRequestContext()
+                .header(SecurityFilterSupport.ORIGIN_SERVICE_HEADER, "dashboard");
+        unknownServiceContext = new StubRequestContext()
+                .header(SecurityFilterSupport.ORIGIN_SERVICE_HEADER, "port-scanner");
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        auditLog.close();
+        try (Stream<Path> files = Files.list(auditDirectory)) {
+            for (Path file : files.toList()) {
+                Files.delete(file);
+            }
+        }
+        Files.delete(auditDirectory);
+    }
+
+    @Benchmark
+    public StubRequestContext filter() {
+        requestContext.reset(SecurityFilterSupport.ORIGIN_SERVICE_HEADER);
+        filter.filter(requestContext);
+        return requestContext;
+    }
+
+    @Benchmark
+    public StubRequestContext rejectUnknownService() {
+        unknownServiceContext.reset(SecurityFilterSupport.ORIGIN_SERVICE_HEADER);
+        filter.filter(unknownServiceContext);
+        return unknownServiceContext;
+    }
+}
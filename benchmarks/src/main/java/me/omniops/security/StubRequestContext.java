@@ -0,0 +1,176 @@
+package me.omniops.security;
+
+import jakarta.ws.rs.container.ContainerRequestContext;
+import jakarta.ws.rs.core.Cookie;
+import jakarta.ws.rs.core.MediaType;
+import jakarta.ws.rs.core.MultivaluedHashMap;
+import jakarta.ws.rs.core.MultivaluedMap;
+import jakarta.ws.rs.core.Request;
+import jakarta.ws.rs.core.Response;
+import jakarta.ws.rs.core.SecurityContext;
+import jakarta.ws.rs.core.UriInfo;
+
+import java.io.InputStream;
+import java.net.URI;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Minimal request context for driving the security filter outside a JAX-RS runtime.
+ */
+final class StubRequestContext implements ContainerRequestContext {
+
+    private final MultivaluedMap<String, String> headers = new MultivaluedHashMap<>();
+    private final Map<String, Object> properties = new HashMap<>();
+    private Response abortResponse;
+
+    StubRequestContext header(String name, String value) {
+        headers.putSingle(name, value);
+        return this;
+    }
+
+    /**
+     * Clears what the filter added, so the same context can be reused across invocations.
+     */
+    void reset(String... keepHeaders) {
+        MultivaluedMap<String, String> kept = new MultivaluedHashMap<>();
+        for (String name : keepHeaders) {
+            List<String> values = headers.get(name);
+            if (values != null) {
+                kept.put(name, values);
+            }
+        }
+        headers.clear();
+        headers.putAll(kept);
+        abortResponse = null;
+    }
+
+    Response abortResponse() {
+        return abortResponse;
+    }
+
+    @Override
+    public Object getProperty(String name) {
+        return properties.get(name);
+    }
+
+    @Override
+    public Collection<String> getPropertyNames() {
+        return properties.keySet();
+    }
+
+    @Override
+    public void setProperty(String name, Object object) {
+        properties.put(name, object);
+    }
+
+    @Override
+    public void removeProperty(String name) {
+        properties.remove(name);
+    }
+
+    @Override
+    public UriInfo getUriInfo() {
+        return null;
+    }
+
+    @Override
+    public void setRequestUri(URI requestUri) {
+    }
+
+    @Override
+    public void setRequestUri(URI baseUri, URI requestUri) {
+    }
+
+    @Override
+    public Request getRequest() {
+        return null;
+    }
+
+    @Override
+    public String getMethod() {
+        return "GET";
+    }
+
+    @Override
+    public void setMethod(String method) {
+    }
+
+    @Override
+    public MultivaluedMap<String, String> getHeaders() {
+        return headers;
+    }
+
+    @Override
+    public String getHeaderString(String name) {
+        return headers.getFirst(name);
+    }
+
+    @Override
+    public Date getDate() {
+        return null;
+    }
+
+    @Override
+    public Locale getLanguage() {
+        return null;
+    }
+
+    @Override
+    public int getLength() {
+        return -1;
+    }
+
+    @Override
+    public MediaType getMediaType() {
+        return null;
+    }
+
+    @Override
+    public List<MediaType> getAcceptableMediaTypes() {
+        return Collections.emptyList();
+    }
+
+    @Override
+    public List<Locale> getAcceptableLanguages() {
+        return Collections.emptyList();
+    }
+
+    @Override
+    public Map<String, Cookie> getCookies() {
+        return Collections.emptyMap();
+    }
+
+    @Override
+    public boolean hasEntity() {
+        return false;
+    }
+
+    @Override
+    public InputStream getEntityStream() {
+        return InputStream.nullInputStream();
+    }
+
+    @Override
+    public void setEntityStream(InputStream input) {
+    }
+
+    @Override
+    public SecurityContext getSecurityContext() {
+        return null;
+    }
+
+    @Override
+    public void setSecurityContext(SecurityContext context) {
+    }
+
+    @Override
+    public void abortWith(Response response) {
+        abortResponse = response;
+    }
+}
@@ -0,0 +1,21 @@
+package me.omniops.security;
+
+/**
+ * Claim volume of a benchmark token.
+ */
+public enum TokenSize {
+    /** A typical member: a couple of roles, groups and modules. */
+    SMALL(2, 3, 2),
+    /** A heavy user: many realm roles, hundreds of groups and every module. */
+    LARGE(60, 400, 16);
+
+    final int roles;
+    final int groups;
+    final int modules;
+
+    TokenSize(int roles, int groups, int modules) {
+        this.roles = roles;
+        this.groups = groups;
+        this.modules = modules;
+    }
+}
@@ -0,0 +1,74 @@
+package me.omniops.security;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.vertx.core.json.JsonObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Token validation and claim extraction, with and without the verified-claims cache.
+ * {@code validateToken} and {@code decodeAndExtract} leave {@link UserInfo} unmaterialized;
+ * {@code extractUserInfo} copies every claim.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = BenchmarkSupport.JBOSS_LOG_MANAGER)
+public class TokenValidationBenchmark extends BenchmarkSupport {
+
+    @Param({"SMALL", "LARGE"})
+    TokenSize size;
+
+    @Param({"true", "false"})
+    boolean claimsCache;
+
+    private String token;
+    private JsonObject claims;
+    private TokenValidationService service;
+    private EndpointPolicy policy;
+
+    @Setup
+    public void setUp() throws NoSuchMethodException {
+        token = JwtFixtures.token(size);
+        claims = JwtFixtures.claims(size);
+        SecurityConfig config = JwtFixtures.securityConfig("portal.security.claims-cache.enabled=" + claimsCache);
+        PolicyStore policyStore = new PolicyStore(config);
+        service = new TokenValidationService(JwtFixtures.identity(token), new VerifiedClaimsCache(config, new SimpleMeterRegistry()), JwtFixtures.metrics(), policyStore, config,
+                JwtFixtures.auditLog(), JwtFixtures.revocationList());
+        policy = new EndpointPolicyRegistry(policyStore).policyFor(BenchResource.class.getMethod("get"), BenchResource.class);
+    }
+
+    @Benchmark
+    public Optional<UserInfo> validateTokenAndExtractClaims() {
+        return service.validateTokenAndExtractClaims(policy);
+    }
+
+    @Benchmark
+    public Optional<VerifiedClaims> validateToken() {
+        return service.validateToken(policy);
+    }
+
+    @Benchmark
+    public VerifiedClaims decodeAndExtract() {
+        return service.verifyClaims(token);
+    }
+
+    @Benchmark
+    public UserInfo extractUserInfo() {
+        return service.extractUserInfo(claims);
+    }
+}
@@ -0,0 +1,75 @@
+package me.omniops.security;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Encoding of the {@code X-User-Info} header, compared with the original per-request
+ * {@code ObjectMapper} implementation and with signing the compact {@code X-User-Context}
+ * envelope.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = BenchmarkSupport.JBOSS_LOG_MANAGER)
+public class UserInfoHeaderBenchmark extends BenchmarkSupport {
+
+    @Param({"SMALL", "LARGE"})
+    TokenSize size;
+
+    private UserInfo userInfo;
+    private VerifiedClaims verifiedClaims;
+    private UserContextCodec userContextCodec;
+    private String userContext;
+
+    @Setup
+    public void setUp() {
+        TokenValidationService service = new TokenValidationService(null, null, null, null, JwtFixtures.securityConfig(), null, null);
+        userInfo = service.extractUserInfo(JwtFixtures.claims(size));
+        verifiedClaims = new VerifiedClaims(userInfo, ClaimIndex.ROLES.mask(Role.values()), ClaimIndex.MODULES.mask(Modules.AIRFLOW), 0L);
+        SecurityConfig config = JwtFixtures.securityConfig(
+                "portal.security.user-context.enabled=true",
+                "portal.security.user-context.hmac-key=" + Base64.getEncoder().encodeToString(new byte[32]),
+                "portal.security.user-context.trusted-services=triton");
+        userContextCodec = new UserContextCodec(config, new PolicyStore(config));
+        userContext = userContextCodec.encode(verifiedClaims);
+    }
+
+    @Benchmark
+    public String serializeUserInfo() {
+        return UserInfoHeaderEncoder.encode(userInfo);
+    }
+
+    @Benchmark
+    public String signUserContext() {
+        // Drop the memoized envelope so every invocation signs.
+        verifiedClaims.userContext = null;
+        return userContextCodec.encode(verifiedClaims);
+    }
+
+    @Benchmark
+    public VerifiedClaims acceptUserContext() {
+        return userContextCodec.acceptForwarded("TRITON", userContext);
+    }
+
+    @Benchmark
+    public String serializeUserInfoPerRequestMapper() throws Exception {
+        return Base64.getEncoder().encodeToString(new ObjectMapper().writeValueAsString(userInfo).getBytes(StandardCharsets.UTF_8));
+    }
+}
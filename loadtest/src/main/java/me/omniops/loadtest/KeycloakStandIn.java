@@ -0,0 +1,314 @@
+package me.omniops.loadtest;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigInteger;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.Signature;
+import java.security.interfaces.RSAPublicKey;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * In-process stand-in for the Keycloak realm the service talks to. It serves the OIDC discovery
+ * document, the JWKS and a token endpoint that mints RS256 tokens, and the Keycloak admin user and
+ * role endpoints used by {@code UserService}. Admin responses are delayed by a configurable
+ * latency to model a remote Keycloak.
+ */
+@Slf4j
+public class KeycloakStandIn implements AutoCloseable {
+
+    public static final String REALM = "loadtest";
+    public static final String CLIENT_ID = "loadtest";
+    public static final String CLIENT_SECRET = "loadtest-secret";
+    private static final String KEY_ID = "loadtest-rs256";
+    private static final String MEMBER_ROLE = "MEMBER";
+    private static final Base64.Encoder URL_ENCODER = Base64.getUrlEncoder().withoutPadding();
+
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final KeyPair keyPair;
+    private final Duration adminLatency;
+    private final int groups;
+    private final Map<String, JsonObject> users = new ConcurrentHashMap<>();
+    private final List<String> userIds = new ArrayList<>();
+    private final Map<String, String> userIdsByName = new HashMap<>();
+
+    /**
+     * @param users        number of users, all members of the {@code MEMBER} role
+     * @param groups       number of {@code groups} claims in minted tokens, to vary token size
+     * @param adminLatency delay added to every admin API response
+     */
+    public KeycloakStandIn(int users, int groups, Duration adminLatency) throws IOException {
+        this.adminLatency = adminLatency;
+        this.groups = groups;
+        try {
+            KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+            generator.initialize(2048);
+            this.keyPair = generator.generateKeyPair();
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("RSA is not available", e);
+        }
+        for (int i = 0; i < users; i++) {
+            String username = "user-" + i;
+            String id = UUID.nameUUIDFromBytes(username.getBytes(StandardCharsets.UTF_8)).toString();
+            this.users.put(id, new JsonObject()
+                    .put("id", id)
+                    .put("username", username)
+                    .put("firstName", "User")
+                    .put("lastName", String.valueOf(i))
+                    .put("email", username + "@loadtest.local")
+                    .put("enabled", true));
+            userIds.add(id);
+            userIdsByName.put(username, id);
+        }
+        this.executor = Executors.newFixedThreadPool(64, runnable -> {
+            Thread thread = new Thread(runnable, "keycloak-stand-in");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 1024);
+        server.createContext("/", this::handle);
+        server.setExecutor(executor);
+        server.start();
+        log.info("Keycloak stand-in listening on {}", url());
+    }
+
+    public String url() {
+        return "http://127.0.0.1:" + server.getAddress().getPort();
+    }
+
+    public String realmUrl() {
+        return url() + "/realms/" + REALM;
+    }
+
+    public List<String> userIds() {
+        return userIds;
+    }
+
+    /**
+     * Mints a signed access token for {@code username} holding the {@code MEMBER} role.
+     */
+    public String mint(String username) {
+        String id = userIdsByName.get(username);
+        if (id == null) {
+            throw new IllegalArgumentException("Unknown user " + username);
+        }
+        JsonObject user = users.get(id);
+        JsonArray groupClaim = new JsonArray();
+        for (int i = 0; i < groups; i++) {
+            groupClaim.add("/loadtest/group-" + i);
+        }
+        long now = System.currentTimeMillis() / 1000;
+        return sign(new JsonObject()
+                .put("iss", realmUrl())
+                .put("sub", id)
+                .put("aud", "account")
+                .put("azp", CLIENT_ID)
+                .put("typ", "Bearer")
+                .put("iat", now)
+                .put("exp", now + 3600)
+                .put("preferred_username", username)
+                .put("email", user.getString("email"))
+                .put("given_name", user.getString("firstName"))
+                .put("family_name", user.getString("lastName"))
+                .put("roles", new JsonArray().add(MEMBER_ROLE))
+                .put("modules", new JsonArray().add("AIRFLOW").add("MINIO"))
+                .put("groups", groupClaim));
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    private String sign(JsonObject claims) {
+        JsonObject header = new JsonObject().put("alg", "RS256").put("typ", "JWT").put("kid", KEY_ID);
+        String signingInput = URL_ENCODER.encodeToString(header.encode().getBytes(StandardCharsets.UTF_8)) + '.'
+                + URL_ENCODER.encodeToString(claims.encode().getBytes(StandardCharsets.UTF_8));
+        try {
+            Signature signature = Signature.getInstance("SHA256withRSA");
+            signature.initSign(keyPair.getPrivate());
+            signature.update(signingInput.getBytes(StandardCharsets.US_ASCII));
+            return signingInput + '.' + URL_ENCODER.encodeToString(signature.sign());
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("Cannot sign token", e);
+        }
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            String path = exchange.getRequestURI().getPath();
+            String realmPrefix = "/realms/" + REALM;
+            String adminPrefix = "/admin/realms/" + REALM;
+            if (path.equals(realmPrefix + "/.well-known/openid-configuration")) {
+                respond(exchange, 200, discovery());
+            } else if (path.equals(realmPrefix + "/protocol/openid-connect/certs")) {
+                respond(exchange, 200, jwks());
+            } else if (path.equals(realmPrefix + "/protocol/openid-connect/token")) {
+                token(exchange);
+            } else if (path.startsWith(adminPrefix + "/")) {
+                sleep(adminLatency);
+                admin(exchange, path.substring(adminPrefix.length() + 1).split("/"));
+            } else {
+                respond(exchange, 404, null);
+            }
+        } catch (RuntimeException e) {
+            log.warn("Stand-in request {} failed: {}", exchange.getRequestURI(), e.toString());
+        }
+    }
+
+    private JsonObject discovery() {
+        String base = realmUrl() + "/protocol/openid-connect";
+        return new JsonObject()
+                .put("issuer", realmUrl())
+                .put("authorization_endpoint", base + "/auth")
+                .put("token_endpoint", base + "/token")
+                .put("userinfo_endpoint", base + "/userinfo")
+                .put("end_session_endpoint", base + "/logout")
+                .put("introspection_endpoint", base + "/token/introspect")
+                .put("jwks_uri", base + "/certs")
+                .put("id_token_signing_alg_values_supported", new JsonArray().add("RS256"))
+                .put("response_types_supported", new JsonArray().add("code"))
+                .put("subject_types_supported", new JsonArray().add("public"));
+    }
+
+    private JsonObject jwks() {
+        RSAPublicKey key = (RSAPublicKey) keyPair.getPublic();
+        return new JsonObject().put("keys", new JsonArray().add(new JsonObject()
+                .put("kty", "RSA")
+                .put("kid", KEY_ID)
+                .put("use", "sig")
+                .put("alg", "RS256")
+                .put("n", unsigned(key.getModulus()))
+                .put("e", unsigned(key.getPublicExponent()))));
+    }
+
+    private void token(HttpExchange exchange) throws IOException {
+        Map<String, String> form = form(new String(exchange.getRequestBody().readAllBytes(), StandardCharsets.UTF_8));
+        String grantType = form.get("grant_type");
+        String token;
+        if ("password".equals(grantType)) {
+            token = mint(form.get("username"));
+        } else if ("client_credentials".equals(grantType)) {
+            long now = System.currentTimeMillis() / 1000;
+            token = sign(new JsonObject().put("iss", realmUrl()).put("sub", "service-account-" + CLIENT_ID)
+                    .put("azp", CLIENT_ID).put("iat", now).put("exp", now + 3600));
+        } else {
+            respond(exchange, 400, new JsonObject().put("error", "unsupported_grant_type"));
+            return;
+        }
+        respond(exchange, 200, new JsonObject()
+                .put("access_token", token)
+                .put("token_type", "Bearer")
+                .put("expires_in", 3600)
+                .put("refresh_expires_in", 0));
+    }
+
+    private void admin(HttpExchange exchange, String[] segments) throws IOException {
+        String method = exchange.getRequestMethod();
+        if (segments.length >= 2 && segments[0].equals("users")) {
+            JsonObject user = users.get(segments[1]);
+            if (user == null) {
+                respond(exchange, 404, new JsonObject().put("error", "User not found"));
+            } else if (segments.length == 2 && method.equals("GET")) {
+                respond(exchange, 200, user);
+            } else if (segments.length == 2 && method.equals("PUT")) {
+                JsonObject update = new JsonObject(new String(exchange.getRequestBody().readAllBytes(), StandardCharsets.UTF_8));
+                users.put(segments[1], user.copy().mergeIn(update));
+                respond(exchange, 204, null);
+            } else if (segments.length == 3 && segments[2].equals("logout") && method.equals("POST")) {
+                respond(exchange, 204, null);
+            } else {
+                respond(exchange, 405, null);
+            }
+        } else if (segments.length == 3 && segments[0].equals("roles") && segments[2].equals("users")) {
+            if (!segments[1].equals(MEMBER_ROLE)) {
+                respond(exchange, 200, new JsonArray());
+                return;
+            }
+            Map<String, String> query = form(exchange.getRequestURI().getRawQuery());
+            int first = Integer.parseInt(query.getOrDefault("first", "0"));
+            int max = Integer.parseInt(query.getOrDefault("max", "100"));
+            JsonArray page = new JsonArray();
+            for (int i = first; i < Math.min(userIds.size(), first + max); i++) {
+                page.add(users.get(userIds.get(i)));
+            }
+            respond(exchange, 200, page);
+        } else {
+            respond(exchange, 404, null);
+        }
+    }
+
+    private static void respond(HttpExchange exchange, int status, Object body) throws IOException {
+        if (body == null) {
+            exchange.sendResponseHeaders(status, -1);
+            return;
+        }
+        byte[] bytes = (body instanceof JsonArray ? ((JsonArray) body).encode() : ((JsonObject) body).encode())
+                .getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    private static Map<String, String> form(String encoded) {
+        Map<String, String> values = new LinkedHashMap<>();
+        if (encoded == null || encoded.isEmpty()) {
+            return values;
+        }
+        for (String pair : encoded.split("&")) {
+            int separator = pair.indexOf('=');
+            if (separator > 0) {
+                values.put(URLDecoder.decode(pair.substring(0, separator), StandardCharsets.UTF_8),
+                        URLDecoder.decode(pair.substring(separator + 1), StandardCharsets.UTF_8));
+            }
+        }
+        return values;
+    }
+
+    private static String unsigned(BigInteger value) {
+        byte[] bytes = value.toByteArray();
+        if (bytes.length > 1 && bytes[0] == 0) {
+            byte[] trimmed = new byte[bytes.length - 1];
+            System.arraycopy(bytes, 1, trimmed, 0, trimmed.length);
+            bytes = trimmed;
+        }
+        return URL_ENCODER.encodeToString(bytes);
+    }
+
+    private static void sleep(Duration latency) {
+        if (latency.isZero()) {
+            return;
+        }
+        try {
+            TimeUnit.NANOSECONDS.sleep(latency.toNanos());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,175 @@
+package me.omniops.loadtest;
+
+import io.vertx.core.json.JsonObject;
+import lombok.extern.slf4j.Slf4j;
+import org.HdrHistogram.Histogram;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Sends a weighted mix of {@link Scenario}s from {@code concurrency} threads, each waiting for
+ * its response before sending the next request (closed model). Latencies are recorded per thread
+ * and merged into one histogram per scenario once the run ends.
+ */
+@Slf4j
+public class LoadDriver {
+
+    private static final int TOKENS = 50;
+    private static final long HIGHEST_TRACKABLE_NANOS = TimeUnit.SECONDS.toNanos(60);
+
+    private final LoadTestOptions options;
+    private final String serviceUrl;
+    private final HttpClient client;
+    private final Scenario[] weighted;
+    private final List<String> tokens = new ArrayList<>();
+    private final List<String> userIds;
+    private final String invalidToken;
+
+    public LoadDriver(LoadTestOptions options, String serviceUrl, String realmUrl, List<String> userIds) throws IOException, InterruptedException {
+        this.options = options;
+        this.serviceUrl = serviceUrl;
+        this.userIds = userIds;
+        this.client = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(Duration.ofSeconds(5))
+                .build();
+        List<Scenario> slots = new ArrayList<>();
+        options.mix().forEach((scenario, weight) -> {
+            for (int i = 0; i < weight; i++) {
+                slots.add(scenario);
+            }
+        });
+        this.weighted = slots.toArray(Scenario[]::new);
+        for (int i = 0; i < Math.min(TOKENS, userIds.size()); i++) {
+            tokens.add(fetchToken(realmUrl, "user-" + i));
+        }
+        // Flip one signature character: well-formed, signed by nobody.
+        String token = tokens.get(0);
+        char last = token.charAt(token.length() - 2);
+        this.invalidToken = token.substring(0, token.length() - 2) + (last == 'A' ? 'B' : 'A') + token.charAt(token.length() - 1);
+    }
+
+    /**
+     * Runs the warm-up and the measured phase.
+     */
+    public LoadReport run() throws InterruptedException {
+        log.info("Warming up for {} with {} threads", options.warmup(), options.concurrency());
+        drive(options.warmup());
+        log.info("Measuring for {}", options.duration());
+        long start = System.nanoTime();
+        List<Worker> workers = drive(options.duration());
+        long elapsed = System.nanoTime() - start;
+
+        Map<Scenario, Histogram> latencies = new EnumMap<>(Scenario.class);
+        Map<Scenario, Long> errors = new EnumMap<>(Scenario.class);
+        Map<Scenario, Integer> unexpectedStatuses = new EnumMap<>(Scenario.class);
+        for (Worker worker : workers) {
+            unexpectedStatuses.putAll(worker.unexpectedStatuses);
+            worker.latencies.forEach((scenario, histogram) ->
+                    latencies.computeIfAbsent(scenario, s -> newHistogram()).add(histogram));
+            worker.errors.forEach((scenario, count) -> errors.merge(scenario, count, Long::sum));
+        }
+        return new LoadReport(options, latencies, errors, unexpectedStatuses, elapsed);
+    }
+
+    private List<Worker> drive(Duration duration) throws InterruptedException {
+        long deadline = System.nanoTime() + duration.toNanos();
+        List<Worker> workers = new ArrayList<>();
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < options.concurrency(); i++) {
+            Worker worker = new Worker(deadline);
+            Thread thread = new Thread(worker, "load-driver-" + i);
+            workers.add(worker);
+            threads.add(thread);
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        return workers;
+    }
+
+    private HttpRequest request(Scenario scenario, ThreadLocalRandom random) {
+        String path = scenario == Scenario.USER_LOOKUP
+                ? scenario.path + userIds.get(random.nextInt(userIds.size()))
+                : scenario.path;
+        HttpRequest.Builder request = HttpRequest.newBuilder(URI.create(serviceUrl + path))
+                .timeout(Duration.ofSeconds(30))
+                .GET();
+        switch (scenario) {
+            case PUBLIC -> {
+            }
+            case INVALID_TOKEN -> request.header("Authorization", "Bearer " + invalidToken);
+            default -> request.header("Authorization", "Bearer " + tokens.get(random.nextInt(tokens.size())));
+        }
+        return request.build();
+    }
+
+    private String fetchToken(String realmUrl, String username) throws IOException, InterruptedException {
+        String form = "grant_type=password&client_id=" + KeycloakStandIn.CLIENT_ID
+                + "&username=" + URLEncoder.encode(username, StandardCharsets.UTF_8);
+        HttpResponse<String> response = client.send(HttpRequest.newBuilder(URI.create(realmUrl + "/protocol/openid-connect/token"))
+                        .header("Content-Type", "application/x-www-form-urlencoded")
+                        .POST(HttpRequest.BodyPublishers.ofString(form))
+                        .build(),
+                HttpResponse.BodyHandlers.ofString());
+        if (response.statusCode() != 200) {
+            throw new IOException("Token request for " + username + " failed with " + response.statusCode());
+        }
+        return new JsonObject(response.body()).getString("access_token");
+    }
+
+    private static Histogram newHistogram() {
+        return new Histogram(HIGHEST_TRACKABLE_NANOS, 3);
+    }
+
+    private final class Worker implements Runnable {
+
+        private final long deadline;
+        private final Map<Scenario, Histogram> latencies = new EnumMap<>(Scenario.class);
+        private final Map<Scenario, Long> errors = new EnumMap<>(Scenario.class);
+        private final Map<Scenario, Integer> unexpectedStatuses = new EnumMap<>(Scenario.class);
+
+        private Worker(long deadline) {
+            this.deadline = deadline;
+        }
+
+        @Override
+        public void run() {
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            while (System.nanoTime() < deadline) {
+                Scenario scenario = weighted[random.nextInt(weighted.length)];
+                HttpRequest request = request(scenario, random);
+                long start = System.nanoTime();
+                int status;
+                try {
+                    status = client.send(request, HttpResponse.BodyHandlers.discarding()).statusCode();
+                } catch (IOException e) {
+                    status = -1;
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+                long latency = Math.min(System.nanoTime() - start, HIGHEST_TRACKABLE_NANOS);
+                latencies.computeIfAbsent(scenario, s -> newHistogram()).recordValue(latency);
+                if (status != scenario.expectedStatus) {
+                    errors.merge(scenario, 1L, Long::sum);
+                    unexpectedStatuses.put(scenario, status);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,101 @@
+package me.omniops.loadtest;
+
+import org.HdrHistogram.Histogram;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput, latency percentiles and unexpected responses of a run, checked against the
+ * thresholds of {@link LoadTestOptions}.
+ */
+public class LoadReport {
+
+    private final LoadTestOptions options;
+    private final Map<Scenario, Histogram> latencies;
+    private final Map<Scenario, Long> errors;
+    private final Map<Scenario, Integer> unexpectedStatuses;
+    private final long elapsedNanos;
+
+    /**
+     * @param unexpectedStatuses a status, {@code -1} for I/O errors, answered to each scenario
+     *                           that did not get its expected status
+     */
+    LoadReport(LoadTestOptions options, Map<Scenario, Histogram> latencies, Map<Scenario, Long> errors,
+               Map<Scenario, Integer> unexpectedStatuses, long elapsedNanos) {
+        this.options = options;
+        this.latencies = latencies;
+        this.errors = errors;
+        this.unexpectedStatuses = unexpectedStatuses;
+        this.elapsedNanos = elapsedNanos;
+    }
+
+    public long requests() {
+        return latencies.values().stream().mapToLong(Histogram::getTotalCount).sum();
+    }
+
+    public long errors() {
+        return errors.values().stream().mapToLong(Long::longValue).sum();
+    }
+
+    public double throughput() {
+        return requests() / (elapsedNanos / 1e9);
+    }
+
+    /**
+     * @return a table with one row per scenario
+     */
+    public String format() {
+        StringBuilder table = new StringBuilder(String.format(Locale.ROOT, "%-14s %10s %10s %10s %10s %10s %10s %8s%n",
+                "scenario", "requests", "req/s", "p50 ms", "p99 ms", "p999 ms", "max ms", "errors"));
+        latencies.forEach((scenario, histogram) -> table.append(String.format(Locale.ROOT,
+                "%-14s %10d %10.1f %10.2f %10.2f %10.2f %10.2f %8d%n",
+                scenario.label(), histogram.getTotalCount(), histogram.getTotalCount() / (elapsedNanos / 1e9),
+                millis(histogram.getValueAtPercentile(50)), millis(histogram.getValueAtPercentile(99)),
+                millis(histogram.getValueAtPercentile(99.9)), millis(histogram.getMaxValue()),
+                errors.getOrDefault(scenario, 0L))));
+        table.append(String.format(Locale.ROOT, "%-14s %10d %10.1f %54d%n", "total", requests(), throughput(), errors()));
+        return table.toString();
+    }
+
+    /**
+     * @return the thresholds this run crossed; empty if it passed
+     */
+    public List<String> violations() {
+        List<String> violations = new ArrayList<>();
+        long maxP99 = options.maxP99().toNanos();
+        long maxP999 = options.maxP999().toNanos();
+        latencies.forEach((scenario, histogram) -> {
+            if (histogram.getValueAtPercentile(99) > maxP99) {
+                violations.add(String.format(Locale.ROOT, "%s p99 %.2f ms exceeds %s", scenario.label(),
+                        millis(histogram.getValueAtPercentile(99)), format(options.maxP99())));
+            }
+            if (histogram.getValueAtPercentile(99.9) > maxP999) {
+                violations.add(String.format(Locale.ROOT, "%s p999 %.2f ms exceeds %s", scenario.label(),
+                        millis(histogram.getValueAtPercentile(99.9)), format(options.maxP999())));
+            }
+        });
+        if (options.minThroughput() > 0 && throughput() < options.minThroughput()) {
+            violations.add(String.format(Locale.ROOT, "throughput %.1f req/s is below %.1f", throughput(), options.minThroughput()));
+        }
+        double errorRate = requests() == 0 ? 1.0 : (double) errors() / requests();
+        if (errorRate > options.maxErrorRate()) {
+            violations.add(String.format(Locale.ROOT, "error rate %.4f exceeds %.4f", errorRate, options.maxErrorRate()));
+            unexpectedStatuses.forEach((scenario, status) -> violations.add(String.format(Locale.ROOT,
+                    "%s expected %d, got %d", scenario.label(), scenario.expectedStatus, status)));
+        }
+        return violations;
+    }
+
+    private static double millis(long nanos) {
+        return nanos / (double) TimeUnit.MILLISECONDS.toNanos(1);
+    }
+
+    private static String format(Duration duration) {
+        return duration.toMillis() + " ms";
+    }
+}
@@ -0,0 +1,67 @@
+package me.omniops.loadtest;
+
+import io.quarkus.runtime.Quarkus;
+import io.quarkus.runtime.QuarkusApplication;
+import io.quarkus.runtime.annotations.QuarkusMain;
+import lombok.extern.slf4j.Slf4j;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.util.List;
+
+/**
+ * Starts the {@link KeycloakStandIn}, points the service at it, boots the service and drives the
+ * configured request mix against it over HTTP. Exits with status 1 when a threshold is crossed.
+ */
+@Slf4j
+@QuarkusMain
+public class LoadTestMain implements QuarkusApplication {
+
+    private static KeycloakStandIn standIn;
+
+    @ConfigProperty(name = "quarkus.http.port")
+    int httpPort;
+
+    public static void main(String... args) throws IOException {
+        LoadTestOptions options = LoadTestOptions.fromSystemProperties();
+        standIn = new KeycloakStandIn(options.users(), options.groups(), options.adminLatency());
+        System.setProperty("quarkus.http.port", String.valueOf(freePort()));
+        System.setProperty("quarkus.oidc.auth-server-url", standIn.realmUrl());
+        System.setProperty("quarkus.oidc.client-id", KeycloakStandIn.CLIENT_ID);
+        System.setProperty("quarkus.oidc.credentials.secret", KeycloakStandIn.CLIENT_SECRET);
+        System.setProperty("portal.config.sso.domain", standIn.url());
+        System.setProperty("portal.config.sso.realm", KeycloakStandIn.REALM);
+        System.setProperty("portal.config.sso.admin-realm", KeycloakStandIn.REALM);
+        System.setProperty("portal.config.sso.client-id", KeycloakStandIn.CLIENT_ID);
+        System.setProperty("portal.config.sso.client-secret", KeycloakStandIn.CLIENT_SECRET);
+        try {
+            Quarkus.run(LoadTestMain.class, args);
+        } finally {
+            standIn.close();
+        }
+    }
+
+    @Override
+    public int run(String... args) throws Exception {
+        LoadTestOptions options = LoadTestOptions.fromSystemProperties();
+        List<String> userIds = standIn.userIds();
+        LoadDriver driver = new LoadDriver(options, "http://127.0.0.1:" + httpPort, standIn.realmUrl(), userIds);
+        LoadReport report = driver.run();
+        System.out.println();
+        System.out.print(report.format());
+        List<String> violations = report.violations();
+        if (violations.isEmpty()) {
+            System.out.println("PASSED");
+            return 0;
+        }
+        violations.forEach(violation -> System.out.println("FAILED: " + violation));
+        return 1;
+    }
+
+    private static int freePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+}
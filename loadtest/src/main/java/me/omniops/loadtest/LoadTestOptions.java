@@ -0,0 +1,72 @@
+package me.omniops.loadtest;
+
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Settings of a load test run, read from {@code -Dloadtest.*} system properties.
+ *
+ * @param duration        measured run time, after {@code warmup}
+ * @param warmup          run time before measuring starts
+ * @param concurrency     number of client threads
+ * @param mix             relative weight of each scenario
+ * @param users           users known to the stand-in
+ * @param groups          {@code groups} claims per token, to vary token size
+ * @param adminLatency    delay of every Keycloak admin response
+ * @param maxP99          fails the run when any scenario's p99 exceeds it
+ * @param maxP999         fails the run when any scenario's p99.9 exceeds it
+ * @param minThroughput   fails the run below this many requests per second; {@code 0} disables
+ * @param maxErrorRate    fails the run when the share of unexpected responses exceeds it
+ */
+public record LoadTestOptions(Duration duration, Duration warmup, int concurrency, Map<Scenario, Integer> mix,
+                              int users, int groups, Duration adminLatency,
+                              Duration maxP99, Duration maxP999, double minThroughput, double maxErrorRate) {
+
+    static final String PREFIX = "loadtest.";
+
+    public static LoadTestOptions fromSystemProperties() {
+        return new LoadTestOptions(
+                duration("duration", "30s"),
+                duration("warmup", "10s"),
+                Integer.parseInt(property("concurrency", "32")),
+                mix(property("mix", "public=1,authorized=6,forbidden=1,invalid-token=1,user-lookup=1")),
+                Integer.parseInt(property("users", "1000")),
+                Integer.parseInt(property("groups", "20")),
+                duration("admin-latency", "5ms"),
+                duration("max-p99", "100ms"),
+                duration("max-p999", "500ms"),
+                Double.parseDouble(property("min-throughput", "0")),
+                Double.parseDouble(property("max-error-rate", "0.001")));
+    }
+
+    private static String property(String name, String defaultValue) {
+        return System.getProperty(PREFIX + name, defaultValue);
+    }
+
+    /**
+     * Parses durations such as {@code 500ms}, {@code 30s} or {@code 2m}.
+     */
+    static Duration duration(String name, String defaultValue) {
+        String value = property(name, defaultValue).trim().toLowerCase(Locale.ROOT);
+        if (value.endsWith("ms")) {
+            return Duration.ofMillis(Long.parseLong(value.substring(0, value.length() - 2)));
+        }
+        long amount = Long.parseLong(value.substring(0, value.length() - 1));
+        return switch (value.charAt(value.length() - 1)) {
+            case 's' -> Duration.ofSeconds(amount);
+            case 'm' -> Duration.ofMinutes(amount);
+            default -> throw new IllegalArgumentException("Invalid duration for " + PREFIX + name + ": " + value);
+        };
+    }
+
+    private static Map<Scenario, Integer> mix(String value) {
+        Map<Scenario, Integer> weights = new EnumMap<>(Scenario.class);
+        for (String entry : value.split(",")) {
+            String[] parts = entry.trim().split("=");
+            weights.put(Scenario.of(parts[0]), Integer.parseInt(parts[1]));
+        }
+        return weights;
+    }
+}
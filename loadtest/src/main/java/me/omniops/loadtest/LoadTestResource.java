@@ -0,0 +1,51 @@
+package me.omniops.loadtest;
+
+import jakarta.inject.Inject;
+import jakarta.ws.rs.GET;
+import jakarta.ws.rs.Path;
+import jakarta.ws.rs.PathParam;
+import jakarta.ws.rs.Produces;
+import jakarta.ws.rs.core.MediaType;
+import me.omniops.security.Authorization;
+import me.omniops.security.Modules;
+import me.omniops.security.Role;
+import me.omniops.users.UserService;
+
+/**
+ * Endpoints exercised by the load test, one per kind of {@link Authorization}.
+ */
+@Path("/load")
+@Produces(MediaType.TEXT_PLAIN)
+public class LoadTestResource {
+
+    @Inject
+    UserService userService;
+
+    @GET
+    @Path("/public")
+    @Authorization(isPublic = true)
+    public String publicEndpoint() {
+        return "ok";
+    }
+
+    @GET
+    @Path("/authorized")
+    @Authorization(roles = Role.MEMBER, modules = Modules.AIRFLOW)
+    public String authorized() {
+        return "ok";
+    }
+
+    @GET
+    @Path("/forbidden")
+    @Authorization(roles = Role.Admin, modules = Modules.AIRFLOW)
+    public String forbidden() {
+        return "ok";
+    }
+
+    @GET
+    @Path("/users/{id}")
+    @Authorization(roles = Role.MEMBER, modules = Modules.AIRFLOW)
+    public String user(@PathParam("id") String id) {
+        return userService.getUserById(id);
+    }
+}
@@ -0,0 +1,45 @@
+package me.omniops.loadtest;
+
+import java.util.Locale;
+
+/**
+ * Kinds of requests the {@link LoadDriver} sends, with the status each must answer with.
+ */
+public enum Scenario {
+    /**
+     * An endpoint marked {@code isPublic}, without a token.
+     */
+    PUBLIC("/load/public", 200),
+    /**
+     * An endpoint the token's roles allow.
+     */
+    AUTHORIZED("/load/authorized", 200),
+    /**
+     * An endpoint requiring a role the token lacks.
+     */
+    FORBIDDEN("/load/forbidden", 403),
+    /**
+     * An authorized endpoint called with a token whose signature was altered.
+     */
+    INVALID_TOKEN("/load/authorized", 401),
+    /**
+     * A user lookup through {@code UserService} and the Keycloak admin API.
+     */
+    USER_LOOKUP("/load/users/", 200);
+
+    final String path;
+    final int expectedStatus;
+
+    Scenario(String path, int expectedStatus) {
+        this.path = path;
+        this.expectedStatus = expectedStatus;
+    }
+
+    String label() {
+        return name().toLowerCase(Locale.ROOT).replace('_', '-');
+    }
+
+    static Scenario of(String label) {
+        return valueOf(label.trim().toUpperCase(Locale.ROOT).replace('-', '_'));
+    }
+}
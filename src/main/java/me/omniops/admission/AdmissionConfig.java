@@ -0,0 +1,104 @@
+package me.omniops.admission;
+
+import io.quarkus.runtime.annotations.StaticInitSafe;
+import io.smallrye.config.ConfigMapping;
+import io.smallrye.config.WithDefault;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.Optional;
+import java.util.OptionalInt;
+
+/**
+ * Settings of {@link AdmissionController}. Rate limits left unset do not apply.
+ */
+@StaticInitSafe
+@ConfigMapping(prefix = "portal.admission")
+public interface AdmissionConfig {
+
+    /**
+     * Whether secured requests pass admission control before they reach the resource.
+     */
+    @WithDefault("false")
+    boolean enabled();
+
+    /**
+     * Limit of each origin service, by {@code X-Origin-Service}.
+     */
+    Optional<Limit> service();
+
+    /**
+     * Limits of individual origin services by name, in place of {@link #service()}.
+     */
+    Map<String, Limit> services();
+
+    /**
+     * Limit of each token subject.
+     */
+    Optional<Limit> subject();
+
+    /**
+     * Buckets subjects are hashed into, rounded up to a power of two. Subjects sharing a bucket
+     * share its limit.
+     */
+    @WithDefault("4096")
+    int subjectStripes();
+
+    /**
+     * Additional limits of single endpoints, keyed by {@code Class#method}.
+     */
+    Map<String, Endpoint> endpoints();
+
+    Concurrency concurrency();
+
+    interface Limit {
+        /**
+         * Sustained requests per second.
+         */
+        double rate();
+
+        /**
+         * Requests let through at once after a quiet period; one second's worth by default.
+         */
+        OptionalInt burst();
+    }
+
+    interface Endpoint {
+        /**
+         * Limit of each origin service on this endpoint.
+         */
+        Optional<Limit> service();
+
+        /**
+         * Limit of each subject on this endpoint.
+         */
+        Optional<Limit> subject();
+    }
+
+    /**
+     * Adaptive limit of secured requests in progress: it grows while responses stay within
+     * {@code target-latency} and is cut by {@code backoff-ratio} when they do not.
+     */
+    interface Concurrency {
+        @WithDefault("false")
+        boolean enabled();
+
+        @WithDefault("100")
+        int initialLimit();
+
+        @WithDefault("10")
+        int minLimit();
+
+        @WithDefault("1000")
+        int maxLimit();
+
+        /**
+         * Response time above which the limit is reduced, at most once per this interval.
+         */
+        @WithDefault("500ms")
+        Duration targetLatency();
+
+        @WithDefault("0.9")
+        double backoffRatio();
+    }
+}
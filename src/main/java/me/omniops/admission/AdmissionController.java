@@ -0,0 +1,215 @@
+package me.omniops.admission;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+import lombok.extern.slf4j.Slf4j;
+import me.omniops.security.ClaimIndex;
+
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Sheds load on secured endpoints before the resource runs, so one busy caller cannot take the
+ * worker threads of everyone else. Once its token is validated, a request passes, in order:
+ * <ol>
+ *     <li>the token bucket of its subject,</li>
+ *     <li>the token bucket of its origin service ({@code X-Origin-Service}),</li>
+ *     <li>the adaptive concurrency limit, whose permit it holds until the response is sent.</li>
+ * </ol>
+ * Endpoints listed in {@code portal.admission.endpoints} have their own buckets in addition. Every
+ * origin service named by {@link me.omniops.security.Services} or {@code portal.admission.services}
+ * has a bucket of its own; other and missing origins share one. Subjects are hashed into a fixed
+ * number of buckets. A request rejected by one bucket gets back the tokens it took from the
+ * others. All state is in atomics, and a check does not allocate.
+ */
+@Slf4j
+@ApplicationScoped
+public class AdmissionController {
+
+    public enum Rejection {
+        SERVICE_RATE,
+        SUBJECT_RATE,
+        CONCURRENCY;
+
+        private final String tag = name().toLowerCase(Locale.ROOT);
+    }
+
+    private static final Rejection[] REJECTIONS = Rejection.values();
+    private static final String OTHER_SERVICE = "other";
+
+    private final boolean enabled;
+    /**
+     * Origin services with a bucket of their own; the bucket after the last name is shared by the rest.
+     */
+    private final ClaimIndex services;
+    private final TokenBuckets serviceBuckets;
+    private final TokenBuckets subjectBuckets;
+    private final int subjectMask;
+    private final Map<String, EndpointBuckets> endpoints;
+    private final ConcurrencyLimit concurrency;
+    private final MeterRegistry registry;
+    /**
+     * Rejection counters by rejection and service slot, registered on first use.
+     */
+    private final Counter[] rejections;
+
+    private record EndpointBuckets(TokenBuckets service, TokenBuckets subject) {
+    }
+
+    @Inject
+    public AdmissionController(AdmissionConfig config, MeterRegistry registry) {
+        this.enabled = config.enabled();
+        this.registry = registry;
+        this.services = ClaimIndex.SERVICES.extend(config.services().keySet());
+        int serviceSlots = services.size() + 1;
+        this.rejections = new Counter[REJECTIONS.length * serviceSlots];
+
+        AdmissionConfig.Limit[] serviceLimits = new AdmissionConfig.Limit[serviceSlots];
+        for (int slot = 0; slot < serviceSlots; slot++) {
+            serviceLimits[slot] = config.service().orElse(null);
+        }
+        config.services().forEach((name, limit) -> serviceLimits[services.indexOf(name)] = limit);
+        this.serviceBuckets = new TokenBuckets(serviceLimits, true);
+
+        int stripes = config.subjectStripes() <= 1 ? 1 : Integer.highestOneBit(config.subjectStripes() - 1) << 1;
+        this.subjectMask = stripes - 1;
+        this.subjectBuckets = config.subject().map(limit -> TokenBuckets.uniform(limit, stripes, false)).orElse(null);
+
+        Map<String, EndpointBuckets> endpointBuckets = new HashMap<>();
+        config.endpoints().forEach((endpoint, limits) -> endpointBuckets.put(endpoint, new EndpointBuckets(
+                limits.service().map(limit -> TokenBuckets.uniform(limit, serviceSlots, true)).orElse(null),
+                limits.subject().map(limit -> TokenBuckets.uniform(limit, stripes, false)).orElse(null))));
+        this.endpoints = Map.copyOf(endpointBuckets);
+
+        if (!enabled || !config.concurrency().enabled()) {
+            this.concurrency = null;
+            return;
+        }
+        this.concurrency = new ConcurrencyLimit(config.concurrency());
+        Gauge.builder("portal.admission.concurrency.limit", concurrency, ConcurrencyLimit::limit)
+                .description("Current limit of secured requests in progress")
+                .register(registry);
+        Gauge.builder("portal.admission.concurrency.in_flight", concurrency, ConcurrencyLimit::inFlight)
+                .description("Secured requests in progress")
+                .register(registry);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Takes a token from the buckets of {@code subject} and then from those of
+     * {@code originService}, endpoint buckets after the shared ones. A request is only charged if
+     * every bucket admits it; tokens taken before a rejection are given back, so a subject over its
+     * limit does not use up its service's bucket. A request without a subject only passes the
+     * service buckets.
+     *
+     * @return why the request is rejected, or {@code null} if it is admitted
+     */
+    public Rejection admit(String endpoint, String originService, String subject) {
+        if (!enabled) {
+            return null;
+        }
+        EndpointBuckets endpointBuckets = endpoints.isEmpty() ? null : endpoints.get(endpoint);
+        TokenBuckets endpointSubjects = endpointBuckets != null ? endpointBuckets.subject : null;
+        TokenBuckets endpointServices = endpointBuckets != null ? endpointBuckets.service : null;
+        int slot = serviceSlot(originService);
+        int stripe = subject != null ? spread(subject.hashCode()) & subjectMask : -1;
+        if (stripe >= 0) {
+            if (subjectBuckets != null && !subjectBuckets.tryAcquire(stripe)) {
+                return reject(Rejection.SUBJECT_RATE, endpoint, slot);
+            }
+            if (endpointSubjects != null && !endpointSubjects.tryAcquire(stripe)) {
+                releaseSubject(stripe, null);
+                return reject(Rejection.SUBJECT_RATE, endpoint, slot);
+            }
+        }
+        if (!serviceBuckets.tryAcquire(slot)) {
+            releaseSubject(stripe, endpointSubjects);
+            return reject(Rejection.SERVICE_RATE, endpoint, slot);
+        }
+        if (endpointServices != null && !endpointServices.tryAcquire(slot)) {
+            serviceBuckets.release(slot);
+            releaseSubject(stripe, endpointSubjects);
+            return reject(Rejection.SERVICE_RATE, endpoint, slot);
+        }
+        return null;
+    }
+
+    /**
+     * @return whether requests have to take a permit with {@link #tryAcquire}
+     */
+    public boolean limitsConcurrency() {
+        return concurrency != null;
+    }
+
+    /**
+     * Takes a concurrency permit, which must be returned with {@link #release} once the response
+     * has been sent.
+     *
+     * @return whether a permit was taken
+     */
+    public boolean tryAcquire(String endpoint, String originService) {
+        if (concurrency == null || concurrency.tryAcquire()) {
+            return true;
+        }
+        reject(Rejection.CONCURRENCY, endpoint, serviceSlot(originService));
+        return false;
+    }
+
+    /**
+     * @param latencyNanos time from {@link #tryAcquire} until the response was sent
+     */
+    public void release(long latencyNanos) {
+        if (concurrency != null) {
+            concurrency.release(latencyNanos);
+        }
+    }
+
+    private void releaseSubject(int stripe, TokenBuckets endpointSubjects) {
+        if (stripe < 0) {
+            return;
+        }
+        if (subjectBuckets != null) {
+            subjectBuckets.release(stripe);
+        }
+        if (endpointSubjects != null) {
+            endpointSubjects.release(stripe);
+        }
+    }
+
+    private int serviceSlot(String originService) {
+        int index = services.indexOf(originService);
+        return index >= 0 ? index : services.size();
+    }
+
+    private Rejection reject(Rejection rejection, String endpoint, int slot) {
+        log.debug("Rejected request to {}: {}", endpoint, rejection);
+        int index = rejection.ordinal() * (services.size() + 1) + slot;
+        Counter counter = rejections[index];
+        if (counter == null) {
+            // Registering twice returns the same counter, so a race here is harmless.
+            counter = Counter.builder("portal.admission.rejections")
+                    .description("Secured requests rejected with 429 before reaching the resource")
+                    .tag("reason", rejection.tag)
+                    .tag("service", serviceName(slot))
+                    .register(registry);
+            rejections[index] = counter;
+        }
+        counter.increment();
+        return rejection;
+    }
+
+    private String serviceName(int slot) {
+        return slot < services.size() ? services.nameOf(slot).toLowerCase(Locale.ROOT) : OTHER_SERVICE;
+    }
+
+    private static int spread(int hash) {
+        return hash ^ (hash >>> 16);
+    }
+}
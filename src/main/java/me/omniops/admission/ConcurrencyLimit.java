@@ -0,0 +1,94 @@
+package me.omniops.admission;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Additive-increase, multiplicative-decrease limit of requests in progress, driven by response
+ * times. While responses stay within the target latency and at least half the limit is in use,
+ * the limit grows by about one per limit's worth of responses; a slower response cuts it by the
+ * backoff ratio, at most once per target latency so one burst of slow responses counts once.
+ * Lock-free: the limit is a {@code double} kept in an {@link AtomicLong}.
+ */
+final class ConcurrencyLimit {
+
+    private final int minLimit;
+    private final int maxLimit;
+    private final long targetLatencyNanos;
+    private final double backoffRatio;
+    private final AtomicLong limitBits;
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicLong lastDecrease = new AtomicLong(System.nanoTime());
+
+    ConcurrencyLimit(AdmissionConfig.Concurrency config) {
+        if (config.minLimit() < 1 || config.maxLimit() < config.minLimit()) {
+            throw new IllegalArgumentException("Invalid concurrency limits: " + config.minLimit() + ".." + config.maxLimit());
+        }
+        if (config.backoffRatio() <= 0 || config.backoffRatio() >= 1) {
+            throw new IllegalArgumentException("Backoff ratio must be between 0 and 1: " + config.backoffRatio());
+        }
+        this.minLimit = config.minLimit();
+        this.maxLimit = config.maxLimit();
+        this.targetLatencyNanos = config.targetLatency().toNanos();
+        this.backoffRatio = config.backoffRatio();
+        int initial = Math.min(maxLimit, Math.max(minLimit, config.initialLimit()));
+        this.limitBits = new AtomicLong(Double.doubleToRawLongBits(initial));
+    }
+
+    boolean tryAcquire() {
+        if (inFlight.incrementAndGet() <= limit()) {
+            return true;
+        }
+        inFlight.decrementAndGet();
+        return false;
+    }
+
+    /**
+     * Returns a permit taken by {@link #tryAcquire()} and adapts the limit to its response time.
+     */
+    void release(long latencyNanos) {
+        int inUse = inFlight.getAndDecrement();
+        if (latencyNanos > targetLatencyNanos) {
+            decrease();
+        } else if (inUse * 2 >= limit()) {
+            increase();
+        }
+    }
+
+    int limit() {
+        return (int) Double.longBitsToDouble(limitBits.get());
+    }
+
+    int inFlight() {
+        return inFlight.get();
+    }
+
+    private void increase() {
+        while (true) {
+            long bits = limitBits.get();
+            double current = Double.longBitsToDouble(bits);
+            if (current >= maxLimit) {
+                return;
+            }
+            double next = Math.min(maxLimit, current + 1 / current);
+            if (limitBits.compareAndSet(bits, Double.doubleToRawLongBits(next))) {
+                return;
+            }
+        }
+    }
+
+    private void decrease() {
+        long now = System.nanoTime();
+        long last = lastDecrease.get();
+        if (now - last < targetLatencyNanos || !lastDecrease.compareAndSet(last, now)) {
+            return;
+        }
+        while (true) {
+            long bits = limitBits.get();
+            double next = Math.max(minLimit, Double.longBitsToDouble(bits) * backoffRatio);
+            if (limitBits.compareAndSet(bits, Double.doubleToRawLongBits(next))) {
+                return;
+            }
+        }
+    }
+}
@@ -0,0 +1,98 @@
+package me.omniops.admission;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Fixed table of token buckets. Each bucket is kept as the time at which it will be full again
+ * (the generic cell rate algorithm), so taking a token is one read and one compare-and-set of a
+ * {@code long} and never allocates.
+ */
+final class TokenBuckets {
+
+    /**
+     * Longs between two padded buckets, so buckets under contention do not share a cache line.
+     */
+    private static final int PADDING = 8;
+
+    private final long origin = System.nanoTime();
+    private final AtomicLongArray fullAt;
+    private final int spacing;
+    /**
+     * Per bucket: nanoseconds per token, {@code 0} for no limit.
+     */
+    private final long[] intervals;
+    /**
+     * Per bucket: how far {@code fullAt} may lie ahead of now, which is {@code burst - 1} tokens.
+     */
+    private final long[] tolerances;
+
+    /**
+     * @param limits limit of each bucket; {@code null} for none
+     * @param padded whether to keep each bucket on its own cache line
+     */
+    TokenBuckets(AdmissionConfig.Limit[] limits, boolean padded) {
+        this.spacing = padded ? PADDING : 1;
+        this.fullAt = new AtomicLongArray(limits.length * spacing);
+        this.intervals = new long[limits.length];
+        this.tolerances = new long[limits.length];
+        for (int i = 0; i < limits.length; i++) {
+            AdmissionConfig.Limit limit = limits[i];
+            if (limit == null) {
+                continue;
+            }
+            if (limit.rate() <= 0) {
+                throw new IllegalArgumentException("Admission rate must be positive: " + limit.rate());
+            }
+            int burst = limit.burst().orElse((int) Math.max(1, Math.ceil(limit.rate())));
+            intervals[i] = Math.max(1, (long) (1_000_000_000L / limit.rate()));
+            tolerances[i] = (Math.max(1, burst) - 1) * intervals[i];
+        }
+    }
+
+    /**
+     * @return {@code count} buckets sharing {@code limit}
+     */
+    static TokenBuckets uniform(AdmissionConfig.Limit limit, int count, boolean padded) {
+        AdmissionConfig.Limit[] limits = new AdmissionConfig.Limit[count];
+        Arrays.fill(limits, limit);
+        return new TokenBuckets(limits, padded);
+    }
+
+    int size() {
+        return intervals.length;
+    }
+
+    /**
+     * @return whether bucket {@code index} had a token, which is then taken
+     */
+    boolean tryAcquire(int index) {
+        long interval = intervals[index];
+        if (interval == 0) {
+            return true;
+        }
+        long tolerance = tolerances[index];
+        int slot = index * spacing;
+        long now = System.nanoTime() - origin;
+        while (true) {
+            long current = fullAt.get(slot);
+            long start = Math.max(current, now);
+            if (start - now > tolerance) {
+                return false;
+            }
+            if (fullAt.compareAndSet(slot, current, start + interval)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Gives back a token taken with {@link #tryAcquire}, for a request that a later check rejected.
+     */
+    void release(int index) {
+        long interval = intervals[index];
+        if (interval != 0) {
+            fullAt.addAndGet(index * spacing, -interval);
+        }
+    }
+}
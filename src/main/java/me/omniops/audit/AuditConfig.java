@@ -0,0 +1,84 @@
+package me.omniops.audit;
+
+import io.quarkus.runtime.annotations.StaticInitSafe;
+import io.quarkus.runtime.configuration.MemorySize;
+import io.smallrye.config.ConfigMapping;
+import io.smallrye.config.WithDefault;
+
+import java.time.Duration;
+
+/**
+ * Settings of {@link AuditLog}.
+ */
+@StaticInitSafe
+@ConfigMapping(prefix = "portal.audit")
+public interface AuditConfig {
+
+    /**
+     * Whether authorization decisions are written to the audit file.
+     */
+    @WithDefault("false")
+    boolean enabled();
+
+    /**
+     * Audit file; rotated files get the suffixes {@code .1} (newest) to {@code .<max-files>}.
+     */
+    @WithDefault("audit/authorization-audit.jsonl")
+    String file();
+
+    /**
+     * Events buffered between the request threads and the writer, rounded up to a power of two
+     * of at least 2.
+     */
+    @WithDefault("8192")
+    int bufferSize();
+
+    /**
+     * What a request thread does when the buffer is full. Event-loop threads never wait: they
+     * drop the event even with {@code block}.
+     */
+    @WithDefault("drop")
+    Backpressure backpressure();
+
+    /**
+     * Events the writer takes from the buffer at a time.
+     */
+    @WithDefault("512")
+    int batchSize();
+
+    /**
+     * How long the writer sleeps when the buffer is empty.
+     */
+    @WithDefault("5ms")
+    Duration pollInterval();
+
+    /**
+     * How often written events are forced to disk with {@code fsync}; {@code 0} forces every
+     * batch. Events written since the last sync can be lost if the host crashes.
+     */
+    @WithDefault("1S")
+    Duration syncInterval();
+
+    /**
+     * Size at which the audit file is rotated.
+     */
+    @WithDefault("100M")
+    MemorySize maxFileSize();
+
+    /**
+     * Rotated files kept next to the current one.
+     */
+    @WithDefault("10")
+    int maxFiles();
+
+    enum Backpressure {
+        /**
+         * Drop the event and count it in {@code portal.audit.events{result="dropped"}}.
+         */
+        DROP,
+        /**
+         * Wait until the writer has made room, except on event-loop threads, which drop.
+         */
+        BLOCK
+    }
+}
@@ -0,0 +1,27 @@
+package me.omniops.audit;
+
+import me.omniops.security.AccessRequirement;
+import me.omniops.security.EndpointPolicy;
+import me.omniops.security.SecurityMetrics.Outcome;
+
+/**
+ * One authorization decision. Events only hold references to objects the request already has,
+ * so creating one is a single allocation; they are formatted on the writer thread.
+ *
+ * @param policy        the endpoint's policy, or {@code null} when validation was called with
+ *                      bare requirements
+ * @param originService the {@code X-Origin-Service} header, if any
+ * @param subject       {@code sub} of the token, or {@code null} if it was not decoded
+ * @param reason        why the token was rejected, for {@link Outcome#DECODE_FAILURE}
+ */
+public record AuditEvent(long timestamp,
+                         Outcome outcome,
+                         String endpoint,
+                         EndpointPolicy policy,
+                         AccessRequirement requiredRoles,
+                         AccessRequirement requiredModules,
+                         String originService,
+                         String subject,
+                         String username,
+                         String reason) {
+}
@@ -0,0 +1,177 @@
+package me.omniops.audit;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import me.omniops.security.AccessRequirement;
+import me.omniops.security.EndpointPolicy;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Appends {@link AuditEvent}s to a file as JSON lines and rotates it by size. Used by the writer
+ * thread of {@link AuditLog} only, so it is not thread-safe.
+ */
+final class AuditFileWriter implements Closeable {
+
+    private static final JsonFactory JSON = new JsonFactory();
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final Path file;
+    private final long maxFileSize;
+    private final int maxFiles;
+    private final ByteArrayOutputStream line = new ByteArrayOutputStream(512);
+    private FileChannel channel;
+    private OutputStream out;
+    private long size;
+    /**
+     * Whether bytes were written since the last {@link #sync()}.
+     */
+    private boolean unsynced;
+
+    AuditFileWriter(Path file, long maxFileSize, int maxFiles) {
+        this.file = file;
+        this.maxFileSize = maxFileSize;
+        this.maxFiles = maxFiles;
+    }
+
+    void write(AuditEvent event) throws IOException {
+        line.reset();
+        try (JsonGenerator json = JSON.createGenerator(line, JsonEncoding.UTF8)) {
+            json.writeStartObject();
+            json.writeStringField("time", Instant.ofEpochMilli(event.timestamp()).toString());
+            json.writeStringField("outcome", event.outcome().name().toLowerCase(Locale.ROOT));
+            json.writeStringField("endpoint", event.endpoint());
+            writeOptional(json, "origin", event.originService());
+            writeOptional(json, "subject", event.subject());
+            writeOptional(json, "username", event.username());
+            EndpointPolicy policy = event.policy();
+            if (policy != null) {
+                writeNames(json, "roles", policy.getRoles());
+                json.writeStringField("roleMatch", policy.getRoleRequirement().getMode().name());
+                writeNames(json, "modules", policy.getModules());
+                json.writeStringField("moduleMatch", policy.getModuleRequirement().getMode().name());
+                writeNames(json, "services", policy.getServices());
+            } else {
+                writeRequirement(json, "roles", event.requiredRoles());
+                writeRequirement(json, "modules", event.requiredModules());
+            }
+            writeOptional(json, "reason", event.reason());
+            json.writeEndObject();
+        }
+        line.write('\n');
+        if (out == null) {
+            open();
+        } else if (size + line.size() > maxFileSize && size > 0) {
+            rotate();
+        }
+        line.writeTo(out);
+        size += line.size();
+        unsynced = true;
+    }
+
+    void flush() throws IOException {
+        if (out != null) {
+            out.flush();
+        }
+    }
+
+    /**
+     * Flushes and forces the written events to the storage device.
+     */
+    void sync() throws IOException {
+        if (out != null && unsynced) {
+            out.flush();
+            channel.force(false);
+        }
+        unsynced = false;
+    }
+
+    boolean isUnsynced() {
+        return unsynced;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (out != null) {
+            try {
+                out.close();
+            } finally {
+                out = null;
+                channel = null;
+            }
+        }
+    }
+
+    private void open() throws IOException {
+        Path parent = file.toAbsolutePath().getParent();
+        if (parent != null) {
+            Files.createDirectories(parent);
+        }
+        out = newOutputStream();
+        size = Files.size(file);
+        if (size >= maxFileSize) {
+            rotate();
+        }
+    }
+
+    private void rotate() throws IOException {
+        sync();
+        close();
+        if (maxFiles > 0) {
+            for (int i = maxFiles - 1; i >= 1; i--) {
+                Path rotated = rotated(i);
+                if (Files.exists(rotated)) {
+                    Files.move(rotated, rotated(i + 1), StandardCopyOption.REPLACE_EXISTING);
+                }
+            }
+            Files.move(file, rotated(1), StandardCopyOption.REPLACE_EXISTING);
+        } else {
+            Files.delete(file);
+        }
+        out = newOutputStream();
+        size = 0;
+    }
+
+    private OutputStream newOutputStream() throws IOException {
+        channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        return new BufferedOutputStream(Channels.newOutputStream(channel), BUFFER_SIZE);
+    }
+
+    private Path rotated(int index) {
+        return file.resolveSibling(file.getFileName() + "." + index);
+    }
+
+    private static void writeOptional(JsonGenerator json, String field, String value) throws IOException {
+        if (value != null) {
+            json.writeStringField(field, value);
+        }
+    }
+
+    private static void writeNames(JsonGenerator json, String field, List<String> names) throws IOException {
+        json.writeArrayFieldStart(field);
+        for (String name : names) {
+            json.writeString(name);
+        }
+        json.writeEndArray();
+    }
+
+    private static void writeRequirement(JsonGenerator json, String field, AccessRequirement requirement) throws IOException {
+        if (requirement != null) {
+            json.writeStringField(field, requirement.toString());
+        }
+    }
+}
@@ -0,0 +1,213 @@
+package me.omniops.audit;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.vertx.core.Context;
+import jakarta.annotation.PreDestroy;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Durable record of authorization decisions. Request threads put {@link AuditEvent}s into a
+ * lock-free ring buffer and return; a single writer thread drains it in batches and appends them
+ * to {@code portal.audit.file} as JSON lines, flushing once the buffer has been emptied. When the
+ * buffer is full, events are dropped and counted, or the request thread waits, depending on
+ * {@code portal.audit.backpressure}; event-loop threads never wait.
+ * <p>
+ * Written events are forced to disk every {@code sync-interval}, or after every batch when it is
+ * {@code 0}; a host crash loses at most the events written since. A batch that fails is retried
+ * once on a reopened file, so it may be written twice; if the retry fails too, its events are
+ * counted as failed and dropped.
+ */
+@Slf4j
+@ApplicationScoped
+public class AuditLog {
+
+    private static final long BLOCK_PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(50);
+    private static final long WRITE_RETRY_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    private final boolean enabled;
+    private final boolean blockWhenFull;
+    private final MpscRingBuffer<AuditEvent> buffer;
+    private final AuditFileWriter fileWriter;
+    private final int batchSize;
+    private final long pollNanos;
+    private final long syncNanos;
+    private final Counter written;
+    private final Counter dropped;
+    private final Counter failed;
+    private final Counter retries;
+    private final Thread writer;
+    private volatile boolean running;
+    /**
+     * When the writer last forced the file to disk; writer thread only.
+     */
+    private long lastSync;
+
+    @Inject
+    public AuditLog(AuditConfig config, MeterRegistry registry) {
+        this.enabled = config.enabled();
+        this.blockWhenFull = config.backpressure() == AuditConfig.Backpressure.BLOCK;
+        this.batchSize = Math.max(1, config.batchSize());
+        this.pollNanos = config.pollInterval().toNanos();
+        this.syncNanos = config.syncInterval().toNanos();
+        this.written = eventCounter(registry, "written");
+        this.dropped = eventCounter(registry, "dropped");
+        this.failed = eventCounter(registry, "failed");
+        this.retries = Counter.builder("portal.audit.write.retries")
+                .description("Audit batches written again after a failed write")
+                .register(registry);
+        if (!enabled) {
+            this.buffer = null;
+            this.fileWriter = null;
+            this.writer = null;
+            return;
+        }
+        this.buffer = new MpscRingBuffer<>(config.bufferSize());
+        this.fileWriter = new AuditFileWriter(Path.of(config.file()), config.maxFileSize().asLongValue(), config.maxFiles());
+        Gauge.builder("portal.audit.queue", buffer, MpscRingBuffer::size)
+                .description("Audit events waiting to be written")
+                .register(registry);
+        this.running = true;
+        this.writer = new Thread(this::drain, "authorization-audit-writer");
+        writer.setDaemon(true);
+        writer.start();
+        log.info("Writing authorization audit events to {}", Path.of(config.file()).toAbsolutePath());
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Queues {@code event} for the writer. Returns at once unless the buffer is full and
+     * backpressure is {@code block}; on an event-loop thread it always returns at once.
+     */
+    public void record(AuditEvent event) {
+        if (!enabled) {
+            return;
+        }
+        if (buffer.offer(event)) {
+            return;
+        }
+        if (blockWhenFull && !Context.isOnEventLoopThread()) {
+            while (running) {
+                // The writer may be sleeping on an empty poll; it has work now.
+                LockSupport.unpark(writer);
+                LockSupport.parkNanos(BLOCK_PARK_NANOS);
+                if (buffer.offer(event)) {
+                    return;
+                }
+            }
+        }
+        dropped.increment();
+    }
+
+    /**
+     * Stops the writer after it has written the events already queued.
+     */
+    @PreDestroy
+    public void close() {
+        if (!enabled || !running) {
+            return;
+        }
+        running = false;
+        LockSupport.unpark(writer);
+        try {
+            writer.join(TimeUnit.SECONDS.toMillis(10));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (writer.isAlive()) {
+            log.warn("Audit writer did not finish at shutdown, {} events not written", buffer.size());
+        }
+    }
+
+    private void drain() {
+        List<AuditEvent> batch = new ArrayList<>(batchSize);
+        lastSync = System.nanoTime();
+        while (running || !buffer.isEmpty()) {
+            if (buffer.drainTo(batch, batchSize) == 0) {
+                try {
+                    syncIfDue();
+                } catch (IOException e) {
+                    log.error("Failed to sync the audit file: {}", e.getMessage(), e);
+                    closeQuietly();
+                }
+                LockSupport.parkNanos(pollNanos);
+                continue;
+            }
+            write(batch);
+            batch.clear();
+        }
+        try {
+            fileWriter.sync();
+            fileWriter.close();
+        } catch (IOException e) {
+            log.error("Failed to close the audit file: {}", e.getMessage(), e);
+        }
+    }
+
+    private void write(List<AuditEvent> batch) {
+        if (!tryWrite(batch)) {
+            retries.increment();
+            LockSupport.parkNanos(WRITE_RETRY_NANOS);
+            if (!tryWrite(batch)) {
+                failed.increment(batch.size());
+                log.error("Dropped {} audit events after a failed retry", batch.size());
+                return;
+            }
+        }
+        written.increment(batch.size());
+    }
+
+    private boolean tryWrite(List<AuditEvent> batch) {
+        try {
+            for (AuditEvent event : batch) {
+                fileWriter.write(event);
+            }
+            if (buffer.isEmpty()) {
+                fileWriter.flush();
+            }
+            syncIfDue();
+            return true;
+        } catch (IOException | RuntimeException e) {
+            log.error("Failed to write {} audit events: {}", batch.size(), e.getMessage(), e);
+            // The file is reopened with the next write.
+            closeQuietly();
+            return false;
+        }
+    }
+
+    private void syncIfDue() throws IOException {
+        long now = System.nanoTime();
+        if (fileWriter.isUnsynced() && now - lastSync >= syncNanos) {
+            fileWriter.sync();
+            lastSync = now;
+        }
+    }
+
+    private void closeQuietly() {
+        try {
+            fileWriter.close();
+        } catch (IOException ignored) {
+            // Events still buffered are lost; the batch is retried or counted by the caller.
+        }
+    }
+
+    private static Counter eventCounter(MeterRegistry registry, String result) {
+        return Counter.builder("portal.audit.events")
+                .description("Authorization audit events by result")
+                .tag("result", result)
+                .register(registry);
+    }
+}
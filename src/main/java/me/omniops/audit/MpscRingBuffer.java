@@ -0,0 +1,99 @@
+package me.omniops.audit;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Bounded, lock-free queue for many producers and a single consumer. Every slot carries a
+ * sequence number: a producer claims a position with one CAS on the tail and publishes the
+ * element by advancing the slot's sequence, and the consumer frees the slot for the next lap the
+ * same way, so neither side ever waits on a lock.
+ */
+final class MpscRingBuffer<E> {
+
+    private final int mask;
+    private final AtomicReferenceArray<E> elements;
+    private final AtomicLongArray sequences;
+    private final AtomicLong tail = new AtomicLong();
+    /**
+     * Next position to consume; only the consumer thread writes it.
+     */
+    private volatile long head;
+
+    /**
+     * @param capacity rounded up to the next power of two, and to at least two: with a single
+     *                 slot a published element's sequence equals the next position, and the next
+     *                 producer would overwrite it
+     */
+    MpscRingBuffer(int capacity) {
+        if (capacity < 1 || capacity > 1 << 30) {
+            throw new IllegalArgumentException("Ring buffer capacity out of range: " + capacity);
+        }
+        int size = Math.max(2, Integer.highestOneBit(capacity) == capacity ? capacity : Integer.highestOneBit(capacity) << 1);
+        this.mask = size - 1;
+        this.elements = new AtomicReferenceArray<>(size);
+        this.sequences = new AtomicLongArray(size);
+        for (int i = 0; i < size; i++) {
+            sequences.set(i, i);
+        }
+    }
+
+    /**
+     * @return {@code false} if the buffer is full
+     */
+    boolean offer(E element) {
+        while (true) {
+            long position = tail.get();
+            int index = (int) position & mask;
+            long difference = sequences.get(index) - position;
+            if (difference == 0) {
+                if (tail.compareAndSet(position, position + 1)) {
+                    elements.lazySet(index, element);
+                    sequences.lazySet(index, position + 1);
+                    return true;
+                }
+            } else if (difference < 0) {
+                return false;
+            }
+            // Another producer claimed this position first; retry with the new tail.
+        }
+    }
+
+    /**
+     * Moves up to {@code max} elements into {@code target}. Must only be called by the consumer.
+     *
+     * @return the number of elements moved
+     */
+    int drainTo(List<? super E> target, int max) {
+        long position = head;
+        int drained = 0;
+        while (drained < max) {
+            int index = (int) position & mask;
+            if (sequences.get(index) != position + 1) {
+                // Empty, or claimed by a producer that has not published it yet.
+                break;
+            }
+            target.add(elements.get(index));
+            elements.lazySet(index, null);
+            sequences.lazySet(index, position + mask + 1);
+            position++;
+            drained++;
+        }
+        head = position;
+        return drained;
+    }
+
+    int capacity() {
+        return mask + 1;
+    }
+
+    int size() {
+        return (int) Math.max(0L, Math.min(tail.get() - head, capacity()));
+    }
+
+    boolean isEmpty() {
+        return size() == 0;
+    }
+}
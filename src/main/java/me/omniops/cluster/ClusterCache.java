@@ -0,0 +1,247 @@
+package me.omniops.cluster;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.enterprise.event.Event;
+import jakarta.inject.Inject;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * Second-level cache tier and invalidation broadcast shared by the nodes of a service. Local
+ * caches load through {@link #load} so a miss is served from the {@link SharedCache} before it
+ * goes to Keycloak, and call {@link #publish} when data changes. Published and received events
+ * are fired as CDI {@link InvalidationEvent}s, which local caches observe.
+ * <p>
+ * A publish replaces the shared entry with a tombstone before broadcasting, so nodes reloading
+ * after the event do not read the stale value back. A load only stores its result if the entry it
+ * missed on is still there, so a load that was running when the event arrived cannot write the
+ * old value back either. {@link InvalidationEvent.Type#ALL} moves every node to a new key
+ * generation: entries written under the previous one are no longer read and expire unused.
+ */
+@Slf4j
+@ApplicationScoped
+public class ClusterCache {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper()
+            .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+    static final String GENERATION_KEY = "cluster:generation";
+    /**
+     * Lifetime of the stored generation. Nodes never move back to a lower one, so an expired
+     * generation only means that nodes started afterwards share nothing until the next
+     * {@link InvalidationEvent.Type#ALL}.
+     */
+    private static final Duration GENERATION_TTL = Duration.ofDays(30);
+    /**
+     * JSON never starts with a NUL byte, so entries starting with one are tombstones.
+     */
+    private static final byte TOMBSTONE = 0;
+
+    private final boolean enabled;
+    @Getter
+    private final String nodeId;
+    private final Duration sharedTtl;
+    private final SharedCache sharedCache;
+    private final InvalidationTransport transport;
+    private final Consumer<InvalidationEvent> localListener;
+    private final Counter sharedHits;
+    private final Counter sharedMisses;
+    private final Counter received;
+    private final AtomicLong generation = new AtomicLong();
+
+    @Inject
+    public ClusterCache(ClusterConfig config, SharedCache sharedCache, InvalidationTransport transport,
+                        Event<InvalidationEvent> events, MeterRegistry registry) {
+        this(config, sharedCache, transport, events::fire, registry);
+    }
+
+    public ClusterCache(ClusterConfig config, SharedCache sharedCache, InvalidationTransport transport,
+                        Consumer<InvalidationEvent> localListener, MeterRegistry registry) {
+        this.enabled = config.enabled();
+        this.nodeId = config.nodeId().orElseGet(() -> UUID.randomUUID().toString());
+        this.sharedTtl = config.sharedTtl();
+        this.sharedCache = sharedCache;
+        this.transport = transport;
+        this.localListener = localListener;
+        this.sharedHits = Counter.builder("portal.cluster.shared_cache")
+                .description("Lookups in the shared second-level cache")
+                .tag("result", "hit")
+                .register(registry);
+        this.sharedMisses = Counter.builder("portal.cluster.shared_cache")
+                .description("Lookups in the shared second-level cache")
+                .tag("result", "miss")
+                .register(registry);
+        this.received = Counter.builder("portal.cluster.invalidations.received")
+                .description("Invalidation events received from other nodes")
+                .register(registry);
+        if (enabled) {
+            generation.set(storedGeneration());
+            transport.subscribe(this::receive);
+            log.info("Cluster cache enabled on node {} at generation {}", nodeId, generation.get());
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Returns the value stored in the shared cache under {@code key}, or loads it with
+     * {@code loader} and stores it there unless {@code key} was invalidated meanwhile. Unreadable
+     * shared entries are treated as misses.
+     */
+    public <V> V load(String key, TypeReference<V> type, Supplier<V> loader) {
+        if (!enabled) {
+            return loader.get();
+        }
+        String sharedKey = sharedKey(key);
+        byte[] shared = sharedCache.get(sharedKey);
+        if (shared != null && !isTombstone(shared)) {
+            try {
+                V value = MAPPER.readValue(shared, type);
+                sharedHits.increment();
+                return value;
+            } catch (IOException e) {
+                log.warn("Replacing unreadable shared cache entry {}: {}", sharedKey, e.getMessage());
+            }
+        }
+        sharedMisses.increment();
+        V value = loader.get();
+        try {
+            if (!sharedCache.replace(sharedKey, shared, MAPPER.writeValueAsBytes(value), sharedTtl)) {
+                log.debug("Not storing shared cache entry {}: invalidated while loading", sharedKey);
+            }
+        } catch (IOException | RuntimeException e) {
+            log.warn("Could not store shared cache entry {}: {}", sharedKey, e.getMessage());
+        }
+        return value;
+    }
+
+    /**
+     * Invalidates {@code key} on this node and, when enabled, on all others. For
+     * {@link InvalidationEvent.Type#ALL} the shared cache moves to a new generation and
+     * {@code key} is replaced by it.
+     *
+     * @param sharedKey entry of the shared cache to drop before broadcasting, or {@code null}
+     */
+    public void publish(InvalidationEvent.Type type, String key, String sharedKey) {
+        String eventKey = key;
+        if (enabled) {
+            try {
+                if (type == InvalidationEvent.Type.ALL) {
+                    eventKey = Long.toString(nextGeneration());
+                } else if (sharedKey != null) {
+                    sharedCache.put(sharedKey(sharedKey), tombstone(), sharedTtl);
+                }
+            } catch (RuntimeException e) {
+                log.warn("Could not invalidate shared cache entry {}: {}", sharedKey != null ? sharedKey : type, e.getMessage());
+                if (type == InvalidationEvent.Type.ALL) {
+                    // At least stop this node from reading the previous generation.
+                    eventKey = Long.toString(advance(generation.get() + 1));
+                }
+            }
+        }
+        InvalidationEvent event = new InvalidationEvent(type, eventKey, nodeId);
+        if (enabled) {
+            try {
+                transport.publish(event);
+            } catch (RuntimeException e) {
+                log.warn("Could not broadcast {}: {}", event, e.getMessage());
+            }
+        }
+        localListener.accept(event);
+    }
+
+    /**
+     * @return the generation the keys of the shared cache are currently prefixed with
+     */
+    long generation() {
+        return generation.get();
+    }
+
+    private void receive(InvalidationEvent event) {
+        if (nodeId.equals(event.origin())) {
+            return;
+        }
+        received.increment();
+        log.debug("Received {}", event);
+        if (event.type() == InvalidationEvent.Type.ALL) {
+            // Also read the stored generation, in case the event came from a node that could not store it.
+            advance(Math.max(parseGeneration(event.key()), storedGeneration()));
+        }
+        try {
+            localListener.accept(event);
+        } catch (RuntimeException e) {
+            log.warn("Could not apply {}: {}", event, e.getMessage());
+        }
+    }
+
+    private String sharedKey(String key) {
+        return generation.get() + ":" + key;
+    }
+
+    /**
+     * Stores and returns a generation above both the stored one and the one of this node.
+     */
+    private long nextGeneration() {
+        while (true) {
+            byte[] stored = sharedCache.get(GENERATION_KEY);
+            long next = Math.max(parseGeneration(stored), generation.get()) + 1;
+            if (sharedCache.replace(GENERATION_KEY, stored, Long.toString(next).getBytes(StandardCharsets.US_ASCII), GENERATION_TTL)) {
+                return advance(next);
+            }
+        }
+    }
+
+    private long advance(long next) {
+        return generation.accumulateAndGet(next, Math::max);
+    }
+
+    private long storedGeneration() {
+        try {
+            return parseGeneration(sharedCache.get(GENERATION_KEY));
+        } catch (RuntimeException e) {
+            log.warn("Could not read the shared cache generation: {}", e.getMessage());
+            return 0L;
+        }
+    }
+
+    private static long parseGeneration(byte[] value) {
+        return value != null ? parseGeneration(new String(value, StandardCharsets.US_ASCII)) : 0L;
+    }
+
+    private static long parseGeneration(String value) {
+        try {
+            return Long.parseLong(value);
+        } catch (NumberFormatException e) {
+            return 0L;
+        }
+    }
+
+    /**
+     * @return a tombstone no earlier load can have read, so its {@link SharedCache#replace} fails
+     */
+    private static byte[] tombstone() {
+        byte[] tombstone = new byte[17];
+        ThreadLocalRandom.current().nextBytes(tombstone);
+        tombstone[0] = TOMBSTONE;
+        return tombstone;
+    }
+
+    private static boolean isTombstone(byte[] value) {
+        return value.length > 0 && value[0] == TOMBSTONE;
+    }
+}
@@ -0,0 +1,28 @@
+package me.omniops.cluster;
+
+import io.quarkus.arc.DefaultBean;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.enterprise.context.Dependent;
+import jakarta.enterprise.inject.Produces;
+
+/**
+ * In-process defaults for the pluggable parts of {@link ClusterCache}. Any other bean of the same
+ * type takes precedence.
+ */
+@Dependent
+public class ClusterCacheProducers {
+
+    @Produces
+    @DefaultBean
+    @ApplicationScoped
+    InvalidationTransport invalidationTransport() {
+        return new LoopbackTransport();
+    }
+
+    @Produces
+    @DefaultBean
+    @ApplicationScoped
+    SharedCache sharedCache(ClusterConfig config) {
+        return new InMemorySharedCache(config.inMemoryMaximumSize());
+    }
+}
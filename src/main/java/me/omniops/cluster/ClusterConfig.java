@@ -0,0 +1,40 @@
+package me.omniops.cluster;
+
+import io.quarkus.runtime.annotations.StaticInitSafe;
+import io.smallrye.config.ConfigMapping;
+import io.smallrye.config.WithDefault;
+
+import java.time.Duration;
+import java.util.Optional;
+
+/**
+ * Settings of {@link ClusterCache}.
+ */
+@StaticInitSafe
+@ConfigMapping(prefix = "portal.cluster")
+public interface ClusterConfig {
+
+    /**
+     * Whether lookups go through the {@link SharedCache} and invalidations are broadcast. When
+     * disabled, invalidations only reach the caches of this node.
+     */
+    @WithDefault("false")
+    boolean enabled();
+
+    /**
+     * Identifies this node in broadcast invalidations; a random ID is used when unset.
+     */
+    Optional<String> nodeId();
+
+    /**
+     * Lifetime of entries written to the shared cache.
+     */
+    @WithDefault("5M")
+    Duration sharedTtl();
+
+    /**
+     * Size bound of the in-memory {@link SharedCache} used when no other is provided.
+     */
+    @WithDefault("10000")
+    long inMemoryMaximumSize();
+}
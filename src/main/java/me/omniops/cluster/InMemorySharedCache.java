@@ -0,0 +1,71 @@
+package me.omniops.cluster;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+
+import java.time.Duration;
+import java.util.Arrays;
+
+/**
+ * {@link SharedCache} held in this JVM. It is the default, and lets tests share one second-level
+ * cache between several {@link ClusterCache}s.
+ */
+public class InMemorySharedCache implements SharedCache {
+
+    private record Entry(byte[] value, long ttlNanos) {
+    }
+
+    private final Cache<String, Entry> entries;
+
+    public InMemorySharedCache(long maximumSize) {
+        this.entries = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfter(new Expiry<String, Entry>() {
+                    @Override
+                    public long expireAfterCreate(String key, Entry entry, long currentTime) {
+                        return entry.ttlNanos();
+                    }
+
+                    @Override
+                    public long expireAfterUpdate(String key, Entry entry, long currentTime, long currentDuration) {
+                        return entry.ttlNanos();
+                    }
+
+                    @Override
+                    public long expireAfterRead(String key, Entry entry, long currentTime, long currentDuration) {
+                        return currentDuration;
+                    }
+                })
+                .build();
+    }
+
+    @Override
+    public byte[] get(String key) {
+        Entry entry = entries.getIfPresent(key);
+        return entry != null ? entry.value() : null;
+    }
+
+    @Override
+    public void put(String key, byte[] value, Duration ttl) {
+        entries.put(key, new Entry(value, ttl.toNanos()));
+    }
+
+    @Override
+    public boolean replace(String key, byte[] expected, byte[] value, Duration ttl) {
+        boolean[] replaced = new boolean[1];
+        entries.asMap().compute(key, (ignored, current) -> {
+            if (!Arrays.equals(current != null ? current.value() : null, expected)) {
+                return current;
+            }
+            replaced[0] = true;
+            return new Entry(value, ttl.toNanos());
+        });
+        return replaced[0];
+    }
+
+    @Override
+    public void invalidate(String key) {
+        entries.invalidate(key);
+    }
+}
@@ -0,0 +1,50 @@
+package me.omniops.cluster;
+
+/**
+ * Tells every node to drop cached state for a user, a role or everything. Events are fired as
+ * CDI events on the node that publishes them and on every node that receives them, so caches
+ * observe {@code InvalidationEvent} instead of depending on the transport.
+ *
+ * @param type   what changed
+ * @param key    user ID for {@link Type#USER} and {@link Type#LOGOUT}, role name for
+ *               {@link Type#ROLE}, the new shared cache generation for {@link Type#ALL}
+ * @param origin node ID of the publisher
+ */
+public record InvalidationEvent(Type type, String key, String origin) {
+
+    public enum Type {
+        /**
+         * The user's attributes changed.
+         */
+        USER,
+        /**
+         * The members of a role changed.
+         */
+        ROLE,
+        /**
+         * The user's sessions were ended.
+         */
+        LOGOUT,
+        ALL
+    }
+
+    /**
+     * @return the event as a single line, for transports that carry text
+     */
+    public String toWire() {
+        return type.name() + '|' + origin + '|' + key;
+    }
+
+    /**
+     * @throws IllegalArgumentException if {@code wire} was not produced by {@link #toWire()}
+     */
+    public static InvalidationEvent fromWire(String wire) {
+        int first = wire.indexOf('|');
+        int second = first < 0 ? -1 : wire.indexOf('|', first + 1);
+        if (second < 0) {
+            throw new IllegalArgumentException("Not an invalidation event: " + wire);
+        }
+        return new InvalidationEvent(Type.valueOf(wire.substring(0, first)), wire.substring(second + 1),
+                wire.substring(first + 1, second));
+    }
+}
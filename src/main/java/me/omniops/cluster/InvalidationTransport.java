@@ -0,0 +1,23 @@
+package me.omniops.cluster;
+
+import java.util.function.Consumer;
+
+/**
+ * Carries {@link InvalidationEvent}s between nodes, for example over Redis pub/sub or a message
+ * broker. Delivery is best effort; the {@link ClusterConfig#sharedTtl()} bounds how long a missed
+ * event can leave stale data behind. Provide a bean of this type to replace the
+ * {@link LoopbackTransport}.
+ */
+public interface InvalidationTransport extends AutoCloseable {
+
+    /**
+     * Sends {@code event} to all subscribed nodes, possibly including the publisher itself.
+     */
+    void publish(InvalidationEvent event);
+
+    void subscribe(Consumer<InvalidationEvent> listener);
+
+    @Override
+    default void close() {
+    }
+}
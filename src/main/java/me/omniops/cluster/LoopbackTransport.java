@@ -0,0 +1,32 @@
+package me.omniops.cluster;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+
+/**
+ * Delivers events synchronously to every subscriber in this JVM. It is the default transport,
+ * which makes a single node behave as before, and lets tests run several {@link ClusterCache}s
+ * against one instance.
+ */
+public class LoopbackTransport implements InvalidationTransport {
+
+    private final List<Consumer<InvalidationEvent>> listeners = new CopyOnWriteArrayList<>();
+
+    @Override
+    public void publish(InvalidationEvent event) {
+        for (Consumer<InvalidationEvent> listener : listeners) {
+            listener.accept(event);
+        }
+    }
+
+    @Override
+    public void subscribe(Consumer<InvalidationEvent> listener) {
+        listeners.add(listener);
+    }
+
+    @Override
+    public void close() {
+        listeners.clear();
+    }
+}
@@ -0,0 +1,29 @@
+package me.omniops.cluster;
+
+import java.time.Duration;
+
+/**
+ * Second-level cache shared by all nodes, such as Redis or Infinispan. Values are opaque bytes;
+ * {@link ClusterCache} handles serialization. Provide a bean of this type to replace the
+ * {@link InMemorySharedCache}.
+ */
+public interface SharedCache {
+
+    /**
+     * @return the value stored under {@code key}, or {@code null}
+     */
+    byte[] get(String key);
+
+    void put(String key, byte[] value, Duration ttl);
+
+    /**
+     * Stores {@code value} only if the entry under {@code key} still holds {@code expected},
+     * compared by content, or is absent when {@code expected} is {@code null}. With Redis this is
+     * a {@code WATCH}/{@code MULTI} transaction or a small script.
+     *
+     * @return whether the value was stored
+     */
+    boolean replace(String key, byte[] expected, byte[] value, Duration ttl);
+
+    void invalidate(String key);
+}
@@ -0,0 +1,110 @@
+package me.omniops.health;
+
+import io.quarkus.runtime.StartupEvent;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.enterprise.event.Observes;
+import jakarta.enterprise.inject.Instance;
+import jakarta.inject.Inject;
+import lombok.extern.slf4j.Slf4j;
+import me.omniops.security.JwtVerifier;
+import me.omniops.security.ValidationWarmup;
+import me.omniops.users.KeycloakConnection;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Optional warm-up at startup: fetches the JWKS, opens the Keycloak admin connection and runs
+ * the token validation path until it is compiled, so the first requests after a rollout do not
+ * pay for it. It runs on its own thread; {@link WarmupReadinessCheck} reports down until it has
+ * finished. A failing step is logged and reported, but does not keep the service unready.
+ */
+@Slf4j
+@ApplicationScoped
+public class StartupWarmup {
+
+    public enum Status {
+        DISABLED,
+        RUNNING,
+        DONE
+    }
+
+    private final WarmupConfig config;
+    private final Instance<JwtVerifier> jwtVerifier;
+    private final Instance<KeycloakConnection> keycloakConnection;
+    private final Instance<ValidationWarmup> validationWarmup;
+    private final Map<String, String> steps = Collections.synchronizedMap(new LinkedHashMap<>());
+    private volatile Status status;
+
+    @Inject
+    public StartupWarmup(WarmupConfig config, Instance<JwtVerifier> jwtVerifier, Instance<KeycloakConnection> keycloakConnection,
+                         Instance<ValidationWarmup> validationWarmup) {
+        this.config = config;
+        this.jwtVerifier = jwtVerifier;
+        this.keycloakConnection = keycloakConnection;
+        this.validationWarmup = validationWarmup;
+        // Unready from the first health probe on, not only once the startup event arrives.
+        this.status = config.enabled() ? Status.RUNNING : Status.DISABLED;
+    }
+
+    void onStart(@Observes StartupEvent event) {
+        if (!config.enabled()) {
+            return;
+        }
+        Thread thread = new Thread(this::run, "security-warmup");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    public Status getStatus() {
+        return status;
+    }
+
+    /**
+     * @return the outcome of each step run so far
+     */
+    public Map<String, String> getSteps() {
+        synchronized (steps) {
+            return new LinkedHashMap<>(steps);
+        }
+    }
+
+    void run() {
+        long start = System.nanoTime();
+        try {
+            if (config.jwks()) {
+                step("jwks", () -> jwtVerifier.get().refresh().get(config.timeout().toMillis(), TimeUnit.MILLISECONDS));
+            }
+            if (config.keycloak()) {
+                step("keycloak", () -> keycloakConnection.get().getConnection().tokenManager().getAccessTokenString());
+            }
+            if (config.validationIterations() > 0) {
+                step("validation", () -> validationWarmup.get().run(config.validationIterations()));
+            }
+        } finally {
+            status = Status.DONE;
+            log.info("Warm-up finished in {} ms: {}", TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start), getSteps());
+        }
+    }
+
+    private void step(String name, WarmupStep step) {
+        long start = System.nanoTime();
+        try {
+            step.run();
+            steps.put(name, "ok in " + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) + " ms");
+        } catch (Exception e) {
+            if (e instanceof InterruptedException) {
+                Thread.currentThread().interrupt();
+            }
+            log.warn("Warm-up step {} failed: {}", name, e.toString());
+            steps.put(name, "failed: " + e);
+        }
+    }
+
+    @FunctionalInterface
+    private interface WarmupStep {
+        void run() throws Exception;
+    }
+}
@@ -0,0 +1,32 @@
+package me.omniops.health;
+
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+import me.omniops.users.UserIndexSync;
+import org.eclipse.microprofile.health.HealthCheck;
+import org.eclipse.microprofile.health.HealthCheckResponse;
+import org.eclipse.microprofile.health.Readiness;
+
+/**
+ * Reports down on {@code /q/health/ready} while the local user index is enabled but not loaded.
+ */
+@Readiness
+@ApplicationScoped
+public class UserIndexReadinessCheck implements HealthCheck {
+
+    private final UserIndexSync userIndexSync;
+
+    @Inject
+    public UserIndexReadinessCheck(UserIndexSync userIndexSync) {
+        this.userIndexSync = userIndexSync;
+    }
+
+    @Override
+    public HealthCheckResponse call() {
+        return HealthCheckResponse.named("user-index")
+                .status(userIndexSync.isReady())
+                .withData("enabled", userIndexSync.isEnabled())
+                .withData("users", userIndexSync.size())
+                .build();
+    }
+}
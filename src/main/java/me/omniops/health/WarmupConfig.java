@@ -0,0 +1,45 @@
+package me.omniops.health;
+
+import io.quarkus.runtime.annotations.StaticInitSafe;
+import io.smallrye.config.ConfigMapping;
+import io.smallrye.config.WithDefault;
+
+import java.time.Duration;
+
+/**
+ * Settings of {@link StartupWarmup}.
+ */
+@StaticInitSafe
+@ConfigMapping(prefix = "portal.warmup")
+public interface WarmupConfig {
+
+    /**
+     * Whether to warm up at startup. Readiness reports down until the warm-up has finished.
+     */
+    @WithDefault("false")
+    boolean enabled();
+
+    /**
+     * Whether to fetch the JWKS used by {@link me.omniops.security.JwtVerifier}.
+     */
+    @WithDefault("true")
+    boolean jwks();
+
+    /**
+     * Whether to open the Keycloak admin connection and obtain its token.
+     */
+    @WithDefault("true")
+    boolean keycloak();
+
+    /**
+     * Runs of the token validation path on a synthetic token; {@code 0} skips it.
+     */
+    @WithDefault("10000")
+    int validationIterations();
+
+    /**
+     * Time allowed for each remote step.
+     */
+    @WithDefault("30S")
+    Duration timeout();
+}
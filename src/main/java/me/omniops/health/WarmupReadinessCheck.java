@@ -0,0 +1,33 @@
+package me.omniops.health;
+
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+import org.eclipse.microprofile.health.HealthCheck;
+import org.eclipse.microprofile.health.HealthCheckResponse;
+import org.eclipse.microprofile.health.HealthCheckResponseBuilder;
+import org.eclipse.microprofile.health.Readiness;
+
+/**
+ * Reports down on {@code /q/health/ready} while {@link StartupWarmup} is running.
+ */
+@Readiness
+@ApplicationScoped
+public class WarmupReadinessCheck implements HealthCheck {
+
+    private final StartupWarmup warmup;
+
+    @Inject
+    public WarmupReadinessCheck(StartupWarmup warmup) {
+        this.warmup = warmup;
+    }
+
+    @Override
+    public HealthCheckResponse call() {
+        StartupWarmup.Status status = warmup.getStatus();
+        HealthCheckResponseBuilder response = HealthCheckResponse.named("security-warmup")
+                .status(status != StartupWarmup.Status.RUNNING)
+                .withData("status", status.name());
+        warmup.getSteps().forEach(response::withData);
+        return response.build();
+    }
+}
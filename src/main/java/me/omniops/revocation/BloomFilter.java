@@ -0,0 +1,79 @@
+package me.omniops.revocation;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Fixed-size Bloom filter over 64-bit hashes, safe for concurrent inserts and lookups without
+ * locks. The {@code k} bit positions are derived from one hash by double hashing, so a lookup is
+ * {@code k} array reads and never allocates. Entries cannot be removed; {@link RevocationList}
+ * replaces the whole filter instead.
+ */
+final class BloomFilter {
+
+    private final AtomicLongArray words;
+    private final long bitCount;
+    private final int hashCount;
+    private final int capacity;
+    private final LongAdder setBits = new LongAdder();
+
+    /**
+     * Sizes the filter for {@code capacity} entries at {@code falsePositiveRate}.
+     */
+    BloomFilter(int capacity, double falsePositiveRate) {
+        int entries = Math.max(1, capacity);
+        double log2 = Math.log(2);
+        long bits = (long) Math.ceil(-entries * Math.log(falsePositiveRate) / (log2 * log2));
+        int wordCount = (int) Math.min(Integer.MAX_VALUE - 8, Math.max(1, (bits + 63) >>> 6));
+        this.words = new AtomicLongArray(wordCount);
+        this.bitCount = (long) wordCount << 6;
+        this.hashCount = Math.max(1, (int) Math.round((double) bitCount / entries * log2));
+        this.capacity = entries;
+    }
+
+    void put(long hash) {
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32);
+        for (int i = 0; i < hashCount; i++) {
+            long bit = Math.floorMod(h1 + (long) i * h2, bitCount);
+            int word = (int) (bit >>> 6);
+            long mask = 1L << bit;
+            long current = words.get(word);
+            while ((current & mask) == 0) {
+                if (words.compareAndSet(word, current, current | mask)) {
+                    setBits.increment();
+                    break;
+                }
+                current = words.get(word);
+            }
+        }
+    }
+
+    boolean mightContain(long hash) {
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32);
+        for (int i = 0; i < hashCount; i++) {
+            long bit = Math.floorMod(h1 + (long) i * h2, bitCount);
+            if ((words.get((int) (bit >>> 6)) & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    int capacity() {
+        return capacity;
+    }
+
+    long sizeInBytes() {
+        return (long) words.length() * Long.BYTES;
+    }
+
+    /**
+     * @return the probability that a lookup of an absent entry reports a hit, estimated from the
+     * share of bits set
+     */
+    double falsePositiveRate() {
+        return Math.pow((double) setBits.sum() / bitCount, hashCount);
+    }
+}
@@ -0,0 +1,36 @@
+package me.omniops.revocation;
+
+import java.util.Objects;
+
+/**
+ * Revokes one token ({@code jti}), one session ({@code sid}) or all tokens of a subject
+ * ({@code sub}). Session and subject revocations apply to tokens issued at or before
+ * {@code revokedAt}, so the user's next login is not affected.
+ *
+ * @param revokedAt epoch seconds
+ */
+public record Revocation(Type type, String id, long revokedAt) {
+
+    public enum Type {
+        TOKEN,
+        SESSION,
+        SUBJECT
+    }
+
+    public Revocation {
+        Objects.requireNonNull(type, "type");
+        Objects.requireNonNull(id, "id");
+    }
+
+    public static Revocation token(String tokenId, long revokedAt) {
+        return new Revocation(Type.TOKEN, tokenId, revokedAt);
+    }
+
+    public static Revocation session(String sessionId, long revokedAt) {
+        return new Revocation(Type.SESSION, sessionId, revokedAt);
+    }
+
+    public static Revocation subject(String subject, long revokedAt) {
+        return new Revocation(Type.SUBJECT, subject, revokedAt);
+    }
+}
@@ -0,0 +1,62 @@
+package me.omniops.revocation;
+
+import io.quarkus.runtime.annotations.StaticInitSafe;
+import io.smallrye.config.ConfigMapping;
+import io.smallrye.config.WithDefault;
+
+import java.time.Duration;
+
+/**
+ * Settings of {@link RevocationList}.
+ */
+@StaticInitSafe
+@ConfigMapping(prefix = "portal.revocation")
+public interface RevocationConfig {
+
+    /**
+     * Whether validated tokens are checked against the revocation list.
+     */
+    @WithDefault("false")
+    boolean enabled();
+
+    /**
+     * Entries the filter is sized for; it is rebuilt larger when more are held.
+     */
+    @WithDefault("100000")
+    int expectedEntries();
+
+    /**
+     * Target share of lookups of non-revoked tokens that have to be confirmed in the exact set.
+     */
+    @WithDefault("0.001")
+    double falsePositiveRate();
+
+    /**
+     * How long a revocation is kept; must be at least the lifetime of access tokens.
+     */
+    @WithDefault("1H")
+    Duration retention();
+
+    /**
+     * How often expired entries are purged and the filter is rebuilt without them.
+     */
+    @WithDefault("1M")
+    Duration purgeInterval();
+
+    KeycloakEvents keycloakEvents();
+
+    /**
+     * Polling of the realm's {@code LOGOUT} events and user admin events. Requires events and
+     * admin events, with representations, to be saved in the realm.
+     */
+    interface KeycloakEvents {
+        @WithDefault("false")
+        boolean enabled();
+
+        @WithDefault("10S")
+        Duration pollInterval();
+
+        @WithDefault("100")
+        int pageSize();
+    }
+}
@@ -0,0 +1,20 @@
+package me.omniops.revocation;
+
+import java.util.function.Consumer;
+
+/**
+ * Source of {@link Revocation}s, such as polled Keycloak events or a message broker. Every bean of
+ * this type is started by {@link RevocationList} at startup; a feed that is not configured simply
+ * does nothing in {@link #start}.
+ */
+public interface RevocationFeed extends AutoCloseable {
+
+    /**
+     * Begins delivering revocations to {@code sink}, which may be called from any thread.
+     */
+    void start(Consumer<Revocation> sink);
+
+    @Override
+    default void close() {
+    }
+}
@@ -0,0 +1,268 @@
+package me.omniops.revocation;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.quarkus.runtime.StartupEvent;
+import jakarta.annotation.PreDestroy;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.enterprise.event.Observes;
+import jakarta.enterprise.inject.Instance;
+import jakarta.inject.Inject;
+import lombok.extern.slf4j.Slf4j;
+import me.omniops.cluster.InvalidationEvent;
+
+import java.time.Clock;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Local set of revoked tokens, sessions and subjects, checked for every validated token. Entries
+ * are kept in exact maps and mirrored into a {@link BloomFilter}; a lookup hashes the token's
+ * {@code jti}, {@code sid} and {@code sub} and only consults the maps when the filter reports a
+ * hit, so a token that is not revoked costs a few array reads and no allocation.
+ * <p>
+ * Revocations arrive from the {@link RevocationFeed} beans, from {@link InvalidationEvent#type()}
+ * {@code LOGOUT} events and from {@link #revoke}. Entries are dropped after
+ * {@code portal.revocation.retention}, when every token they could match has expired, and the
+ * filter is then rebuilt without them.
+ */
+@Slf4j
+@ApplicationScoped
+public class RevocationList {
+
+    private static final Revocation.Type[] TYPES = Revocation.Type.values();
+
+    private final boolean enabled;
+    private final long retentionSeconds;
+    private final double falsePositiveRate;
+    private final int expectedEntries;
+    private final Clock clock;
+    private final Iterable<? extends RevocationFeed> feeds;
+    /**
+     * Per {@link Revocation.Type}: ID to {@code revokedAt} in epoch seconds.
+     */
+    private final List<Map<String, Long>> entries = new ArrayList<>(TYPES.length);
+    private final AtomicInteger size = new AtomicInteger();
+    private final AtomicBoolean rebuildScheduled = new AtomicBoolean();
+    private volatile BloomFilter filter;
+    /**
+     * Filter being rebuilt; revocations added meanwhile go into both.
+     */
+    private volatile BloomFilter pending;
+    private final ScheduledExecutorService maintenance;
+    private final Counter revokedTokens;
+    private final Counter falsePositives;
+
+    @Inject
+    public RevocationList(RevocationConfig config, Instance<RevocationFeed> feeds, MeterRegistry registry) {
+        this(config, feeds, registry, Clock.systemUTC());
+    }
+
+    public RevocationList(RevocationConfig config, Iterable<? extends RevocationFeed> feeds, MeterRegistry registry, Clock clock) {
+        this.enabled = config.enabled();
+        this.retentionSeconds = config.retention().toSeconds();
+        this.falsePositiveRate = config.falsePositiveRate();
+        this.expectedEntries = config.expectedEntries();
+        this.clock = clock;
+        this.feeds = feeds;
+        for (int i = 0; i < TYPES.length; i++) {
+            entries.add(new ConcurrentHashMap<>());
+        }
+        this.revokedTokens = Counter.builder("portal.revocation.lookups")
+                .description("Filter hits by whether the exact set confirmed the revocation")
+                .tag("result", "revoked")
+                .register(registry);
+        this.falsePositives = Counter.builder("portal.revocation.lookups")
+                .description("Filter hits by whether the exact set confirmed the revocation")
+                .tag("result", "false_positive")
+                .register(registry);
+        if (!enabled) {
+            this.maintenance = null;
+            return;
+        }
+        this.filter = new BloomFilter(expectedEntries, falsePositiveRate);
+        Gauge.builder("portal.revocation.entries", size, AtomicInteger::get)
+                .description("Revoked tokens, sessions and subjects held")
+                .register(registry);
+        Gauge.builder("portal.revocation.filter.bytes", this, list -> list.filter.sizeInBytes())
+                .description("Memory used by the revocation filter")
+                .baseUnit("bytes")
+                .register(registry);
+        Gauge.builder("portal.revocation.filter.false_positive_rate", this, list -> list.filter.falsePositiveRate())
+                .description("Estimated false-positive rate of the revocation filter")
+                .register(registry);
+        this.maintenance = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "revocation-maintenance");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long purgeMillis = config.purgeInterval().toMillis();
+        maintenance.scheduleWithFixedDelay(this::purge, purgeMillis, purgeMillis, TimeUnit.MILLISECONDS);
+    }
+
+    void start(@Observes StartupEvent event) {
+        if (!enabled) {
+            return;
+        }
+        for (RevocationFeed feed : feeds) {
+            feed.start(this::revoke);
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Adds {@code revocation}; a later {@code revokedAt} for the same ID replaces an earlier one.
+     */
+    public void revoke(Revocation revocation) {
+        if (!enabled || revocation.revokedAt() + retentionSeconds <= now()) {
+            return;
+        }
+        boolean[] added = new boolean[1];
+        entries.get(revocation.type().ordinal()).compute(revocation.id(), (id, revokedAt) -> {
+            added[0] = revokedAt == null;
+            return revokedAt == null ? revocation.revokedAt() : Math.max(revokedAt, revocation.revokedAt());
+        });
+        if (!added[0]) {
+            return;
+        }
+        log.debug("Revoked {} {} at {}", revocation.type(), revocation.id(), revocation.revokedAt());
+        // The entry is in the map before it is added to any filter. A rebuild that started
+        // before it was added sees it in the map; one that started later has published pending,
+        // and one that has finished since has published its filter.
+        long hash = hash(revocation.type(), revocation.id());
+        BloomFilter target = filter;
+        target.put(hash);
+        BloomFilter rebuilding = pending;
+        if (rebuilding != null) {
+            rebuilding.put(hash);
+        }
+        BloomFilter current = filter;
+        if (current != target) {
+            current.put(hash);
+        }
+        if (size.incrementAndGet() > filter.capacity() && rebuildScheduled.compareAndSet(false, true)) {
+            maintenance.execute(this::purge);
+        }
+    }
+
+    /**
+     * @param issuedAt {@code iat} of the token in epoch seconds; {@code 0} if unknown, in which case
+     *                 any session or subject revocation applies
+     * @return whether the token was revoked by ID, or by a session or subject revocation at or after
+     * it was issued
+     */
+    public boolean isRevoked(String subject, String sessionId, String tokenId, long issuedAt) {
+        if (!enabled || size.get() == 0) {
+            return false;
+        }
+        BloomFilter current = filter;
+        return matches(current, Revocation.Type.TOKEN, tokenId, Long.MIN_VALUE)
+                || matches(current, Revocation.Type.SESSION, sessionId, issuedAt)
+                || matches(current, Revocation.Type.SUBJECT, subject, issuedAt);
+    }
+
+    public int size() {
+        return size.get();
+    }
+
+    void onInvalidation(@Observes InvalidationEvent event) {
+        if (event.type() == InvalidationEvent.Type.LOGOUT) {
+            revoke(Revocation.subject(event.key(), now()));
+        }
+    }
+
+    /**
+     * Drops expired entries and replaces the filter with one holding only the remaining entries,
+     * sized for twice their number when they have outgrown {@code expected-entries}. Rebuilds
+     * must not overlap, since each publishes its own pending filter.
+     */
+    synchronized void purge() {
+        rebuildScheduled.set(false);
+        long oldest = now() - retentionSeconds;
+        int removed = 0;
+        for (Map<String, Long> typeEntries : entries) {
+            for (Map.Entry<String, Long> entry : typeEntries.entrySet()) {
+                if (entry.getValue() <= oldest && typeEntries.remove(entry.getKey(), entry.getValue())) {
+                    size.decrementAndGet();
+                    removed++;
+                }
+            }
+        }
+        int remaining = size.get();
+        if (removed == 0 && remaining <= filter.capacity()) {
+            return;
+        }
+        BloomFilter rebuilt = new BloomFilter(Math.max(expectedEntries, remaining * 2), falsePositiveRate);
+        pending = rebuilt;
+        for (Revocation.Type type : TYPES) {
+            for (String id : entries.get(type.ordinal()).keySet()) {
+                rebuilt.put(hash(type, id));
+            }
+        }
+        filter = rebuilt;
+        pending = null;
+        log.debug("Rebuilt revocation filter: {} entries, {} expired", remaining, removed);
+    }
+
+    @PreDestroy
+    void close() {
+        if (maintenance != null) {
+            maintenance.shutdownNow();
+        }
+        if (enabled) {
+            for (RevocationFeed feed : feeds) {
+                feed.close();
+            }
+        }
+    }
+
+    private boolean matches(BloomFilter current, Revocation.Type type, String id, long issuedAt) {
+        if (id == null || !current.mightContain(hash(type, id))) {
+            return false;
+        }
+        Long revokedAt = entries.get(type.ordinal()).get(id);
+        if (revokedAt == null) {
+            falsePositives.increment();
+            return false;
+        }
+        if (issuedAt > revokedAt) {
+            // Issued after the revocation, for example by a new login.
+            return false;
+        }
+        revokedTokens.increment();
+        return true;
+    }
+
+    private long now() {
+        return clock.millis() / 1000;
+    }
+
+    /**
+     * 64-bit FNV-1a of the ID's characters, seeded by the type and finished with the MurmurHash3
+     * mixer so both halves are usable for double hashing.
+     */
+    static long hash(Revocation.Type type, String id) {
+        long hash = 0xcbf29ce484222325L ^ (type.ordinal() + 1);
+        for (int i = 0; i < id.length(); i++) {
+            hash ^= id.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+}
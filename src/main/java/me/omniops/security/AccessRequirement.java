@@ -0,0 +1,37 @@
+package me.omniops.security;
+
+import lombok.Getter;
+
+/**
+ * A role or module requirement compiled to a bit mask of a {@link ClaimIndex}, so checking it
+ * against the mask granted by a token is a single bitwise operation.
+ */
+@Getter
+public final class AccessRequirement {
+
+    private final long mask;
+    private final MatchMode mode;
+
+    public AccessRequirement(long mask, MatchMode mode) {
+        this.mask = mask;
+        this.mode = mode;
+    }
+
+    public static AccessRequirement anyOf(ClaimIndex index, Enum<?>... values) {
+        return new AccessRequirement(index.mask(values), MatchMode.ANY);
+    }
+
+    public boolean matches(long granted) {
+        return switch (mode) {
+            // An empty any-of requirement never matches, as before the masks were introduced.
+            case ANY -> (granted & mask) != 0L;
+            case ALL -> (granted & mask) == mask;
+            case NONE -> (granted & mask) == 0L;
+        };
+    }
+
+    @Override
+    public String toString() {
+        return mode + "(0x" + Long.toHexString(mask) + ")";
+    }
+}
@@ -12,4 +12,6 @@ public @interface Authorization {
     Modules[] modules() default {};
     boolean isPublic() default false;
     Services[] services() default {};
-}
\ No newline at end of file
+    MatchMode roleMatch() default MatchMode.ANY;
+    MatchMode moduleMatch() default MatchMode.ANY;
+}
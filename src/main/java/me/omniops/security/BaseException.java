@@ -7,4 +7,12 @@ public class BaseException extends RuntimeException {
         super(msg);
     }
 
+    /**
+     * For exceptions that describe expected outcomes and may be rethrown repeatedly: no stack
+     * trace is captured and no suppressed exceptions are recorded.
+     */
+    protected BaseException(String msg, boolean writableStackTrace) {
+        super(msg, null, false, writableStackTrace);
+    }
+
 }
@@ -0,0 +1,196 @@
+package me.omniops.security;
+
+import io.vertx.core.json.JsonArray;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Case-insensitive mapping from role or module names to bit positions, used to turn token claims
+ * and endpoint requirements into {@code long} masks. Lookups hash the characters in place, so
+ * matching a claim never lower-cases or copies it.
+ */
+public final class ClaimIndex {
+
+    public static final int MAX_NAMES = Long.SIZE;
+
+    public static final ClaimIndex ROLES = of(Role.class);
+    public static final ClaimIndex MODULES = of(Modules.class);
+    public static final ClaimIndex SERVICES = of(Services.class);
+
+    private final String[] names;
+    private final int[] slots;
+    private final int slotMask;
+    private final LongAdder unknownNames = new LongAdder();
+
+    private ClaimIndex(List<String> names) {
+        if (names.size() > MAX_NAMES) {
+            throw new IllegalArgumentException("At most " + MAX_NAMES + " names are supported, got " + names.size());
+        }
+        this.names = names.toArray(new String[0]);
+        int capacity = Integer.highestOneBit(Math.max(4, names.size() * 4 - 1)) << 1;
+        this.slots = new int[capacity];
+        this.slotMask = capacity - 1;
+        for (int i = 0; i < this.names.length; i++) {
+            int slot = hash(this.names[i]) & slotMask;
+            while (slots[slot] != 0) {
+                if (this.names[slots[slot] - 1].equalsIgnoreCase(this.names[i])) {
+                    throw new IllegalArgumentException("Duplicate name: " + this.names[i]);
+                }
+                slot = (slot + 1) & slotMask;
+            }
+            slots[slot] = i + 1;
+        }
+    }
+
+    public static <E extends Enum<E>> ClaimIndex of(Class<E> type) {
+        List<String> names = new ArrayList<>();
+        for (E constant : type.getEnumConstants()) {
+            names.add(constant.name());
+        }
+        return new ClaimIndex(names);
+    }
+
+    public static ClaimIndex of(Collection<String> names) {
+        return new ClaimIndex(new ArrayList<>(names));
+    }
+
+    /**
+     * @return the bit position of {@code name}, or {@code -1} when it is not known to this index.
+     */
+    public int indexOf(CharSequence name) {
+        if (name == null) {
+            return -1;
+        }
+        int slot = hash(name) & slotMask;
+        int entry;
+        while ((entry = slots[slot]) != 0) {
+            if (equalsIgnoreCase(names[entry - 1], name)) {
+                return entry - 1;
+            }
+            slot = (slot + 1) & slotMask;
+        }
+        return -1;
+    }
+
+    public String nameOf(int index) {
+        return names[index];
+    }
+
+    /**
+     * @return a new index with this index's names at unchanged positions, followed by those of
+     * {@code extra} it does not know yet, or this index itself when there are none.
+     */
+    public ClaimIndex extend(Collection<String> extra) {
+        List<String> extended = new ArrayList<>(List.of(names));
+        for (String name : extra) {
+            if (indexOf(name) < 0 && extended.stream().noneMatch(name::equalsIgnoreCase)) {
+                extended.add(name);
+            }
+        }
+        return extended.size() == names.length ? this : new ClaimIndex(extended);
+    }
+
+    /**
+     * @return whether both indexes map the same names, ignoring case, to the same positions.
+     */
+    public boolean sameNames(ClaimIndex other) {
+        return Arrays.equals(names, other.names, String.CASE_INSENSITIVE_ORDER);
+    }
+
+    public int size() {
+        return names.length;
+    }
+
+    public long mask(Enum<?>... values) {
+        long mask = 0L;
+        for (Enum<?> value : values) {
+            mask |= bit(value.name());
+        }
+        return mask;
+    }
+
+    public long mask(Collection<? extends Enum<?>> values) {
+        long mask = 0L;
+        for (Enum<?> value : values) {
+            mask |= bit(value.name());
+        }
+        return mask;
+    }
+
+    /**
+     * Builds the mask of configured names.
+     *
+     * @throws IllegalArgumentException if a name is not known to this index
+     */
+    public long maskOfNames(Collection<String> values) {
+        long mask = 0L;
+        for (String value : values) {
+            mask |= bit(value);
+        }
+        return mask;
+    }
+
+    /**
+     * Builds the mask of a token claim array. Values this index does not know are counted and dropped.
+     */
+    public long mask(JsonArray claim) {
+        if (claim == null) {
+            return 0L;
+        }
+        long mask = 0L;
+        for (int i = 0, size = claim.size(); i < size; i++) {
+            Object value = claim.getValue(i);
+            int index = value instanceof CharSequence name ? indexOf(name) : -1;
+            if (index < 0) {
+                unknownNames.increment();
+            } else {
+                mask |= 1L << index;
+            }
+        }
+        return mask;
+    }
+
+    /**
+     * @return how many claim values were dropped because they did not match any known name.
+     */
+    public long unknownNames() {
+        return unknownNames.sum();
+    }
+
+    private long bit(String name) {
+        int index = indexOf(name);
+        if (index < 0) {
+            throw new IllegalArgumentException("Unknown name: " + name);
+        }
+        return 1L << index;
+    }
+
+    private static int hash(CharSequence value) {
+        int h = 0;
+        for (int i = 0, length = value.length(); i < length; i++) {
+            h = 31 * h + Character.toLowerCase(value.charAt(i));
+        }
+        return h ^ (h >>> 16);
+    }
+
+    private static boolean equalsIgnoreCase(String name, CharSequence value) {
+        if (value instanceof String string) {
+            return name.equalsIgnoreCase(string);
+        }
+        if (name.length() != value.length()) {
+            return false;
+        }
+        for (int i = 0; i < name.length(); i++) {
+            char a = name.charAt(i);
+            char b = value.charAt(i);
+            if (a != b && Character.toLowerCase(a) != Character.toLowerCase(b)) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
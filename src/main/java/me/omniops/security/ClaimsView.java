@@ -0,0 +1,211 @@
+package me.omniops.security;
+
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import me.omniops.security.TokenVerificationException.Reason;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Read-only view of the claims of a decoded token. Role and module checks run against the raw
+ * claim arrays; the {@code roles}, {@code groups}, {@code modules} and {@code attributes} claims
+ * are only copied into Java collections when first asked for, and {@link UserInfo} only when
+ * {@link #toUserInfo()} is called. The decoded claims are never modified, so a view can be shared
+ * between threads.
+ */
+public final class ClaimsView {
+
+    private static final String[] STRING_CLAIMS = {"sub", "preferred_username", "email", "given_name", "family_name", "sid", "jti"};
+    private static final String[] ARRAY_CLAIMS = {"roles", "groups", "modules"};
+
+    private final Map<String, Object> claims;
+    private volatile List<String> roles;
+    private volatile List<String> groups;
+    private volatile List<String> modules;
+    private volatile Map<String, List<String>> attributes;
+
+    private ClaimsView(Map<String, Object> claims) {
+        this.claims = claims;
+    }
+
+    /**
+     * Checks the types of the claims the view exposes without copying them.
+     *
+     * @throws TokenVerificationException if a claim has the wrong type
+     */
+    static ClaimsView of(JsonObject claims) {
+        Map<String, Object> map = claims.getMap();
+        for (String claim : STRING_CLAIMS) {
+            Object value = map.get(claim);
+            if (value != null && !(value instanceof String)) {
+                throw new TokenVerificationException(Reason.MALFORMED, "Claim " + claim + " is not a string");
+            }
+        }
+        for (String claim : ARRAY_CLAIMS) {
+            Object value = map.get(claim);
+            if (value != null && !(value instanceof List) && !(value instanceof JsonArray)) {
+                throw new TokenVerificationException(Reason.MALFORMED, "Claim " + claim + " is not an array");
+            }
+        }
+        Object attributes = map.get("attributes");
+        if (attributes != null && !(attributes instanceof Map) && !(attributes instanceof JsonObject)) {
+            throw new TokenVerificationException(Reason.MALFORMED, "Claim attributes is not an object");
+        }
+        return new ClaimsView(map);
+    }
+
+    public String getSubject() {
+        return (String) claims.get("sub");
+    }
+
+    public String getUsername() {
+        return (String) claims.get("preferred_username");
+    }
+
+    public String getEmail() {
+        return (String) claims.get("email");
+    }
+
+    public String getGivenName() {
+        return (String) claims.get("given_name");
+    }
+
+    public String getFamilyName() {
+        return (String) claims.get("family_name");
+    }
+
+    public String getSessionId() {
+        return (String) claims.get("sid");
+    }
+
+    public String getTokenId() {
+        return (String) claims.get("jti");
+    }
+
+    /**
+     * @return the {@code iat} claim in epoch seconds, or {@code 0} if the token has none
+     */
+    public long getIssuedAt() {
+        return claims.get("iat") instanceof Number issuedAt ? issuedAt.longValue() : 0L;
+    }
+
+    public List<String> getRoles() {
+        List<String> values = roles;
+        if (values == null) {
+            values = strings("roles");
+            roles = values;
+        }
+        return values;
+    }
+
+    public List<String> getGroups() {
+        List<String> values = groups;
+        if (values == null) {
+            values = strings("groups");
+            groups = values;
+        }
+        return values;
+    }
+
+    public List<String> getModules() {
+        List<String> values = modules;
+        if (values == null) {
+            values = strings("modules");
+            modules = values;
+        }
+        return values;
+    }
+
+    /**
+     * @return the {@code attributes} claim, with single values wrapped in a list
+     */
+    public Map<String, List<String>> getAttributes() {
+        Map<String, List<String>> values = attributes;
+        if (values == null) {
+            values = attributeMap();
+            attributes = values;
+        }
+        return values;
+    }
+
+    /**
+     * @return the mask of the names in {@code claim} known to {@code index}
+     */
+    public long mask(ClaimIndex index, String claim) {
+        Object value = claims.get(claim);
+        if (value instanceof List<?> list) {
+            value = new JsonArray(list);
+        }
+        return index.mask((JsonArray) value);
+    }
+
+    /**
+     * @return whether the array {@code claim} contains {@code name}, ignoring case
+     */
+    public boolean contains(String claim, String name) {
+        List<?> values = list(claims.get(claim));
+        for (int i = 0, size = values.size(); i < size; i++) {
+            Object value = values.get(i);
+            if (value instanceof String && name.equalsIgnoreCase((String) value)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public boolean hasRole(String role) {
+        return contains("roles", role);
+    }
+
+    public boolean hasModule(String module) {
+        return contains("modules", module);
+    }
+
+    /**
+     * @return a new {@link UserInfo} holding the materialized claims
+     */
+    public UserInfo toUserInfo() {
+        return new UserInfo(getSubject(), getUsername(), getGivenName(), getFamilyName(), getEmail(),
+                getRoles(), getGroups(), getModules(), null);
+    }
+
+    private List<String> strings(String claim) {
+        return strings(claims.get(claim));
+    }
+
+    private static List<String> strings(Object value) {
+        List<?> values = list(value);
+        if (values.isEmpty()) {
+            return Collections.emptyList();
+        }
+        List<String> strings = new ArrayList<>(values.size());
+        for (Object element : values) {
+            strings.add(String.valueOf(element));
+        }
+        return Collections.unmodifiableList(strings);
+    }
+
+    private Map<String, List<String>> attributeMap() {
+        Object value = claims.get("attributes");
+        @SuppressWarnings("unchecked")
+        Map<String, Object> raw = value instanceof JsonObject json ? json.getMap() : (Map<String, Object>) value;
+        if (raw == null || raw.isEmpty()) {
+            return Collections.emptyMap();
+        }
+        Map<String, List<String>> attributes = new LinkedHashMap<>();
+        raw.forEach((name, values) -> attributes.put(name,
+                values instanceof String ? List.of((String) values) : strings(values)));
+        return Collections.unmodifiableMap(attributes);
+    }
+
+    private static List<?> list(Object value) {
+        if (value instanceof JsonArray array) {
+            return array.getList();
+        }
+        return value instanceof List<?> list ? list : Collections.emptyList();
+    }
+}
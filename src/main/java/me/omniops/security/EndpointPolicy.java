@@ -0,0 +1,110 @@
+package me.omniops.security;
+
+import lombok.AccessLevel;
+import lombok.Getter;
+import lombok.ToString;
+
+import java.lang.reflect.AnnotatedElement;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Effective {@link Authorization} policy of a single resource method, merged from the method
+ * and its resource class and then from the endpoint's override in the current
+ * {@link PolicySnapshot}. Instances are immutable and resolved once per method and snapshot by
+ * {@link EndpointPolicyRegistry}.
+ */
+@Getter
+@ToString
+public final class EndpointPolicy {
+
+    private final String endpoint;
+    private final boolean publicApi;
+    private final List<String> roles;
+    private final List<String> modules;
+    private final List<String> services;
+    private final AccessRequirement roleRequirement;
+    private final AccessRequirement moduleRequirement;
+    /**
+     * Allowed origin services as a mask of the snapshot's service index; {@code 0} allows any caller.
+     */
+    private final long serviceMask;
+    @ToString.Exclude
+    @Getter(AccessLevel.PACKAGE)
+    private final PolicySnapshot snapshot;
+
+    private EndpointPolicy(String endpoint, boolean publicApi, List<String> roles, List<String> modules, List<String> services,
+                           MatchMode roleMatch, MatchMode moduleMatch, PolicySnapshot snapshot) {
+        this.endpoint = endpoint;
+        this.publicApi = publicApi;
+        this.roles = roles;
+        this.modules = modules;
+        this.services = services;
+        this.roleRequirement = new AccessRequirement(snapshot.getRoles().maskOfNames(roles), roleMatch);
+        this.moduleRequirement = new AccessRequirement(snapshot.getModules().maskOfNames(modules), moduleMatch);
+        this.serviceMask = snapshot.getServices().maskOfNames(services);
+        this.snapshot = snapshot;
+    }
+
+    static EndpointPolicy resolve(Method method, Class<?> resourceClass, PolicySnapshot snapshot) {
+        Authorization onMethod = annotation(method);
+        Authorization onClass = annotation(resourceClass);
+        // Method-level values win; empty arrays fall back to the class-level annotation. Only the
+        // method's own annotation makes it public, a class-level isPublic is not inherited.
+        boolean publicApi = onMethod != null && onMethod.isPublic();
+        Authorization roleSource = onMethod != null && onMethod.roles().length > 0 ? onMethod : onClass;
+        Authorization moduleSource = onMethod != null && onMethod.modules().length > 0 ? onMethod : onClass;
+        Role[] roles = roleSource != null ? roleSource.roles() : new Role[0];
+        Modules[] modules = moduleSource != null ? moduleSource.modules() : new Modules[0];
+        Services[] services = onMethod != null && onMethod.services().length > 0 ? onMethod.services()
+                : onClass != null ? onClass.services() : new Services[0];
+        MatchMode roleMatch = roleSource != null ? roleSource.roleMatch() : MatchMode.ANY;
+        MatchMode moduleMatch = moduleSource != null ? moduleSource.moduleMatch() : MatchMode.ANY;
+
+        String endpoint = endpointName(method, resourceClass);
+        PolicySnapshot.EndpointOverride override = snapshot.override(endpoint);
+        if (override == null) {
+            return new EndpointPolicy(endpoint, publicApi, names(roles), names(modules), names(services),
+                    roleMatch, moduleMatch, snapshot);
+        }
+        return new EndpointPolicy(endpoint,
+                override.publicApi() != null ? override.publicApi() : publicApi,
+                override.roles() != null ? override.roles() : names(roles),
+                override.modules() != null ? override.modules() : names(modules),
+                override.services() != null ? override.services() : names(services),
+                override.roleMatch() != null ? override.roleMatch() : roleMatch,
+                override.moduleMatch() != null ? override.moduleMatch() : moduleMatch,
+                snapshot);
+    }
+
+    /**
+     * @return whether {@code originService} may call this endpoint. Names are matched
+     * case-insensitively in place, without allocating.
+     */
+    public boolean allowsService(CharSequence originService) {
+        if (serviceMask == 0L) {
+            return true;
+        }
+        int index = snapshot.getServices().indexOf(originService);
+        return index >= 0 && (serviceMask & (1L << index)) != 0L;
+    }
+
+    private static List<String> names(Enum<?>[] values) {
+        List<String> names = new ArrayList<>(values.length);
+        for (Enum<?> value : values) {
+            names.add(value.name());
+        }
+        return List.copyOf(names);
+    }
+
+    private static Authorization annotation(AnnotatedElement element) {
+        return element != null ? element.getAnnotation(Authorization.class) : null;
+    }
+
+    private static String endpointName(Method method, Class<?> resourceClass) {
+        Class<?> owner = resourceClass != null ? resourceClass : method != null ? method.getDeclaringClass() : null;
+        String className = owner != null ? owner.getName() : "unknown";
+        return method != null ? className + "#" + method.getName() : className;
+    }
+}
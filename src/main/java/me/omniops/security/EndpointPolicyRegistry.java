@@ -0,0 +1,107 @@
+package me.omniops.security;
+
+import io.quarkus.runtime.StartupEvent;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.enterprise.event.Observes;
+import jakarta.enterprise.inject.Any;
+import jakarta.enterprise.inject.spi.Bean;
+import jakarta.enterprise.inject.spi.BeanManager;
+import jakarta.inject.Inject;
+import jakarta.ws.rs.HttpMethod;
+import jakarta.ws.rs.Path;
+import jakarta.ws.rs.container.ResourceInfo;
+import lombok.extern.slf4j.Slf4j;
+
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Method;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Caches the effective {@link EndpointPolicy} of every resource method, so the annotation
+ * lookup and merge happen once per method instead of on every request. The policies of all
+ * resource beans are resolved at startup, so no request pays for the reflection and an invalid
+ * combination of annotations and policy file shows up in the startup log. A cached policy is
+ * resolved again the first time it is used after {@link PolicyStore} swaps in a new snapshot.
+ * Policies are cached per resource class and method: an inherited method reached through two
+ * resource classes takes the class-level annotation of each.
+ */
+@Slf4j
+@ApplicationScoped
+public class EndpointPolicyRegistry {
+
+    private final ClassValue<Map<Method, EndpointPolicy>> policies = new ClassValue<>() {
+        @Override
+        protected Map<Method, EndpointPolicy> computeValue(Class<?> resourceClass) {
+            return new ConcurrentHashMap<>();
+        }
+    };
+    private final PolicyStore policyStore;
+
+    @Inject
+    public EndpointPolicyRegistry(PolicyStore policyStore) {
+        this.policyStore = policyStore;
+    }
+
+    void preload(@Observes StartupEvent event, BeanManager beanManager) {
+        Set<Class<?>> resourceClasses = new LinkedHashSet<>();
+        for (Bean<?> bean : beanManager.getBeans(Object.class, Any.Literal.INSTANCE)) {
+            if (bean.getBeanClass().isAnnotationPresent(Path.class)) {
+                resourceClasses.add(bean.getBeanClass());
+            }
+        }
+        log.info("Resolved authorization policies of {} resource methods", preload(resourceClasses));
+    }
+
+    /**
+     * Resolves the policies of all resource methods of {@code resourceClasses}.
+     *
+     * @return the number of resource methods
+     */
+    public int preload(Iterable<Class<?>> resourceClasses) {
+        int count = 0;
+        for (Class<?> resourceClass : resourceClasses) {
+            for (Method method : resourceClass.getMethods()) {
+                if (isResourceMethod(method)) {
+                    policyFor(method, resourceClass);
+                    count++;
+                }
+            }
+        }
+        return count;
+    }
+
+    public EndpointPolicy policyFor(ResourceInfo resourceInfo) {
+        return policyFor(resourceInfo.getResourceMethod(), resourceInfo.getResourceClass());
+    }
+
+    public EndpointPolicy policyFor(Method method, Class<?> resourceClass) {
+        PolicySnapshot snapshot = policyStore.current();
+        if (method == null) {
+            return EndpointPolicy.resolve(null, resourceClass, snapshot);
+        }
+        Map<Method, EndpointPolicy> classPolicies = policies.get(resourceClass != null ? resourceClass : method.getDeclaringClass());
+        EndpointPolicy policy = classPolicies.get(method);
+        if (policy != null && policy.getSnapshot() == snapshot) {
+            return policy;
+        }
+        EndpointPolicy resolved = EndpointPolicy.resolve(method, resourceClass, snapshot);
+        log.debug("Resolved authorization policy: {}", resolved);
+        classPolicies.put(method, resolved);
+        return resolved;
+    }
+
+    private static boolean isResourceMethod(Method method) {
+        if (method.isAnnotationPresent(Path.class)) {
+            return true;
+        }
+        for (Annotation annotation : method.getAnnotations()) {
+            if (annotation.annotationType().isAnnotationPresent(HttpMethod.class)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,87 @@
+package me.omniops.security;
+
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import lombok.extern.slf4j.Slf4j;
+
+import java.math.BigInteger;
+import java.security.AlgorithmParameters;
+import java.security.GeneralSecurityException;
+import java.security.KeyFactory;
+import java.security.PublicKey;
+import java.security.spec.ECGenParameterSpec;
+import java.security.spec.ECParameterSpec;
+import java.security.spec.ECPoint;
+import java.security.spec.ECPublicKeySpec;
+import java.security.spec.RSAPublicKeySpec;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Parses the signature keys of a JWKS document into {@link PublicKey}s indexed by {@code kid}.
+ * RSA keys and EC keys on P-256 are supported; encryption keys and other key types are skipped.
+ */
+@Slf4j
+final class JsonWebKeys {
+
+    private static final Base64.Decoder URL_DECODER = Base64.getUrlDecoder();
+    private static final ECParameterSpec P256 = p256();
+
+    private JsonWebKeys() {
+    }
+
+    static Map<String, PublicKey> parse(String jwks) {
+        JsonArray keys = new JsonObject(jwks).getJsonArray("keys");
+        if (keys == null) {
+            throw new IllegalArgumentException("JWKS document has no keys");
+        }
+        Map<String, PublicKey> parsed = new HashMap<>();
+        for (int i = 0; i < keys.size(); i++) {
+            JsonObject key = keys.getJsonObject(i);
+            String kid = key.getString("kid");
+            if (kid == null || "enc".equals(key.getString("use"))) {
+                continue;
+            }
+            try {
+                PublicKey publicKey = toPublicKey(key);
+                if (publicKey != null) {
+                    parsed.put(kid, publicKey);
+                }
+            } catch (GeneralSecurityException | IllegalArgumentException e) {
+                log.warn("Skipping unusable JWKS key {}: {}", kid, e.getMessage());
+            }
+        }
+        return Map.copyOf(parsed);
+    }
+
+    private static PublicKey toPublicKey(JsonObject key) throws GeneralSecurityException {
+        String kty = key.getString("kty");
+        if ("RSA".equals(kty)) {
+            return KeyFactory.getInstance("RSA").generatePublic(
+                    new RSAPublicKeySpec(unsigned(key.getString("n")), unsigned(key.getString("e"))));
+        }
+        if ("EC".equals(kty) && "P-256".equals(key.getString("crv"))) {
+            ECPoint point = new ECPoint(unsigned(key.getString("x")), unsigned(key.getString("y")));
+            return KeyFactory.getInstance("EC").generatePublic(new ECPublicKeySpec(point, P256));
+        }
+        return null;
+    }
+
+    private static BigInteger unsigned(String base64Url) {
+        if (base64Url == null) {
+            throw new IllegalArgumentException("missing key parameter");
+        }
+        return new BigInteger(1, URL_DECODER.decode(base64Url));
+    }
+
+    private static ECParameterSpec p256() {
+        try {
+            AlgorithmParameters parameters = AlgorithmParameters.getInstance("EC");
+            parameters.init(new ECGenParameterSpec("secp256r1"));
+            return parameters.getParameterSpec(ECParameterSpec.class);
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("P-256 is not available", e);
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package me.omniops.security;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+
+/**
+ * Supplies the JSON Web Key Set document that {@link JwtVerifier} verifies signatures with.
+ */
+@FunctionalInterface
+public interface JwksKeySource {
+
+    String fetch() throws IOException;
+
+    /**
+     * @return whether the key set can change, so {@link JwtVerifier} refreshes it in the background
+     * and on unknown key IDs. A fixed key set is loaded once.
+     */
+    default boolean refreshable() {
+        return true;
+    }
+
+    /**
+     * A fixed key set, for tests and for services that are provisioned with their keys.
+     */
+    static JwksKeySource of(String jwks) {
+        return new JwksKeySource() {
+            @Override
+            public String fetch() {
+                return jwks;
+            }
+
+            @Override
+            public boolean refreshable() {
+                return false;
+            }
+        };
+    }
+
+    /**
+     * Fetches the key set over HTTP, for example from Keycloak's
+     * {@code /realms/<realm>/protocol/openid-connect/certs}.
+     */
+    static JwksKeySource http(URI uri, Duration timeout) {
+        HttpClient client = HttpClient.newBuilder()
+                .connectTimeout(timeout)
+                .followRedirects(HttpClient.Redirect.NORMAL)
+                .build();
+        HttpRequest request = HttpRequest.newBuilder(uri)
+                .timeout(timeout)
+                .header("Accept", "application/json")
+                .GET()
+                .build();
+        return () -> {
+            try {
+                HttpResponse<String> response = client.send(request, HttpResponse.BodyHandlers.ofString());
+                if (response.statusCode() != 200) {
+                    throw new IOException("JWKS request to " + uri + " returned HTTP " + response.statusCode());
+                }
+                return response.body();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while fetching JWKS from " + uri, e);
+            }
+        };
+    }
+}
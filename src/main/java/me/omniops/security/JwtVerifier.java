@@ -0,0 +1,336 @@
+package me.omniops.security;
+
+import io.vertx.core.Context;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.json.DecodeException;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import jakarta.annotation.PreDestroy;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+import lombok.extern.slf4j.Slf4j;
+import me.omniops.security.TokenVerificationException.Reason;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.security.GeneralSecurityException;
+import java.security.PublicKey;
+import java.security.Signature;
+import java.time.Clock;
+import java.util.Base64;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Verifies RS256 and ES256 signed JWTs offline against the realm's JWKS, including {@code exp},
+ * {@code nbf}, {@code iss} and {@code aud}. Services that receive a forwarded token can use it
+ * without a call to Keycloak.
+ * <p>
+ * Keys are prefetched at construction and, for a {@linkplain JwksKeySource#refreshable()
+ * refreshable} source, refreshed in the background. They are held in an immutable map behind a
+ * volatile field, so looking up a known {@code kid} never locks or waits. A token with an unknown
+ * {@code kid} triggers a single shared refresh, at most once per {@code min-refresh-interval}, and
+ * waits up to {@code unknown-key-wait} for it. On a Vert.x event loop thread it does not wait: the
+ * token is rejected with {@link Reason#UNKNOWN_KEY} while the refresh runs in the background.
+ */
+@Slf4j
+@ApplicationScoped
+public class JwtVerifier {
+
+    private static final String CERTS_PATH = "/protocol/openid-connect/certs";
+    private static final Base64.Decoder URL_DECODER = Base64.getUrlDecoder();
+    private static final int CHUNK = 512;
+    private static final ThreadLocal<byte[]> CHUNK_BUFFER = ThreadLocal.withInitial(() -> new byte[CHUNK]);
+
+    private final JwksKeySource keySource;
+    private final SecurityConfig.Jwt config;
+    private final String issuer;
+    private final Set<String> audience;
+    private final Clock clock;
+    private final ScheduledExecutorService scheduler;
+    private final AtomicReference<CompletableFuture<Void>> inFlight = new AtomicReference<>();
+    private volatile Map<String, PublicKey> keys = Map.of();
+    private volatile long lastRefreshNanos;
+
+    @Inject
+    public JwtVerifier(SecurityConfig securityConfig,
+                       @ConfigProperty(name = "quarkus.oidc.auth-server-url") Optional<String> authServerUrl) {
+        this(keySource(securityConfig.jwt(), authServerUrl.map(JwtVerifier::stripTrailingSlash)),
+                securityConfig.jwt(),
+                securityConfig.jwt().issuer().or(() -> authServerUrl.map(JwtVerifier::stripTrailingSlash)).orElse(null),
+                Clock.systemUTC());
+    }
+
+    /**
+     * @param issuer expected {@code iss}, or {@code null} to accept any issuer
+     */
+    public JwtVerifier(JwksKeySource keySource, SecurityConfig.Jwt config, String issuer, Clock clock) {
+        this.keySource = keySource;
+        this.config = config;
+        this.issuer = issuer;
+        this.audience = config.audience().orElse(Set.of());
+        this.clock = clock;
+        if (!keySource.refreshable()) {
+            this.scheduler = null;
+            try {
+                this.keys = JsonWebKeys.parse(keySource.fetch());
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            return;
+        }
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "jwks-refresh");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long intervalMillis = config.refreshInterval().toMillis();
+        scheduler.scheduleWithFixedDelay(this::refresh, 0, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Verifies the signature and time, issuer and audience claims of {@code token}.
+     *
+     * @return the token's claims
+     * @throws TokenVerificationException if the token is rejected
+     */
+    public JsonObject verify(String token) {
+        int firstDot = token.indexOf('.');
+        int secondDot = firstDot < 0 ? -1 : token.indexOf('.', firstDot + 1);
+        if (firstDot <= 0 || secondDot < 0 || token.indexOf('.', secondDot + 1) >= 0) {
+            throw new TokenVerificationException(Reason.MALFORMED, "Token is not a compact JWS");
+        }
+        JsonObject header = decodeJson(token, 0, firstDot);
+        JwsAlgorithm algorithm = JwsAlgorithm.of(header.getValue("alg"));
+        if (algorithm == null) {
+            throw new TokenVerificationException(Reason.UNSUPPORTED_ALGORITHM, "Unsupported alg " + header.getValue("alg"));
+        }
+        PublicKey key = key(header.getValue("kid"));
+        if (!algorithm.keyAlgorithm.equals(key.getAlgorithm())) {
+            throw new TokenVerificationException(Reason.INVALID_SIGNATURE, "Key type does not match alg " + algorithm);
+        }
+        verifySignature(algorithm, key, token, secondDot);
+        JsonObject claims = decodeJson(token, firstDot + 1, secondDot);
+        try {
+            checkClaims(claims);
+        } catch (ClassCastException e) {
+            throw new TokenVerificationException(Reason.MALFORMED, "Token has a claim of the wrong type");
+        }
+        return claims;
+    }
+
+    /**
+     * Fetches the key set now unless a fetch is already running, in which case that fetch is
+     * returned. A failed fetch keeps the previous keys. A fixed key set is not fetched again.
+     */
+    public CompletableFuture<Void> refresh() {
+        if (scheduler == null) {
+            return CompletableFuture.completedFuture(null);
+        }
+        while (true) {
+            CompletableFuture<Void> current = inFlight.get();
+            if (current != null) {
+                return current;
+            }
+            CompletableFuture<Void> next = new CompletableFuture<>();
+            if (inFlight.compareAndSet(null, next)) {
+                lastRefreshNanos = System.nanoTime();
+                try {
+                    scheduler.execute(() -> load(next));
+                } catch (RejectedExecutionException e) {
+                    inFlight.set(null);
+                    next.completeExceptionally(e);
+                }
+                return next;
+            }
+        }
+    }
+
+    /**
+     * @return the key IDs currently trusted.
+     */
+    public Set<String> keyIds() {
+        return keys.keySet();
+    }
+
+    @PreDestroy
+    void close() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+        }
+    }
+
+    private void load(CompletableFuture<Void> completion) {
+        try {
+            Map<String, PublicKey> loaded = JsonWebKeys.parse(keySource.fetch());
+            keys = loaded;
+            inFlight.set(null);
+            log.debug("Loaded JWKS keys {}", loaded.keySet());
+            completion.complete(null);
+        } catch (IOException | RuntimeException e) {
+            inFlight.set(null);
+            log.warn("JWKS refresh failed, keeping {} known keys: {}", keys.size(), e.getMessage());
+            completion.completeExceptionally(e);
+        }
+    }
+
+    private PublicKey key(Object kid) {
+        if (!(kid instanceof String)) {
+            throw new TokenVerificationException(Reason.MALFORMED, "Token header has no kid");
+        }
+        PublicKey key = keys.get(kid);
+        return key != null ? key : awaitUnknownKey((String) kid);
+    }
+
+    private PublicKey awaitUnknownKey(String kid) {
+        if (scheduler == null) {
+            throw new TokenVerificationException(Reason.UNKNOWN_KEY, "No key with kid " + kid);
+        }
+        CompletableFuture<Void> pending = System.nanoTime() - lastRefreshNanos >= config.minRefreshInterval().toNanos()
+                ? refresh() : inFlight.get();
+        // Never park an I/O thread; a retry after the refresh finds the key.
+        if (pending != null && !Context.isOnEventLoopThread()) {
+            try {
+                pending.get(config.unknownKeyWait().toMillis(), TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (ExecutionException | TimeoutException e) {
+                log.debug("JWKS refresh for kid {} did not complete: {}", kid, e.getMessage());
+            }
+        }
+        PublicKey key = keys.get(kid);
+        if (key == null) {
+            throw new TokenVerificationException(Reason.UNKNOWN_KEY, "No key with kid " + kid);
+        }
+        return key;
+    }
+
+    private void verifySignature(JwsAlgorithm algorithm, PublicKey key, String token, int signingInputEnd) {
+        byte[] signature = decode(token, signingInputEnd + 1, token.length());
+        try {
+            Signature verifier = algorithm.signature.get();
+            verifier.initVerify(key);
+            // The signing input is ASCII; feed it through a reused chunk instead of copying it.
+            byte[] chunk = CHUNK_BUFFER.get();
+            for (int offset = 0; offset < signingInputEnd; offset += CHUNK) {
+                int end = Math.min(signingInputEnd, offset + CHUNK);
+                for (int i = offset; i < end; i++) {
+                    chunk[i - offset] = (byte) token.charAt(i);
+                }
+                verifier.update(chunk, 0, end - offset);
+            }
+            if (!verifier.verify(signature)) {
+                throw new TokenVerificationException(Reason.INVALID_SIGNATURE, "Signature does not match");
+            }
+        } catch (GeneralSecurityException e) {
+            throw new TokenVerificationException(Reason.INVALID_SIGNATURE, "Signature cannot be verified: " + e.getMessage());
+        }
+    }
+
+    private void checkClaims(JsonObject claims) {
+        long now = clock.millis() / 1000;
+        long skew = config.clockSkew().toSeconds();
+        Long exp = claims.getLong("exp");
+        if (exp == null) {
+            throw new TokenVerificationException(Reason.MALFORMED, "Token has no exp claim");
+        }
+        if (now - skew >= exp) {
+            throw new TokenVerificationException(Reason.EXPIRED, "Token expired at " + exp);
+        }
+        Long nbf = claims.getLong("nbf");
+        if (nbf != null && nbf > now + skew) {
+            throw new TokenVerificationException(Reason.NOT_YET_VALID, "Token is not valid before " + nbf);
+        }
+        if (issuer != null && !issuer.equals(claims.getString("iss"))) {
+            throw new TokenVerificationException(Reason.INVALID_ISSUER, "Unexpected issuer " + claims.getString("iss"));
+        }
+        if (!audience.isEmpty() && !hasAudience(claims.getValue("aud"))) {
+            throw new TokenVerificationException(Reason.INVALID_AUDIENCE, "Token is not intended for this audience");
+        }
+    }
+
+    private boolean hasAudience(Object aud) {
+        if (aud instanceof String) {
+            return audience.contains(aud);
+        }
+        if (aud instanceof JsonArray) {
+            JsonArray values = (JsonArray) aud;
+            for (int i = 0; i < values.size(); i++) {
+                if (audience.contains(values.getValue(i))) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private static JsonObject decodeJson(String token, int start, int end) {
+        try {
+            return new JsonObject(Buffer.buffer(decode(token, start, end)));
+        } catch (DecodeException | ClassCastException e) {
+            throw new TokenVerificationException(Reason.MALFORMED, "Token segment is not a JSON object");
+        }
+    }
+
+    private static byte[] decode(String token, int start, int end) {
+        try {
+            return URL_DECODER.decode(token.substring(start, end));
+        } catch (IllegalArgumentException e) {
+            throw new TokenVerificationException(Reason.MALFORMED, "Token segment is not base64url");
+        }
+    }
+
+    private static JwksKeySource keySource(SecurityConfig.Jwt config, Optional<String> authServerUrl) {
+        Optional<URI> uri = config.jwksUri().or(() -> authServerUrl.map(url -> URI.create(url + CERTS_PATH)));
+        if (uri.isEmpty()) {
+            return () -> {
+                throw new IOException("Neither portal.security.jwt.jwks-uri nor quarkus.oidc.auth-server-url is set");
+            };
+        }
+        return JwksKeySource.http(uri.get(), config.fetchTimeout());
+    }
+
+    private static String stripTrailingSlash(String url) {
+        return url.endsWith("/") ? url.substring(0, url.length() - 1) : url;
+    }
+
+    private enum JwsAlgorithm {
+        RS256("SHA256withRSA", "RSA"),
+        ES256("SHA256withECDSAinP1363Format", "EC");
+
+        private final String keyAlgorithm;
+        private final ThreadLocal<Signature> signature;
+
+        JwsAlgorithm(String jcaName, String keyAlgorithm) {
+            this.keyAlgorithm = keyAlgorithm;
+            this.signature = ThreadLocal.withInitial(() -> {
+                try {
+                    return Signature.getInstance(jcaName);
+                } catch (GeneralSecurityException e) {
+                    throw new IllegalStateException(jcaName + " is not available", e);
+                }
+            });
+        }
+
+        static JwsAlgorithm of(Object alg) {
+            if ("RS256".equals(alg)) {
+                return RS256;
+            }
+            if ("ES256".equals(alg)) {
+                return ES256;
+            }
+            return null;
+        }
+    }
+}
@@ -0,0 +1,40 @@
+package me.omniops.security;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Lets at most {@code limit} log statements through per interval and counts the ones it holds
+ * back, so a client repeating a bad request cannot flood the log. Lock-free and allocation-free.
+ */
+final class LogRateLimiter {
+
+    private final int limit;
+    private final long intervalNanos;
+    private final AtomicLong windowStart = new AtomicLong(System.nanoTime());
+    private final AtomicInteger used = new AtomicInteger();
+    private final AtomicLong suppressed = new AtomicLong();
+
+    LogRateLimiter(int limit, Duration interval) {
+        this.limit = limit;
+        this.intervalNanos = interval.toNanos();
+    }
+
+    /**
+     * @return {@code -1} if the statement should be dropped, otherwise the number of statements
+     * dropped since the last one let through
+     */
+    long acquire() {
+        long now = System.nanoTime();
+        long start = windowStart.get();
+        if (now - start >= intervalNanos && windowStart.compareAndSet(start, now)) {
+            used.set(0);
+        }
+        if (used.get() < limit && used.incrementAndGet() <= limit) {
+            return suppressed.getAndSet(0);
+        }
+        suppressed.incrementAndGet();
+        return -1;
+    }
+}
@@ -0,0 +1,13 @@
+package me.omniops.security;
+
+/**
+ * How the roles or modules required by an endpoint are matched against the ones granted by the token.
+ */
+public enum MatchMode {
+    /** At least one of the required values must be granted. */
+    ANY,
+    /** Every required value must be granted. */
+    ALL,
+    /** None of the listed values may be granted. */
+    NONE
+}
@@ -1,44 +1,72 @@
 package me.omniops.security;
 
 import io.quarkus.oidc.OIDCException;
-import io.quarkus.security.AuthenticationFailedException;
 import jakarta.ws.rs.core.Response;
 import jakarta.ws.rs.ext.ExceptionMapper;
 import jakarta.ws.rs.ext.Provider;
 import lombok.extern.slf4j.Slf4j;
+import me.omniops.security.TokenVerificationException.Reason;
+import org.jose4j.jwt.consumer.ErrorCodes;
+import org.jose4j.jwt.consumer.InvalidJwtException;
 
+/**
+ * Maps OIDC failures to a 401 whose message is chosen from the typed cause, either a
+ * {@link TokenVerificationException} or a jose4j {@link InvalidJwtException} error code,
+ * rather than from the wording of exception messages.
+ */
 @Slf4j
 @Provider
 public class OIDCExceptionMapper implements ExceptionMapper<OIDCException> {
 
-
     @Override
     public Response toResponse(OIDCException exception) {
-        String message = "Authentication error occurred.";
+        Reason reason = reason(exception);
+        log.debug("OIDC exception mapped to {}: {}", reason, exception.getMessage());
+        return Response.status(Response.Status.UNAUTHORIZED).entity(message(reason)).build();
+    }
+
+    static String message(Reason reason) {
+        if (reason == null) {
+            return "Authentication error occurred.";
+        }
+        return switch (reason) {
+            case EXPIRED -> "Token has expired.";
+            case INVALID_ISSUER -> "Token issuer is incorrect.";
+            default -> "Token is invalid.";
+        };
+    }
 
-        Throwable cause = exception.getCause();
-        if (cause != null) {
-            String causeMessage = cause.getMessage();
-            if (causeMessage != null) {
-                if (causeMessage.contains("expired")) {
-                    message = "Token has expired.";
-                } else if (causeMessage.contains("invalid")) {
-                    message = "Token is invalid.";
-                } else if (causeMessage.contains("issuer")) {
-                    message = "Token issuer is incorrect.";
-                }
+    /**
+     * @return the reason of the first typed cause of {@code exception}, or {@code null} if none
+     */
+    static Reason reason(Throwable exception) {
+        for (Throwable cause = exception; cause != null; cause = cause.getCause() == cause ? null : cause.getCause()) {
+            if (cause instanceof TokenVerificationException verification) {
+                return verification.getReason();
+            }
+            if (cause instanceof InvalidJwtException invalid) {
+                return reason(invalid);
             }
         }
-        return Response.status(Response.Status.UNAUTHORIZED).entity(message).build();
+        return null;
     }
 
-//    @Override
-//    public Response toResponse(OIDCException exception) {
-//       log.error("OIDC exception occurred: {} " , exception.getMessage());
-//
-//        return Response.status(Response.Status.UNAUTHORIZED)
-//                .entity("Token-related error: " + exception.getMessage())
-//                .build();
-//
-//    }
-}
\ No newline at end of file
+    private static Reason reason(InvalidJwtException exception) {
+        if (exception.hasExpired()) {
+            return Reason.EXPIRED;
+        }
+        if (exception.hasErrorCode(ErrorCodes.NOT_YET_VALID)) {
+            return Reason.NOT_YET_VALID;
+        }
+        if (exception.hasErrorCode(ErrorCodes.ISSUER_INVALID) || exception.hasErrorCode(ErrorCodes.ISSUER_MISSING)) {
+            return Reason.INVALID_ISSUER;
+        }
+        if (exception.hasErrorCode(ErrorCodes.AUDIENCE_INVALID) || exception.hasErrorCode(ErrorCodes.AUDIENCE_MISSING)) {
+            return Reason.INVALID_AUDIENCE;
+        }
+        if (exception.hasErrorCode(ErrorCodes.SIGNATURE_INVALID) || exception.hasErrorCode(ErrorCodes.SIGNATURE_MISSING)) {
+            return Reason.INVALID_SIGNATURE;
+        }
+        return Reason.MALFORMED;
+    }
+}
@@ -0,0 +1,166 @@
+package me.omniops.security;
+
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import lombok.AccessLevel;
+import lombok.Getter;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Immutable view of the authorization policy: the known role, module and service names and the
+ * per-endpoint overrides loaded by {@link PolicyStore}. The enum constants always keep the first
+ * positions of each {@link ClaimIndex}, so masks built from {@link Role}, {@link Modules} and
+ * {@link Services} mean the same in every snapshot.
+ */
+@Getter
+public final class PolicySnapshot {
+
+    static final PolicySnapshot DEFAULTS = new PolicySnapshot(0L, 0L,
+            ClaimIndex.ROLES, ClaimIndex.MODULES, ClaimIndex.SERVICES, Map.of());
+
+    /**
+     * Per-endpoint replacement of {@link Authorization} values; {@code null} keeps the annotation's.
+     */
+    record EndpointOverride(Boolean publicApi,
+                            List<String> roles, MatchMode roleMatch,
+                            List<String> modules, MatchMode moduleMatch,
+                            List<String> services) {
+    }
+
+    /**
+     * Incremented on every successful load.
+     */
+    private final long generation;
+    /**
+     * Incremented when the role or module names change, which invalidates masks built earlier.
+     */
+    private final long namesVersion;
+    /**
+     * Hash of the role and module names in index order; equal on two services exactly when their
+     * masks mean the same roles and modules.
+     */
+    private final int namesFingerprint;
+    private final ClaimIndex roles;
+    private final ClaimIndex modules;
+    private final ClaimIndex services;
+    @Getter(AccessLevel.NONE)
+    private final Map<String, EndpointOverride> overrides;
+
+    private PolicySnapshot(long generation, long namesVersion, ClaimIndex roles, ClaimIndex modules, ClaimIndex services,
+                           Map<String, EndpointOverride> overrides) {
+        this.generation = generation;
+        this.namesVersion = namesVersion;
+        this.namesFingerprint = fingerprint(roles, modules);
+        this.roles = roles;
+        this.modules = modules;
+        this.services = services;
+        this.overrides = overrides;
+    }
+
+    EndpointOverride override(String endpoint) {
+        return overrides.get(endpoint);
+    }
+
+    /**
+     * Parses a policy document of the form
+     * <pre>{@code
+     * {
+     *   "roles": ["AUDITOR"],
+     *   "modules": ["MLFLOW"],
+     *   "services": ["REPORTS"],
+     *   "endpoints": {
+     *     "com.example.ReportResource#export": {
+     *       "roles": ["AUDITOR"], "roleMatch": "ANY", "modules": ["MLFLOW"], "services": ["REPORTS"]
+     *     }
+     *   }
+     * }
+     * }</pre>
+     * Names are added after the enum constants. Indexes equal to those of {@code previous} are
+     * reused, so masks stay valid across reloads that only change endpoints.
+     *
+     * @throws IllegalArgumentException if the document is invalid
+     */
+    static PolicySnapshot parse(JsonObject document, PolicySnapshot previous) {
+        ClaimIndex roles = reuse(ClaimIndex.ROLES.extend(strings(document, "roles")), previous.roles);
+        ClaimIndex modules = reuse(ClaimIndex.MODULES.extend(strings(document, "modules")), previous.modules);
+        ClaimIndex services = reuse(ClaimIndex.SERVICES.extend(strings(document, "services")), previous.services);
+        boolean namesChanged = roles != previous.roles || modules != previous.modules;
+
+        Map<String, EndpointOverride> overrides = new HashMap<>();
+        JsonObject endpoints = document.getJsonObject("endpoints", new JsonObject());
+        for (String endpoint : endpoints.fieldNames()) {
+            JsonObject entry = endpoints.getJsonObject(endpoint);
+            EndpointOverride override = new EndpointOverride(
+                    entry.getBoolean("public"),
+                    optionalStrings(entry, "roles"), matchMode(entry, "roleMatch"),
+                    optionalStrings(entry, "modules"), matchMode(entry, "moduleMatch"),
+                    optionalStrings(entry, "services"));
+            // Fail the load, not a later request, on names that are not defined.
+            if (override.roles() != null) {
+                roles.maskOfNames(override.roles());
+            }
+            if (override.modules() != null) {
+                modules.maskOfNames(override.modules());
+            }
+            if (override.services() != null) {
+                services.maskOfNames(override.services());
+            }
+            overrides.put(endpoint, override);
+        }
+        return new PolicySnapshot(previous.generation + 1,
+                namesChanged ? previous.namesVersion + 1 : previous.namesVersion,
+                roles, modules, services, Map.copyOf(overrides));
+    }
+
+    private static int fingerprint(ClaimIndex... indexes) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            for (ClaimIndex index : indexes) {
+                for (int i = 0; i < index.size(); i++) {
+                    digest.update(index.nameOf(i).toLowerCase(Locale.ROOT).getBytes(StandardCharsets.UTF_8));
+                    digest.update((byte) 0);
+                }
+                digest.update((byte) 1);
+            }
+            byte[] hash = digest.digest();
+            return (hash[0] & 0xFF) << 24 | (hash[1] & 0xFF) << 16 | (hash[2] & 0xFF) << 8 | (hash[3] & 0xFF);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static ClaimIndex reuse(ClaimIndex loaded, ClaimIndex previous) {
+        return loaded.sameNames(previous) ? previous : loaded;
+    }
+
+    private static List<String> strings(JsonObject json, String key) {
+        List<String> values = optionalStrings(json, key);
+        return values != null ? values : Collections.emptyList();
+    }
+
+    private static List<String> optionalStrings(JsonObject json, String key) {
+        JsonArray array = json.getJsonArray(key);
+        if (array == null) {
+            return null;
+        }
+        List<String> values = new ArrayList<>(array.size());
+        for (int i = 0; i < array.size(); i++) {
+            values.add(array.getString(i));
+        }
+        return List.copyOf(values);
+    }
+
+    private static MatchMode matchMode(JsonObject json, String key) {
+        String value = json.getString(key);
+        return value != null ? MatchMode.valueOf(value.toUpperCase(Locale.ROOT)) : null;
+    }
+}
@@ -0,0 +1,88 @@
+package me.omniops.security;
+
+import io.vertx.core.json.JsonObject;
+import jakarta.annotation.PreDestroy;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Holds the current {@link PolicySnapshot}. When {@code portal.security.policy.file} is set, the
+ * file is loaded at startup and checked for changes every {@code reload-interval}; a changed file
+ * is parsed off the request path and swapped in atomically. Readers only dereference a volatile
+ * field. A file that fails to parse is logged and the previous snapshot stays in effect.
+ */
+@Slf4j
+@ApplicationScoped
+public class PolicyStore {
+
+    private final Path file;
+    private final ScheduledExecutorService scheduler;
+    private volatile PolicySnapshot current = PolicySnapshot.DEFAULTS;
+    private FileTime loadedModified;
+    private long loadedSize = -1;
+
+    @Inject
+    public PolicyStore(SecurityConfig securityConfig) {
+        SecurityConfig.Policy config = securityConfig.policy();
+        this.file = config.file().map(Path::of).orElse(null);
+        if (file == null) {
+            this.scheduler = null;
+            return;
+        }
+        reload();
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "policy-reload");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long intervalMillis = config.reloadInterval().toMillis();
+        scheduler.scheduleWithFixedDelay(this::reload, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    public PolicySnapshot current() {
+        return current;
+    }
+
+    /**
+     * Loads the policy file if it changed since the last load.
+     *
+     * @return whether a new snapshot was installed
+     */
+    public synchronized boolean reload() {
+        if (file == null) {
+            return false;
+        }
+        try {
+            FileTime modified = Files.getLastModifiedTime(file);
+            long size = Files.size(file);
+            if (modified.equals(loadedModified) && size == loadedSize) {
+                return false;
+            }
+            PolicySnapshot loaded = PolicySnapshot.parse(new JsonObject(Files.readString(file)), current);
+            loadedModified = modified;
+            loadedSize = size;
+            current = loaded;
+            log.info("Loaded authorization policy {} (generation {})", file, loaded.getGeneration());
+            return true;
+        } catch (IOException | RuntimeException e) {
+            log.error("Could not load authorization policy {}, keeping generation {}: {}", file, current.getGeneration(), e.getMessage());
+            return false;
+        }
+    }
+
+    @PreDestroy
+    void close() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package me.omniops.security;
+
+import io.quarkus.security.identity.CurrentIdentityAssociation;
+import io.quarkus.vertx.http.runtime.CurrentVertxRequest;
+import io.smallrye.mutiny.Uni;
+import jakarta.inject.Inject;
+import jakarta.ws.rs.container.ContainerRequestContext;
+import jakarta.ws.rs.container.ResourceInfo;
+import jakarta.ws.rs.core.Response;
+import lombok.extern.slf4j.Slf4j;
+import me.omniops.admission.AdmissionController;
+import org.jboss.resteasy.reactive.server.ServerRequestFilter;
+
+import java.util.Optional;
+
+/**
+ * RESTEasy Reactive counterpart of {@link SecureRoleFilter}, active when
+ * {@code portal.security.filter-mode=reactive}. It enforces the same {@link Authorization} rules
+ * on the I/O thread, since validation is CPU work on an already authenticated token, so secured
+ * requests no longer need a worker thread just to pass the filter. Resource methods that block
+ * can still opt in to {@code @Blocking} or {@code @RunOnVirtualThread}.
+ */
+@Slf4j
+public class SecureRoleReactiveFilter {
+
+    @Inject
+    TokenValidationService tokenValidationService;
+    @Inject
+    EndpointPolicyRegistry endpointPolicyRegistry;
+    @Inject
+    SecurityConfig securityConfig;
+    @Inject
+    CurrentIdentityAssociation identityAssociation;
+    @Inject
+    SecurityMetrics securityMetrics;
+    @Inject
+    UserContextCodec userContextCodec;
+    @Inject
+    AdmissionController admissionController;
+    @Inject
+    CurrentVertxRequest currentVertxRequest;
+
+    @ServerRequestFilter(priority = 0, nonBlocking = true)
+    public Uni<Response> filter(ContainerRequestContext requestContext, ResourceInfo resourceInfo) {
+        if (securityConfig.filterMode() != SecurityConfig.FilterMode.REACTIVE) {
+            return Uni.createFrom().nullItem();
+        }
+        log.debug("Start reactive security filter...");
+        long start = System.nanoTime();
+        EndpointPolicy policy = endpointPolicyRegistry.policyFor(resourceInfo);
+        if (policy.isPublicApi()) {
+            return Uni.createFrom().nullItem();
+        }
+        String originService = requestContext.getHeaderString(SecurityFilterSupport.ORIGIN_SERVICE_HEADER);
+        if (!policy.allowsService(originService)) {
+            log.debug("Service {} is not authorized to access {}", originService, policy.getEndpoint());
+            tokenValidationService.serviceDenied(policy, originService);
+            securityMetrics.recordFilter(policy.getEndpoint(), System.nanoTime() - start);
+            return Uni.createFrom().item(SecurityFilterSupport.errorResponse(Response.Status.FORBIDDEN,
+                    SecurityFilterSupport.SERVICE_DENIED_MESSAGE));
+        }
+        VerifiedClaims forwarded = userContextCodec.acceptForwarded(originService,
+                requestContext.getHeaderString(SecurityFilterSupport.USER_CONTEXT_HEADER));
+        Uni<Optional<VerifiedClaims>> validation = forwarded != null
+                ? Uni.createFrom().item(() -> tokenValidationService.authorize(forwarded, policy, originService))
+                : identityAssociation.getDeferredIdentity().map(identity -> tokenValidationService.validateToken(identity, policy, originService));
+        return validation
+                .map(verified -> {
+                    if (verified.isEmpty()) {
+                        log.debug("Unauthorized access on {}: missing or invalid roles/modules", policy.getEndpoint());
+                        return SecurityFilterSupport.errorResponse(Response.Status.FORBIDDEN, "Authorization failed");
+                    }
+                    if (SecurityFilterSupport.admit(admissionController, currentVertxRequest, policy, originService, verified.get()) != null) {
+                        return SecurityFilterSupport.errorResponse(Response.Status.TOO_MANY_REQUESTS,
+                                SecurityFilterSupport.TOO_MANY_REQUESTS_MESSAGE);
+                    }
+                    log.debug("Authorized user: {}", verified.get().getUsername());
+                    SecurityFilterSupport.addUserHeaders(requestContext, verified.get(), userContextCodec);
+                    return (Response) null;
+                })
+                .onFailure().recoverWithItem(e -> {
+                    log.error("Token validation failed due to unexpected error: {}", e.getMessage(), e);
+                    return SecurityFilterSupport.errorResponse(Response.Status.UNAUTHORIZED, "Token validation failed");
+                })
+                .onTermination().invoke(() -> securityMetrics.recordFilter(policy.getEndpoint(), System.nanoTime() - start));
+    }
+}
@@ -0,0 +1,197 @@
+package me.omniops.security;
+
+import io.quarkus.runtime.annotations.StaticInitSafe;
+import io.smallrye.config.ConfigMapping;
+import io.smallrye.config.WithDefault;
+
+import java.net.URI;
+import java.time.Duration;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+
+@StaticInitSafe
+@ConfigMapping(prefix = "portal.security")
+public interface SecurityConfig {
+
+    /**
+     * Which security filter enforces {@link Authorization}. {@code reactive} requires RESTEasy Reactive.
+     */
+    @WithDefault("classic")
+    FilterMode filterMode();
+
+    ClaimsCache claimsCache();
+
+    Rejections rejections();
+
+    Jwt jwt();
+
+    UserContext userContext();
+
+    Policy policy();
+
+    enum FilterMode {
+        CLASSIC,
+        REACTIVE
+    }
+
+    interface ClaimsCache {
+        @WithDefault("true")
+        boolean enabled();
+
+        @WithDefault("10000")
+        long maximumSize();
+
+        /**
+         * Lifetime of entries for tokens that carry no {@code exp} claim.
+         */
+        @WithDefault("5M")
+        Duration defaultTtl();
+    }
+
+    /**
+     * Handling of rejected tokens: a negative cache that answers repeats of a recently rejected
+     * token without decoding it again, and a cap on how many rejections are logged.
+     */
+    interface Rejections {
+        /**
+         * Number of rejected token digests remembered; {@code 0} disables the negative cache.
+         */
+        @WithDefault("1000")
+        long cacheSize();
+
+        /**
+         * How long a rejection is remembered.
+         */
+        @WithDefault("1M")
+        Duration cacheTtl();
+
+        /**
+         * Rejections logged per {@code log-interval}; further ones are counted and summarized
+         * with the next logged rejection.
+         */
+        @WithDefault("10")
+        int logLimit();
+
+        @WithDefault("10S")
+        Duration logInterval();
+    }
+
+    /**
+     * Settings of {@link PolicyStore}.
+     */
+    interface Policy {
+        /**
+         * JSON policy file that adds role, module and service names and overrides endpoint
+         * policies. Without it the {@link Authorization} annotations apply unchanged.
+         */
+        Optional<String> file();
+
+        /**
+         * How often the policy file is checked for changes.
+         */
+        @WithDefault("5S")
+        Duration reloadInterval();
+    }
+
+    /**
+     * Settings of the signed {@code X-User-Context} envelope, see {@link UserContextCodec}.
+     */
+    interface UserContext {
+        @WithDefault("false")
+        boolean enabled();
+
+        @WithDefault("hmac-sha256")
+        SignatureAlgorithm algorithm();
+
+        /**
+         * Identifies the signing key in the envelope, so keys can be rotated; 0 to 255.
+         */
+        @WithDefault("0")
+        int keyId();
+
+        /**
+         * Base64 shared secret for {@code hmac-sha256}.
+         */
+        Optional<String> hmacKey();
+
+        /**
+         * Base64 PKCS#8 private key for {@code ed25519}. Services that only accept envelopes leave
+         * it unset and do not emit {@code X-User-Context}.
+         */
+        Optional<String> privateKey();
+
+        /**
+         * Base64 X.509 public key for {@code ed25519}.
+         */
+        Optional<String> publicKey();
+
+        /**
+         * Further keys accepted for verification, by key id: Base64 HMAC secrets or X.509 public
+         * keys, depending on {@code algorithm}. Keep the previous key here while rotating.
+         */
+        Map<String, String> verificationKeys();
+
+        /**
+         * Lifetime of an envelope, capped by the expiry of the token it was derived from.
+         */
+        @WithDefault("30S")
+        Duration ttl();
+
+        /**
+         * Origin services whose envelopes are accepted in place of the bearer token: {@link Services}
+         * constants or service names added by the policy file.
+         */
+        Optional<Set<String>> trustedServices();
+
+        /**
+         * Whether {@code X-User-Info} is still added next to the envelope.
+         */
+        @WithDefault("true")
+        boolean emitJson();
+
+        enum SignatureAlgorithm {
+            HMAC_SHA256,
+            ED25519
+        }
+    }
+
+    /**
+     * Settings of {@link JwtVerifier}. The JWKS location and issuer default to the realm behind
+     * {@code quarkus.oidc.auth-server-url}.
+     */
+    interface Jwt {
+        Optional<URI> jwksUri();
+
+        Optional<String> issuer();
+
+        /**
+         * Accepted {@code aud} values; the audience is not checked when empty.
+         */
+        Optional<Set<String>> audience();
+
+        @WithDefault("30S")
+        Duration clockSkew();
+
+        /**
+         * Interval of the background JWKS refresh.
+         */
+        @WithDefault("10M")
+        Duration refreshInterval();
+
+        /**
+         * Minimum time between refreshes triggered by an unknown {@code kid}.
+         */
+        @WithDefault("30S")
+        Duration minRefreshInterval();
+
+        /**
+         * How long a token with an unknown {@code kid} waits for the refresh it triggered.
+         */
+        @WithDefault("2S")
+        Duration unknownKeyWait();
+
+        @WithDefault("5S")
+        Duration fetchTimeout();
+    }
+}
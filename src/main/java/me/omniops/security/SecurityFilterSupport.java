@@ -0,0 +1,71 @@
+package me.omniops.security;
+
+import io.quarkus.vertx.http.runtime.CurrentVertxRequest;
+import io.vertx.ext.web.RoutingContext;
+import jakarta.ws.rs.container.ContainerRequestContext;
+import jakarta.ws.rs.core.MediaType;
+import jakarta.ws.rs.core.Response;
+import me.omniops.admission.AdmissionController;
+
+/**
+ * Checks and responses shared by the RESTEasy Classic and RESTEasy Reactive security filters.
+ */
+final class SecurityFilterSupport {
+
+    static final String USER_INFO_HEADER = "X-User-Info";
+    static final String ORIGIN_SERVICE_HEADER = "X-Origin-Service";
+    static final String USER_CONTEXT_HEADER = "X-User-Context";
+    static final String SERVICE_DENIED_MESSAGE = "Service not authorized";
+    static final String TOO_MANY_REQUESTS_MESSAGE = "Too many requests";
+
+    private SecurityFilterSupport() {
+    }
+
+    /**
+     * Adds {@code X-User-Info} and, when a signing key is configured, the signed
+     * {@code X-User-Context} envelope for the resource and for forwarding to downstream services.
+     * Claims of a forwarded envelope lack groups and attributes, so the {@code X-User-Info} the
+     * upstream service sent along is left as it is instead.
+     */
+    static void addUserHeaders(ContainerRequestContext requestContext, VerifiedClaims verified, UserContextCodec userContextCodec) {
+        if (userContextCodec.emitsJson() && !verified.isForwarded()) {
+            requestContext.getHeaders().add(USER_INFO_HEADER, verified.getUserInfoHeader());
+        }
+        if (userContextCodec.emitsEnvelope()) {
+            requestContext.getHeaders().putSingle(USER_CONTEXT_HEADER, userContextCodec.encode(verified));
+        }
+    }
+
+    /**
+     * Admits a validated request by its subject and origin service and takes a concurrency permit,
+     * which is returned when the response has been sent. The origin service is only charged here,
+     * so requests without a valid token cannot use up another service's bucket. Requests outside
+     * a Vert.x request, as in benchmarks, take no permit.
+     *
+     * @return why the request is rejected, or {@code null} if it is admitted
+     */
+    static AdmissionController.Rejection admit(AdmissionController admissionController, CurrentVertxRequest currentRequest,
+                                               EndpointPolicy policy, String originService, VerifiedClaims verified) {
+        AdmissionController.Rejection rejection = admissionController.admit(policy.getEndpoint(), originService, verified.getSubject());
+        if (rejection != null || !admissionController.limitsConcurrency()) {
+            return rejection;
+        }
+        RoutingContext routingContext = currentRequest.getCurrent();
+        if (routingContext == null) {
+            return null;
+        }
+        if (!admissionController.tryAcquire(policy.getEndpoint(), originService)) {
+            return AdmissionController.Rejection.CONCURRENCY;
+        }
+        long admittedAt = System.nanoTime();
+        routingContext.addEndHandler(ignored -> admissionController.release(System.nanoTime() - admittedAt));
+        return null;
+    }
+
+    static Response errorResponse(Response.Status status, String message) {
+        return Response.status(status)
+                .entity(message)
+                .type(MediaType.APPLICATION_JSON)
+                .build();
+    }
+}
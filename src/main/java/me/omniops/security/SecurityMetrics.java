@@ -0,0 +1,104 @@
+package me.omniops.security;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+
+import java.time.Duration;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Timers and counters for the authorization path. Meters are tagged by endpoint
+ * ({@code Class#method}) and never by user, and are created once per endpoint, so recording on
+ * the request path is a map lookup and an atomic add.
+ */
+@ApplicationScoped
+public class SecurityMetrics {
+
+    /**
+     * Endpoint tag used when validation is called with bare requirements instead of a policy.
+     */
+    public static final String UNSPECIFIED_ENDPOINT = "none";
+
+    public enum Outcome {
+        ALLOWED,
+        MISSING_CREDENTIAL,
+        DECODE_FAILURE,
+        REVOKED,
+        ROLE_DENIED,
+        MODULE_DENIED,
+        SERVICE_DENIED;
+
+        private final String tag = name().toLowerCase(Locale.ROOT);
+    }
+
+    private static final Outcome[] OUTCOMES = Outcome.values();
+
+    private final MeterRegistry registry;
+    private final Timer jwtDecode;
+    private final Timer claimExtraction;
+    private final Map<String, EndpointMeters> endpoints = new ConcurrentHashMap<>();
+
+    @Inject
+    public SecurityMetrics(MeterRegistry registry) {
+        this.registry = registry;
+        this.jwtDecode = latencyTimer("portal.security.jwt.decode")
+                .description("Time spent decoding the JWT payload")
+                .register(registry);
+        this.claimExtraction = latencyTimer("portal.security.claims.extract")
+                .description("Time spent extracting user info and role/module claims")
+                .register(registry);
+    }
+
+    void recordDecode(long nanos) {
+        jwtDecode.record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    void recordClaimExtraction(long nanos) {
+        claimExtraction.record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    void recordFilter(String endpoint, long nanos) {
+        meters(endpoint).filter.record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    void recordOutcome(String endpoint, Outcome outcome) {
+        meters(endpoint).outcomes[outcome.ordinal()].increment();
+    }
+
+    private EndpointMeters meters(String endpoint) {
+        EndpointMeters meters = endpoints.get(endpoint);
+        return meters != null ? meters : endpoints.computeIfAbsent(endpoint, EndpointMeters::new);
+    }
+
+    private static Timer.Builder latencyTimer(String name) {
+        return Timer.builder(name)
+                .publishPercentileHistogram()
+                .minimumExpectedValue(Duration.ofNanos(1_000))
+                .maximumExpectedValue(Duration.ofSeconds(5));
+    }
+
+    private final class EndpointMeters {
+        private final Timer filter;
+        private final Counter[] outcomes = new Counter[OUTCOMES.length];
+
+        private EndpointMeters(String endpoint) {
+            this.filter = latencyTimer("portal.security.filter")
+                    .description("Total time spent in the security filter")
+                    .tag("endpoint", endpoint)
+                    .register(registry);
+            for (Outcome outcome : OUTCOMES) {
+                outcomes[outcome.ordinal()] = Counter.builder("portal.security.decisions")
+                        .description("Authorization decisions by outcome")
+                        .tag("endpoint", endpoint)
+                        .tag("outcome", outcome.tag)
+                        .register(registry);
+            }
+        }
+    }
+}
@@ -0,0 +1,58 @@
+package me.omniops.security;
+
+import lombok.Value;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * SHA-256 digest of the UTF-8 bytes of a raw token, used as a cache key so tokens are not retained in memory.
+ */
+@Value
+public class TokenDigest {
+
+    private static final ThreadLocal<MessageDigest> SHA_256 = ThreadLocal.withInitial(() -> {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    });
+
+    private static final int CHUNK = 512;
+    private static final ThreadLocal<byte[]> CHUNK_BUFFER = ThreadLocal.withInitial(() -> new byte[CHUNK]);
+
+    long w0;
+    long w1;
+    long w2;
+    long w3;
+
+    public static TokenDigest of(String token) {
+        MessageDigest digest = SHA_256.get();
+        // Tokens are ASCII, whose UTF-8 bytes are the chars themselves; feed them through a reused
+        // chunk instead of copying the whole string.
+        byte[] chunk = CHUNK_BUFFER.get();
+        int length = token.length();
+        for (int offset = 0; offset < length; offset += CHUNK) {
+            int end = Math.min(length, offset + CHUNK);
+            for (int i = offset; i < end; i++) {
+                char c = token.charAt(i);
+                if (c >= 0x80) {
+                    // Not a well-formed token; digest it the slow way so distinct strings keep distinct keys.
+                    digest.reset();
+                    return fromHash(digest.digest(token.getBytes(StandardCharsets.UTF_8)));
+                }
+                chunk[i - offset] = (byte) c;
+            }
+            digest.update(chunk, 0, end - offset);
+        }
+        return fromHash(digest.digest());
+    }
+
+    private static TokenDigest fromHash(byte[] sha256) {
+        ByteBuffer hash = ByteBuffer.wrap(sha256);
+        return new TokenDigest(hash.getLong(), hash.getLong(), hash.getLong(), hash.getLong());
+    }
+}
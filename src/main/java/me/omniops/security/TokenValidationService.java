@@ -8,106 +8,271 @@ import io.vertx.core.json.JsonObject;
 import jakarta.enterprise.context.ApplicationScoped;
 import jakarta.inject.Inject;
 import lombok.extern.slf4j.Slf4j;
-import java.util.Collections;
+import me.omniops.audit.AuditEvent;
+import me.omniops.audit.AuditLog;
+import me.omniops.revocation.RevocationList;
+import me.omniops.security.TokenVerificationException.Reason;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Base64;
 import java.util.List;
 import java.util.Optional;
-import java.util.stream.Collectors;
 
 @Slf4j
 @ApplicationScoped
 public class TokenValidationService {
 
     private final SecurityIdentity securityIdentity;
+    private final VerifiedClaimsCache claimsCache;
+    private final SecurityMetrics metrics;
+    private final PolicyStore policyStore;
+    private final LogRateLimiter rejectionLog;
+    private final AuditLog auditLog;
+    private final RevocationList revocationList;
 
     @Inject
-    public TokenValidationService(SecurityIdentity securityIdentity) {
+    public TokenValidationService(SecurityIdentity securityIdentity, VerifiedClaimsCache claimsCache, SecurityMetrics metrics,
+                                  PolicyStore policyStore, SecurityConfig securityConfig, AuditLog auditLog,
+                                  RevocationList revocationList) {
         this.securityIdentity = securityIdentity;
+        this.claimsCache = claimsCache;
+        this.metrics = metrics;
+        this.policyStore = policyStore;
+        this.rejectionLog = new LogRateLimiter(securityConfig.rejections().logLimit(), securityConfig.rejections().logInterval());
+        this.auditLog = auditLog;
+        this.revocationList = revocationList;
     }
 
     public Optional<UserInfo> validateTokenAndExtractClaims(List<Role> requiredRoles, List<Modules> requiredModules) {
-        log.warn("Validating token with required roles: {} and modules: {}", requiredRoles, requiredModules);
-        TokenCredential credential = securityIdentity.getCredential(TokenCredential.class);
+        return validateTokenAndExtractClaims(
+                new AccessRequirement(ClaimIndex.ROLES.mask(requiredRoles), MatchMode.ANY),
+                new AccessRequirement(ClaimIndex.MODULES.mask(requiredModules), MatchMode.ANY));
+    }
+
+    public Optional<UserInfo> validateTokenAndExtractClaims(EndpointPolicy policy) {
+        return validateToken(policy).map(VerifiedClaims::getUserInfo);
+    }
+
+    public Optional<UserInfo> validateTokenAndExtractClaims(AccessRequirement requiredRoles, AccessRequirement requiredModules) {
+        return validateToken(requiredRoles, requiredModules).map(VerifiedClaims::getUserInfo);
+    }
+
+    public Optional<VerifiedClaims> validateToken(EndpointPolicy policy) {
+        return validateToken(securityIdentity, policy);
+    }
+
+    public Optional<VerifiedClaims> validateToken(EndpointPolicy policy, String originService) {
+        return validateToken(securityIdentity, policy, originService);
+    }
+
+    public Optional<VerifiedClaims> validateToken(AccessRequirement requiredRoles, AccessRequirement requiredModules) {
+        return validateToken(securityIdentity, SecurityMetrics.UNSPECIFIED_ENDPOINT, null, requiredRoles, requiredModules, null);
+    }
+
+    /**
+     * Validates the token of an explicitly given identity, for callers that resolve it themselves,
+     * such as the reactive filter on the I/O thread.
+     */
+    public Optional<VerifiedClaims> validateToken(SecurityIdentity identity, EndpointPolicy policy) {
+        return validateToken(identity, policy, null);
+    }
+
+    /**
+     * @param originService the calling service, recorded in the audit log
+     */
+    public Optional<VerifiedClaims> validateToken(SecurityIdentity identity, EndpointPolicy policy, String originService) {
+        return validateToken(identity, policy.getEndpoint(), policy, policy.getRoleRequirement(), policy.getModuleRequirement(), originService);
+    }
+
+    private Optional<VerifiedClaims> validateToken(SecurityIdentity identity, String endpoint, EndpointPolicy policy,
+                                                   AccessRequirement requiredRoles, AccessRequirement requiredModules,
+                                                   String originService) {
+        log.debug("Validating token with required roles: {} and modules: {}", requiredRoles, requiredModules);
+        TokenCredential credential = identity.getCredential(TokenCredential.class);
         if (credential == null) {
-            log.warn("Token credential is missing.");
+            log.debug("Token credential is missing.");
+            record(SecurityMetrics.Outcome.MISSING_CREDENTIAL, endpoint, policy, requiredRoles, requiredModules, originService, null, null);
             return Optional.empty();
         }
-        JsonObject claims;
+        VerifiedClaims verified;
         try {
-            claims = OidcUtils.decodeJwtContent(credential.getToken());
-        } catch (Exception e) {
-            log.error("Failed to decode JWT content: {}", e.getMessage(), e);
+            verified = claimsCache.get(credential.getToken(), this::verifyClaims);
+            if (verified.getNamesVersion() != policyStore.current().getNamesVersion()) {
+                // Role or module names were reloaded since these masks were built.
+                verified = claimsCache.refresh(credential.getToken(), this::verifyClaims);
+            }
+        } catch (TokenVerificationException e) {
+            record(SecurityMetrics.Outcome.DECODE_FAILURE, endpoint, policy, requiredRoles, requiredModules, originService, null,
+                    e.getReason().name());
+            logRejection(endpoint, e);
             return Optional.empty();
         }
-        UserInfo userInfo = extractUserInfo(claims);
-        if (userInfo == null) {
-            log.warn("Failed to extract user information from token.");
-            return Optional.empty();
+        return authorize(verified, endpoint, policy, requiredRoles, requiredModules, originService);
+    }
+
+    private void logRejection(String endpoint, TokenVerificationException e) {
+        long suppressed = rejectionLog.acquire();
+        if (suppressed == 0) {
+            log.warn("Rejected token for {} ({}): {}", endpoint, e.getReason(), e.getMessage());
+        } else if (suppressed > 0) {
+            log.warn("Rejected token for {} ({}): {} [{} similar rejections not logged]", endpoint, e.getReason(), e.getMessage(), suppressed);
         }
-        log.warn("Extracted UserInfo: {}", userInfo);
+    }
+
+    /**
+     * Checks already verified claims, such as those of a forwarded {@code X-User-Context}
+     * envelope, against the revocation list and the requirements of {@code policy}.
+     */
+    public Optional<VerifiedClaims> authorize(VerifiedClaims verified, EndpointPolicy policy) {
+        return authorize(verified, policy, null);
+    }
 
-        if (isAuthorized(userInfo, requiredRoles, requiredModules)) {
-            return Optional.of(userInfo);
+    public Optional<VerifiedClaims> authorize(VerifiedClaims verified, EndpointPolicy policy, String originService) {
+        return authorize(verified, policy.getEndpoint(), policy, policy.getRoleRequirement(), policy.getModuleRequirement(), originService);
+    }
+
+    /**
+     * Records that {@code originService} is not allowed to call the endpoint of {@code policy},
+     * which the filters decide before the token is looked at.
+     */
+    public void serviceDenied(EndpointPolicy policy, String originService) {
+        record(SecurityMetrics.Outcome.SERVICE_DENIED, policy.getEndpoint(), policy,
+                policy.getRoleRequirement(), policy.getModuleRequirement(), originService, null, null);
+    }
+
+    private Optional<VerifiedClaims> authorize(VerifiedClaims verified, String endpoint, EndpointPolicy policy,
+                                               AccessRequirement requiredRoles, AccessRequirement requiredModules,
+                                               String originService) {
+        if (revocationList.isRevoked(verified.getSubject(), verified.getSessionId(), verified.getTokenId(), verified.getIssuedAt())) {
+            log.debug("Token of user [{}] has been revoked", verified.getUsername());
+            record(SecurityMetrics.Outcome.REVOKED, endpoint, policy, requiredRoles, requiredModules, originService, verified, null);
+            return Optional.empty();
+        }
+        SecurityMetrics.Outcome outcome = authorize(verified.getGrantedRoles(), verified.getGrantedModules(), requiredRoles, requiredModules);
+        record(outcome, endpoint, policy, requiredRoles, requiredModules, originService, verified, null);
+        if (outcome == SecurityMetrics.Outcome.ALLOWED) {
+            return Optional.of(verified);
         }
-        log.info("User [{}] is not authorized for the specified roles/modules", userInfo.getUsername());
+        log.debug("User [{}] is not authorized for the specified roles/modules: {}", verified.getUsername(), outcome);
         return Optional.empty();
     }
 
-    private UserInfo extractUserInfo(JsonObject claims) {
-        try {
-            String userId = getClaimValue(claims, "sub");
-            String username = getClaimValue(claims, "preferred_username");
-            String email = getClaimValue(claims, "email");
-            String givenName = getClaimValue(claims, "given_name");
-            String familyName = getClaimValue(claims, "family_name");
-//            List<String> roles = extractJsonArray(claims, "realm_access", "roles");
-            List<String> roles = extractJsonArray(claims, "roles");
-            List<String> groups = extractJsonArray(claims, "groups");
-            List<String> userModules = extractJsonArray(claims, "modules");
-            return new UserInfo(userId, username, givenName, familyName, email, roles, groups, userModules, null);
-        } catch (Exception e) {
-            log.error("Error extracting UserInfo from claims: {}", e.getMessage(), e);
-            return null;
+    /**
+     * Counts the decision and, when enabled, queues it for the audit log; neither formats
+     * anything on the request thread.
+     */
+    private void record(SecurityMetrics.Outcome outcome, String endpoint, EndpointPolicy policy,
+                        AccessRequirement requiredRoles, AccessRequirement requiredModules,
+                        String originService, VerifiedClaims verified, String reason) {
+        metrics.recordOutcome(endpoint, outcome);
+        if (auditLog.isEnabled()) {
+            auditLog.record(new AuditEvent(System.currentTimeMillis(), outcome, endpoint, policy, requiredRoles, requiredModules,
+                    originService,
+                    verified != null ? verified.getSubject() : null,
+                    verified != null ? verified.getUsername() : null,
+                    reason));
         }
     }
 
-    private boolean isAuthorized(UserInfo userInfo, List<Role> requiredRoles, List<Modules> requiredModules) {
-        boolean hasRequiredRoles = hasMatchingRoles(userInfo.getRoles(), requiredRoles);
-        boolean hasRequiredModules = hasMatchingModules(userInfo.getModels(), requiredModules);
-        log.warn("User has required roles: {}, required modules: {}", hasRequiredRoles, hasRequiredModules);
-        return hasRequiredRoles && hasRequiredModules;
+    /**
+     * Runs decoding, mask compilation, authorization and header encoding {@code iterations} times
+     * on a synthetic token holding every role and module, so they are compiled before the first
+     * request. The claims cache and the latency timers are bypassed, so no synthetic sample ends
+     * up in the published percentiles, and the synthetic claims are discarded; use
+     * {@link ValidationWarmup} from outside this package.
+     */
+    void warmUp(int iterations) {
+        JsonObject claims = new JsonObject()
+                .put("sub", "00000000-0000-0000-0000-000000000000")
+                .put("preferred_username", "warm-up")
+                .put("email", "warm-up@localhost")
+                .put("roles", new JsonArray(Arrays.stream(Role.values()).map(Role::name).toList()))
+                .put("modules", new JsonArray(Arrays.stream(Modules.values()).map(Modules::name).toList()))
+                .put("exp", System.currentTimeMillis() / 1000 + 3600);
+        Base64.Encoder encoder = Base64.getUrlEncoder().withoutPadding();
+        String token = encoder.encodeToString("{\"alg\":\"none\"}".getBytes(StandardCharsets.UTF_8)) + '.'
+                + encoder.encodeToString(claims.encode().getBytes(StandardCharsets.UTF_8)) + ".warm-up";
+        AccessRequirement roles = new AccessRequirement(ClaimIndex.ROLES.mask(Role.values()), MatchMode.ALL);
+        AccessRequirement modules = new AccessRequirement(ClaimIndex.MODULES.mask(Modules.values()), MatchMode.ANY);
+        for (int i = 0; i < iterations; i++) {
+            VerifiedClaims verified = toVerifiedClaims(decode(token));
+            authorize(verified.getGrantedRoles(), verified.getGrantedModules(), roles, modules);
+            verified.getUserInfoHeader();
+        }
     }
 
-    private boolean hasMatchingRoles(List<String> userRoles, List<Role> requiredRoles) {
-            return requiredRoles.stream()
-                .map(role -> role.name().toLowerCase())
-                .anyMatch(userRoles.stream().map(String::toLowerCase).collect(Collectors.toSet())::contains);
+    /**
+     * @throws TokenVerificationException if the token cannot be decoded, its claims cannot be
+     * mapped, or it has expired
+     */
+    VerifiedClaims verifyClaims(String token) {
+        JsonObject claims;
+        long start = System.nanoTime();
+        try {
+            claims = decode(token);
+        } finally {
+            metrics.recordDecode(System.nanoTime() - start);
+        }
+        start = System.nanoTime();
+        try {
+            return toVerifiedClaims(claims);
+        } finally {
+            metrics.recordClaimExtraction(System.nanoTime() - start);
+        }
     }
 
-    private boolean hasMatchingModules(List<String> userModules, List<Modules> requiredModules) {
-        return requiredModules.stream()
-                .map(module -> module.name().toLowerCase())
-                .anyMatch(userModules.stream().map(String::toLowerCase).collect(Collectors.toSet())::contains);
+    private static JsonObject decode(String token) {
+        JsonObject claims;
+        try {
+            claims = OidcUtils.decodeJwtContent(token);
+        } catch (RuntimeException e) {
+            throw new TokenVerificationException(Reason.MALFORMED, "Token content cannot be decoded: " + e.getMessage());
+        }
+        if (claims == null) {
+            throw new TokenVerificationException(Reason.MALFORMED, "Token has no decodable JWT content");
+        }
+        return claims;
     }
 
-    private String getClaimValue(JsonObject claims, String key) {
-        return claims != null ? claims.getString(key, null) : null;
+    private VerifiedClaims toVerifiedClaims(JsonObject claims) {
+        long expiresAt;
+        try {
+            expiresAt = claims.getLong("exp", 0L);
+        } catch (ClassCastException e) {
+            throw new TokenVerificationException(Reason.MALFORMED, "Token has a non-numeric exp claim");
+        }
+        if (expiresAt > 0 && expiresAt <= System.currentTimeMillis() / 1000) {
+            throw new TokenVerificationException(Reason.EXPIRED, "Token expired at " + expiresAt);
+        }
+        ClaimsView view = ClaimsView.of(claims);
+        PolicySnapshot snapshot = policyStore.current();
+        return new VerifiedClaims(view,
+                view.mask(snapshot.getRoles(), "roles"),
+                view.mask(snapshot.getModules(), "modules"),
+                expiresAt,
+                snapshot.getNamesVersion());
     }
 
-    private List<String> extractJsonArray(JsonObject claims, String arrayKey) {
-        return extractJsonArray(claims, null, arrayKey);
+    /**
+     * @return all claims of the user, or {@code null} if they have the wrong types
+     */
+    UserInfo extractUserInfo(JsonObject claims) {
+        try {
+            return ClaimsView.of(claims).toUserInfo();
+        } catch (TokenVerificationException e) {
+            log.debug("Error extracting UserInfo from claims: {}", e.getMessage());
+            return null;
+        }
     }
 
-    private List<String> extractJsonArray(JsonObject claims, String objectKey, String arrayKey) {
-        if (claims == null || (objectKey != null && !claims.containsKey(objectKey))) {
-            return Collections.emptyList();
+    private SecurityMetrics.Outcome authorize(long grantedRoles, long grantedModules, AccessRequirement requiredRoles, AccessRequirement requiredModules) {
+        if (!requiredRoles.matches(grantedRoles)) {
+            return SecurityMetrics.Outcome.ROLE_DENIED;
         }
-        JsonArray jsonArray = objectKey == null ? claims.getJsonArray(arrayKey)
-                : claims.getJsonObject(objectKey).getJsonArray(arrayKey);
-        if (jsonArray == null) {
-            return Collections.emptyList();
+        if (!requiredModules.matches(grantedModules)) {
+            return SecurityMetrics.Outcome.MODULE_DENIED;
         }
-        return jsonArray.stream()
-                .map(Object::toString)
-                .collect(Collectors.toList());
+        return SecurityMetrics.Outcome.ALLOWED;
     }
 }
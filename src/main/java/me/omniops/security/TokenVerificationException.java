@@ -0,0 +1,31 @@
+package me.omniops.security;
+
+import lombok.Getter;
+
+/**
+ * A token was rejected by {@link JwtVerifier} or {@link TokenValidationService}. The
+ * {@link Reason} tells callers why without inspecting the message. Rejections are expected
+ * traffic, so no stack trace is captured and an instance can be rethrown for repeats of the
+ * same token.
+ */
+@Getter
+public class TokenVerificationException extends BaseException {
+
+    public enum Reason {
+        MALFORMED,
+        UNSUPPORTED_ALGORITHM,
+        UNKNOWN_KEY,
+        INVALID_SIGNATURE,
+        EXPIRED,
+        NOT_YET_VALID,
+        INVALID_ISSUER,
+        INVALID_AUDIENCE
+    }
+
+    private final Reason reason;
+
+    public TokenVerificationException(Reason reason, String msg) {
+        super(msg, false);
+        this.reason = reason;
+    }
+}
@@ -0,0 +1,575 @@
+package me.omniops.security;
+
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+import lombok.extern.slf4j.Slf4j;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.KeyFactory;
+import java.security.MessageDigest;
+import java.security.PrivateKey;
+import java.security.PublicKey;
+import java.security.Signature;
+import java.security.spec.PKCS8EncodedKeySpec;
+import java.security.spec.X509EncodedKeySpec;
+import java.time.Clock;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * Encodes verified claims into the compact, signed {@code X-User-Context} envelope and accepts it
+ * from trusted origin services in place of a full JWT validation.
+ * <p>
+ * The envelope is base64url of a binary payload followed by its signature: version, key id, a
+ * fingerprint of the role and module names, expiry, the role and module masks, the subject as 16
+ * UUID bytes where possible, username, email and names, and the token's {@code sid}, {@code jti}
+ * and {@code iat} so the receiving service can check its revocation list. Groups and attributes are not
+ * carried; services that need them keep reading the {@code X-User-Info} the upstream service
+ * forwards, which is passed on unchanged. The masks are positional, so
+ * an envelope is only accepted by a service whose name tables have the same fingerprint. Envelopes
+ * are emitted only by services holding a signing key; others just verify, with the current key or
+ * one of {@code verification-keys}.
+ */
+@Slf4j
+@ApplicationScoped
+public class UserContextCodec {
+
+    private static final byte VERSION = 3;
+    private static final int HEADER_LENGTH = 6;
+    private static final byte SUBJECT_UUID = 0;
+    private static final byte SUBJECT_STRING = 1;
+    private static final Base64.Encoder URL_ENCODER = Base64.getUrlEncoder().withoutPadding();
+    private static final Base64.Decoder URL_DECODER = Base64.getUrlDecoder();
+    private static final ThreadLocal<Buffer> BUFFER = ThreadLocal.withInitial(Buffer::new);
+
+    /**
+     * A signed envelope and the time after which it should be re-issued.
+     */
+    record Encoded(String header, long renewAt) {
+    }
+
+    private final boolean enabled;
+    private final boolean emitJson;
+    private final int keyId;
+    private final long ttlSeconds;
+    private final Set<String> trustedServices;
+    /**
+     * Signs with the current key; {@code null} on services that only accept envelopes.
+     */
+    private final Signer signer;
+    /**
+     * Verifiers by key id.
+     */
+    private final Signer[] verifiers;
+    private final int signatureLength;
+    private final PolicyStore policyStore;
+    private final Clock clock;
+    private volatile TrustedMask trustedMask;
+
+    @Inject
+    public UserContextCodec(SecurityConfig securityConfig, PolicyStore policyStore) {
+        this(securityConfig.userContext(), policyStore, Clock.systemUTC());
+    }
+
+    public UserContextCodec(SecurityConfig.UserContext config, PolicyStore policyStore, Clock clock) {
+        this.enabled = config.enabled();
+        this.emitJson = config.emitJson();
+        this.keyId = keyId(config.keyId(), "key-id");
+        this.ttlSeconds = Math.max(1L, config.ttl().toSeconds());
+        this.trustedServices = Set.copyOf(config.trustedServices().orElse(Set.of()));
+        this.verifiers = new Signer[256];
+        this.policyStore = policyStore;
+        this.clock = clock;
+        if (!enabled) {
+            this.signer = null;
+            this.signatureLength = 0;
+            return;
+        }
+        Signer current = Signer.current(config);
+        verifiers[keyId] = current;
+        config.verificationKeys().forEach((id, key) -> {
+            int index = keyId(parseKeyId(id), "verification-keys." + id);
+            if (index == keyId) {
+                throw new IllegalStateException("portal.security.user-context.verification-keys." + id + " repeats key-id");
+            }
+            verifiers[index] = Signer.verifier(config.algorithm(), key);
+        });
+        this.signer = current.canSign() ? current : null;
+        this.signatureLength = current.length();
+        if (signer == null) {
+            log.info("No user context signing key configured; accepting X-User-Context without emitting it");
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * @return whether {@code X-User-Context} is added to authenticated requests, which needs a
+     * signing key.
+     */
+    public boolean emitsEnvelope() {
+        return signer != null;
+    }
+
+    /**
+     * @return whether the JSON {@code X-User-Info} header should still be added.
+     */
+    public boolean emitsJson() {
+        return signer == null || emitJson;
+    }
+
+    /**
+     * @return the envelope for {@code claims}. It is signed once and reused until half of its
+     * lifetime has passed.
+     */
+    public String encode(VerifiedClaims claims) {
+        if (signer == null) {
+            throw new IllegalStateException("No user context signing key configured");
+        }
+        long now = clock.millis() / 1000;
+        Encoded encoded = claims.userContext;
+        if (encoded == null || now >= encoded.renewAt()) {
+            long expiresAt = now + ttlSeconds;
+            if (claims.getExpiresAt() > 0) {
+                expiresAt = Math.min(expiresAt, claims.getExpiresAt());
+            }
+            encoded = new Encoded(sign(claims, expiresAt), now + ttlSeconds / 2);
+            claims.userContext = encoded;
+        }
+        return encoded.header();
+    }
+
+    /**
+     * Accepts an envelope sent by {@code originService}.
+     *
+     * @return the claims it carries, or {@code null} when the origin is not trusted or the envelope
+     * is missing, expired or not validly signed
+     */
+    public VerifiedClaims acceptForwarded(String originService, String header) {
+        if (!enabled || header == null || !isTrusted(originService)) {
+            return null;
+        }
+        VerifiedClaims claims = decode(header);
+        if (claims == null) {
+            log.debug("Rejected X-User-Context from {}", originService);
+        }
+        return claims;
+    }
+
+    VerifiedClaims decode(String header) {
+        byte[] bytes;
+        try {
+            bytes = URL_DECODER.decode(header);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+        int payloadLength = bytes.length - signatureLength;
+        if (payloadLength < HEADER_LENGTH || bytes[0] != VERSION) {
+            return null;
+        }
+        Signer verifier = verifiers[bytes[1] & 0xFF];
+        if (verifier == null || !verifier.verify(bytes, payloadLength)) {
+            return null;
+        }
+        PolicySnapshot snapshot = policyStore.current();
+        if (readInt(bytes, 2) != snapshot.getNamesFingerprint()) {
+            log.debug("Rejected X-User-Context built with different role or module names");
+            return null;
+        }
+        try {
+            Reader reader = new Reader(bytes, HEADER_LENGTH, payloadLength);
+            long expiresAt = reader.varLong();
+            if (clock.millis() / 1000 >= expiresAt) {
+                return null;
+            }
+            long roles = reader.varLong();
+            long modules = reader.varLong();
+            String subject = reader.subject();
+            String username = reader.string();
+            String email = reader.string();
+            String givenName = reader.string();
+            String familyName = reader.string();
+            String sessionId = reader.string();
+            String tokenId = reader.string();
+            long issuedAt = reader.varLong();
+            UserInfo userInfo = new UserInfo(subject, username, givenName, familyName, email,
+                    names(snapshot.getRoles(), roles), Collections.emptyList(), names(snapshot.getModules(), modules), null);
+            VerifiedClaims claims = new VerifiedClaims(userInfo, roles, modules, expiresAt, snapshot.getNamesVersion(),
+                    sessionId, tokenId, issuedAt);
+            // Forward the envelope unchanged so its expiry is not extended hop by hop.
+            claims.userContext = new Encoded(header, Long.MAX_VALUE);
+            return claims;
+        } catch (IndexOutOfBoundsException e) {
+            return null;
+        }
+    }
+
+    private boolean isTrusted(String originService) {
+        if (originService == null || trustedServices.isEmpty()) {
+            return false;
+        }
+        ClaimIndex services = policyStore.current().getServices();
+        TrustedMask trusted = trustedMask;
+        if (trusted == null || trusted.services() != services) {
+            // Names added by the policy file only have a position once it is loaded.
+            long mask = 0L;
+            for (String name : trustedServices) {
+                int index = services.indexOf(name);
+                if (index >= 0) {
+                    mask |= 1L << index;
+                }
+            }
+            trusted = new TrustedMask(services, mask);
+            trustedMask = trusted;
+        }
+        int index = services.indexOf(originService);
+        return index >= 0 && (trusted.mask() & (1L << index)) != 0L;
+    }
+
+    private record TrustedMask(ClaimIndex services, long mask) {
+    }
+
+    private String sign(VerifiedClaims claims, long expiresAt) {
+        Buffer buffer = BUFFER.get();
+        buffer.reset();
+        buffer.write(VERSION);
+        buffer.write(keyId);
+        buffer.fixedInt(policyStore.current().getNamesFingerprint());
+        buffer.varLong(expiresAt);
+        buffer.varLong(claims.getGrantedRoles());
+        buffer.varLong(claims.getGrantedModules());
+        buffer.subject(claims.getSubject());
+        buffer.string(claims.getUsername());
+        buffer.string(claims.getEmail());
+        buffer.string(claims.getGivenName());
+        buffer.string(claims.getFamilyName());
+        buffer.string(claims.getSessionId());
+        buffer.string(claims.getTokenId());
+        buffer.varLong(claims.getIssuedAt());
+        int payloadLength = buffer.size;
+        buffer.ensure(payloadLength + signatureLength);
+        signer.sign(buffer.bytes, payloadLength);
+        return URL_ENCODER.encodeToString(Arrays.copyOf(buffer.bytes, payloadLength + signatureLength));
+    }
+
+    private static int readInt(byte[] bytes, int offset) {
+        return (bytes[offset] & 0xFF) << 24 | (bytes[offset + 1] & 0xFF) << 16 | (bytes[offset + 2] & 0xFF) << 8 | (bytes[offset + 3] & 0xFF);
+    }
+
+    private static int parseKeyId(String id) {
+        try {
+            return Integer.parseInt(id);
+        } catch (NumberFormatException e) {
+            throw new IllegalStateException("portal.security.user-context.verification-keys." + id + " is not a numeric key id");
+        }
+    }
+
+    private static int keyId(int id, String property) {
+        if (id < 0 || id > 255) {
+            throw new IllegalStateException("portal.security.user-context." + property + " must be between 0 and 255");
+        }
+        return id;
+    }
+
+    private static List<String> names(ClaimIndex index, long mask) {
+        List<String> names = new ArrayList<>(Long.bitCount(mask));
+        for (long remaining = mask; remaining != 0; remaining &= remaining - 1) {
+            int bit = Long.numberOfTrailingZeros(remaining);
+            if (bit < index.size()) {
+                names.add(index.nameOf(bit));
+            }
+        }
+        return names;
+    }
+
+    private static final class Buffer {
+        private byte[] bytes = new byte[256];
+        private int size;
+
+        void reset() {
+            size = 0;
+        }
+
+        void ensure(int capacity) {
+            if (capacity > bytes.length) {
+                bytes = Arrays.copyOf(bytes, Math.max(capacity, bytes.length * 2));
+            }
+        }
+
+        void write(int b) {
+            ensure(size + 1);
+            bytes[size++] = (byte) b;
+        }
+
+        void varLong(long value) {
+            while ((value & ~0x7FL) != 0) {
+                write((int) ((value & 0x7F) | 0x80));
+                value >>>= 7;
+            }
+            write((int) value);
+        }
+
+        void string(String value) {
+            if (value == null) {
+                varLong(0);
+                return;
+            }
+            byte[] utf8 = value.getBytes(StandardCharsets.UTF_8);
+            varLong(utf8.length + 1L);
+            ensure(size + utf8.length);
+            System.arraycopy(utf8, 0, bytes, size, utf8.length);
+            size += utf8.length;
+        }
+
+        void subject(String subject) {
+            if (subject != null && subject.length() == 36) {
+                try {
+                    UUID uuid = UUID.fromString(subject);
+                    write(SUBJECT_UUID);
+                    fixedLong(uuid.getMostSignificantBits());
+                    fixedLong(uuid.getLeastSignificantBits());
+                    return;
+                } catch (IllegalArgumentException e) {
+                    // not a UUID, written as a string below
+                }
+            }
+            write(SUBJECT_STRING);
+            string(subject);
+        }
+
+        void fixedInt(int value) {
+            for (int shift = 24; shift >= 0; shift -= 8) {
+                write(value >>> shift);
+            }
+        }
+
+        private void fixedLong(long value) {
+            for (int shift = 56; shift >= 0; shift -= 8) {
+                write((int) (value >>> shift));
+            }
+        }
+    }
+
+    private static final class Reader {
+        private final byte[] bytes;
+        private final int limit;
+        private int position;
+
+        Reader(byte[] bytes, int position, int limit) {
+            this.bytes = bytes;
+            this.position = position;
+            this.limit = limit;
+        }
+
+        int read() {
+            if (position >= limit) {
+                throw new IndexOutOfBoundsException("Envelope truncated");
+            }
+            return bytes[position++] & 0xFF;
+        }
+
+        long varLong() {
+            long value = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                int b = read();
+                value |= (long) (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return value;
+                }
+            }
+            throw new IndexOutOfBoundsException("Malformed varint");
+        }
+
+        String string() {
+            long length = varLong();
+            if (length == 0) {
+                return null;
+            }
+            int byteCount = (int) (length - 1);
+            if (byteCount < 0 || position + byteCount > limit) {
+                throw new IndexOutOfBoundsException("Envelope truncated");
+            }
+            String value = new String(bytes, position, byteCount, StandardCharsets.UTF_8);
+            position += byteCount;
+            return value;
+        }
+
+        String subject() {
+            if (read() == SUBJECT_UUID) {
+                return new UUID(fixedLong(), fixedLong()).toString();
+            }
+            return string();
+        }
+
+        private long fixedLong() {
+            long value = 0;
+            for (int i = 0; i < 8; i++) {
+                value = (value << 8) | read();
+            }
+            return value;
+        }
+    }
+
+    private interface Signer {
+
+        int length();
+
+        default boolean canSign() {
+            return true;
+        }
+
+        /**
+         * Writes the signature of {@code bytes[0, payloadLength)} right after the payload.
+         */
+        void sign(byte[] bytes, int payloadLength);
+
+        boolean verify(byte[] bytes, int payloadLength);
+
+        /**
+         * @return the signer of {@code key-id}, which can only verify when {@code ed25519} has no
+         * private key.
+         */
+        static Signer current(SecurityConfig.UserContext config) {
+            try {
+                return switch (config.algorithm()) {
+                    case HMAC_SHA256 -> new HmacSigner(Base64.getDecoder().decode(config.hmacKey()
+                            .orElseThrow(() -> new IllegalStateException("portal.security.user-context.hmac-key is not set"))));
+                    case ED25519 -> new Ed25519Signer(
+                            config.privateKey().map(Ed25519Signer::privateKey).orElse(null),
+                            Ed25519Signer.publicKey(config.publicKey()
+                                    .orElseThrow(() -> new IllegalStateException("portal.security.user-context.public-key is not set"))));
+                };
+            } catch (GeneralSecurityException | IllegalArgumentException e) {
+                throw new IllegalStateException("Invalid user context signing key", e);
+            }
+        }
+
+        static Signer verifier(SecurityConfig.UserContext.SignatureAlgorithm algorithm, String key) {
+            try {
+                return switch (algorithm) {
+                    case HMAC_SHA256 -> new HmacSigner(Base64.getDecoder().decode(key));
+                    case ED25519 -> new Ed25519Signer(null, Ed25519Signer.publicKey(key));
+                };
+            } catch (GeneralSecurityException | IllegalArgumentException e) {
+                throw new IllegalStateException("Invalid user context verification key", e);
+            }
+        }
+    }
+
+    private static final class HmacSigner implements Signer {
+        private static final int LENGTH = 32;
+        private final ThreadLocal<Mac> mac;
+
+        HmacSigner(byte[] key) throws GeneralSecurityException {
+            SecretKeySpec secret = new SecretKeySpec(key, "HmacSHA256");
+            Mac.getInstance("HmacSHA256").init(secret);
+            this.mac = ThreadLocal.withInitial(() -> {
+                try {
+                    Mac instance = Mac.getInstance("HmacSHA256");
+                    instance.init(secret);
+                    return instance;
+                } catch (GeneralSecurityException e) {
+                    throw new IllegalStateException(e);
+                }
+            });
+        }
+
+        @Override
+        public int length() {
+            return LENGTH;
+        }
+
+        @Override
+        public void sign(byte[] bytes, int payloadLength) {
+            Mac instance = mac.get();
+            instance.update(bytes, 0, payloadLength);
+            try {
+                instance.doFinal(bytes, payloadLength);
+            } catch (GeneralSecurityException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        @Override
+        public boolean verify(byte[] bytes, int payloadLength) {
+            Mac instance = mac.get();
+            instance.update(bytes, 0, payloadLength);
+            byte[] expected = instance.doFinal();
+            return MessageDigest.isEqual(expected, Arrays.copyOfRange(bytes, payloadLength, payloadLength + LENGTH));
+        }
+    }
+
+    private static final class Ed25519Signer implements Signer {
+        private static final int LENGTH = 64;
+        private final PrivateKey privateKey;
+        private final PublicKey publicKey;
+        private final ThreadLocal<Signature> signature = ThreadLocal.withInitial(() -> {
+            try {
+                return Signature.getInstance("Ed25519");
+            } catch (GeneralSecurityException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+
+        Ed25519Signer(PrivateKey privateKey, PublicKey publicKey) {
+            this.privateKey = privateKey;
+            this.publicKey = publicKey;
+        }
+
+        static PrivateKey privateKey(String base64) {
+            try {
+                return KeyFactory.getInstance("Ed25519").generatePrivate(new PKCS8EncodedKeySpec(Base64.getDecoder().decode(base64)));
+            } catch (GeneralSecurityException e) {
+                throw new IllegalArgumentException(e);
+            }
+        }
+
+        static PublicKey publicKey(String base64) throws GeneralSecurityException {
+            return KeyFactory.getInstance("Ed25519").generatePublic(new X509EncodedKeySpec(Base64.getDecoder().decode(base64)));
+        }
+
+        @Override
+        public int length() {
+            return LENGTH;
+        }
+
+        @Override
+        public boolean canSign() {
+            return privateKey != null;
+        }
+
+        @Override
+        public void sign(byte[] bytes, int payloadLength) {
+            try {
+                Signature instance = signature.get();
+                instance.initSign(privateKey);
+                instance.update(bytes, 0, payloadLength);
+                instance.sign(bytes, payloadLength, LENGTH);
+            } catch (GeneralSecurityException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        @Override
+        public boolean verify(byte[] bytes, int payloadLength) {
+            try {
+                Signature instance = signature.get();
+                instance.initVerify(publicKey);
+                instance.update(bytes, 0, payloadLength);
+                return instance.verify(bytes, payloadLength, LENGTH);
+            } catch (GeneralSecurityException e) {
+                return false;
+            }
+        }
+    }
+}
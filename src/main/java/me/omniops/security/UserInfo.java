@@ -2,7 +2,10 @@ package me.omniops.security;
 
 import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
 import com.fasterxml.jackson.annotation.JsonProperty;
+import io.quarkus.runtime.annotations.RegisterForReflection;
 import lombok.*;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -12,6 +15,7 @@ import java.util.Map;
 @Setter
 @Getter
 @JsonIgnoreProperties(ignoreUnknown = true)
+@RegisterForReflection
 public class UserInfo {
     @JsonProperty("sub")
     private String id;
@@ -31,4 +35,22 @@ public class UserInfo {
     private List<String> models;
     @JsonProperty("attributes")
     private Map<String, List<String>> attributes;
+
+    /**
+     * @return a copy that shares no list or map with this instance
+     */
+    public UserInfo copy() {
+        Map<String, List<String>> attributesCopy = null;
+        if (attributes != null) {
+            attributesCopy = new LinkedHashMap<>();
+            for (Map.Entry<String, List<String>> attribute : attributes.entrySet()) {
+                attributesCopy.put(attribute.getKey(), copy(attribute.getValue()));
+            }
+        }
+        return new UserInfo(id, username, firstName, lastName, email, copy(roles), copy(groups), copy(models), attributesCopy);
+    }
+
+    private static List<String> copy(List<String> values) {
+        return values != null ? new ArrayList<>(values) : null;
+    }
 }
\ No newline at end of file
@@ -0,0 +1,88 @@
+package me.omniops.security;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Encodes {@link UserInfo} as the Base64 JSON value of the {@code X-User-Info} header. JSON is
+ * written into a per-thread buffer and Base64-encoded into a second per-thread buffer, so the
+ * only object created is the header String itself.
+ */
+final class UserInfoHeaderEncoder {
+
+    private static final ObjectWriter WRITER = new ObjectMapper().writerFor(UserInfo.class);
+    private static final byte[] BASE64_ALPHABET = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/"
+            .getBytes(StandardCharsets.US_ASCII);
+    private static final int INITIAL_BUFFER_SIZE = 1024;
+    private static final int MAX_RETAINED_BUFFER_SIZE = 64 * 1024;
+    private static final ThreadLocal<HeaderBuffer> BUFFER = ThreadLocal.withInitial(HeaderBuffer::new);
+
+    private UserInfoHeaderEncoder() {
+    }
+
+    static String encode(UserInfo userInfo) {
+        HeaderBuffer buffer = BUFFER.get();
+        buffer.reset();
+        try {
+            WRITER.writeValue(buffer, userInfo);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to serialize user info", e);
+        }
+        String header = buffer.toBase64();
+        if (buffer.capacity() > MAX_RETAINED_BUFFER_SIZE) {
+            BUFFER.remove();
+        }
+        return header;
+    }
+
+    private static final class HeaderBuffer extends ByteArrayOutputStream {
+
+        private byte[] encoded = new byte[base64Length(INITIAL_BUFFER_SIZE)];
+
+        private HeaderBuffer() {
+            super(INITIAL_BUFFER_SIZE);
+        }
+
+        private int capacity() {
+            return buf.length;
+        }
+
+        /**
+         * Standard padded Base64 of the buffered bytes, as {@code Base64.getEncoder()} produces.
+         */
+        private String toBase64() {
+            int length = base64Length(count);
+            if (encoded.length < length) {
+                encoded = new byte[length];
+            }
+            int in = 0;
+            int out = 0;
+            int whole = count - count % 3;
+            while (in < whole) {
+                int bits = (buf[in++] & 0xff) << 16 | (buf[in++] & 0xff) << 8 | (buf[in++] & 0xff);
+                encoded[out++] = BASE64_ALPHABET[bits >>> 18];
+                encoded[out++] = BASE64_ALPHABET[(bits >>> 12) & 0x3f];
+                encoded[out++] = BASE64_ALPHABET[(bits >>> 6) & 0x3f];
+                encoded[out++] = BASE64_ALPHABET[bits & 0x3f];
+            }
+            int remaining = count - whole;
+            if (remaining > 0) {
+                int bits = (buf[in] & 0xff) << 16 | (remaining == 2 ? (buf[in + 1] & 0xff) << 8 : 0);
+                encoded[out++] = BASE64_ALPHABET[bits >>> 18];
+                encoded[out++] = BASE64_ALPHABET[(bits >>> 12) & 0x3f];
+                encoded[out++] = remaining == 2 ? BASE64_ALPHABET[(bits >>> 6) & 0x3f] : (byte) '=';
+                encoded[out++] = '=';
+            }
+            return new String(encoded, 0, out, StandardCharsets.ISO_8859_1);
+        }
+
+        private static int base64Length(int bytes) {
+            return (bytes + 2) / 3 * 4;
+        }
+    }
+}
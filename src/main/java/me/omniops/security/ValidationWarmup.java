@@ -0,0 +1,26 @@
+package me.omniops.security;
+
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+
+/**
+ * Runs the token validation path at startup without handing out the synthetic all-roles claims
+ * it is exercised with.
+ */
+@ApplicationScoped
+public class ValidationWarmup {
+
+    private final TokenValidationService tokenValidationService;
+
+    @Inject
+    public ValidationWarmup(TokenValidationService tokenValidationService) {
+        this.tokenValidationService = tokenValidationService;
+    }
+
+    /**
+     * Decodes, authorizes and encodes a synthetic token {@code iterations} times.
+     */
+    public void run(int iterations) {
+        tokenValidationService.warmUp(iterations);
+    }
+}
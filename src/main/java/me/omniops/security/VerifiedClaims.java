@@ -0,0 +1,166 @@
+package me.omniops.security;
+
+import lombok.AccessLevel;
+import lombok.Getter;
+import lombok.ToString;
+
+/**
+ * Claims extracted from a validated token, together with its compiled role and module masks.
+ * Claims read from a token are kept as a {@link ClaimsView}; {@link UserInfo} is only built when
+ * first asked for, so requests that need no more than the masks and the identifying strings
+ * copy nothing out of the token.
+ */
+@Getter
+@ToString
+public final class VerifiedClaims {
+
+    @ToString.Exclude
+    @Getter(AccessLevel.NONE)
+    private final ClaimsView view;
+    @ToString.Exclude
+    @Getter(AccessLevel.NONE)
+    private volatile UserInfo userInfo;
+    private final long grantedRoles;
+    private final long grantedModules;
+    /**
+     * Value of the {@code exp} claim in epoch seconds, or {@code 0} when the token has none.
+     */
+    private final long expiresAt;
+    /**
+     * {@link PolicySnapshot#getNamesVersion()} of the indexes the masks were built with.
+     */
+    private final long namesVersion;
+    /**
+     * {@code sid}, {@code jti} and {@code iat} of claims not read from a token, such as those of
+     * a forwarded {@code X-User-Context} envelope.
+     */
+    @ToString.Exclude
+    @Getter(AccessLevel.NONE)
+    private final String sessionId;
+    @ToString.Exclude
+    @Getter(AccessLevel.NONE)
+    private final String tokenId;
+    @ToString.Exclude
+    @Getter(AccessLevel.NONE)
+    private final long issuedAt;
+    /**
+     * Whether these claims came from a forwarded {@code X-User-Context} envelope rather than a token.
+     */
+    @Getter(AccessLevel.PACKAGE)
+    private final boolean forwarded;
+    @ToString.Exclude
+    @Getter(AccessLevel.NONE)
+    private volatile String userInfoHeader;
+    @ToString.Exclude
+    @Getter(AccessLevel.NONE)
+    volatile UserContextCodec.Encoded userContext;
+
+    public VerifiedClaims(UserInfo userInfo, long grantedRoles, long grantedModules, long expiresAt) {
+        this(userInfo, grantedRoles, grantedModules, expiresAt, 0L);
+    }
+
+    public VerifiedClaims(UserInfo userInfo, long grantedRoles, long grantedModules, long expiresAt, long namesVersion) {
+        this(null, userInfo, grantedRoles, grantedModules, expiresAt, namesVersion, null, null, 0L, false);
+    }
+
+    public VerifiedClaims(ClaimsView view, long grantedRoles, long grantedModules, long expiresAt, long namesVersion) {
+        this(view, null, grantedRoles, grantedModules, expiresAt, namesVersion, null, null, 0L, false);
+    }
+
+    /**
+     * Claims of a forwarded {@code X-User-Context} envelope.
+     */
+    VerifiedClaims(UserInfo userInfo, long grantedRoles, long grantedModules, long expiresAt, long namesVersion,
+                   String sessionId, String tokenId, long issuedAt) {
+        this(null, userInfo, grantedRoles, grantedModules, expiresAt, namesVersion, sessionId, tokenId, issuedAt, true);
+    }
+
+    private VerifiedClaims(ClaimsView view, UserInfo userInfo, long grantedRoles, long grantedModules, long expiresAt,
+                           long namesVersion, String sessionId, String tokenId, long issuedAt, boolean forwarded) {
+        this.view = view;
+        this.userInfo = userInfo;
+        this.grantedRoles = grantedRoles;
+        this.grantedModules = grantedModules;
+        this.expiresAt = expiresAt;
+        this.namesVersion = namesVersion;
+        this.sessionId = sessionId;
+        this.tokenId = tokenId;
+        this.issuedAt = issuedAt;
+        this.forwarded = forwarded;
+    }
+
+    /**
+     * @return a copy of the user's claims. Cached claims are shared by every request carrying the
+     * same token, so callers may change the copy without affecting the others.
+     */
+    public UserInfo getUserInfo() {
+        return userInfo().copy();
+    }
+
+    /**
+     * @return the shared claims, materialized from the token on first access; never handed out.
+     */
+    private UserInfo userInfo() {
+        UserInfo info = userInfo;
+        if (info == null) {
+            info = view.toUserInfo();
+            userInfo = info;
+        }
+        return info;
+    }
+
+    @ToString.Include
+    public String getSubject() {
+        return view != null ? view.getSubject() : userInfo.getId();
+    }
+
+    @ToString.Include
+    public String getUsername() {
+        return view != null ? view.getUsername() : userInfo.getUsername();
+    }
+
+    public String getEmail() {
+        return view != null ? view.getEmail() : userInfo.getEmail();
+    }
+
+    public String getGivenName() {
+        return view != null ? view.getGivenName() : userInfo.getFirstName();
+    }
+
+    public String getFamilyName() {
+        return view != null ? view.getFamilyName() : userInfo.getLastName();
+    }
+
+    /**
+     * @return the {@code sid} claim, or {@code null} if unknown
+     */
+    public String getSessionId() {
+        return view != null ? view.getSessionId() : sessionId;
+    }
+
+    /**
+     * @return the {@code jti} claim, or {@code null} if unknown
+     */
+    public String getTokenId() {
+        return view != null ? view.getTokenId() : tokenId;
+    }
+
+    /**
+     * @return the {@code iat} claim in epoch seconds, or {@code 0} if unknown
+     */
+    public long getIssuedAt() {
+        return view != null ? view.getIssuedAt() : issuedAt;
+    }
+
+    /**
+     * @return the {@code X-User-Info} header value for these claims, encoded once and then reused.
+     */
+    public String getUserInfoHeader() {
+        String header = userInfoHeader;
+        if (header == null) {
+            header = UserInfoHeaderEncoder.encode(userInfo());
+            userInfoHeader = header;
+        }
+        return header;
+    }
+}
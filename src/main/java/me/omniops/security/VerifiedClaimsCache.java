@@ -0,0 +1,163 @@
+package me.omniops.security;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.enterprise.event.Observes;
+import jakarta.inject.Inject;
+import me.omniops.cluster.InvalidationEvent;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * Bounded cache of {@link VerifiedClaims} keyed by the {@link TokenDigest} of the raw token.
+ * Entries expire at the token's {@code exp} claim and are evicted by size (W-TinyLFU), so clients
+ * reusing an access token skip claim decoding, extraction and role compilation.
+ * <p>
+ * Tokens the loader rejects are remembered in a second, smaller cache together with their
+ * {@link TokenVerificationException}, so a client retrying an expired or garbage token is
+ * answered without decoding it again.
+ * <p>
+ * Hits, misses, evictions and load times of the claims cache are published as the Micrometer
+ * {@code cache.*} meters tagged {@code cache=portal.security.claims}.
+ */
+@ApplicationScoped
+public class VerifiedClaimsCache {
+
+    private final boolean enabled;
+    private final Cache<TokenDigest, VerifiedClaims> cache;
+    private final Cache<TokenDigest, TokenVerificationException> rejected;
+
+    @Inject
+    public VerifiedClaimsCache(SecurityConfig securityConfig, MeterRegistry registry) {
+        SecurityConfig.ClaimsCache config = securityConfig.claimsCache();
+        this.enabled = config.enabled();
+        long defaultTtlNanos = config.defaultTtl().toNanos();
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(config.maximumSize())
+                .expireAfter(new ExpireAtTokenExpiry(defaultTtlNanos))
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(registry, cache, "portal.security.claims");
+        SecurityConfig.Rejections rejections = securityConfig.rejections();
+        this.rejected = Caffeine.newBuilder()
+                .maximumSize(rejections.cacheSize())
+                .expireAfterWrite(rejections.cacheTtl())
+                .build();
+    }
+
+    /**
+     * Returns the cached claims of {@code token}, computing them with {@code loader} on a miss.
+     *
+     * @throws TokenVerificationException if the loader rejects the token, now or recently
+     */
+    public VerifiedClaims get(String token, Function<String, VerifiedClaims> loader) {
+        if (!enabled) {
+            return loader.apply(token);
+        }
+        TokenDigest digest = TokenDigest.of(token);
+        TokenVerificationException rejection = rejected.getIfPresent(digest);
+        if (rejection != null) {
+            throw rejection;
+        }
+        try {
+            return cache.get(digest, key -> loader.apply(token));
+        } catch (TokenVerificationException e) {
+            rejected.put(digest, e);
+            throw e;
+        }
+    }
+
+    /**
+     * Recomputes the claims of {@code token}, replacing any cached entry.
+     *
+     * @throws TokenVerificationException if the loader rejects the token
+     */
+    public VerifiedClaims refresh(String token, Function<String, VerifiedClaims> loader) {
+        if (!enabled) {
+            return loader.apply(token);
+        }
+        TokenDigest digest = TokenDigest.of(token);
+        try {
+            VerifiedClaims claims = loader.apply(token);
+            cache.put(digest, claims);
+            return claims;
+        } catch (TokenVerificationException e) {
+            cache.invalidate(digest);
+            rejected.put(digest, e);
+            throw e;
+        }
+    }
+
+    public void invalidateAll() {
+        cache.invalidateAll();
+        rejected.invalidateAll();
+    }
+
+    /**
+     * Drops the cached claims of every token issued to {@code subject}.
+     */
+    public void invalidateSubject(String subject) {
+        cache.asMap().values().removeIf(claims -> subject.equals(claims.getSubject()));
+    }
+
+    void onInvalidation(@Observes InvalidationEvent event) {
+        switch (event.type()) {
+            case LOGOUT -> invalidateSubject(event.key());
+            case ALL -> invalidateAll();
+            default -> {
+            }
+        }
+    }
+
+    public long size() {
+        return cache.estimatedSize();
+    }
+
+    /**
+     * @return the number of recently rejected tokens remembered.
+     */
+    public long rejectedSize() {
+        return rejected.estimatedSize();
+    }
+
+    /**
+     * @return hit, miss and eviction counters of the cache.
+     */
+    public CacheStats stats() {
+        return cache.stats();
+    }
+
+    private static final class ExpireAtTokenExpiry implements Expiry<TokenDigest, VerifiedClaims> {
+
+        private final long defaultTtlNanos;
+
+        private ExpireAtTokenExpiry(long defaultTtlNanos) {
+            this.defaultTtlNanos = defaultTtlNanos;
+        }
+
+        @Override
+        public long expireAfterCreate(TokenDigest key, VerifiedClaims value, long currentTime) {
+            if (value.getExpiresAt() <= 0) {
+                return defaultTtlNanos;
+            }
+            long remainingSeconds = value.getExpiresAt() - TimeUnit.MILLISECONDS.toSeconds(System.currentTimeMillis());
+            return Math.max(0L, TimeUnit.SECONDS.toNanos(remainingSeconds));
+        }
+
+        @Override
+        public long expireAfterUpdate(TokenDigest key, VerifiedClaims value, long currentTime, long currentDuration) {
+            return currentDuration;
+        }
+
+        @Override
+        public long expireAfterRead(TokenDigest key, VerifiedClaims value, long currentTime, long currentDuration) {
+            return currentDuration;
+        }
+    }
+}
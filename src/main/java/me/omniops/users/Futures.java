@@ -0,0 +1,25 @@
+package me.omniops.users;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+final class Futures {
+
+    private Futures() {
+    }
+
+    /**
+     * Joins {@code future}, rethrowing the Keycloak client exception (e.g. {@code NotFoundException})
+     * as if the call had been made directly.
+     */
+    static <T> T join(CompletableFuture<T> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw e;
+        }
+    }
+}
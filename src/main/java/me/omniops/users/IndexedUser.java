@@ -0,0 +1,27 @@
+package me.omniops.users;
+
+import me.omniops.security.UserInfo;
+
+import java.util.List;
+
+/**
+ * A user as held by {@link UserIndex}: the searchable fields and the names of the realm roles,
+ * groups (as paths) and modules the user is a direct member of.
+ */
+record IndexedUser(String id, String username, String email, String firstName, String lastName,
+                   List<String> roles, List<String> groups, List<String> modules) {
+
+    IndexedUser {
+        roles = List.copyOf(roles);
+        groups = List.copyOf(groups);
+        modules = List.copyOf(modules);
+    }
+
+    IndexedUser withRoles(List<String> roles) {
+        return new IndexedUser(id, username, email, firstName, lastName, roles, groups, modules);
+    }
+
+    UserInfo toUserInfo() {
+        return new UserInfo(id, username, firstName, lastName, email, roles, groups, modules, null);
+    }
+}
@@ -1,36 +1,143 @@
 package me.omniops.users;
 
+import jakarta.annotation.PreDestroy;
 import jakarta.enterprise.context.ApplicationScoped;
 import jakarta.inject.Inject;
+import lombok.extern.slf4j.Slf4j;
+import org.jboss.resteasy.client.jaxrs.ResteasyClientBuilder;
+import org.jboss.resteasy.client.jaxrs.internal.ResteasyClientBuilderImpl;
+import org.jboss.resteasy.plugins.providers.FormUrlEncodedProvider;
+import org.jboss.resteasy.plugins.providers.JaxrsFormProvider;
 import org.keycloak.OAuth2Constants;
 import org.keycloak.admin.client.Keycloak;
+import org.keycloak.admin.client.JacksonProvider;
 import org.keycloak.admin.client.KeycloakBuilder;
 import org.keycloak.admin.client.resource.RealmResource;
 
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Holds one long-lived Keycloak admin client with a bounded connection pool. The admin token is
+ * reused across calls and refreshed in the background before it expires, so calls rarely wait for
+ * a token request; the client is closed on shutdown. The client is always built on RESTEasy
+ * Classic, whichever JAX-RS client implementation the service itself uses.
+ */
+@Slf4j
 @ApplicationScoped
 public class KeycloakConnection {
 
     @Inject
     PortalConfig portalConfig;
 
+    private volatile Keycloak keycloak;
+    private final Map<String, RealmResource> realms = new ConcurrentHashMap<>();
+    private ScheduledExecutorService tokenRefresher;
+    private ScheduledFuture<?> tokenRefresh;
 
+    /**
+     * @return the shared admin client. Callers must not close it.
+     */
     public Keycloak getConnection() {
-        return KeycloakBuilder.builder()
-                .serverUrl(portalConfig.config().sso().domain())
-                .realm("master")
-                .clientId(portalConfig.config().sso().clientId())
-                .clientSecret(portalConfig.config().sso().clientSecret())
-                .grantType(OAuth2Constants.CLIENT_CREDENTIALS)
-                .build();
+        Keycloak current = keycloak;
+        if (current == null || current.isClosed()) {
+            synchronized (this) {
+                current = keycloak;
+                if (current == null || current.isClosed()) {
+                    current = createConnection();
+                    realms.clear();
+                    keycloak = current;
+                    scheduleTokenRefresh(current);
+                }
+            }
+        }
+        return current;
     }
 
     public RealmResource getRealmConnection() {
-        return KeycloakBuilder.builder()
-                .serverUrl(portalConfig.config().sso().domain())
-                .realm("master")
-                .clientId(portalConfig.config().sso().clientId())
-                .clientSecret(portalConfig.config().sso().clientSecret())
+        return getRealmConnection(portalConfig.config().sso().realm());
+    }
+
+    public RealmResource getRealmConnection(String realm) {
+        Keycloak connection = getConnection();
+        return realms.computeIfAbsent(realm, connection::realm);
+    }
+
+    private Keycloak createConnection() {
+        PortalConfig.Sso sso = portalConfig.config().sso();
+        PortalConfig.Pool pool = sso.pool();
+        log.info("Opening Keycloak admin connection to {} (pool size {})", sso.domain(), pool.size());
+        // ClientBuilder.newBuilder() returns whichever implementation is found first, which is not
+        // RESTEasy Classic in services running RESTEasy Reactive. Under Quarkus the builder also
+        // starts without RESTEasy's built-in providers, so the form writer for the token request
+        // and the JSON provider Keycloak registers on its own clients are added here.
+        ResteasyClientBuilder clientBuilder = new ResteasyClientBuilderImpl()
+                .connectionPoolSize(pool.size())
+                .maxPooledPerRoute(pool.maxPerRoute())
+                .connectionCheckoutTimeout(pool.checkoutTimeout().toMillis(), TimeUnit.MILLISECONDS)
+                .connectionTTL(pool.connectionTtl().toMillis(), TimeUnit.MILLISECONDS);
+        clientBuilder.register(JaxrsFormProvider.class);
+        clientBuilder.register(FormUrlEncodedProvider.class);
+        clientBuilder.register(JacksonProvider.class, 100);
+        Keycloak connection = KeycloakBuilder.builder()
+                .serverUrl(sso.domain())
+                .realm(sso.adminRealm())
+                .clientId(sso.clientId())
+                .clientSecret(sso.clientSecret())
                 .grantType(OAuth2Constants.CLIENT_CREDENTIALS)
-                .build().realm("omniops");
+                .resteasyClient(clientBuilder.build())
+                .build();
+        connection.tokenManager().setMinTokenValidity(sso.tokenMinValidity().toSeconds());
+        return connection;
+    }
+
+    /**
+     * Renews the admin token every half {@code token-min-validity}. TokenManager only requests a
+     * new token once the current one is within that window of expiring, so most renewals happen
+     * here rather than in a caller's request.
+     */
+    private void scheduleTokenRefresh(Keycloak connection) {
+        if (tokenRefresh != null) {
+            tokenRefresh.cancel(false);
+        }
+        if (tokenRefresher == null) {
+            tokenRefresher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "keycloak-token-refresh");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        long intervalMillis = Math.max(1_000L, portalConfig.config().sso().tokenMinValidity().toMillis() / 2);
+        tokenRefresh = tokenRefresher.scheduleWithFixedDelay(() -> {
+            if (connection.isClosed()) {
+                return;
+            }
+            try {
+                connection.tokenManager().getAccessToken();
+            } catch (RuntimeException e) {
+                // The next call requests a token itself.
+                log.warn("Could not refresh the Keycloak admin token: {}", e.getMessage());
+            }
+        }, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    synchronized void close() {
+        if (tokenRefresher != null) {
+            tokenRefresher.shutdownNow();
+            tokenRefresher = null;
+            tokenRefresh = null;
+        }
+        Keycloak current = keycloak;
+        keycloak = null;
+        realms.clear();
+        if (current != null && !current.isClosed()) {
+            log.info("Closing Keycloak admin connection");
+            current.close();
+        }
     }
 }
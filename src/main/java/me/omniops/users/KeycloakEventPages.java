@@ -0,0 +1,51 @@
+package me.omniops.users;
+
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.temporal.ChronoUnit;
+import java.util.Iterator;
+import java.util.function.Consumer;
+import java.util.function.ToLongFunction;
+import java.util.stream.Stream;
+
+/**
+ * Walks the realm's user or admin events since a point in time. Keycloak lists events newest
+ * first and filters them by day only, so a walk pages back until it reaches events older than
+ * the newest one of the previous walk.
+ */
+final class KeycloakEventPages {
+
+    private KeycloakEventPages() {
+    }
+
+    /**
+     * Hands every event at or after {@code since} to {@code handler}, newest first. Events at
+     * exactly {@code since} are seen twice, so handlers must be idempotent.
+     *
+     * @return the time of the newest event, or {@code since} if there was none
+     */
+    static <E> long drain(long since, PagedFetch.PageLoader<E> loader, int pageSize, ToLongFunction<E> time, Consumer<E> handler) {
+        long newest = since;
+        try (Stream<E> events = PagedFetch.stream(loader, pageSize, 1, Runnable::run)) {
+            Iterator<E> iterator = events.iterator();
+            while (iterator.hasNext()) {
+                E event = iterator.next();
+                long eventTime = time.applyAsLong(event);
+                if (eventTime < since) {
+                    break;
+                }
+                newest = Math.max(newest, eventTime);
+                handler.accept(event);
+            }
+        }
+        return newest;
+    }
+
+    /**
+     * @return the {@code dateFrom} to list events from {@code epochMillis} on. Keycloak compares
+     * it by day in the server's time zone; starting a day early covers any zone.
+     */
+    static String day(long epochMillis) {
+        return Instant.ofEpochMilli(epochMillis).minus(1, ChronoUnit.DAYS).atZone(ZoneOffset.UTC).toLocalDate().toString();
+    }
+}
@@ -0,0 +1,65 @@
+package me.omniops.users;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Latency of the Keycloak admin calls made by {@link UserService}, tagged by operation and
+ * outcome.
+ */
+@ApplicationScoped
+public class KeycloakMetrics {
+
+    private final MeterRegistry registry;
+    private final Map<String, Timer[]> timers = new ConcurrentHashMap<>();
+
+    @Inject
+    public KeycloakMetrics(MeterRegistry registry) {
+        this.registry = registry;
+    }
+
+    <T> T timed(String operation, Supplier<T> call) {
+        Timer[] operationTimers = timers(operation);
+        long start = System.nanoTime();
+        try {
+            T result = call.get();
+            operationTimers[0].record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            return result;
+        } catch (RuntimeException e) {
+            operationTimers[1].record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            throw e;
+        }
+    }
+
+    void run(String operation, Runnable call) {
+        timed(operation, () -> {
+            call.run();
+            return null;
+        });
+    }
+
+    private Timer[] timers(String operation) {
+        Timer[] operationTimers = timers.get(operation);
+        return operationTimers != null ? operationTimers
+                : timers.computeIfAbsent(operation, op -> new Timer[]{timer(op, "success"), timer(op, "error")});
+    }
+
+    private Timer timer(String operation, String outcome) {
+        return Timer.builder("portal.keycloak.requests")
+                .description("Keycloak admin API calls made by UserService")
+                .tag("operation", operation)
+                .tag("outcome", outcome)
+                .publishPercentileHistogram()
+                .minimumExpectedValue(Duration.ofMillis(1))
+                .maximumExpectedValue(Duration.ofSeconds(30))
+                .register(registry);
+    }
+}
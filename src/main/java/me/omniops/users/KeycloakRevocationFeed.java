@@ -0,0 +1,163 @@
+package me.omniops.users;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PreDestroy;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+import lombok.extern.slf4j.Slf4j;
+import me.omniops.revocation.Revocation;
+import me.omniops.revocation.RevocationConfig;
+import me.omniops.revocation.RevocationFeed;
+import org.keycloak.admin.client.resource.RealmResource;
+import org.keycloak.representations.idm.AdminEventRepresentation;
+import org.keycloak.representations.idm.EventRepresentation;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Turns the realm's events into {@link Revocation}s, polled every
+ * {@code portal.revocation.keycloak-events.poll-interval}:
+ * <ul>
+ *     <li>{@code LOGOUT} user events revoke the session,</li>
+ *     <li>deleting a user, disabling it or logging it out from the admin console revokes the
+ *     subject, and deleting a single session revokes that session.</li>
+ * </ul>
+ * The first poll looks back {@code portal.revocation.retention}; later ones continue from the
+ * newest event seen, see {@link KeycloakEventPages}.
+ */
+@Slf4j
+@ApplicationScoped
+public class KeycloakRevocationFeed implements RevocationFeed {
+
+    private static final List<String> USER_EVENT_TYPES = List.of("LOGOUT");
+    private static final List<String> ADMIN_OPERATION_TYPES = List.of("DELETE", "ACTION", "UPDATE");
+    private static final List<String> ADMIN_RESOURCE_TYPES = List.of("USER", "USER_SESSION");
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    @Inject
+    RevocationConfig revocationConfig;
+    @Inject
+    KeycloakConnection keycloakConnection;
+    @Inject
+    KeycloakMetrics keycloakMetrics;
+
+    private ScheduledExecutorService scheduler;
+    private Consumer<Revocation> sink;
+    /**
+     * Times in epoch millis of the newest events seen; only the poller thread touches them.
+     */
+    private long userEventsSeen;
+    private long adminEventsSeen;
+
+    @Override
+    public void start(Consumer<Revocation> sink) {
+        RevocationConfig.KeycloakEvents config = revocationConfig.keycloakEvents();
+        if (!config.enabled()) {
+            return;
+        }
+        this.sink = sink;
+        long since = System.currentTimeMillis() - revocationConfig.retention().toMillis();
+        userEventsSeen = since;
+        adminEventsSeen = since;
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "keycloak-revocation-feed");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(this::poll, 0, config.pollInterval().toMillis(), TimeUnit.MILLISECONDS);
+        log.info("Polling Keycloak events for revocations every {}", config.pollInterval());
+    }
+
+    void poll() {
+        RealmResource realm;
+        try {
+            realm = keycloakConnection.getRealmConnection();
+        } catch (RuntimeException e) {
+            log.warn("Cannot poll Keycloak events for revocations: {}", e.getMessage());
+            return;
+        }
+        try {
+            long since = userEventsSeen;
+            userEventsSeen = KeycloakEventPages.drain(since, (first, max) -> keycloakMetrics.timed("user_events",
+                            () -> realm.getEvents(USER_EVENT_TYPES, null, null, KeycloakEventPages.day(since), null, null, first, max)),
+                    pageSize(), EventRepresentation::getTime, this::onUserEvent);
+        } catch (RuntimeException e) {
+            log.warn("Polling Keycloak user events failed: {}", e.getMessage());
+        }
+        try {
+            long since = adminEventsSeen;
+            adminEventsSeen = KeycloakEventPages.drain(since, (first, max) -> keycloakMetrics.timed("admin_events",
+                            () -> realm.getAdminEvents(ADMIN_OPERATION_TYPES, null, null, null, null, null,
+                                    ADMIN_RESOURCE_TYPES, KeycloakEventPages.day(since), null, first, max)),
+                    pageSize(), AdminEventRepresentation::getTime, this::onAdminEvent);
+        } catch (RuntimeException e) {
+            log.warn("Polling Keycloak admin events failed: {}", e.getMessage());
+        }
+    }
+
+    @PreDestroy
+    @Override
+    public void close() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+        }
+    }
+
+    private int pageSize() {
+        return revocationConfig.keycloakEvents().pageSize();
+    }
+
+    private void onUserEvent(EventRepresentation event) {
+        long revokedAt = event.getTime() / 1000;
+        if (event.getSessionId() != null) {
+            sink.accept(Revocation.session(event.getSessionId(), revokedAt));
+        } else if (event.getUserId() != null) {
+            sink.accept(Revocation.subject(event.getUserId(), revokedAt));
+        }
+    }
+
+    private void onAdminEvent(AdminEventRepresentation event) {
+        String[] path = event.getResourcePath() != null ? event.getResourcePath().split("/") : new String[0];
+        if (path.length < 2) {
+            return;
+        }
+        long revokedAt = event.getTime() / 1000;
+        String operation = event.getOperationType();
+        if ("USER_SESSION".equals(event.getResourceType())) {
+            if ("DELETE".equals(operation) && "sessions".equals(path[0])) {
+                sink.accept(Revocation.session(path[1], revokedAt));
+            }
+            return;
+        }
+        if (!"users".equals(path[0])) {
+            return;
+        }
+        boolean revoked = switch (operation) {
+            case "DELETE" -> path.length == 2;
+            case "ACTION" -> path.length == 3 && "logout".equals(path[2]);
+            case "UPDATE" -> path.length == 2 && disabled(event.getRepresentation());
+            default -> false;
+        };
+        if (revoked) {
+            sink.accept(Revocation.subject(path[1], revokedAt));
+        }
+    }
+
+    private static boolean disabled(String representation) {
+        if (representation == null) {
+            return false;
+        }
+        try {
+            JsonNode enabled = MAPPER.readTree(representation).get("enabled");
+            return enabled != null && enabled.isBoolean() && !enabled.booleanValue();
+        } catch (IOException e) {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,216 @@
+package me.omniops.users;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Write-behind queue for user notification attributes. Pending template codes are coalesced per
+ * user into one Keycloak update and flushed when {@code batch-size} attributes are queued or every
+ * {@code flush-interval}. Writes run on a fixed pool of {@code max-concurrency} threads and failed
+ * writes are retried with exponential backoff. Every returned future completes: with the write,
+ * after the last retry, or exceptionally once the writer is closed.
+ */
+@Slf4j
+class NotificationStatusWriter {
+
+    @FunctionalInterface
+    interface AttributeWriter {
+        void write(String userId, Map<String, String> attributes);
+    }
+
+    private final AttributeWriter attributeWriter;
+    private final PortalConfig.NotificationWriter config;
+    private final Map<String, PendingUpdate> pending = new ConcurrentHashMap<>();
+    /**
+     * Updates taken off {@link #pending} whose write has not finished yet, failed on close.
+     */
+    private final Set<PendingUpdate> inFlight = ConcurrentHashMap.newKeySet();
+    private final AtomicInteger queuedAttributes = new AtomicInteger();
+    private final AtomicBoolean flushScheduled = new AtomicBoolean();
+    private final ScheduledExecutorService scheduler;
+    private final ExecutorService writers;
+    private final Timer flushes;
+    private final Counter failedWrites;
+    private volatile boolean closed;
+
+    NotificationStatusWriter(PortalConfig.NotificationWriter config, MeterRegistry registry, AttributeWriter attributeWriter) {
+        this.config = config;
+        this.attributeWriter = attributeWriter;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(daemonThreads("notification-status-flush"));
+        this.writers = Executors.newFixedThreadPool(config.maxConcurrency(), daemonThreads("notification-status-writer"));
+        Gauge.builder("portal.users.notifications.queue", queuedAttributes, AtomicInteger::get)
+                .description("Notification attributes waiting to be flushed")
+                .register(registry);
+        this.flushes = Timer.builder("portal.users.notifications.flush")
+                .description("Time from the start of a flush until every write it issued has finished")
+                .register(registry);
+        this.failedWrites = Counter.builder("portal.users.notifications.failed")
+                .description("Notification status updates given up on")
+                .register(registry);
+        long intervalMillis = config.flushInterval().toMillis();
+        scheduler.scheduleWithFixedDelay(this::flush, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Queues {@code templateCode=value} for {@code userId}. The returned future completes once the
+     * update containing it has been written to Keycloak, or exceptionally after the last retry or
+     * when the writer is closed.
+     */
+    CompletableFuture<Void> submit(String userId, String templateCode, String value) {
+        if (closed) {
+            return CompletableFuture.failedFuture(new RejectedExecutionException("Notification status writer is closed"));
+        }
+        PendingUpdate update = pending.compute(userId, (id, existing) -> {
+            PendingUpdate target = existing != null ? existing : new PendingUpdate();
+            if (target.attributes.putIfAbsent(templateCode, value) == null) {
+                queuedAttributes.incrementAndGet();
+            }
+            return target;
+        });
+        if (queuedAttributes.get() >= config.batchSize() && flushScheduled.compareAndSet(false, true)) {
+            try {
+                scheduler.execute(this::flush);
+            } catch (RejectedExecutionException e) {
+                // Closed meanwhile; close() flushes or fails what is still pending.
+                flushScheduled.set(false);
+            }
+        }
+        return update.completion;
+    }
+
+    /**
+     * @return number of attributes waiting to be flushed.
+     */
+    int queueDepth() {
+        return queuedAttributes.get();
+    }
+
+    void flush() {
+        flushScheduled.set(false);
+        if (pending.isEmpty()) {
+            return;
+        }
+        long start = System.nanoTime();
+        CompletableFuture<?>[] writes = pending.keySet().stream()
+                .map(this::dispatch)
+                .toArray(CompletableFuture[]::new);
+        CompletableFuture.allOf(writes).whenComplete((ignored, error) ->
+                flushes.record(System.nanoTime() - start, TimeUnit.NANOSECONDS));
+    }
+
+    /**
+     * Flushes what is queued and waits for the writes and their retries, up to ten flush
+     * intervals. Updates still unwritten after that are failed, as are updates submitted later.
+     */
+    void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        flush();
+        CompletableFuture<?>[] writes = inFlight.stream().map(update -> update.completion).toArray(CompletableFuture[]::new);
+        try {
+            CompletableFuture.allOf(writes).get(config.flushInterval().toMillis() * 10, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException | TimeoutException e) {
+            // Failed writes are already reported; unfinished ones are failed below.
+        }
+        // Cancels retries still waiting for their backoff.
+        scheduler.shutdownNow();
+        writers.shutdownNow();
+        // Submitted concurrently with close, after the last flush.
+        pending.keySet().forEach(userId -> {
+            PendingUpdate update = pending.remove(userId);
+            if (update != null) {
+                queuedAttributes.addAndGet(-update.attributes.size());
+                inFlight.add(update);
+            }
+        });
+        if (!inFlight.isEmpty()) {
+            log.warn("Notification status updates still pending at shutdown: {}", inFlight.size());
+            RejectedExecutionException closedError = new RejectedExecutionException("Notification status writer is closed");
+            inFlight.forEach(update -> fail(update, closedError));
+        }
+    }
+
+    private CompletableFuture<Void> dispatch(String userId) {
+        PendingUpdate update = pending.remove(userId);
+        if (update == null) {
+            return CompletableFuture.completedFuture(null);
+        }
+        queuedAttributes.addAndGet(-update.attributes.size());
+        inFlight.add(update);
+        execute(userId, update, 1);
+        return update.completion;
+    }
+
+    private void execute(String userId, PendingUpdate update, int attempt) {
+        try {
+            writers.execute(() -> write(userId, update, attempt));
+        } catch (RejectedExecutionException e) {
+            fail(update, e);
+        }
+    }
+
+    private void write(String userId, PendingUpdate update, int attempt) {
+        try {
+            attributeWriter.write(userId, update.attributes);
+            inFlight.remove(update);
+            update.completion.complete(null);
+        } catch (RuntimeException e) {
+            if (attempt >= config.maxAttempts()) {
+                log.error("Giving up on notification status update for userId: {} after {} attempts: {}", userId, attempt, e.getMessage());
+                fail(update, e);
+                return;
+            }
+            long backoff = Math.min(config.maxBackoff().toMillis(), config.initialBackoff().toMillis() << Math.min(attempt - 1, 20));
+            log.warn("Notification status update for userId: {} failed (attempt {}), retrying in {} ms: {}", userId, attempt, backoff, e.getMessage());
+            try {
+                scheduler.schedule(() -> execute(userId, update, attempt + 1), backoff, TimeUnit.MILLISECONDS);
+            } catch (RejectedExecutionException shutdown) {
+                fail(update, e);
+            }
+        }
+    }
+
+    private void fail(PendingUpdate update, Throwable error) {
+        inFlight.remove(update);
+        if (update.completion.completeExceptionally(error)) {
+            failedWrites.increment();
+        }
+    }
+
+    private static ThreadFactory daemonThreads(String name) {
+        AtomicInteger counter = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, name + "-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    private static final class PendingUpdate {
+        private final Map<String, String> attributes = new LinkedHashMap<>();
+        private final CompletableFuture<Void> completion = new CompletableFuture<>();
+    }
+}
@@ -0,0 +1,97 @@
+package me.omniops.users;
+
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Lazily walks a {@code first}/{@code max} paged Keycloak listing. Up to {@code prefetch} page
+ * requests are in flight at once, so pages load concurrently while memory stays bounded by
+ * {@code prefetch * pageSize} elements whatever the total size.
+ */
+final class PagedFetch<T> extends Spliterators.AbstractSpliterator<T> {
+
+    @FunctionalInterface
+    interface PageLoader<T> {
+        List<T> load(int first, int max);
+    }
+
+    private final PageLoader<T> loader;
+    private final int pageSize;
+    private final int prefetch;
+    private final Executor executor;
+    private final Deque<CompletableFuture<List<T>>> inFlight = new ArrayDeque<>();
+    private Iterator<T> current = Collections.emptyIterator();
+    private int nextFirst;
+    private boolean exhausted;
+
+    private PagedFetch(PageLoader<T> loader, int pageSize, int prefetch, Executor executor) {
+        super(Long.MAX_VALUE, Spliterator.ORDERED | Spliterator.NONNULL);
+        if (pageSize <= 0 || prefetch <= 0) {
+            throw new IllegalArgumentException("pageSize and prefetch must be positive");
+        }
+        this.loader = loader;
+        this.pageSize = pageSize;
+        this.prefetch = prefetch;
+        this.executor = executor;
+    }
+
+    static <T> Stream<T> stream(PageLoader<T> loader, int pageSize, int prefetch, Executor executor) {
+        PagedFetch<T> fetch = new PagedFetch<>(loader, pageSize, prefetch, executor);
+        return StreamSupport.stream(fetch, false).onClose(fetch::cancel);
+    }
+
+    @Override
+    public boolean tryAdvance(Consumer<? super T> action) {
+        while (!current.hasNext()) {
+            fill();
+            CompletableFuture<List<T>> next = inFlight.poll();
+            if (next == null) {
+                return false;
+            }
+            List<T> page;
+            try {
+                page = Futures.join(next);
+            } catch (RuntimeException e) {
+                exhausted = true;
+                cancel();
+                throw e;
+            }
+            if (page.size() < pageSize) {
+                // A short page is the last one; anything requested beyond it is empty.
+                exhausted = true;
+                cancel();
+            }
+            current = page.iterator();
+        }
+        action.accept(current.next());
+        return true;
+    }
+
+    private void fill() {
+        while (!exhausted && inFlight.size() < prefetch) {
+            int first = nextFirst;
+            nextFirst += pageSize;
+            inFlight.add(CompletableFuture.supplyAsync(() -> {
+                List<T> page = loader.load(first, pageSize);
+                return page != null ? page : Collections.<T>emptyList();
+            }, executor));
+        }
+    }
+
+    private void cancel() {
+        CompletableFuture<List<T>> pending;
+        while ((pending = inFlight.poll()) != null) {
+            pending.cancel(false);
+        }
+    }
+}
@@ -2,6 +2,10 @@ package me.omniops.users;
 
 import io.quarkus.runtime.annotations.StaticInitSafe;
 import io.smallrye.config.ConfigMapping;
+import io.smallrye.config.WithDefault;
+
+import java.time.Duration;
+import java.util.Optional;
 
 @StaticInitSafe
 @ConfigMapping(prefix = "portal")
@@ -11,6 +15,8 @@ public interface PortalConfig {
 
     interface Config {
         Sso sso();
+
+        Users users();
     }
 
     interface Sso {
@@ -21,6 +27,140 @@ public interface PortalConfig {
         String clientId();
 
         String clientSecret();
+
+        /**
+         * Realm the admin client authenticates against.
+         */
+        @WithDefault("master")
+        String adminRealm();
+
+        /**
+         * The admin token is refreshed once it has less validity left than this, by a background
+         * task that checks every half of this period.
+         */
+        @WithDefault("30S")
+        Duration tokenMinValidity();
+
+        Pool pool();
+    }
+
+    interface Pool {
+        @WithDefault("20")
+        int size();
+
+        @WithDefault("20")
+        int maxPerRoute();
+
+        @WithDefault("5S")
+        Duration checkoutTimeout();
+
+        @WithDefault("5M")
+        Duration connectionTtl();
+    }
+
+    interface Users {
+        UserCache cache();
+
+        Paging paging();
+
+        NotificationWriter notificationWriter();
+
+        Index index();
+    }
+
+    /**
+     * Settings of the local user index, see {@link UserIndexSync}.
+     */
+    interface Index {
+        @WithDefault("false")
+        boolean enabled();
+
+        /**
+         * Users, role members and group members requested per page during a full load.
+         */
+        @WithDefault("500")
+        int pageSize();
+
+        /**
+         * How often the realm's user and admin events are polled for changed users.
+         */
+        @WithDefault("30S")
+        Duration syncInterval();
+
+        /**
+         * How often the index is rebuilt from a full load, which also catches changes that left
+         * no event.
+         */
+        @WithDefault("6H")
+        Duration fullSyncInterval();
+
+        /**
+         * File the index is saved to after a full load and on shutdown, and loaded from at startup.
+         */
+        Optional<String> snapshotFile();
+
+        /**
+         * Snapshots older than this are ignored; Keycloak must keep events at least as long.
+         */
+        @WithDefault("24H")
+        Duration snapshotMaxAge();
+
+        /**
+         * User attribute holding the user's modules.
+         */
+        @WithDefault("modules")
+        String moduleAttribute();
+    }
+
+    interface NotificationWriter {
+        /**
+         * Number of queued attributes that triggers a flush before the interval elapses.
+         */
+        @WithDefault("500")
+        int batchSize();
+
+        @WithDefault("1S")
+        Duration flushInterval();
+
+        @WithDefault("8")
+        int maxConcurrency();
+
+        @WithDefault("5")
+        int maxAttempts();
+
+        @WithDefault("200MS")
+        Duration initialBackoff();
+
+        @WithDefault("10S")
+        Duration maxBackoff();
+    }
+
+    interface Paging {
+        @WithDefault("100")
+        int pageSize();
+
+        /**
+         * Number of page requests kept in flight while streaming role members.
+         */
+        @WithDefault("4")
+        int prefetch();
+    }
+
+    interface UserCache {
+        @WithDefault("true")
+        boolean enabled();
+
+        @WithDefault("10000")
+        long maximumSize();
+
+        @WithDefault("5M")
+        Duration ttl();
+
+        /**
+         * Lifetime of cached role member lists, which change more often than single users.
+         */
+        @WithDefault("1M")
+        Duration roleMembersTtl();
     }
 
 }
@@ -0,0 +1,284 @@
+package me.omniops.users;
+
+import java.util.Arrays;
+import java.util.function.IntPredicate;
+
+/**
+ * Maps lower-cased string keys to {@code int} values and finds the values of all keys under a
+ * prefix. Nodes live in parallel primitive arrays, children as sorted sibling lists. A branch
+ * that holds a single key ends in a leaf that keeps the rest of the key in a shared character
+ * pool instead of a chain of nodes, so a key costs about one node past the prefix it shares with
+ * others. Removing a key leaves its nodes in place; the owner rebuilds the trie from scratch on
+ * a full reload. Not thread-safe.
+ */
+final class PrefixTrie {
+
+    private static final int NONE = -1;
+    private static final int[] NO_VALUES = new int[0];
+
+    private char[] labels = new char[64];
+    private int[] firstChild = new int[64];
+    private int[] nextSibling = new int[64];
+    /**
+     * Start of a leaf's remaining key in {@link #tail}, or {@link #NONE} for an inner node.
+     */
+    private int[] tailStart = new int[64];
+    private int[] tailLength = new int[64];
+    /**
+     * Values of the key ending at an inner node, or of the key held by a leaf.
+     */
+    private int[][] values = new int[64][];
+    private int nodes;
+    private char[] tail = new char[256];
+    private int tailSize;
+
+    PrefixTrie() {
+        newNode('\0');
+    }
+
+    void put(String key, int value) {
+        int node = 0;
+        int i = 0;
+        while (true) {
+            if (tailStart[node] != NONE) {
+                if (tailEquals(node, key, i)) {
+                    values[node] = add(values[node], value);
+                    return;
+                }
+                splitLeaf(node);
+                continue;
+            }
+            if (i == key.length()) {
+                values[node] = add(values[node], value);
+                return;
+            }
+            char c = key.charAt(i++);
+            int child = child(node, c);
+            if (child == NONE) {
+                child = addChild(node, c);
+                setTail(child, key, i);
+                values[child] = new int[]{value};
+                return;
+            }
+            node = child;
+        }
+    }
+
+    void remove(String key, int value) {
+        int node = find(key);
+        if (node != NONE) {
+            values[node] = remove(values[node], value);
+        }
+    }
+
+    /**
+     * @return the values of {@code key}, empty if there are none
+     */
+    int[] get(String key) {
+        int node = find(key);
+        return node != NONE && values[node] != null ? values[node] : NO_VALUES;
+    }
+
+    /**
+     * Hands the values of the keys starting with {@code prefix} to {@code consumer}, in key order,
+     * until it returns {@code false}.
+     */
+    void forEachWithPrefix(String prefix, IntPredicate consumer) {
+        int node = 0;
+        int i = 0;
+        while (i < prefix.length()) {
+            if (tailStart[node] != NONE) {
+                if (tailStartsWith(node, prefix, i)) {
+                    emit(node, consumer);
+                }
+                return;
+            }
+            node = child(node, prefix.charAt(i++));
+            if (node == NONE) {
+                return;
+            }
+        }
+        visit(node, consumer);
+    }
+
+    /**
+     * @return the number of nodes, a measure of the trie's memory use
+     */
+    int nodeCount() {
+        return nodes;
+    }
+
+    private boolean visit(int node, IntPredicate consumer) {
+        if (!emit(node, consumer)) {
+            return false;
+        }
+        for (int child = firstChild[node]; child != NONE; child = nextSibling[child]) {
+            if (!visit(child, consumer)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean emit(int node, IntPredicate consumer) {
+        int[] nodeValues = values[node];
+        if (nodeValues != null) {
+            for (int value : nodeValues) {
+                if (!consumer.test(value)) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return the inner node at which {@code key} ends or the leaf holding it, or {@link #NONE}
+     */
+    private int find(String key) {
+        int node = 0;
+        int i = 0;
+        while (true) {
+            if (tailStart[node] != NONE) {
+                return tailEquals(node, key, i) ? node : NONE;
+            }
+            if (i == key.length()) {
+                return node;
+            }
+            node = child(node, key.charAt(i++));
+            if (node == NONE) {
+                return NONE;
+            }
+        }
+    }
+
+    /**
+     * Turns a leaf into an inner node, moving its key one level down unless it ends here.
+     */
+    private void splitLeaf(int node) {
+        int start = tailStart[node];
+        int length = tailLength[node];
+        int[] leafValues = values[node];
+        tailStart[node] = NONE;
+        values[node] = null;
+        if (length == 0) {
+            values[node] = leafValues;
+            return;
+        }
+        int child = addChild(node, tail[start]);
+        tailStart[child] = start + 1;
+        tailLength[child] = length - 1;
+        values[child] = leafValues;
+    }
+
+    private int child(int node, char c) {
+        for (int child = firstChild[node]; child != NONE; child = nextSibling[child]) {
+            if (labels[child] == c) {
+                return child;
+            }
+            if (labels[child] > c) {
+                return NONE;
+            }
+        }
+        return NONE;
+    }
+
+    private int addChild(int node, char c) {
+        int child = newNode(c);
+        int previous = NONE;
+        int next = firstChild[node];
+        while (next != NONE && labels[next] < c) {
+            previous = next;
+            next = nextSibling[next];
+        }
+        nextSibling[child] = next;
+        if (previous == NONE) {
+            firstChild[node] = child;
+        } else {
+            nextSibling[previous] = child;
+        }
+        return child;
+    }
+
+    private int newNode(char label) {
+        if (nodes == labels.length) {
+            int capacity = nodes * 2;
+            labels = Arrays.copyOf(labels, capacity);
+            firstChild = Arrays.copyOf(firstChild, capacity);
+            nextSibling = Arrays.copyOf(nextSibling, capacity);
+            tailStart = Arrays.copyOf(tailStart, capacity);
+            tailLength = Arrays.copyOf(tailLength, capacity);
+            values = Arrays.copyOf(values, capacity);
+        }
+        int node = nodes++;
+        labels[node] = label;
+        firstChild[node] = NONE;
+        nextSibling[node] = NONE;
+        tailStart[node] = NONE;
+        return node;
+    }
+
+    private void setTail(int node, String key, int from) {
+        int length = key.length() - from;
+        if (tailSize + length > tail.length) {
+            tail = Arrays.copyOf(tail, Math.max(tail.length * 2, tailSize + length));
+        }
+        key.getChars(from, key.length(), tail, tailSize);
+        tailStart[node] = tailSize;
+        tailLength[node] = length;
+        tailSize += length;
+    }
+
+    private boolean tailEquals(int node, String key, int from) {
+        return tailLength[node] == key.length() - from && tailStartsWith(node, key, from);
+    }
+
+    /**
+     * @return whether the leaf's remaining key starts with {@code key} from {@code from} on
+     */
+    private boolean tailStartsWith(int node, String key, int from) {
+        int length = key.length() - from;
+        if (length > tailLength[node]) {
+            return false;
+        }
+        int start = tailStart[node];
+        for (int i = 0; i < length; i++) {
+            if (tail[start + i] != key.charAt(from + i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int[] add(int[] current, int value) {
+        if (current == null) {
+            return new int[]{value};
+        }
+        for (int existing : current) {
+            if (existing == value) {
+                return current;
+            }
+        }
+        int[] added = Arrays.copyOf(current, current.length + 1);
+        added[current.length] = value;
+        return added;
+    }
+
+    private static int[] remove(int[] current, int value) {
+        if (current == null) {
+            return null;
+        }
+        for (int i = 0; i < current.length; i++) {
+            if (current[i] == value) {
+                if (current.length == 1) {
+                    return null;
+                }
+                int[] removed = new int[current.length - 1];
+                System.arraycopy(current, 0, removed, 0, i);
+                System.arraycopy(current, i + 1, removed, i, current.length - i - 1);
+                return removed;
+            }
+        }
+        return current;
+    }
+}
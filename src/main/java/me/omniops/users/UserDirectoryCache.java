@@ -0,0 +1,148 @@
+package me.omniops.users;
+
+import com.github.benmanes.caffeine.cache.AsyncLoadingCache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import io.smallrye.mutiny.infrastructure.Infrastructure;
+import jakarta.ws.rs.NotFoundException;
+import lombok.extern.slf4j.Slf4j;
+import me.omniops.security.UserInfo;
+import org.keycloak.representations.idm.UserRepresentation;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
+
+/**
+ * Read-through cache in front of the Keycloak user lookups of {@link UserService}. Concurrent
+ * misses for the same key share a single Keycloak request; entries expire after a fixed TTL and
+ * the cache is bounded by size. Cached values are never handed out: every caller gets its own
+ * copy, so a caller modifying a user cannot change what other callers see. Hits, misses and load
+ * times are published as the Micrometer {@code cache.*} meters tagged
+ * {@code cache=portal.users.users} and {@code cache=portal.users.role_members}.
+ */
+@Slf4j
+class UserDirectoryCache {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper()
+            .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+
+    private final boolean enabled;
+    private final Function<String, UserRepresentation> userLoader;
+    private final Function<String, List<UserInfo>> roleMembersLoader;
+    private final AsyncLoadingCache<String, UserRepresentation> users;
+    private final AsyncLoadingCache<String, List<UserInfo>> roleMembers;
+
+    UserDirectoryCache(PortalConfig.UserCache config, MeterRegistry registry,
+                       Function<String, UserRepresentation> userLoader,
+                       Function<String, List<UserInfo>> roleMembersLoader) {
+        this.enabled = config.enabled();
+        this.userLoader = userLoader;
+        this.roleMembersLoader = roleMembersLoader;
+        this.users = Caffeine.newBuilder()
+                .maximumSize(config.maximumSize())
+                .expireAfterWrite(config.ttl())
+                .executor(Infrastructure.getDefaultWorkerPool())
+                .recordStats()
+                .buildAsync(userLoader::apply);
+        this.roleMembers = Caffeine.newBuilder()
+                .maximumSize(Math.max(1L, config.maximumSize() / 100))
+                .expireAfterWrite(config.roleMembersTtl())
+                .executor(Infrastructure.getDefaultWorkerPool())
+                .recordStats()
+                .buildAsync(roleMembersLoader::apply);
+        CaffeineCacheMetrics.monitor(registry, users, "portal.users.users");
+        CaffeineCacheMetrics.monitor(registry, roleMembers, "portal.users.role_members");
+    }
+
+    UserRepresentation user(String userId) {
+        return enabled ? copy(Futures.join(users.get(userId))) : userLoader.apply(userId);
+    }
+
+    /**
+     * @return the user's email, read from the cached user without copying it
+     */
+    String email(String userId) {
+        return (enabled ? Futures.join(users.get(userId)) : userLoader.apply(userId)).getEmail();
+    }
+
+    /**
+     * Loads the given users concurrently, served from the cache where possible. Users that do not
+     * exist in Keycloak are left out of the result.
+     */
+    Map<String, UserRepresentation> users(Collection<String> userIds) {
+        return users(userIds, enabled ? UserDirectoryCache::copy : Function.identity());
+    }
+
+    /**
+     * Like {@link #users(Collection)}, but only the emails.
+     */
+    Map<String, String> emails(Collection<String> userIds) {
+        return users(userIds, UserRepresentation::getEmail);
+    }
+
+    private <T> Map<String, T> users(Collection<String> userIds, Function<UserRepresentation, T> view) {
+        Map<String, CompletableFuture<UserRepresentation>> pending = new LinkedHashMap<>();
+        for (String userId : userIds) {
+            pending.computeIfAbsent(userId, id -> enabled ? users.get(id)
+                    : CompletableFuture.supplyAsync(() -> userLoader.apply(id), Infrastructure.getDefaultWorkerPool()));
+        }
+        Map<String, T> result = new LinkedHashMap<>();
+        pending.forEach((userId, user) -> {
+            try {
+                result.put(userId, view.apply(Futures.join(user)));
+            } catch (NotFoundException e) {
+                log.debug("User {} not found", userId);
+            }
+        });
+        return result;
+    }
+
+    List<UserInfo> roleMembers(String role) {
+        return enabled ? copy(Futures.join(roleMembers.get(role))) : roleMembersLoader.apply(role);
+    }
+
+    void invalidateUser(String userId) {
+        users.synchronous().invalidate(userId);
+    }
+
+    void invalidateRole(String role) {
+        roleMembers.synchronous().invalidate(role);
+    }
+
+    void invalidateAll() {
+        users.synchronous().invalidateAll();
+        roleMembers.synchronous().invalidateAll();
+    }
+
+    /**
+     * @return hit ratio and load latency of the user cache.
+     */
+    CacheStats userStats() {
+        return users.synchronous().stats();
+    }
+
+    CacheStats roleMemberStats() {
+        return roleMembers.synchronous().stats();
+    }
+
+    private static UserRepresentation copy(UserRepresentation user) {
+        return MAPPER.convertValue(user, UserRepresentation.class);
+    }
+
+    private static List<UserInfo> copy(List<UserInfo> users) {
+        List<UserInfo> copies = new ArrayList<>(users.size());
+        for (UserInfo user : users) {
+            copies.add(user.copy());
+        }
+        return copies;
+    }
+}
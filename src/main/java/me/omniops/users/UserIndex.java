@@ -0,0 +1,418 @@
+package me.omniops.users;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.IntPredicate;
+
+/**
+ * In-memory index of the realm's enabled users. Every user gets a dense ordinal. Usernames and
+ * emails map to ordinals through {@link PrefixTrie}s. Every role, group and module has a
+ * {@link BitSet} of its members' ordinals, so a membership query is an intersection of bitsets.
+ * Names are matched case-insensitively. Queries share a read lock; updates take the write lock.
+ */
+final class UserIndex {
+
+    private static final int SNAPSHOT_MAGIC = 0x55494458;
+    private static final int SNAPSHOT_VERSION = 1;
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Map<String, Integer> ordinals = new HashMap<>();
+    private IndexedUser[] users = new IndexedUser[1024];
+    private int[] freeOrdinals = new int[16];
+    private int freeCount;
+    private int nextOrdinal;
+    private final PrefixTrie usernames = new PrefixTrie();
+    private final PrefixTrie emails = new PrefixTrie();
+    private final Map<String, BitSet> roles = new HashMap<>();
+    private final Map<String, BitSet> groups = new HashMap<>();
+    private final Map<String, BitSet> modules = new HashMap<>();
+    /**
+     * Epoch millis at which the index was last brought up to date, and of the newest user and
+     * admin events applied; only the sync thread writes them.
+     */
+    private volatile long syncedAt;
+    private volatile long userEventsSeen;
+    private volatile long adminEventsSeen;
+
+    void put(IndexedUser user) {
+        lock.writeLock().lock();
+        try {
+            Integer existing = ordinals.get(user.id());
+            int ordinal;
+            if (existing != null) {
+                ordinal = existing;
+                unindex(ordinal, users[ordinal]);
+            } else {
+                ordinal = allocate();
+                ordinals.put(user.id(), ordinal);
+            }
+            users[ordinal] = user;
+            index(ordinal, user);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    void remove(String userId) {
+        lock.writeLock().lock();
+        try {
+            Integer ordinal = ordinals.remove(userId);
+            if (ordinal == null) {
+                return;
+            }
+            unindex(ordinal, users[ordinal]);
+            users[ordinal] = null;
+            if (freeCount == freeOrdinals.length) {
+                freeOrdinals = Arrays.copyOf(freeOrdinals, freeCount * 2);
+            }
+            freeOrdinals[freeCount++] = ordinal;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Makes {@code memberIds} the direct members of {@code role} among the indexed users.
+     */
+    void setRoleMembers(String role, Set<String> memberIds) {
+        lock.writeLock().lock();
+        try {
+            BitSet current = roles.get(key(role));
+            List<IndexedUser> changed = new ArrayList<>();
+            if (current != null) {
+                for (int ordinal = current.nextSetBit(0); ordinal >= 0; ordinal = current.nextSetBit(ordinal + 1)) {
+                    IndexedUser user = users[ordinal];
+                    if (!memberIds.contains(user.id())) {
+                        changed.add(user.withRoles(user.roles().stream().filter(name -> !name.equalsIgnoreCase(role)).toList()));
+                    }
+                }
+            }
+            for (String memberId : memberIds) {
+                Integer ordinal = ordinals.get(memberId);
+                if (ordinal != null && (current == null || !current.get(ordinal))) {
+                    IndexedUser user = users[ordinal];
+                    List<String> withRole = new ArrayList<>(user.roles());
+                    withRole.add(role);
+                    changed.add(user.withRoles(withRole));
+                }
+            }
+            changed.forEach(this::put);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    IndexedUser byId(String userId) {
+        lock.readLock().lock();
+        try {
+            Integer ordinal = ordinals.get(userId);
+            return ordinal != null ? users[ordinal] : null;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    IndexedUser byUsername(String username) {
+        return first(usernames, username);
+    }
+
+    /**
+     * @return a user with this email; Keycloak realms may allow several
+     */
+    IndexedUser byEmail(String email) {
+        return first(emails, email);
+    }
+
+    /**
+     * @return up to {@code max} users whose username, or else email, starts with {@code prefix},
+     * username matches first, each in alphabetical order
+     */
+    List<IndexedUser> search(String prefix, int max) {
+        String key = key(prefix);
+        List<IndexedUser> result = new ArrayList<>(Math.min(max, 64));
+        if (max <= 0) {
+            return result;
+        }
+        lock.readLock().lock();
+        try {
+            BitSet seen = new BitSet();
+            IntPredicate collector = ordinal -> {
+                if (!seen.get(ordinal)) {
+                    seen.set(ordinal);
+                    result.add(users[ordinal]);
+                }
+                return result.size() < max;
+            };
+            usernames.forEachWithPrefix(key, collector);
+            if (result.size() < max) {
+                emails.forEachWithPrefix(key, collector);
+            }
+            return result;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return up to {@code max} users that are direct members of all the given role, group and
+     * module, in no particular order; {@code null} criteria match every user
+     */
+    List<IndexedUser> find(String role, String group, String module, int max) {
+        List<IndexedUser> result = new ArrayList<>(Math.min(Math.max(max, 0), 64));
+        lock.readLock().lock();
+        try {
+            BitSet matches = null;
+            for (BitSet postings : new BitSet[]{postings(roles, role), postings(groups, group), postings(modules, module)}) {
+                if (postings == null) {
+                    continue;
+                }
+                if (postings.isEmpty()) {
+                    return result;
+                }
+                if (matches == null) {
+                    matches = (BitSet) postings.clone();
+                } else {
+                    matches.and(postings);
+                }
+            }
+            if (matches == null) {
+                for (int ordinal = 0; ordinal < nextOrdinal && result.size() < max; ordinal++) {
+                    if (users[ordinal] != null) {
+                        result.add(users[ordinal]);
+                    }
+                }
+                return result;
+            }
+            for (int ordinal = matches.nextSetBit(0); ordinal >= 0 && result.size() < max; ordinal = matches.nextSetBit(ordinal + 1)) {
+                result.add(users[ordinal]);
+            }
+            return result;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    int size() {
+        lock.readLock().lock();
+        try {
+            return ordinals.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    long getSyncedAt() {
+        return syncedAt;
+    }
+
+    long getUserEventsSeen() {
+        return userEventsSeen;
+    }
+
+    long getAdminEventsSeen() {
+        return adminEventsSeen;
+    }
+
+    void markSynced(long syncedAt, long userEventsSeen, long adminEventsSeen) {
+        this.syncedAt = syncedAt;
+        this.userEventsSeen = userEventsSeen;
+        this.adminEventsSeen = adminEventsSeen;
+    }
+
+    /**
+     * Writes the index to {@code file} through a temporary file, so a crash never leaves a
+     * truncated snapshot behind.
+     */
+    void save(Path file) throws IOException {
+        Path parent = file.toAbsolutePath().getParent();
+        Files.createDirectories(parent);
+        Path temporary = Files.createTempFile(parent, file.getFileName().toString(), ".tmp");
+        try {
+            lock.readLock().lock();
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temporary), 1 << 16))) {
+                write(out);
+            } finally {
+                lock.readLock().unlock();
+            }
+            Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temporary);
+        }
+    }
+
+    /**
+     * @throws IOException if the file cannot be read or is not a snapshot of this version
+     */
+    static UserIndex load(Path file) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file), 1 << 16))) {
+            return read(in);
+        }
+    }
+
+    /**
+     * Snapshot layout: header and sync times, a table of all role, group and module names, then
+     * every user with its memberships as indexes into that table.
+     */
+    private void write(DataOutputStream out) throws IOException {
+        Map<String, Integer> names = new LinkedHashMap<>();
+        for (int ordinal = 0; ordinal < nextOrdinal; ordinal++) {
+            IndexedUser user = users[ordinal];
+            if (user != null) {
+                for (List<String> memberships : List.of(user.roles(), user.groups(), user.modules())) {
+                    memberships.forEach(name -> names.putIfAbsent(name, names.size()));
+                }
+            }
+        }
+        out.writeInt(SNAPSHOT_MAGIC);
+        out.writeInt(SNAPSHOT_VERSION);
+        out.writeLong(syncedAt);
+        out.writeLong(userEventsSeen);
+        out.writeLong(adminEventsSeen);
+        out.writeInt(names.size());
+        for (String name : names.keySet()) {
+            out.writeUTF(name);
+        }
+        out.writeInt(ordinals.size());
+        for (int ordinal = 0; ordinal < nextOrdinal; ordinal++) {
+            IndexedUser user = users[ordinal];
+            if (user == null) {
+                continue;
+            }
+            out.writeUTF(user.id());
+            writeNullable(out, user.username());
+            writeNullable(out, user.email());
+            writeNullable(out, user.firstName());
+            writeNullable(out, user.lastName());
+            writeNames(out, user.roles(), names);
+            writeNames(out, user.groups(), names);
+            writeNames(out, user.modules(), names);
+        }
+    }
+
+    private static UserIndex read(DataInputStream in) throws IOException {
+        if (in.readInt() != SNAPSHOT_MAGIC || in.readInt() != SNAPSHOT_VERSION) {
+            throw new IOException("Not a user index snapshot of version " + SNAPSHOT_VERSION);
+        }
+        UserIndex index = new UserIndex();
+        long syncedAt = in.readLong();
+        long userEventsSeen = in.readLong();
+        long adminEventsSeen = in.readLong();
+        String[] names = new String[in.readInt()];
+        for (int i = 0; i < names.length; i++) {
+            names[i] = in.readUTF();
+        }
+        int count = in.readInt();
+        for (int i = 0; i < count; i++) {
+            index.put(new IndexedUser(in.readUTF(), readNullable(in), readNullable(in), readNullable(in), readNullable(in),
+                    readNames(in, names), readNames(in, names), readNames(in, names)));
+        }
+        index.markSynced(syncedAt, userEventsSeen, adminEventsSeen);
+        return index;
+    }
+
+    private int allocate() {
+        if (freeCount > 0) {
+            return freeOrdinals[--freeCount];
+        }
+        if (nextOrdinal == users.length) {
+            users = Arrays.copyOf(users, users.length * 2);
+        }
+        return nextOrdinal++;
+    }
+
+    private void index(int ordinal, IndexedUser user) {
+        if (user.username() != null) {
+            usernames.put(key(user.username()), ordinal);
+        }
+        if (user.email() != null) {
+            emails.put(key(user.email()), ordinal);
+        }
+        user.roles().forEach(role -> roles.computeIfAbsent(key(role), name -> new BitSet()).set(ordinal));
+        user.groups().forEach(group -> groups.computeIfAbsent(key(group), name -> new BitSet()).set(ordinal));
+        user.modules().forEach(module -> modules.computeIfAbsent(key(module), name -> new BitSet()).set(ordinal));
+    }
+
+    private void unindex(int ordinal, IndexedUser user) {
+        if (user.username() != null) {
+            usernames.remove(key(user.username()), ordinal);
+        }
+        if (user.email() != null) {
+            emails.remove(key(user.email()), ordinal);
+        }
+        user.roles().forEach(role -> roles.get(key(role)).clear(ordinal));
+        user.groups().forEach(group -> groups.get(key(group)).clear(ordinal));
+        user.modules().forEach(module -> modules.get(key(module)).clear(ordinal));
+    }
+
+    private IndexedUser first(PrefixTrie trie, String value) {
+        if (value == null) {
+            return null;
+        }
+        lock.readLock().lock();
+        try {
+            int[] matches = trie.get(key(value));
+            return matches.length > 0 ? users[matches[0]] : null;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return {@code null} if {@code name} is {@code null}, so it does not restrict the result
+     */
+    private static BitSet postings(Map<String, BitSet> index, String name) {
+        if (name == null) {
+            return null;
+        }
+        BitSet postings = index.get(key(name));
+        return postings != null ? postings : new BitSet();
+    }
+
+    private static String key(String value) {
+        return value.toLowerCase(Locale.ROOT);
+    }
+
+    private static void writeNullable(DataOutputStream out, String value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeUTF(value);
+        }
+    }
+
+    private static String readNullable(DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+
+    private static void writeNames(DataOutputStream out, List<String> values, Map<String, Integer> names) throws IOException {
+        out.writeShort(values.size());
+        for (String value : values) {
+            out.writeInt(names.get(value));
+        }
+    }
+
+    private static List<String> readNames(DataInputStream in, String[] names) throws IOException {
+        int count = in.readUnsignedShort();
+        List<String> values = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            values.add(names[in.readInt()]);
+        }
+        return values;
+    }
+}
@@ -0,0 +1,388 @@
+package me.omniops.users;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.quarkus.runtime.StartupEvent;
+import io.smallrye.mutiny.infrastructure.Infrastructure;
+import jakarta.annotation.PreDestroy;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.enterprise.event.Observes;
+import jakarta.inject.Inject;
+import jakarta.ws.rs.NotFoundException;
+import lombok.extern.slf4j.Slf4j;
+import me.omniops.cluster.InvalidationEvent;
+import org.keycloak.admin.client.resource.RealmResource;
+import org.keycloak.admin.client.resource.UserResource;
+import org.keycloak.representations.idm.AdminEventRepresentation;
+import org.keycloak.representations.idm.EventRepresentation;
+import org.keycloak.representations.idm.GroupRepresentation;
+import org.keycloak.representations.idm.RoleRepresentation;
+import org.keycloak.representations.idm.UserRepresentation;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Keeps the local {@link UserIndex} current. At startup it loads a recent enough snapshot file if
+ * there is one, otherwise it loads all enabled users, realm role members and group members page
+ * by page. Every {@code sync-interval} it then polls the realm's user and admin events and
+ * re-reads the users they name. Changes to groups or realm roles themselves trigger a full load,
+ * as does {@code full-sync-interval}. Changes made through {@link UserService} arrive as
+ * {@link InvalidationEvent}s. All syncs run on one thread; a full load is built aside and swapped
+ * in, so queries keep being answered meanwhile.
+ */
+@Slf4j
+@ApplicationScoped
+public class UserIndexSync {
+
+    private static final List<String> USER_EVENT_TYPES = List.of("REGISTER", "UPDATE_PROFILE", "UPDATE_EMAIL", "DELETE_ACCOUNT");
+    private static final List<String> ADMIN_RESOURCE_TYPES = List.of("USER", "REALM_ROLE_MAPPING", "GROUP_MEMBERSHIP", "GROUP", "REALM_ROLE");
+
+    @Inject
+    PortalConfig portalConfig;
+    @Inject
+    KeycloakConnection keycloakConnection;
+    @Inject
+    KeycloakMetrics keycloakMetrics;
+    @Inject
+    MeterRegistry registry;
+
+    private ScheduledExecutorService scheduler;
+    private Path snapshotFile;
+    private volatile UserIndex index;
+
+    void start(@Observes StartupEvent event) {
+        PortalConfig.Index config = config();
+        if (!config.enabled()) {
+            return;
+        }
+        snapshotFile = config.snapshotFile().map(Path::of).orElse(null);
+        Gauge.builder("portal.users.index.users", this, UserIndexSync::size)
+                .description("Users held by the local user index")
+                .register(registry);
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "user-index-sync");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.execute(this::initialize);
+        long syncMillis = config.syncInterval().toMillis();
+        long fullSyncMillis = config.fullSyncInterval().toMillis();
+        scheduler.scheduleWithFixedDelay(this::sync, syncMillis, syncMillis, TimeUnit.MILLISECONDS);
+        scheduler.scheduleWithFixedDelay(this::fullLoad, fullSyncMillis, fullSyncMillis, TimeUnit.MILLISECONDS);
+    }
+
+    public boolean isEnabled() {
+        return config().enabled();
+    }
+
+    /**
+     * @return whether queries can be answered, which is always the case when the index is disabled
+     * and otherwise once the first load has finished
+     */
+    public boolean isReady() {
+        return !isEnabled() || index != null;
+    }
+
+    public int size() {
+        UserIndex current = index;
+        return current != null ? current.size() : 0;
+    }
+
+    /**
+     * @throws IllegalStateException if the index is disabled or not loaded yet
+     */
+    UserIndex current() {
+        UserIndex current = index;
+        if (current == null) {
+            throw new IllegalStateException(isEnabled() ? "The user index is still loading"
+                    : "The user index is disabled, see portal.config.users.index.enabled");
+        }
+        return current;
+    }
+
+    void onInvalidation(@Observes InvalidationEvent event) {
+        if (index == null) {
+            return;
+        }
+        switch (event.type()) {
+            case USER -> submit(() -> refresh(keycloakConnection.getRealmConnection(), event.key()));
+            case ROLE -> submit(() -> reloadRole(event.key()));
+            case ALL -> submit(this::fullLoad);
+            case LOGOUT -> {
+            }
+        }
+    }
+
+    @PreDestroy
+    void close() {
+        if (scheduler == null) {
+            return;
+        }
+        scheduler.shutdownNow();
+        try {
+            scheduler.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        saveSnapshot();
+    }
+
+    void initialize() {
+        loadSnapshot();
+        if (index != null) {
+            sync();
+        } else {
+            fullLoad();
+        }
+    }
+
+    /**
+     * Applies the changes named by the events since the last sync, or loads the index when there
+     * is none yet.
+     */
+    void sync() {
+        UserIndex current = index;
+        if (current == null) {
+            fullLoad();
+            return;
+        }
+        boolean[] reload = new boolean[1];
+        timed("delta", () -> {
+            long startedAt = System.currentTimeMillis();
+            RealmResource realm = keycloakConnection.getRealmConnection();
+            int pageSize = config().pageSize();
+            Set<String> changed = new LinkedHashSet<>();
+            long userSince = current.getUserEventsSeen();
+            long userEventsSeen = KeycloakEventPages.drain(userSince, (first, max) -> keycloakMetrics.timed("user_events",
+                            () -> realm.getEvents(USER_EVENT_TYPES, null, null, KeycloakEventPages.day(userSince), null, null, first, max)),
+                    pageSize, EventRepresentation::getTime, event -> {
+                        if (event.getUserId() != null) {
+                            changed.add(event.getUserId());
+                        }
+                    });
+            long adminSince = current.getAdminEventsSeen();
+            long adminEventsSeen = KeycloakEventPages.drain(adminSince, (first, max) -> keycloakMetrics.timed("admin_events",
+                            () -> realm.getAdminEvents(null, null, null, null, null, null,
+                                    ADMIN_RESOURCE_TYPES, KeycloakEventPages.day(adminSince), null, first, max)),
+                    pageSize, AdminEventRepresentation::getTime, event -> {
+                        String userId = userId(event.getResourcePath());
+                        if ("GROUP".equals(event.getResourceType()) || "REALM_ROLE".equals(event.getResourceType())) {
+                            reload[0] = true;
+                        } else if (userId != null) {
+                            changed.add(userId);
+                        }
+                    });
+            if (reload[0]) {
+                return;
+            }
+            changed.forEach(userId -> refresh(realm, userId));
+            current.markSynced(startedAt, userEventsSeen, adminEventsSeen);
+            if (!changed.isEmpty()) {
+                log.debug("Synced {} changed users into the user index", changed.size());
+            }
+        });
+        if (reload[0]) {
+            log.info("Groups or realm roles changed, reloading the user index");
+            fullLoad();
+        }
+    }
+
+    /**
+     * Builds a new index from all enabled users and their direct realm role and group memberships.
+     */
+    void fullLoad() {
+        timed("full", () -> {
+            long startedAt = System.currentTimeMillis();
+            RealmResource realm = keycloakConnection.getRealmConnection();
+            String moduleAttribute = config().moduleAttribute();
+            Map<String, LoadedUser> users = new HashMap<>();
+            try (Stream<UserRepresentation> page = pages((first, max) -> keycloakMetrics.timed("list_users",
+                    () -> realm.users().list(first, max)))) {
+                page.filter(user -> !Boolean.FALSE.equals(user.isEnabled()))
+                        .forEach(user -> users.put(user.getId(), new LoadedUser(user)));
+            }
+            for (RoleRepresentation role : keycloakMetrics.timed("list_roles", () -> realm.roles().list())) {
+                try (Stream<UserRepresentation> page = pages((first, max) -> keycloakMetrics.timed("role_members_page",
+                        () -> realm.roles().get(role.getName()).getUserMembers(first, max)))) {
+                    page.map(member -> users.get(member.getId()))
+                            .filter(user -> user != null)
+                            .forEach(user -> user.roles.add(role.getName()));
+                }
+            }
+            for (GroupRepresentation group : groups(realm)) {
+                try (Stream<UserRepresentation> page = pages((first, max) -> keycloakMetrics.timed("group_members",
+                        () -> realm.groups().group(group.getId()).members(first, max, true)))) {
+                    page.map(member -> users.get(member.getId()))
+                            .filter(user -> user != null)
+                            .forEach(user -> user.groups.add(group.getPath()));
+                }
+            }
+            UserIndex loaded = new UserIndex();
+            users.values().forEach(user -> loaded.put(user.toIndexedUser(moduleAttribute)));
+            loaded.markSynced(startedAt, startedAt, startedAt);
+            index = loaded;
+            log.info("Loaded {} users into the user index in {} ms", loaded.size(), System.currentTimeMillis() - startedAt);
+        });
+        saveSnapshot();
+    }
+
+    /**
+     * Re-reads one user, dropping it when it was deleted or disabled.
+     */
+    private void refresh(RealmResource realm, String userId) {
+        UserIndex current = index;
+        UserResource resource = realm.users().get(userId);
+        try {
+            UserRepresentation user = keycloakMetrics.timed("get_user", () -> resource.toRepresentation());
+            if (Boolean.FALSE.equals(user.isEnabled())) {
+                current.remove(userId);
+                return;
+            }
+            LoadedUser loaded = new LoadedUser(user);
+            keycloakMetrics.timed("user_roles", () -> resource.roles().realmLevel().listAll())
+                    .forEach(role -> loaded.roles.add(role.getName()));
+            keycloakMetrics.timed("user_groups", () -> resource.groups())
+                    .forEach(group -> loaded.groups.add(group.getPath()));
+            current.put(loaded.toIndexedUser(config().moduleAttribute()));
+        } catch (NotFoundException e) {
+            current.remove(userId);
+        }
+    }
+
+    private void reloadRole(String role) {
+        RealmResource realm = keycloakConnection.getRealmConnection();
+        Set<String> memberIds = new HashSet<>();
+        try (Stream<UserRepresentation> page = pages((first, max) -> keycloakMetrics.timed("role_members_page",
+                () -> realm.roles().get(role).getUserMembers(first, max)))) {
+            page.forEach(member -> memberIds.add(member.getId()));
+        }
+        index.setRoleMembers(role, memberIds);
+    }
+
+    /**
+     * @return all groups of the realm, subgroups included
+     */
+    private List<GroupRepresentation> groups(RealmResource realm) {
+        List<GroupRepresentation> groups = new ArrayList<>();
+        Deque<GroupRepresentation> pending = new ArrayDeque<>();
+        try (Stream<GroupRepresentation> page = pages((first, max) -> keycloakMetrics.timed("list_groups",
+                () -> realm.groups().groups(null, first, max, false)))) {
+            page.forEach(pending::add);
+        }
+        while (!pending.isEmpty()) {
+            GroupRepresentation group = pending.poll();
+            groups.add(group);
+            if (group.getSubGroupCount() == null || group.getSubGroupCount() > 0) {
+                try (Stream<GroupRepresentation> page = pages((first, max) -> keycloakMetrics.timed("list_groups",
+                        () -> realm.groups().group(group.getId()).getSubGroups(first, max, false)))) {
+                    page.forEach(pending::add);
+                }
+            }
+        }
+        return groups;
+    }
+
+    private <T> Stream<T> pages(PagedFetch.PageLoader<T> loader) {
+        return PagedFetch.stream(loader, config().pageSize(), portalConfig.config().users().paging().prefetch(),
+                Infrastructure.getDefaultWorkerPool());
+    }
+
+    private void loadSnapshot() {
+        if (snapshotFile == null || !Files.exists(snapshotFile)) {
+            return;
+        }
+        try {
+            UserIndex loaded = UserIndex.load(snapshotFile);
+            long age = System.currentTimeMillis() - loaded.getSyncedAt();
+            if (age > config().snapshotMaxAge().toMillis()) {
+                log.info("Ignoring user index snapshot {}, last synced {} minutes ago", snapshotFile, TimeUnit.MILLISECONDS.toMinutes(age));
+                return;
+            }
+            index = loaded;
+            log.info("Loaded {} users from user index snapshot {}", loaded.size(), snapshotFile);
+        } catch (IOException | RuntimeException e) {
+            log.warn("Could not load user index snapshot {}: {}", snapshotFile, e.getMessage());
+        }
+    }
+
+    private void saveSnapshot() {
+        UserIndex current = index;
+        if (snapshotFile == null || current == null) {
+            return;
+        }
+        try {
+            current.save(snapshotFile);
+        } catch (IOException e) {
+            log.warn("Could not save user index snapshot {}: {}", snapshotFile, e.getMessage());
+        }
+    }
+
+    private void submit(Runnable task) {
+        try {
+            scheduler.execute(() -> timed("event", task));
+        } catch (RejectedExecutionException e) {
+            log.debug("User index sync is shut down, dropping update");
+        }
+    }
+
+    private void timed(String type, Runnable sync) {
+        long start = System.nanoTime();
+        String outcome = "success";
+        try {
+            sync.run();
+        } catch (RuntimeException e) {
+            outcome = "error";
+            log.warn("User index {} sync failed: {}", type, e.getMessage());
+        } finally {
+            registry.timer("portal.users.index.sync", "type", type, "outcome", outcome)
+                    .record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    private PortalConfig.Index config() {
+        return portalConfig.config().users().index();
+    }
+
+    /**
+     * @return the user ID of an admin event path such as {@code users/{id}/groups/{groupId}}
+     */
+    private static String userId(String resourcePath) {
+        if (resourcePath == null || !resourcePath.startsWith("users/")) {
+            return null;
+        }
+        int end = resourcePath.indexOf('/', "users/".length());
+        return resourcePath.substring("users/".length(), end < 0 ? resourcePath.length() : end);
+    }
+
+    private static final class LoadedUser {
+        private final UserRepresentation user;
+        private final List<String> roles = new ArrayList<>();
+        private final List<String> groups = new ArrayList<>();
+
+        private LoadedUser(UserRepresentation user) {
+            this.user = user;
+        }
+
+        private IndexedUser toIndexedUser(String moduleAttribute) {
+            List<String> modules = user.getAttributes() != null ? user.getAttributes().get(moduleAttribute) : null;
+            return new IndexedUser(user.getId(), user.getUsername(), user.getEmail(), user.getFirstName(), user.getLastName(),
+                    roles, groups, modules != null ? modules : List.of());
+        }
+    }
+}
@@ -1,28 +1,250 @@
 package me.omniops.users;
 
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.quarkus.runtime.ShutdownEvent;
+import io.smallrye.mutiny.infrastructure.Infrastructure;
+import jakarta.annotation.PostConstruct;
 import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.enterprise.event.Observes;
+import jakarta.enterprise.event.Reception;
+import jakarta.inject.Inject;
 import lombok.extern.slf4j.Slf4j;
+import me.omniops.cluster.ClusterCache;
+import me.omniops.cluster.InvalidationEvent;
+import me.omniops.security.Modules;
 import me.omniops.security.Role;
 import me.omniops.security.UserInfo;
+import org.keycloak.admin.client.Keycloak;
+import org.keycloak.admin.client.resource.RealmResource;
 import org.keycloak.representations.idm.UserRepresentation;
 
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Stream;
 
 @Slf4j
 @ApplicationScoped
-public class UserService extends KeycloakConnection {
+public class UserService {
+
+    private static final TypeReference<UserRepresentation> USER = new TypeReference<>() {
+    };
+    private static final TypeReference<List<UserInfo>> USER_INFOS = new TypeReference<>() {
+    };
+
+    @Inject
+    PortalConfig portalConfig;
+
+    @Inject
+    KeycloakConnection keycloakConnection;
+
+    @Inject
+    KeycloakMetrics keycloakMetrics;
+
+    @Inject
+    ClusterCache clusterCache;
+
+    @Inject
+    MeterRegistry registry;
+
+    @Inject
+    UserIndexSync userIndexSync;
+
+    private UserDirectoryCache directoryCache;
+    private NotificationStatusWriter notificationStatusWriter;
+
+    @PostConstruct
+    void init() {
+        directoryCache = new UserDirectoryCache(portalConfig.config().users().cache(), registry,
+                userId -> clusterCache.load(userKey(userId), USER, () -> fetchUser(userId)),
+                role -> clusterCache.load(roleKey(role), USER_INFOS, () -> fetchRoleMembers(role)));
+        notificationStatusWriter = new NotificationStatusWriter(portalConfig.config().users().notificationWriter(), registry,
+                this::writeNotificationAttributes);
+    }
+
+    /**
+     * Drains queued notification updates while the Keycloak connection is still open; beans are
+     * destroyed in no particular order after the shutdown event.
+     */
+    void onShutdown(@Observes(notifyObserver = Reception.IF_EXISTS) ShutdownEvent event) {
+        notificationStatusWriter.close();
+    }
+
+    /**
+     * The Keycloak accessors below delegate to the one shared {@link KeycloakConnection}; they
+     * remain for callers from the time UserService extended it.
+     *
+     * @return the shared admin client. Callers must not close it.
+     */
+    public Keycloak getConnection() {
+        return keycloakConnection.getConnection();
+    }
+
+    public RealmResource getRealmConnection() {
+        return keycloakConnection.getRealmConnection();
+    }
+
+    public RealmResource getRealmConnection(String realm) {
+        return keycloakConnection.getRealmConnection(realm);
+    }
 
     public String getUserById(String userId) {
-        return getRealmConnection().users().get(userId).toRepresentation().getEmail();
+        return directoryCache.email(userId);
     }
 
+    /**
+     * Returns the user as cached from Keycloak. Each call returns a copy the caller may modify,
+     * for example to write it back with {@code update}.
+     */
     public UserRepresentation getUserByIdAsObject(String userId) {
-        return getRealmConnection().users().get(userId).toRepresentation();
+        return directoryCache.user(userId);
     }
 
 
+    /**
+     * Returns the members of {@code role} as cached from Keycloak, copied for the caller.
+     */
     public List<UserInfo> getDetails(Role role){
-        return getRealmConnection().roles().get(role.name()).getUserMembers().stream().map(this::toUserInfo).toList();
+        return directoryCache.roleMembers(role.name());
+    }
+
+    /**
+     * Fetches many users at once, concurrently and through the cache, copied for the caller.
+     * Unknown IDs are skipped.
+     */
+    public Map<String, UserRepresentation> getUsersByIds(Collection<String> userIds) {
+        return directoryCache.users(userIds);
+    }
+
+    public Map<String, String> getEmailsByIds(Collection<String> userIds) {
+        return directoryCache.emails(userIds);
+    }
+
+    /**
+     * Returns one page of the members of {@code role}, straight from Keycloak.
+     */
+    public List<UserInfo> getDetails(Role role, int first, int max) {
+        return keycloakMetrics.timed("role_members_page",
+                () -> getRealmConnection().roles().get(role.name()).getUserMembers(first, max)).stream().map(this::toUserInfo).toList();
+    }
+
+    /**
+     * Streams the members of {@code role} page by page. Pages are requested ahead of consumption
+     * with bounded concurrency, so memory stays flat regardless of the number of members. The
+     * stream should be closed when it is not fully consumed.
+     */
+    public Stream<UserInfo> streamDetails(Role role) {
+        return streamDetails(role, portalConfig.config().users().paging().pageSize());
+    }
+
+    public Stream<UserInfo> streamDetails(Role role, int pageSize) {
+        return PagedFetch.stream((first, max) -> getDetails(role, first, max),
+                pageSize, portalConfig.config().users().paging().prefetch(), Infrastructure.getDefaultWorkerPool());
+    }
+
+    /**
+     * Looks the user up in the local user index by email, ignoring case.
+     *
+     * @throws IllegalStateException if the user index is disabled or still loading
+     */
+    public Optional<UserInfo> findUserByEmail(String email) {
+        return Optional.ofNullable(userIndexSync.current().byEmail(email)).map(IndexedUser::toUserInfo);
+    }
+
+    /**
+     * Looks the user up in the local user index by username, ignoring case.
+     *
+     * @throws IllegalStateException if the user index is disabled or still loading
+     */
+    public Optional<UserInfo> findUserByUsername(String username) {
+        return Optional.ofNullable(userIndexSync.current().byUsername(username)).map(IndexedUser::toUserInfo);
+    }
+
+    /**
+     * Returns up to {@code max} users whose username or email starts with {@code prefix},
+     * username matches first, from the local user index.
+     *
+     * @throws IllegalStateException if the user index is disabled or still loading
+     */
+    public List<UserInfo> searchUsers(String prefix, int max) {
+        return userIndexSync.current().search(prefix, max).stream().map(IndexedUser::toUserInfo).toList();
+    }
+
+    /**
+     * Returns up to {@code max} users holding all of the given role, group and module, from the
+     * local user index. A {@code null} criterion matches every user; groups are given as paths
+     * such as {@code /ops/oncall}. Only direct memberships count.
+     *
+     * @throws IllegalStateException if the user index is disabled or still loading
+     */
+    public List<UserInfo> findUsers(Role role, String group, Modules module, int max) {
+        return userIndexSync.current().find(role != null ? role.name() : null, group,
+                module != null ? module.name() : null, max).stream().map(IndexedUser::toUserInfo).toList();
+    }
+
+    /**
+     * Drops the cached user on every node.
+     */
+    public void invalidateUser(String userId) {
+        clusterCache.publish(InvalidationEvent.Type.USER, userId, userKey(userId));
+    }
+
+    /**
+     * Drops the cached members of {@code role} on every node, for example after a role was
+     * granted or revoked.
+     */
+    public void invalidateRole(Role role) {
+        clusterCache.publish(InvalidationEvent.Type.ROLE, role.name(), roleKey(role.name()));
+    }
+
+    /**
+     * Drops every cached user and role on every node, including the shared tier.
+     */
+    public void invalidateAll() {
+        clusterCache.publish(InvalidationEvent.Type.ALL, "", null);
+    }
+
+    /**
+     * Ends all sessions of the user in Keycloak and tells every node to drop what it cached for
+     * the user.
+     */
+    public void logout(String userId) {
+        keycloakMetrics.run("logout_user", () -> getRealmConnection().users().get(userId).logout());
+        clusterCache.publish(InvalidationEvent.Type.LOGOUT, userId, userKey(userId));
+    }
+
+    void onInvalidation(@Observes InvalidationEvent event) {
+        switch (event.type()) {
+            case USER, LOGOUT -> directoryCache.invalidateUser(event.key());
+            case ROLE -> directoryCache.invalidateRole(event.key());
+            case ALL -> directoryCache.invalidateAll();
+        }
+    }
+
+    public CacheStats userCacheStats() {
+        return directoryCache.userStats();
+    }
+
+    public CacheStats roleMembersCacheStats() {
+        return directoryCache.roleMemberStats();
+    }
+
+    private static String userKey(String userId) {
+        return "user:" + userId;
+    }
+
+    private static String roleKey(String role) {
+        return "role-members:" + role;
+    }
+
+    private UserRepresentation fetchUser(String userId) {
+        return keycloakMetrics.timed("get_user", () -> getRealmConnection().users().get(userId).toRepresentation());
+    }
+
+    private List<UserInfo> fetchRoleMembers(String role) {
+        return keycloakMetrics.timed("role_members", () -> getRealmConnection().roles().get(role).getUserMembers())
+                .stream().map(this::toUserInfo).toList();
     }
 
     private UserInfo toUserInfo(UserRepresentation user) {
@@ -41,18 +263,44 @@ public class UserService extends KeycloakConnection {
         log.info("Attempting to update notification for userId: {}, templateCode: {}", userId, templateCode);
         // Validate input parameters
         validateInputs(userId, templateCode, isSent);
-        UserRepresentation user = getRealmConnection().users().get(userId).toRepresentation();
+        writeNotificationAttributes(userId, Map.of(templateCode, String.valueOf(isSent)));
+    }
+
+    /**
+     * Queues a notification status update. Updates for the same user are merged and written in
+     * batches; the returned future completes once the update has reached Keycloak.
+     *
+     * @throws IllegalArgumentException if any of the parameters are invalid.
+     */
+    public CompletableFuture<Void> updateUserNotificationStatusAsync(String userId, String templateCode, Boolean isSent) {
+        validateInputs(userId, templateCode, isSent);
+        return notificationStatusWriter.submit(userId, templateCode, String.valueOf(isSent));
+    }
+
+    public int notificationQueueDepth() {
+        return notificationStatusWriter.queueDepth();
+    }
+
+    /**
+     * Adds the given attributes to the user, keeping values that are already set, and writes the
+     * user back only when something changed.
+     */
+    private void writeNotificationAttributes(String userId, Map<String, String> templates) {
+        UserRepresentation user = keycloakMetrics.timed("get_user", () -> getRealmConnection().users().get(userId).toRepresentation());
         Map<String, List<String>> attributes = Optional.ofNullable(user.getAttributes()).orElse(new HashMap<>());
-        if (!attributes.containsKey(templateCode)) {
-            attributes.put(templateCode, Collections.singletonList(String.valueOf(isSent)));
+        boolean changed = false;
+        for (Map.Entry<String, String> template : templates.entrySet()) {
+            if (!attributes.containsKey(template.getKey())) {
+                attributes.put(template.getKey(), Collections.singletonList(template.getValue()));
+                changed = true;
+            }
+        }
+        if (changed) {
             user.setAttributes(attributes);
-            getRealmConnection().users().get(userId).update(user);
+            keycloakMetrics.run("update_user", () -> getRealmConnection().users().get(userId).update(user));
+            invalidateUser(userId);
             log.info("User updated: {}", user.getId());
         }
-
-//        attributes.forEach((key, value) -> {
-//            System.out.println("Key: " + key + ", Values: " + value);
-//        });
     }
 
     private void validateInputs(String userId, String templateCode, Boolean isSent) {
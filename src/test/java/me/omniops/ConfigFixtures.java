@@ -0,0 +1,32 @@
+package me.omniops;
+
+import io.quarkus.runtime.configuration.DurationConverter;
+import io.quarkus.runtime.configuration.MemorySize;
+import io.quarkus.runtime.configuration.MemorySizeConverter;
+import io.smallrye.config.SmallRyeConfigBuilder;
+
+import java.time.Duration;
+
+/**
+ * Builds {@code @ConfigMapping} interfaces outside of Quarkus, for unit tests.
+ */
+public final class ConfigFixtures {
+
+    private ConfigFixtures() {
+    }
+
+    /**
+     * @return the mapping with its defaults plus the given {@code key=value} overrides
+     */
+    public static <T> T config(Class<T> type, String... overrides) {
+        SmallRyeConfigBuilder builder = new SmallRyeConfigBuilder()
+                .withConverter(Duration.class, 100, new DurationConverter())
+                .withConverter(MemorySize.class, 100, new MemorySizeConverter())
+                .withMapping(type);
+        for (String override : overrides) {
+            int separator = override.indexOf('=');
+            builder.withDefaultValue(override.substring(0, separator), override.substring(separator + 1));
+        }
+        return builder.build().getConfigMapping(type);
+    }
+}
@@ -0,0 +1,80 @@
+package me.omniops.admission;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import me.omniops.ConfigFixtures;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class AdmissionControllerTest {
+
+    private static final String ENDPOINT = "com.example.ReportResource#export";
+    private static final String OTHER_ENDPOINT = "com.example.ReportResource#list";
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private final AdmissionController controller = new AdmissionController(ConfigFixtures.config(AdmissionConfig.class,
+            "portal.admission.enabled=true",
+            "portal.admission.service.rate=0.001",
+            "portal.admission.service.burst=1",
+            "portal.admission.services.reports.rate=0.001",
+            "portal.admission.services.reports.burst=2",
+            "portal.admission.subject.rate=0.001",
+            "portal.admission.subject.burst=1"), registry);
+
+    @Test
+    void knownServicesHaveBucketsOfTheirOwn() {
+        assertNull(controller.admit(ENDPOINT, "TRITON", null));
+        assertEquals(AdmissionController.Rejection.SERVICE_RATE, controller.admit(ENDPOINT, "triton", null));
+        assertNull(controller.admit(ENDPOINT, "DASHBOARD", null));
+        assertNull(controller.admit(ENDPOINT, "reports", null));
+        assertNull(controller.admit(ENDPOINT, "REPORTS", null));
+        assertEquals(AdmissionController.Rejection.SERVICE_RATE, controller.admit(ENDPOINT, "reports", null));
+    }
+
+    @Test
+    void unknownAndMissingOriginsShareTheOtherBucket() {
+        assertNull(controller.admit(ENDPOINT, null, null));
+        assertEquals(AdmissionController.Rejection.SERVICE_RATE, controller.admit(ENDPOINT, "forged", null));
+        assertNull(controller.admit(ENDPOINT, "TRITON", null));
+
+        assertEquals(1.0, registry.get("portal.admission.rejections").tags("reason", "service_rate", "service", "other").counter().count());
+    }
+
+    @Test
+    void subjectsAreLimitedIndependentlyOfTheirService() {
+        assertNull(controller.admit(ENDPOINT, "TRITON", "jane"));
+        assertEquals(AdmissionController.Rejection.SUBJECT_RATE, controller.admit(ENDPOINT, "DASHBOARD", "jane"));
+        assertNull(controller.admit(ENDPOINT, "DASHBOARD", "john"));
+    }
+
+    @Test
+    void aSubjectOverItsLimitCannotDrainItsServiceBucket() {
+        assertNull(controller.admit(ENDPOINT, "REPORTS", "jane"));
+        for (int i = 0; i < 100; i++) {
+            assertEquals(AdmissionController.Rejection.SUBJECT_RATE, controller.admit(ENDPOINT, "REPORTS", "jane"));
+        }
+
+        assertNull(controller.admit(ENDPOINT, "REPORTS", "john"));
+        assertEquals(100.0, registry.get("portal.admission.rejections").tags("reason", "subject_rate", "service", "reports").counter().count());
+    }
+
+    @Test
+    void tokensTakenBeforeARejectionAreGivenBack() {
+        AdmissionController withEndpointLimit = new AdmissionController(ConfigFixtures.config(AdmissionConfig.class,
+                "portal.admission.enabled=true",
+                "portal.admission.service.rate=0.001",
+                "portal.admission.service.burst=3",
+                "portal.admission.subject.rate=0.001",
+                "portal.admission.subject.burst=2",
+                "portal.admission.endpoints.\"" + ENDPOINT + "\".service.rate=0.001",
+                "portal.admission.endpoints.\"" + ENDPOINT + "\".service.burst=1"), registry);
+
+        assertNull(withEndpointLimit.admit(ENDPOINT, "DASHBOARD", "jane"));
+        assertEquals(AdmissionController.Rejection.SERVICE_RATE, withEndpointLimit.admit(ENDPOINT, "DASHBOARD", "john"));
+
+        assertNull(withEndpointLimit.admit(OTHER_ENDPOINT, "DASHBOARD", "john"));
+        assertNull(withEndpointLimit.admit(OTHER_ENDPOINT, "DASHBOARD", "john"));
+        assertEquals(AdmissionController.Rejection.SERVICE_RATE, withEndpointLimit.admit(OTHER_ENDPOINT, "DASHBOARD", "max"));
+    }
+}
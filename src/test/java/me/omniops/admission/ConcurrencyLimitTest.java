@@ -0,0 +1,94 @@
+package me.omniops.admission;
+
+import me.omniops.ConfigFixtures;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ConcurrencyLimitTest {
+
+    @Test
+    void admitsUpToTheLimit() {
+        ConcurrencyLimit limit = limit("2", "1", "4", "1S");
+
+        assertTrue(limit.tryAcquire());
+        assertTrue(limit.tryAcquire());
+        assertFalse(limit.tryAcquire());
+        assertEquals(2, limit.inFlight());
+        limit.release(0);
+        assertTrue(limit.tryAcquire());
+    }
+
+    @Test
+    void growsWhileFastAndBusyUpToTheMaximum() {
+        ConcurrencyLimit limit = limit("2", "1", "4", "1S");
+
+        for (int round = 0; round < 50; round++) {
+            int taken = 0;
+            while (limit.tryAcquire()) {
+                taken++;
+            }
+            for (int i = 0; i < taken; i++) {
+                limit.release(0);
+            }
+        }
+
+        assertEquals(4, limit.limit());
+        assertEquals(0, limit.inFlight());
+    }
+
+    @Test
+    void doesNotGrowWhileMostlyIdle() {
+        ConcurrencyLimit limit = limit("4", "1", "8", "1S");
+
+        for (int i = 0; i < 100; i++) {
+            limit.tryAcquire();
+            limit.release(0);
+        }
+
+        assertEquals(4, limit.limit());
+    }
+
+    @Test
+    void backsOffOncePerTargetLatencyDownToTheMinimum() throws InterruptedException {
+        ConcurrencyLimit limit = limit("8", "2", "8", "200ms");
+        long slow = TimeUnit.MILLISECONDS.toNanos(500);
+
+        Thread.sleep(250);
+        limit.tryAcquire();
+        limit.release(slow);
+        assertEquals(4, limit.limit());
+        limit.tryAcquire();
+        limit.release(slow);
+        assertEquals(4, limit.limit());
+
+        Thread.sleep(250);
+        limit.tryAcquire();
+        limit.release(slow);
+        Thread.sleep(250);
+        limit.tryAcquire();
+        limit.release(slow);
+        assertEquals(2, limit.limit());
+    }
+
+    @Test
+    void rejectsInvalidSettings() {
+        assertThrows(IllegalArgumentException.class, () -> limit("2", "4", "2", "1S"));
+        assertThrows(IllegalArgumentException.class, () -> new ConcurrencyLimit(ConfigFixtures.config(AdmissionConfig.class,
+                "portal.admission.concurrency.backoff-ratio=1").concurrency()));
+    }
+
+    private static ConcurrencyLimit limit(String initial, String min, String max, String targetLatency) {
+        return new ConcurrencyLimit(ConfigFixtures.config(AdmissionConfig.class,
+                "portal.admission.concurrency.initial-limit=" + initial,
+                "portal.admission.concurrency.min-limit=" + min,
+                "portal.admission.concurrency.max-limit=" + max,
+                "portal.admission.concurrency.target-latency=" + targetLatency,
+                "portal.admission.concurrency.backoff-ratio=0.5").concurrency());
+    }
+}
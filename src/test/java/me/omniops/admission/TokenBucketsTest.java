@@ -0,0 +1,67 @@
+package me.omniops.admission;
+
+import me.omniops.ConfigFixtures;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TokenBucketsTest {
+
+    @Test
+    void admitsABurstThenRejects() {
+        TokenBuckets buckets = TokenBuckets.uniform(limit(0.001, 3), 2, true);
+
+        assertTrue(buckets.tryAcquire(0));
+        assertTrue(buckets.tryAcquire(0));
+        assertTrue(buckets.tryAcquire(0));
+        assertFalse(buckets.tryAcquire(0));
+        assertTrue(buckets.tryAcquire(1));
+    }
+
+    @Test
+    void refillsAtTheConfiguredRate() throws InterruptedException {
+        TokenBuckets buckets = TokenBuckets.uniform(limit(100, 1), 1, false);
+
+        assertTrue(buckets.tryAcquire(0));
+        assertFalse(buckets.tryAcquire(0));
+        Thread.sleep(30);
+        assertTrue(buckets.tryAcquire(0));
+        assertFalse(buckets.tryAcquire(0));
+    }
+
+    @Test
+    void releasedTokensCanBeTakenAgain() {
+        TokenBuckets buckets = new TokenBuckets(new AdmissionConfig.Limit[]{null, limit(0.001, 2)}, true);
+
+        assertTrue(buckets.tryAcquire(1));
+        assertTrue(buckets.tryAcquire(1));
+        buckets.release(1);
+        buckets.release(0);
+
+        assertTrue(buckets.tryAcquire(1));
+        assertFalse(buckets.tryAcquire(1));
+    }
+
+    @Test
+    void bucketsWithoutALimitAlwaysAdmit() {
+        TokenBuckets buckets = new TokenBuckets(new AdmissionConfig.Limit[]{null, limit(0.001, 1)}, false);
+
+        for (int i = 0; i < 1000; i++) {
+            assertTrue(buckets.tryAcquire(0));
+        }
+        assertTrue(buckets.tryAcquire(1));
+        assertFalse(buckets.tryAcquire(1));
+    }
+
+    @Test
+    void rejectsNonPositiveRates() {
+        assertThrows(IllegalArgumentException.class, () -> TokenBuckets.uniform(limit(0, 1), 1, false));
+    }
+
+    static AdmissionConfig.Limit limit(double rate, int burst) {
+        return ConfigFixtures.config(AdmissionConfig.class,
+                "portal.admission.service.rate=" + rate, "portal.admission.service.burst=" + burst).service().orElseThrow();
+    }
+}
@@ -0,0 +1,107 @@
+package me.omniops.audit;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.vertx.core.Vertx;
+import me.omniops.ConfigFixtures;
+import me.omniops.security.SecurityMetrics;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class AuditLogTest {
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private AuditLog auditLog;
+
+    @TempDir
+    Path dir;
+
+    @AfterEach
+    void close() {
+        if (auditLog != null) {
+            auditLog.close();
+        }
+    }
+
+    @Test
+    void writesEveryEventAsAJsonLine() throws IOException {
+        Path file = dir.resolve("audit/audit.jsonl");
+        auditLog = auditLog("portal.audit.file=" + file, "portal.audit.sync-interval=0S");
+
+        for (int i = 0; i < 3; i++) {
+            auditLog.record(event("user-" + i));
+        }
+        auditLog.close();
+
+        List<String> lines = Files.readAllLines(file);
+        assertEquals(3, lines.size());
+        assertTrue(lines.get(2).contains("\"outcome\":\"allowed\""));
+        assertTrue(lines.get(2).contains("\"subject\":\"user-2\""));
+        assertEquals(3.0, events("written"));
+    }
+
+    @Test
+    void dropsABatchThatFailsAgainAfterTheRetry() {
+        // A directory cannot be opened for writing.
+        auditLog = auditLog("portal.audit.file=" + dir);
+
+        auditLog.record(event("jane"));
+        auditLog.record(event("john"));
+        auditLog.close();
+
+        assertEquals(0.0, events("written"));
+        assertEquals(2.0, events("failed"));
+        assertEquals(1.0, registry.get("portal.audit.write.retries").counter().count());
+    }
+
+    @Test
+    void neverBlocksAnEventLoopThread() throws Exception {
+        auditLog = auditLog("portal.audit.file=" + dir.resolve("audit.jsonl"), "portal.audit.buffer-size=1",
+                "portal.audit.backpressure=block", "portal.audit.poll-interval=10S");
+        auditLog.record(event("jane"));
+        // Let the writer drain what it finds and park for the poll interval.
+        Thread.sleep(200);
+        Vertx vertx = Vertx.vertx();
+        try {
+            CompletableFuture<Long> elapsed = new CompletableFuture<>();
+            vertx.runOnContext(ignored -> {
+                long start = System.nanoTime();
+                for (int i = 0; i < 4; i++) {
+                    auditLog.record(event("john"));
+                }
+                elapsed.complete(System.nanoTime() - start);
+            });
+
+            assertTrue(elapsed.get(5, TimeUnit.SECONDS) < TimeUnit.SECONDS.toNanos(1));
+            assertTrue(events("dropped") >= 2.0);
+        } finally {
+            vertx.close();
+        }
+    }
+
+    private AuditLog auditLog(String... overrides) {
+        String[] settings = new String[overrides.length + 1];
+        settings[0] = "portal.audit.enabled=true";
+        System.arraycopy(overrides, 0, settings, 1, overrides.length);
+        return new AuditLog(ConfigFixtures.config(AuditConfig.class, settings), registry);
+    }
+
+    private double events(String result) {
+        return registry.get("portal.audit.events").tag("result", result).counter().count();
+    }
+
+    private static AuditEvent event(String subject) {
+        return new AuditEvent(System.currentTimeMillis(), SecurityMetrics.Outcome.ALLOWED, "com.example.ReportResource#export",
+                null, null, null, "triton", subject, subject, null);
+    }
+}
@@ -0,0 +1,125 @@
+package me.omniops.audit;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class MpscRingBufferTest {
+
+    @Test
+    void roundsTheCapacityUpToAPowerOfTwo() {
+        assertEquals(8, new MpscRingBuffer<>(5).capacity());
+        assertEquals(8, new MpscRingBuffer<>(8).capacity());
+        assertEquals(2, new MpscRingBuffer<>(1).capacity());
+        assertThrows(IllegalArgumentException.class, () -> new MpscRingBuffer<>(0));
+    }
+
+    @Test
+    void smallestBufferDoesNotOverwriteUnconsumedElements() {
+        MpscRingBuffer<Integer> buffer = new MpscRingBuffer<>(1);
+
+        assertTrue(buffer.offer(1));
+        assertTrue(buffer.offer(2));
+        assertFalse(buffer.offer(3));
+
+        List<Integer> drained = new ArrayList<>();
+        buffer.drainTo(drained, 10);
+        assertEquals(List.of(1, 2), drained);
+    }
+
+    @Test
+    void drainsInOrderAndRejectsWhenFull() {
+        MpscRingBuffer<Integer> buffer = new MpscRingBuffer<>(4);
+        for (int i = 0; i < 4; i++) {
+            assertTrue(buffer.offer(i));
+        }
+        assertFalse(buffer.offer(4));
+        assertEquals(4, buffer.size());
+
+        List<Integer> drained = new ArrayList<>();
+        assertEquals(3, buffer.drainTo(drained, 3));
+        assertEquals(List.of(0, 1, 2), drained);
+        assertEquals(1, buffer.size());
+        assertTrue(buffer.offer(4));
+    }
+
+    @Test
+    void reusesSlotsOverManyLaps() {
+        MpscRingBuffer<Integer> buffer = new MpscRingBuffer<>(2);
+        List<Integer> drained = new ArrayList<>();
+
+        for (int i = 0; i < 100; i++) {
+            assertTrue(buffer.offer(i));
+            assertTrue(buffer.offer(-i));
+            assertEquals(2, buffer.drainTo(drained, 10));
+        }
+
+        assertEquals(200, drained.size());
+        assertEquals(List.of(99, -99), drained.subList(198, 200));
+        assertTrue(buffer.isEmpty());
+    }
+
+    @Test
+    void deliversEveryElementOfConcurrentProducersOnce() throws InterruptedException {
+        int producers = 4;
+        int perProducer = 20_000;
+        MpscRingBuffer<Integer> buffer = new MpscRingBuffer<>(64);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Thread> threads = new ArrayList<>();
+        for (int p = 0; p < producers; p++) {
+            int base = p * perProducer;
+            Thread thread = new Thread(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+                for (int i = 0; i < perProducer; i++) {
+                    while (!buffer.offer(base + i)) {
+                        Thread.yield();
+                    }
+                }
+            });
+            thread.setDaemon(true);
+            thread.start();
+            threads.add(thread);
+        }
+
+        start.countDown();
+        Set<Integer> seen = new HashSet<>();
+        List<Integer> batch = new ArrayList<>();
+        int[] lastOfProducer = new int[producers];
+        Arrays.fill(lastOfProducer, -1);
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(30);
+        while (seen.size() < producers * perProducer && System.nanoTime() < deadline) {
+            batch.clear();
+            if (buffer.drainTo(batch, 32) == 0) {
+                Thread.yield();
+            }
+            for (int value : batch) {
+                assertTrue(seen.add(value), "duplicate " + value);
+                int producer = value / perProducer;
+                assertTrue(value > lastOfProducer[producer], "out of order " + value);
+                lastOfProducer[producer] = value;
+            }
+        }
+        for (Thread thread : threads) {
+            thread.join(TimeUnit.SECONDS.toMillis(5));
+        }
+
+        assertEquals(producers * perProducer, seen.size());
+        assertTrue(buffer.isEmpty());
+    }
+}
@@ -0,0 +1,121 @@
+package me.omniops.cluster;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import me.omniops.ConfigFixtures;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ClusterCacheTest {
+
+    private static final TypeReference<String> STRING = new TypeReference<>() {
+    };
+
+    private final InMemorySharedCache sharedCache = new InMemorySharedCache(100);
+    private final LoopbackTransport transport = new LoopbackTransport();
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private final List<InvalidationEvent> seenByB = new ArrayList<>();
+    private final ClusterCache nodeA = node("a", event -> {
+    });
+    private final ClusterCache nodeB = node("b", seenByB::add);
+    private final AtomicInteger loads = new AtomicInteger();
+
+    @Test
+    void otherNodesAreServedFromTheSharedTier() {
+        assertEquals("v1", nodeA.load("user:1", STRING, () -> fetch("v1")));
+        assertEquals("v1", nodeB.load("user:1", STRING, () -> fetch("v2")));
+
+        assertEquals(1, loads.get());
+    }
+
+    @Test
+    void publishDropsTheSharedEntryAndReachesOtherNodes() {
+        nodeA.load("user:1", STRING, () -> fetch("v1"));
+
+        nodeA.publish(InvalidationEvent.Type.USER, "1", "user:1");
+
+        assertEquals(List.of(new InvalidationEvent(InvalidationEvent.Type.USER, "1", "a")), seenByB);
+        assertEquals("v2", nodeB.load("user:1", STRING, () -> fetch("v2")));
+        assertEquals("v2", nodeA.load("user:1", STRING, () -> fetch("v3")));
+        assertEquals(2, loads.get());
+    }
+
+    @Test
+    void aLoadRunningDuringAnInvalidationDoesNotStoreItsValue() {
+        String loaded = nodeA.load("user:1", STRING, () -> {
+            String before = fetch("before");
+            // The user changes while the old value is on its way back from Keycloak.
+            nodeB.publish(InvalidationEvent.Type.USER, "1", "user:1");
+            return before;
+        });
+
+        assertEquals("before", loaded);
+        assertEquals("after", nodeB.load("user:1", STRING, () -> fetch("after")));
+        assertEquals("after", nodeA.load("user:1", STRING, () -> fetch("again")));
+    }
+
+    @Test
+    void invalidatingEverythingMovesAllNodesToANewGeneration() {
+        nodeA.load("user:1", STRING, () -> fetch("v1"));
+        nodeA.load("role-members:Admin", STRING, () -> fetch("admins-1"));
+
+        String inFlight = nodeB.load("user:2", STRING, () -> {
+            String before = fetch("stale");
+            nodeA.publish(InvalidationEvent.Type.ALL, "", null);
+            return before;
+        });
+
+        assertEquals("stale", inFlight);
+        assertEquals(1L, nodeA.generation());
+        assertEquals(1L, nodeB.generation());
+        assertEquals(InvalidationEvent.Type.ALL, seenByB.get(0).type());
+        assertEquals("v2", nodeB.load("user:1", STRING, () -> fetch("v2")));
+        assertEquals("admins-2", nodeB.load("role-members:Admin", STRING, () -> fetch("admins-2")));
+        assertEquals("fresh", nodeA.load("user:2", STRING, () -> fetch("fresh")));
+        assertEquals("v2", nodeA.load("user:1", STRING, () -> fetch("v3")));
+    }
+
+    @Test
+    void nodesStartedLaterUseTheCurrentGeneration() {
+        nodeA.publish(InvalidationEvent.Type.ALL, "", null);
+        nodeB.publish(InvalidationEvent.Type.ALL, "", null);
+        nodeA.load("user:1", STRING, () -> fetch("v1"));
+
+        ClusterCache nodeC = node("c", event -> {
+        });
+
+        assertEquals(2L, nodeC.generation());
+        assertEquals("v1", nodeC.load("user:1", STRING, () -> fetch("v2")));
+        assertEquals(1, loads.get());
+    }
+
+    @Test
+    void ignoresItsOwnEventsAndUnreadableEntries() {
+        nodeA.publish(InvalidationEvent.Type.ROLE, "Admin", null);
+        sharedCache.put("0:user:1", new byte[]{'{'}, Duration.ofMinutes(1));
+
+        assertEquals(1, seenByB.size());
+        assertEquals(1.0, registry.get("portal.cluster.invalidations.received").counter().count());
+        assertEquals("v1", nodeA.load("user:1", STRING, () -> fetch("v1")));
+        assertEquals("v1", nodeB.load("user:1", STRING, () -> fetch("v2")));
+        assertTrue(registry.get("portal.cluster.shared_cache").tag("result", "hit").counter().count() >= 1.0);
+    }
+
+    private String fetch(String value) {
+        loads.incrementAndGet();
+        return value;
+    }
+
+    private ClusterCache node(String nodeId, Consumer<InvalidationEvent> listener) {
+        return new ClusterCache(ConfigFixtures.config(ClusterConfig.class, "portal.cluster.enabled=true",
+                "portal.cluster.node-id=" + nodeId), sharedCache, transport, listener, registry);
+    }
+}
@@ -0,0 +1,164 @@
+package me.omniops.revocation;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import me.omniops.ConfigFixtures;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RevocationListTest {
+
+    private static final long NOW = 1_800_000_000L;
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private final MutableClock clock = new MutableClock(Instant.ofEpochSecond(NOW));
+    private final RevocationList list = list("portal.revocation.enabled=true");
+
+    @AfterEach
+    void close() {
+        list.close();
+    }
+
+    @Test
+    void tokenRevocationsApplyWhateverTheIssueTime() {
+        list.revoke(Revocation.token("token-1", NOW));
+
+        assertTrue(list.isRevoked("jane", "session-1", "token-1", NOW + 60));
+        assertFalse(list.isRevoked("jane", "session-1", "token-2", NOW - 60));
+        assertFalse(list.isRevoked("token-1", "token-1", null, 0L));
+    }
+
+    @Test
+    void sessionAndSubjectRevocationsOnlyApplyToEarlierTokens() {
+        list.revoke(Revocation.session("session-1", NOW - 10));
+        list.revoke(Revocation.subject("jane", NOW - 30));
+
+        assertTrue(list.isRevoked("john", "session-1", null, NOW - 10));
+        assertTrue(list.isRevoked("john", "session-1", null, 0L));
+        assertFalse(list.isRevoked("john", "session-1", null, NOW - 9));
+        assertTrue(list.isRevoked("jane", null, null, NOW - 60));
+        assertFalse(list.isRevoked("jane", "session-2", "token-1", NOW - 20));
+        assertFalse(list.isRevoked(null, null, null, 0L));
+    }
+
+    @Test
+    void laterRevocationsOfTheSameIdWin() {
+        list.revoke(Revocation.subject("jane", NOW - 30));
+        list.revoke(Revocation.subject("jane", NOW - 10));
+        list.revoke(Revocation.subject("jane", NOW - 50));
+
+        assertEquals(1, list.size());
+        assertTrue(list.isRevoked("jane", null, null, NOW - 20));
+    }
+
+    @Test
+    void dropsEntriesOnceTheRetentionHasPassed() {
+        list.revoke(Revocation.token("stale", NOW - Duration.ofHours(2).toSeconds()));
+        list.revoke(Revocation.token("token-1", NOW - 60));
+        list.revoke(Revocation.token("token-2", NOW));
+
+        assertEquals(2, list.size());
+        clock.advance(Duration.ofMinutes(59).plusSeconds(30));
+        list.purge();
+
+        assertEquals(1, list.size());
+        assertFalse(list.isRevoked(null, null, "token-1", 0L));
+        assertTrue(list.isRevoked(null, null, "token-2", 0L));
+    }
+
+    @Test
+    void filterHitsAreConfirmedAgainstTheExactEntries() {
+        RevocationList small = list("portal.revocation.enabled=true", "portal.revocation.expected-entries=16");
+        try {
+            for (int i = 0; i < 500; i++) {
+                small.revoke(Revocation.token("revoked-" + i, NOW));
+            }
+            small.purge();
+
+            for (int i = 0; i < 500; i++) {
+                assertTrue(small.isRevoked(null, null, "revoked-" + i, 0L), "revoked-" + i);
+            }
+            for (int i = 0; i < 5_000; i++) {
+                assertFalse(small.isRevoked(null, null, "active-" + i, 0L), "active-" + i);
+            }
+            assertEquals(500, small.size());
+            assertEquals(500.0, registry.get("portal.revocation.lookups").tag("result", "revoked").counter().count());
+        } finally {
+            small.close();
+        }
+    }
+
+    @Test
+    void disabledListRevokesNothing() {
+        RevocationList disabled = list();
+
+        disabled.revoke(Revocation.token("token-1", NOW));
+
+        assertFalse(disabled.isEnabled());
+        assertEquals(0, disabled.size());
+        assertFalse(disabled.isRevoked(null, null, "token-1", 0L));
+    }
+
+    @Test
+    void bloomFilterHasNoFalseNegativesAndKeepsItsFalsePositiveRate() {
+        BloomFilter filter = new BloomFilter(10_000, 0.01);
+        for (int i = 0; i < 10_000; i++) {
+            filter.put(RevocationList.hash(Revocation.Type.TOKEN, "revoked-" + i));
+        }
+
+        int falsePositives = 0;
+        for (int i = 0; i < 10_000; i++) {
+            assertTrue(filter.mightContain(RevocationList.hash(Revocation.Type.TOKEN, "revoked-" + i)));
+            if (filter.mightContain(RevocationList.hash(Revocation.Type.TOKEN, "active-" + i))) {
+                falsePositives++;
+            }
+        }
+
+        assertTrue(falsePositives < 200, "false positives: " + falsePositives);
+        assertTrue(filter.falsePositiveRate() < 0.02, "estimated rate: " + filter.falsePositiveRate());
+        assertFalse(filter.mightContain(RevocationList.hash(Revocation.Type.SESSION, "revoked-0"))
+                && filter.mightContain(RevocationList.hash(Revocation.Type.SUBJECT, "revoked-0")));
+    }
+
+    private RevocationList list(String... settings) {
+        return new RevocationList(ConfigFixtures.config(RevocationConfig.class, settings), List.of(), registry, clock);
+    }
+
+    private static final class MutableClock extends Clock {
+
+        private volatile Instant instant;
+
+        private MutableClock(Instant instant) {
+            this.instant = instant;
+        }
+
+        void advance(Duration duration) {
+            instant = instant.plus(duration);
+        }
+
+        @Override
+        public ZoneId getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            return this;
+        }
+
+        @Override
+        public Instant instant() {
+            return instant;
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package me.omniops.security;
+
+import io.vertx.core.json.JsonArray;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ClaimIndexTest {
+
+    @Test
+    void looksUpNamesCaseInsensitivelyInPlace() {
+        ClaimIndex modules = ClaimIndex.MODULES;
+
+        assertEquals(Modules.MINIO.ordinal(), modules.indexOf("minio"));
+        assertEquals(Modules.MINIO.ordinal(), modules.indexOf(new StringBuilder("mInIo")));
+        assertEquals(Modules.JUPYTERHUB.ordinal(), modules.indexOf("JupyterHub"));
+        assertEquals(-1, modules.indexOf("MINI"));
+        assertEquals(-1, modules.indexOf(new StringBuilder("MINIOS")));
+        assertEquals(-1, modules.indexOf(null));
+        assertEquals("MINIO", modules.nameOf(modules.indexOf("minio")));
+    }
+
+    @Test
+    void masksClaimsAndCountsUnknownValues() {
+        ClaimIndex roles = ClaimIndex.of(List.of("Admin", "MEMBER"));
+
+        long mask = roles.mask(new JsonArray().add("admin").add("AUDITOR").add(7).add("member"));
+
+        assertEquals(roles.mask(Role.Admin, Role.MEMBER), mask);
+        assertEquals(2, roles.unknownNames());
+        assertEquals(0L, roles.mask((JsonArray) null));
+        assertEquals(1L << 1, roles.maskOfNames(List.of("Member")));
+        assertThrows(IllegalArgumentException.class, () -> roles.maskOfNames(List.of("AUDITOR")));
+    }
+
+    @Test
+    void extendingKeepsExistingPositions() {
+        ClaimIndex roles = ClaimIndex.ROLES;
+        ClaimIndex extended = roles.extend(List.of("auditor", "ADMIN", "Auditor", "Owner"));
+
+        assertSame(roles, roles.extend(List.of("admin", "Member")));
+        assertEquals(roles.size() + 2, extended.size());
+        assertEquals(roles.mask(Role.Admin, Role.MEMBER), extended.mask(Role.Admin, Role.MEMBER));
+        assertEquals(roles.size(), extended.indexOf("AUDITOR"));
+        assertEquals(roles.size() + 1, extended.indexOf("owner"));
+        assertTrue(extended.sameNames(roles.extend(List.of("auditor", "Owner"))));
+        assertFalse(extended.sameNames(roles.extend(List.of("Owner", "auditor"))));
+    }
+
+    @Test
+    void rejectsDuplicatesAndMoreNamesThanFitInAMask() {
+        List<String> names = IntStream.range(0, ClaimIndex.MAX_NAMES).mapToObj(i -> "NAME" + i).toList();
+
+        assertEquals(1L << 63, ClaimIndex.of(names).maskOfNames(List.of("name63")));
+        assertThrows(IllegalArgumentException.class, () -> ClaimIndex.of(List.of("Admin", "ADMIN")));
+        assertThrows(IllegalArgumentException.class, () -> ClaimIndex.of(names).extend(List.of("NAME64")));
+    }
+
+    @Test
+    void requirementsMatchGrantedMasks() {
+        ClaimIndex modules = ClaimIndex.MODULES;
+        long minioAndGitlab = modules.mask(Modules.MINIO, Modules.GITLAB);
+        long minio = modules.mask(Modules.MINIO);
+        long harbor = modules.mask(Modules.HARBOR);
+
+        AccessRequirement any = new AccessRequirement(minioAndGitlab, MatchMode.ANY);
+        AccessRequirement all = new AccessRequirement(minioAndGitlab, MatchMode.ALL);
+        AccessRequirement none = new AccessRequirement(minioAndGitlab, MatchMode.NONE);
+
+        assertTrue(any.matches(minio));
+        assertFalse(any.matches(harbor));
+        assertTrue(all.matches(minioAndGitlab | harbor));
+        assertFalse(all.matches(minio));
+        assertTrue(none.matches(harbor));
+        assertFalse(none.matches(minio | harbor));
+        assertFalse(new AccessRequirement(0L, MatchMode.ANY).matches(-1L));
+        assertTrue(new AccessRequirement(0L, MatchMode.ALL).matches(0L));
+        assertTrue(AccessRequirement.anyOf(ClaimIndex.ROLES, Role.Admin).matches(ClaimIndex.ROLES.mask(Role.Admin)));
+    }
+}
@@ -0,0 +1,89 @@
+package me.omniops.security;
+
+import jakarta.ws.rs.GET;
+import jakarta.ws.rs.Path;
+import me.omniops.ConfigFixtures;
+import org.junit.jupiter.api.Test;
+
+import java.lang.reflect.Method;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class EndpointPolicyRegistryTest {
+
+    private final EndpointPolicyRegistry registry = new EndpointPolicyRegistry(
+            new PolicyStore(ConfigFixtures.config(SecurityConfig.class)));
+
+    @Test
+    void inheritedMethodTakesThePolicyOfEachResourceClass() throws NoSuchMethodException {
+        Method list = BaseResource.class.getMethod("list");
+
+        EndpointPolicy admin = registry.policyFor(list, AdminResource.class);
+        EndpointPolicy member = registry.policyFor(list, MemberResource.class);
+
+        assertEquals(List.of("Admin"), admin.getRoles());
+        assertEquals(List.of("MEMBER"), member.getRoles());
+        assertEquals(List.of("Admin"), registry.policyFor(list, AdminResource.class).getRoles());
+    }
+
+    @Test
+    void classLevelIsPublicIsNotInherited() throws NoSuchMethodException {
+        assertFalse(registry.policyFor(PublicClassResource.class.getMethod("unannotated"), PublicClassResource.class).isPublicApi());
+        assertFalse(registry.policyFor(PublicClassResource.class.getMethod("withRoles"), PublicClassResource.class).isPublicApi());
+        assertTrue(registry.policyFor(PublicClassResource.class.getMethod("open"), PublicClassResource.class).isPublicApi());
+    }
+
+    @Test
+    void methodValuesWinOverClassValues() throws NoSuchMethodException {
+        EndpointPolicy policy = registry.policyFor(PublicClassResource.class.getMethod("withRoles"), PublicClassResource.class);
+
+        assertEquals(List.of("Admin"), policy.getRoles());
+        assertEquals(List.of("MINIO"), policy.getModules());
+    }
+
+    @Test
+    void preloadCountsResourceMethods() {
+        assertEquals(4, registry.preload(List.of(AdminResource.class, PublicClassResource.class)));
+    }
+
+    public abstract static class BaseResource {
+        @GET
+        public String list() {
+            return "";
+        }
+    }
+
+    @Path("/admin")
+    @Authorization(roles = Role.Admin)
+    public static class AdminResource extends BaseResource {
+    }
+
+    @Path("/member")
+    @Authorization(roles = Role.MEMBER)
+    public static class MemberResource extends BaseResource {
+    }
+
+    @Path("/open")
+    @Authorization(isPublic = true, modules = Modules.MINIO)
+    public static class PublicClassResource {
+        @GET
+        public String unannotated() {
+            return "";
+        }
+
+        @GET
+        @Authorization(roles = Role.Admin)
+        public String withRoles() {
+            return "";
+        }
+
+        @GET
+        @Authorization(isPublic = true)
+        public String open() {
+            return "";
+        }
+    }
+}
@@ -0,0 +1,241 @@
+package me.omniops.security;
+
+import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import me.omniops.ConfigFixtures;
+import me.omniops.security.TokenVerificationException.Reason;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.PrivateKey;
+import java.security.Signature;
+import java.security.interfaces.ECPublicKey;
+import java.security.interfaces.RSAPublicKey;
+import java.security.spec.ECGenParameterSpec;
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class JwtVerifierTest {
+
+    private static final Base64.Encoder URL_ENCODER = Base64.getUrlEncoder().withoutPadding();
+    private static final String ISSUER = "https://sso.example.org/realms/omniops";
+    private static final long NOW = 1_800_000_000L;
+    private static final Clock CLOCK = Clock.fixed(Instant.ofEpochSecond(NOW), ZoneOffset.UTC);
+    private static final KeyPair RSA_KEY = generate("RSA", null);
+    private static final KeyPair EC_KEY = generate("EC", "secp256r1");
+    private static final KeyPair OTHER_RSA_KEY = generate("RSA", null);
+
+    private final SecurityConfig.Jwt config = ConfigFixtures.config(SecurityConfig.class,
+            "portal.security.jwt.audience=account", "portal.security.jwt.unknown-key-wait=2S",
+            "portal.security.jwt.min-refresh-interval=0S").jwt();
+    private final JwtVerifier verifier = new JwtVerifier(
+            JwksKeySource.of(jwks(rsaJwk("rsa-1", RSA_KEY), ecJwk("ec-1", EC_KEY))), config, ISSUER, CLOCK);
+
+    @Test
+    void acceptsRs256AndEs256Tokens() {
+        assertEquals("jane", verifier.verify(token("RS256", "rsa-1", RSA_KEY.getPrivate(), claims())).getString("sub"));
+        assertEquals("jane", verifier.verify(token("ES256", "ec-1", EC_KEY.getPrivate(), claims())).getString("sub"));
+        assertEquals("jane", verifier.verify(token("RS256", "rsa-1", RSA_KEY.getPrivate(),
+                claims().put("aud", new JsonArray().add("other").add("account")))).getString("sub"));
+    }
+
+    @Test
+    void rejectsAlteredAndForeignSignatures() {
+        String token = token("RS256", "rsa-1", RSA_KEY.getPrivate(), claims());
+        String[] parts = token.split("\\.");
+        String altered = parts[0] + "." + encode(claims().put("sub", "admin").encode()) + "." + parts[2];
+
+        assertReason(Reason.INVALID_SIGNATURE, altered);
+        assertReason(Reason.INVALID_SIGNATURE, token("RS256", "rsa-1", OTHER_RSA_KEY.getPrivate(), claims()));
+        assertReason(Reason.INVALID_SIGNATURE, token("RS256", "ec-1", RSA_KEY.getPrivate(), claims()));
+    }
+
+    @Test
+    void checksTimeIssuerAndAudience() {
+        assertReason(Reason.EXPIRED, token("RS256", "rsa-1", RSA_KEY.getPrivate(), claims().put("exp", NOW - 31)));
+        assertEquals("jane", verifier.verify(token("RS256", "rsa-1", RSA_KEY.getPrivate(), claims().put("exp", NOW - 29))).getString("sub"));
+        assertReason(Reason.NOT_YET_VALID, token("RS256", "rsa-1", RSA_KEY.getPrivate(), claims().put("nbf", NOW + 60)));
+        assertReason(Reason.INVALID_ISSUER, token("RS256", "rsa-1", RSA_KEY.getPrivate(), claims().put("iss", "https://evil.example.org")));
+        assertReason(Reason.INVALID_AUDIENCE, token("RS256", "rsa-1", RSA_KEY.getPrivate(), claims().put("aud", "other")));
+        assertReason(Reason.MALFORMED, token("RS256", "rsa-1", RSA_KEY.getPrivate(), claims().put("exp", "soon")));
+    }
+
+    @Test
+    void rejectsMalformedTokensAndUnsupportedAlgorithms() {
+        assertReason(Reason.MALFORMED, "not-a-token");
+        assertReason(Reason.MALFORMED, "a.b.c.d");
+        assertReason(Reason.MALFORMED, "!!!." + encode(claims().encode()) + ".sig");
+        assertReason(Reason.UNSUPPORTED_ALGORITHM, encode("{\"alg\":\"none\",\"kid\":\"rsa-1\"}") + "." + encode(claims().encode()) + ".");
+        assertReason(Reason.UNSUPPORTED_ALGORITHM, token("HS256", "rsa-1", RSA_KEY.getPrivate(), claims()));
+    }
+
+    @Test
+    void fixedKeySetRejectsUnknownKeysWithoutRefreshing() {
+        long before = refreshThreads();
+        JwtVerifier fixed = new JwtVerifier(JwksKeySource.of(jwks(rsaJwk("rsa-1", RSA_KEY))), config, ISSUER, CLOCK);
+        long start = System.nanoTime();
+
+        assertReason(Reason.UNKNOWN_KEY, fixed, token("RS256", "rsa-2", OTHER_RSA_KEY.getPrivate(), claims()));
+
+        assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(1));
+        assertEquals(before, refreshThreads());
+        assertTrue(fixed.refresh().isDone());
+    }
+
+    @Test
+    void unknownKeyTriggersARefresh() {
+        AtomicBoolean rotated = new AtomicBoolean();
+        AtomicInteger fetches = new AtomicInteger();
+        JwtVerifier rotating = new JwtVerifier(() -> {
+            fetches.incrementAndGet();
+            return rotated.get() ? jwks(rsaJwk("rsa-1", RSA_KEY), rsaJwk("rsa-2", OTHER_RSA_KEY)) : jwks(rsaJwk("rsa-1", RSA_KEY));
+        }, config, ISSUER, CLOCK);
+        try {
+            rotating.refresh().join();
+            int fetchesBefore = fetches.get();
+            rotated.set(true);
+
+            assertEquals("jane", rotating.verify(token("RS256", "rsa-2", OTHER_RSA_KEY.getPrivate(), claims())).getString("sub"));
+            assertEquals(fetchesBefore + 1, fetches.get());
+        } finally {
+            rotating.close();
+        }
+    }
+
+    @Test
+    void unknownKeyOnAnEventLoopFailsFastAndRefreshesInTheBackground() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicBoolean rotated = new AtomicBoolean();
+        JwtVerifier rotating = new JwtVerifier(() -> {
+            if (!rotated.get()) {
+                return jwks(rsaJwk("rsa-1", RSA_KEY));
+            }
+            try {
+                release.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return jwks(rsaJwk("rsa-1", RSA_KEY), rsaJwk("rsa-2", OTHER_RSA_KEY));
+        }, config, ISSUER, CLOCK);
+        Vertx vertx = Vertx.vertx();
+        try {
+            rotating.refresh().join();
+            rotated.set(true);
+            String token = token("RS256", "rsa-2", OTHER_RSA_KEY.getPrivate(), claims());
+            CompletableFuture<Long> elapsed = new CompletableFuture<>();
+            AtomicReference<Reason> reason = new AtomicReference<>();
+            vertx.runOnContext(ignored -> {
+                long start = System.nanoTime();
+                try {
+                    rotating.verify(token);
+                } catch (TokenVerificationException e) {
+                    reason.set(e.getReason());
+                }
+                elapsed.complete(System.nanoTime() - start);
+            });
+
+            assertTrue(elapsed.get(5, TimeUnit.SECONDS) < TimeUnit.SECONDS.toNanos(1));
+            assertEquals(Reason.UNKNOWN_KEY, reason.get());
+            release.countDown();
+            rotating.refresh().get(5, TimeUnit.SECONDS);
+            assertEquals("jane", rotating.verify(token).getString("sub"));
+        } finally {
+            release.countDown();
+            rotating.close();
+            vertx.close();
+        }
+    }
+
+    private void assertReason(Reason reason, String token) {
+        assertReason(reason, verifier, token);
+    }
+
+    private static void assertReason(Reason reason, JwtVerifier verifier, String token) {
+        assertEquals(reason, assertThrows(TokenVerificationException.class, () -> verifier.verify(token)).getReason());
+    }
+
+    private static long refreshThreads() {
+        return Thread.getAllStackTraces().keySet().stream().filter(thread -> thread.getName().equals("jwks-refresh")).count();
+    }
+
+    private static JsonObject claims() {
+        return new JsonObject()
+                .put("sub", "jane")
+                .put("iss", ISSUER)
+                .put("aud", "account")
+                .put("iat", NOW)
+                .put("exp", NOW + 300);
+    }
+
+    static String token(String alg, String kid, PrivateKey key, JsonObject claims) {
+        String signingInput = encode(new JsonObject().put("alg", alg).put("kid", kid).encode()) + "." + encode(claims.encode());
+        try {
+            Signature signature = Signature.getInstance(key.getAlgorithm().equals("EC") ? "SHA256withECDSAinP1363Format" : "SHA256withRSA");
+            signature.initSign(key);
+            signature.update(signingInput.getBytes(StandardCharsets.US_ASCII));
+            return signingInput + "." + URL_ENCODER.encodeToString(signature.sign());
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String jwks(JsonObject... keys) {
+        return new JsonObject().put("keys", new JsonArray(Arrays.asList(keys))).encode();
+    }
+
+    private static JsonObject rsaJwk(String kid, KeyPair keyPair) {
+        RSAPublicKey key = (RSAPublicKey) keyPair.getPublic();
+        return new JsonObject().put("kid", kid).put("kty", "RSA").put("use", "sig")
+                .put("n", unsigned(key.getModulus())).put("e", unsigned(key.getPublicExponent()));
+    }
+
+    private static JsonObject ecJwk(String kid, KeyPair keyPair) {
+        ECPublicKey key = (ECPublicKey) keyPair.getPublic();
+        return new JsonObject().put("kid", kid).put("kty", "EC").put("crv", "P-256")
+                .put("x", unsigned(key.getW().getAffineX())).put("y", unsigned(key.getW().getAffineY()));
+    }
+
+    private static String unsigned(BigInteger value) {
+        byte[] bytes = value.toByteArray();
+        if (bytes[0] == 0 && bytes.length > 1) {
+            bytes = Arrays.copyOfRange(bytes, 1, bytes.length);
+        }
+        return URL_ENCODER.encodeToString(bytes);
+    }
+
+    private static String encode(String json) {
+        return URL_ENCODER.encodeToString(json.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static KeyPair generate(String algorithm, String curve) {
+        try {
+            KeyPairGenerator generator = KeyPairGenerator.getInstance(algorithm);
+            if (curve != null) {
+                generator.initialize(new ECGenParameterSpec(curve));
+            } else {
+                generator.initialize(2048);
+            }
+            return generator.generateKeyPair();
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,117 @@
+package me.omniops.security;
+
+import io.vertx.core.json.JsonObject;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class PolicySnapshotTest {
+
+    private static final String LIST = ReportResource.class.getName() + "#list";
+
+    @Test
+    void appendsNamesAfterTheEnumConstants() {
+        PolicySnapshot snapshot = parse("""
+                {"roles": ["AUDITOR", "admin"], "modules": ["MLFLOW"], "services": ["REPORTS"]}""");
+
+        assertEquals(ClaimIndex.ROLES.size() + 1, snapshot.getRoles().size());
+        assertEquals(ClaimIndex.ROLES.mask(Role.Admin, Role.MEMBER), snapshot.getRoles().mask(Role.Admin, Role.MEMBER));
+        assertEquals(ClaimIndex.ROLES.size(), snapshot.getRoles().indexOf("auditor"));
+        assertEquals(ClaimIndex.MODULES.size(), snapshot.getModules().indexOf("mlflow"));
+        assertEquals(ClaimIndex.SERVICES.size(), snapshot.getServices().indexOf("reports"));
+        assertEquals(1L, snapshot.getGeneration());
+        assertEquals(1L, snapshot.getNamesVersion());
+        assertNotEquals(PolicySnapshot.DEFAULTS.getNamesFingerprint(), snapshot.getNamesFingerprint());
+    }
+
+    @Test
+    void reloadsWithTheSameNamesKeepTheirIndexes() {
+        PolicySnapshot first = parse("""
+                {"roles": ["AUDITOR"], "services": ["REPORTS"]}""");
+        PolicySnapshot endpointsOnly = PolicySnapshot.parse(new JsonObject("""
+                {"roles": ["auditor"], "services": ["REPORTS"], "endpoints": {}}"""), first);
+        PolicySnapshot newService = PolicySnapshot.parse(new JsonObject("""
+                {"roles": ["AUDITOR"], "services": ["REPORTS", "BILLING"]}"""), endpointsOnly);
+        PolicySnapshot newRole = PolicySnapshot.parse(new JsonObject("""
+                {"roles": ["AUDITOR", "OWNER"]}"""), newService);
+
+        assertEquals(2L, endpointsOnly.getGeneration());
+        assertSame(first.getRoles(), endpointsOnly.getRoles());
+        assertSame(first.getServices(), endpointsOnly.getServices());
+        assertEquals(first.getNamesVersion(), endpointsOnly.getNamesVersion());
+        assertEquals(first.getNamesVersion(), newService.getNamesVersion());
+        assertEquals(first.getNamesFingerprint(), newService.getNamesFingerprint());
+        assertEquals(first.getNamesVersion() + 1, newRole.getNamesVersion());
+        assertNotEquals(first.getNamesFingerprint(), newRole.getNamesFingerprint());
+    }
+
+    @Test
+    void overridesReplaceOnlyTheValuesTheyName() throws NoSuchMethodException {
+        PolicySnapshot snapshot = parse("""
+                {"roles": ["AUDITOR"], "services": ["REPORTS"],
+                 "endpoints": {"%s": {"roles": ["AUDITOR", "Admin"], "roleMatch": "all", "services": ["reports"]}}}"""
+                .formatted(LIST));
+
+        EndpointPolicy annotated = policy(PolicySnapshot.DEFAULTS);
+        EndpointPolicy merged = policy(snapshot);
+
+        assertEquals(List.of("MEMBER"), annotated.getRoles());
+        assertEquals(List.of("AUDITOR", "Admin"), merged.getRoles());
+        assertEquals(List.of("MINIO"), merged.getModules());
+        assertEquals(MatchMode.ALL, merged.getRoleRequirement().getMode());
+        assertEquals(MatchMode.ANY, merged.getModuleRequirement().getMode());
+        assertFalse(merged.isPublicApi());
+        long minio = snapshot.getModules().mask(Modules.MINIO);
+        assertTrue(merged.getRoleRequirement().matches(snapshot.getRoles().maskOfNames(List.of("admin", "auditor"))));
+        assertFalse(merged.getRoleRequirement().matches(snapshot.getRoles().mask(Role.Admin)));
+        assertTrue(merged.getModuleRequirement().matches(minio));
+        assertTrue(merged.allowsService("REPORTS"));
+        assertFalse(merged.allowsService("TRITON"));
+        assertTrue(annotated.allowsService("TRITON"));
+    }
+
+    @Test
+    void overridesCanMakeAnEndpointPublic() throws NoSuchMethodException {
+        PolicySnapshot snapshot = parse("""
+                {"endpoints": {"%s": {"public": true}}}""".formatted(LIST));
+
+        EndpointPolicy policy = policy(snapshot);
+
+        assertTrue(policy.isPublicApi());
+        assertEquals(List.of("MEMBER"), policy.getRoles());
+        assertEquals(0L, snapshot.getNamesVersion());
+    }
+
+    @Test
+    void rejectsOverridesWithUndefinedNames() {
+        assertThrows(IllegalArgumentException.class, () -> parse("""
+                {"endpoints": {"%s": {"roles": ["AUDITOR"]}}}""".formatted(LIST)));
+        assertThrows(IllegalArgumentException.class, () -> parse("""
+                {"endpoints": {"%s": {"services": ["REPORTS"]}}}""".formatted(LIST)));
+        assertThrows(IllegalArgumentException.class, () -> parse("""
+                {"endpoints": {"%s": {"moduleMatch": "SOME"}}}""".formatted(LIST)));
+    }
+
+    private static PolicySnapshot parse(String json) {
+        return PolicySnapshot.parse(new JsonObject(json), PolicySnapshot.DEFAULTS);
+    }
+
+    private static EndpointPolicy policy(PolicySnapshot snapshot) throws NoSuchMethodException {
+        return EndpointPolicy.resolve(ReportResource.class.getMethod("list"), ReportResource.class, snapshot);
+    }
+
+    @Authorization(modules = Modules.MINIO)
+    public static class ReportResource {
+        @Authorization(roles = Role.MEMBER)
+        public String list() {
+            return "";
+        }
+    }
+}
@@ -0,0 +1,82 @@
+package me.omniops.security;
+
+import jakarta.ws.rs.container.ContainerRequestContext;
+import jakarta.ws.rs.core.MultivaluedHashMap;
+import jakarta.ws.rs.core.MultivaluedMap;
+import me.omniops.ConfigFixtures;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.lang.reflect.Proxy;
+import java.time.Clock;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+
+class SecurityFilterSupportTest {
+
+    private final SecurityConfig config = ConfigFixtures.config(SecurityConfig.class,
+            "portal.security.user-context.enabled=true",
+            "portal.security.user-context.hmac-key=" + secret());
+    private final PolicyStore policyStore = new PolicyStore(config);
+    private final UserContextCodec codec = new UserContextCodec(config.userContext(), policyStore, Clock.systemUTC());
+
+    @AfterEach
+    void close() {
+        policyStore.close();
+    }
+
+    @Test
+    void addsBothHeadersForClaimsFromAToken() {
+        MultivaluedMap<String, String> headers = new MultivaluedHashMap<>();
+        VerifiedClaims claims = claims();
+
+        SecurityFilterSupport.addUserHeaders(request(headers), claims, codec);
+
+        assertEquals(List.of(claims.getUserInfoHeader()), headers.get(SecurityFilterSupport.USER_INFO_HEADER));
+        assertEquals(1, headers.get(SecurityFilterSupport.USER_CONTEXT_HEADER).size());
+    }
+
+    @Test
+    void leavesTheUpstreamUserInfoOfAForwardedEnvelopeAlone() {
+        String upstreamUserInfo = claims().getUserInfoHeader();
+        String envelope = codec.encode(claims());
+        VerifiedClaims forwarded = codec.decode(envelope);
+        assertNotNull(forwarded);
+        MultivaluedMap<String, String> headers = new MultivaluedHashMap<>();
+        headers.add(SecurityFilterSupport.USER_INFO_HEADER, upstreamUserInfo);
+        headers.add(SecurityFilterSupport.USER_CONTEXT_HEADER, envelope);
+
+        SecurityFilterSupport.addUserHeaders(request(headers), forwarded, codec);
+
+        assertEquals(List.of(upstreamUserInfo), headers.get(SecurityFilterSupport.USER_INFO_HEADER));
+        assertEquals(List.of(envelope), headers.get(SecurityFilterSupport.USER_CONTEXT_HEADER));
+    }
+
+    private static ContainerRequestContext request(MultivaluedMap<String, String> headers) {
+        return (ContainerRequestContext) Proxy.newProxyInstance(SecurityFilterSupportTest.class.getClassLoader(),
+                new Class<?>[]{ContainerRequestContext.class}, (proxy, method, args) -> {
+                    if (method.getName().equals("getHeaders")) {
+                        return headers;
+                    }
+                    throw new UnsupportedOperationException(method.getName());
+                });
+    }
+
+    private static VerifiedClaims claims() {
+        UserInfo userInfo = new UserInfo("3f2504e0-4f89-11d3-9a0c-0305e82c3301", "jane", "Jane", "Doe", "jane@example.org",
+                List.of("Admin"), List.of("/ops"), List.of("MINIO"), Map.of("team", List.of("blue")));
+        return new VerifiedClaims(userInfo, ClaimIndex.ROLES.mask(Role.Admin), ClaimIndex.MODULES.mask(Modules.MINIO),
+                Clock.systemUTC().millis() / 1000 + 300);
+    }
+
+    private static String secret() {
+        byte[] key = new byte[32];
+        Arrays.fill(key, (byte) 3);
+        return Base64.getEncoder().encodeToString(key);
+    }
+}
@@ -0,0 +1,36 @@
+package me.omniops.security;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+
+class TokenDigestTest {
+
+    @Test
+    void digestsTheUtf8BytesAcrossChunks() throws Exception {
+        String token = "eyJ".repeat(700);
+
+        assertEquals(sha256(token), TokenDigest.of(token));
+    }
+
+    @Test
+    void keepsNonAsciiTokensApart() throws Exception {
+        // Both chars share their low byte; truncating them would give one key.
+        String first = "abcŁdef";
+        String second = "abcɁdef";
+
+        assertNotEquals(TokenDigest.of(first), TokenDigest.of(second));
+        assertEquals(sha256(first), TokenDigest.of(first));
+        assertEquals(TokenDigest.of("plain"), TokenDigest.of("plain"));
+    }
+
+    private static TokenDigest sha256(String token) throws Exception {
+        ByteBuffer hash = ByteBuffer.wrap(MessageDigest.getInstance("SHA-256").digest(token.getBytes(StandardCharsets.UTF_8)));
+        return new TokenDigest(hash.getLong(), hash.getLong(), hash.getLong(), hash.getLong());
+    }
+}
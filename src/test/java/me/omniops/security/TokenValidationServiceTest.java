@@ -0,0 +1,113 @@
+package me.omniops.security;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import me.omniops.ConfigFixtures;
+import me.omniops.audit.AuditConfig;
+import me.omniops.audit.AuditLog;
+import me.omniops.revocation.Revocation;
+import me.omniops.revocation.RevocationConfig;
+import me.omniops.revocation.RevocationList;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Clock;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TokenValidationServiceTest {
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private final SecurityConfig securityConfig = ConfigFixtures.config(SecurityConfig.class);
+    private final VerifiedClaimsCache claimsCache = new VerifiedClaimsCache(securityConfig, registry);
+    private final PolicyStore policyStore = new PolicyStore(securityConfig);
+    private final AuditLog auditLog = new AuditLog(ConfigFixtures.config(AuditConfig.class), registry);
+    private final RevocationList revocationList = new RevocationList(
+            ConfigFixtures.config(RevocationConfig.class, "portal.revocation.enabled=true"), List.of(), registry, Clock.systemUTC());
+    private final TokenValidationService service = new TokenValidationService(null, claimsCache, new SecurityMetrics(registry),
+            policyStore, securityConfig, auditLog, revocationList);
+
+    @AfterEach
+    void close() {
+        auditLog.close();
+    }
+
+    @Test
+    void warmUpLeavesNoClaimsOrTimingsBehind() {
+        service.warmUp(3);
+
+        assertEquals(0, claimsCache.size());
+        assertEquals(0, registry.get("portal.security.jwt.decode").timer().count());
+        assertEquals(0, registry.get("portal.security.claims.extract").timer().count());
+    }
+
+    @Test
+    void forwardedClaimsAreCheckedAgainstTheRevocationList() throws NoSuchMethodException {
+        long now = System.currentTimeMillis() / 1000;
+        VerifiedClaims forwarded = forward(now - 60);
+        EndpointPolicy policy = policy();
+
+        assertEquals("session-1", forwarded.getSessionId());
+        assertEquals("token-1", forwarded.getTokenId());
+        assertEquals(now - 60, forwarded.getIssuedAt());
+        assertTrue(service.authorize(forwarded, policy, "TRITON").isPresent());
+
+        revocationList.revoke(Revocation.session("session-1", now));
+
+        assertTrue(service.authorize(forwarded, policy, "TRITON").isEmpty());
+        assertTrue(service.authorize(forward(now + 1), policy, "TRITON").isPresent());
+    }
+
+    @Test
+    void subjectRevocationsOnlyRejectForwardedClaimsIssuedBeforeThem() throws NoSuchMethodException {
+        long now = System.currentTimeMillis() / 1000;
+        revocationList.revoke(Revocation.subject("3f2504e0-4f89-11d3-9a0c-0305e82c3301", now - 30));
+
+        assertTrue(service.authorize(forward(now - 60), policy()).isEmpty());
+        assertTrue(service.authorize(forward(now - 10), policy()).isPresent());
+    }
+
+    /**
+     * @return claims of a token issued at {@code issuedAt}, after a round trip through
+     * {@code X-User-Context}
+     */
+    private VerifiedClaims forward(long issuedAt) {
+        byte[] key = new byte[32];
+        Arrays.fill(key, (byte) 7);
+        UserContextCodec codec = new UserContextCodec(ConfigFixtures.config(SecurityConfig.class,
+                "portal.security.user-context.enabled=true",
+                "portal.security.user-context.hmac-key=" + Base64.getEncoder().encodeToString(key)).userContext(),
+                policyStore, Clock.systemUTC());
+        ClaimsView view = ClaimsView.of(new JsonObject()
+                .put("sub", "3f2504e0-4f89-11d3-9a0c-0305e82c3301")
+                .put("preferred_username", "jane")
+                .put("sid", "session-1")
+                .put("jti", "token-1")
+                .put("iat", issuedAt)
+                .put("exp", issuedAt + 300)
+                .put("roles", new JsonArray().add("Admin"))
+                .put("modules", new JsonArray().add("MINIO")));
+        VerifiedClaims claims = new VerifiedClaims(view, view.mask(ClaimIndex.ROLES, "roles"), view.mask(ClaimIndex.MODULES, "modules"),
+                issuedAt + 300, 0L);
+        VerifiedClaims forwarded = codec.decode(codec.encode(claims));
+        assertNotNull(forwarded);
+        return forwarded;
+    }
+
+    private static EndpointPolicy policy() throws NoSuchMethodException {
+        return EndpointPolicy.resolve(AdminResource.class.getMethod("list"), AdminResource.class, PolicySnapshot.DEFAULTS);
+    }
+
+    public static class AdminResource {
+        @Authorization(roles = Role.Admin, modules = Modules.MINIO)
+        public String list() {
+            return "";
+        }
+    }
+}
@@ -0,0 +1,212 @@
+package me.omniops.security;
+
+import me.omniops.ConfigFixtures;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.GeneralSecurityException;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class UserContextCodecTest {
+
+    private static final long NOW = 1_800_000_000L;
+    private static final Clock CLOCK = Clock.fixed(Instant.ofEpochSecond(NOW), ZoneOffset.UTC);
+    private static final Base64.Decoder URL_DECODER = Base64.getUrlDecoder();
+    private static final Base64.Encoder URL_ENCODER = Base64.getUrlEncoder().withoutPadding();
+    private static final String HMAC_KEY = secret(1);
+    private static final KeyPair ED25519_KEY = ed25519();
+
+    private final List<PolicyStore> stores = new ArrayList<>();
+
+    @TempDir
+    Path dir;
+
+    @AfterEach
+    void closeStores() {
+        stores.forEach(PolicyStore::close);
+    }
+
+    @Test
+    void roundTripsHmacAndEd25519Envelopes() {
+        UserContextCodec hmac = codec(hmac(HMAC_KEY));
+        UserContextCodec ed25519 = codec(ed25519(true));
+
+        for (UserContextCodec codec : List.of(hmac, ed25519)) {
+            VerifiedClaims decoded = codec.decode(codec.encode(claims()));
+
+            assertNotNull(decoded);
+            assertEquals("3f2504e0-4f89-11d3-9a0c-0305e82c3301", decoded.getSubject());
+            assertEquals("jane", decoded.getUsername());
+            assertEquals("jane@example.org", decoded.getEmail());
+            assertEquals("Jane", decoded.getGivenName());
+            assertEquals("Doe", decoded.getFamilyName());
+            assertEquals(claims().getGrantedRoles(), decoded.getGrantedRoles());
+            assertEquals(claims().getGrantedModules(), decoded.getGrantedModules());
+            assertEquals(List.of("Admin"), decoded.getUserInfo().getRoles());
+            assertEquals(List.of("MINIO", "GITLAB"), decoded.getUserInfo().getModels());
+            assertEquals(NOW + 30, decoded.getExpiresAt());
+        }
+    }
+
+    @Test
+    void rejectsTamperedEnvelopes() {
+        UserContextCodec codec = codec(hmac(HMAC_KEY));
+        byte[] envelope = URL_DECODER.decode(codec.encode(claims()));
+
+        for (int i = 0; i < envelope.length; i++) {
+            byte[] tampered = envelope.clone();
+            tampered[i] ^= 0x01;
+            assertNull(codec.decode(URL_ENCODER.encodeToString(tampered)), "byte " + i);
+        }
+    }
+
+    @Test
+    void rejectsEnvelopesSignedWithAnotherKey() {
+        VerifiedClaims claims = claims();
+
+        assertNull(codec(hmac(HMAC_KEY)).decode(codec(hmac(secret(2))).encode(claims)));
+        KeyPair other = ed25519();
+        UserContextCodec foreign = codec(config(ed25519Settings(other, true)));
+        assertNull(codec(ed25519(false)).decode(foreign.encode(claims())));
+    }
+
+    @Test
+    void rejectsTruncatedAndMalformedInput() {
+        UserContextCodec codec = codec(hmac(HMAC_KEY));
+        byte[] envelope = URL_DECODER.decode(codec.encode(claims()));
+
+        for (int length = 0; length < envelope.length; length++) {
+            assertNull(codec.decode(URL_ENCODER.encodeToString(Arrays.copyOf(envelope, length))), "length " + length);
+        }
+        assertNull(codec.decode("!!!"));
+        assertNull(codec.decode(""));
+    }
+
+    @Test
+    void acceptsThePreviousKeyWhileRotating() {
+        String previous = codec(hmac(HMAC_KEY, "portal.security.user-context.key-id=1")).encode(claims());
+        UserContextCodec rotated = codec(hmac(secret(2), "portal.security.user-context.key-id=2",
+                "portal.security.user-context.verification-keys.1=" + HMAC_KEY));
+
+        assertNotNull(rotated.decode(previous));
+        assertNotNull(rotated.decode(rotated.encode(claims())));
+        assertNull(codec(hmac(secret(2), "portal.security.user-context.key-id=2")).decode(previous));
+        assertThrows(IllegalStateException.class, () -> codec(hmac(HMAC_KEY, "portal.security.user-context.key-id=256")));
+    }
+
+    @Test
+    void rejectsEnvelopesBuiltWithOtherRoleOrModuleNames() throws IOException {
+        String envelope = codec(hmac(HMAC_KEY)).encode(claims());
+        SecurityConfig extraRole = hmac(HMAC_KEY, "portal.security.policy.file=" + policy("{\"roles\": [\"AUDITOR\"]}"));
+        SecurityConfig extraService = hmac(HMAC_KEY, "portal.security.policy.file=" + policy("{\"services\": [\"REPORTS\"]}"));
+
+        assertNull(codec(extraRole).decode(envelope));
+        assertNotNull(codec(extraService).decode(envelope));
+    }
+
+    @Test
+    void servicesWithoutAPrivateKeyOnlyAccept() {
+        UserContextCodec issuer = codec(ed25519(true));
+        UserContextCodec acceptor = codec(ed25519(false));
+
+        assertTrue(issuer.emitsEnvelope());
+        assertFalse(acceptor.emitsEnvelope());
+        assertTrue(acceptor.emitsJson());
+        assertNotNull(acceptor.decode(issuer.encode(claims())));
+        assertThrows(IllegalStateException.class, () -> acceptor.encode(claims()));
+    }
+
+    @Test
+    void trustsOriginServicesByName() throws IOException {
+        SecurityConfig config = hmac(HMAC_KEY, "portal.security.user-context.trusted-services=triton,reports",
+                "portal.security.policy.file=" + policy("{\"services\": [\"REPORTS\"]}"));
+        UserContextCodec codec = codec(config);
+        String envelope = codec.encode(claims());
+
+        assertNotNull(codec.acceptForwarded("TRITON", envelope));
+        assertNotNull(codec.acceptForwarded("reports", envelope));
+        assertNull(codec.acceptForwarded("DASHBOARD", envelope));
+        assertNull(codec.acceptForwarded("unknown", envelope));
+        assertNull(codec.acceptForwarded(null, envelope));
+    }
+
+    private UserContextCodec codec(SecurityConfig config) {
+        PolicyStore store = new PolicyStore(config);
+        stores.add(store);
+        return new UserContextCodec(config.userContext(), store, CLOCK);
+    }
+
+    private String policy(String json) throws IOException {
+        Path file = Files.createTempFile(dir, "policy", ".json");
+        Files.writeString(file, json);
+        return file.toString();
+    }
+
+    private static VerifiedClaims claims() {
+        UserInfo userInfo = new UserInfo("3f2504e0-4f89-11d3-9a0c-0305e82c3301", "jane", "Jane", "Doe", "jane@example.org",
+                List.of("Admin"), List.of(), List.of("MINIO", "GITLAB"), Map.of());
+        return new VerifiedClaims(userInfo, ClaimIndex.ROLES.mask(Role.Admin),
+                ClaimIndex.MODULES.mask(Modules.MINIO, Modules.GITLAB), NOW + 300);
+    }
+
+    private static SecurityConfig hmac(String key, String... overrides) {
+        List<String> settings = new ArrayList<>(List.of(
+                "portal.security.user-context.enabled=true",
+                "portal.security.user-context.hmac-key=" + key));
+        settings.addAll(List.of(overrides));
+        return config(settings);
+    }
+
+    private static SecurityConfig ed25519(boolean withPrivateKey) {
+        return config(ed25519Settings(ED25519_KEY, withPrivateKey));
+    }
+
+    private static List<String> ed25519Settings(KeyPair keyPair, boolean withPrivateKey) {
+        List<String> settings = new ArrayList<>(List.of(
+                "portal.security.user-context.enabled=true",
+                "portal.security.user-context.algorithm=ed25519",
+                "portal.security.user-context.public-key=" + Base64.getEncoder().encodeToString(keyPair.getPublic().getEncoded())));
+        if (withPrivateKey) {
+            settings.add("portal.security.user-context.private-key=" + Base64.getEncoder().encodeToString(keyPair.getPrivate().getEncoded()));
+        }
+        return settings;
+    }
+
+    private static SecurityConfig config(List<String> settings) {
+        return ConfigFixtures.config(SecurityConfig.class, settings.toArray(new String[0]));
+    }
+
+    private static String secret(int seed) {
+        byte[] key = new byte[32];
+        Arrays.fill(key, (byte) seed);
+        return Base64.getEncoder().encodeToString(key);
+    }
+
+    private static KeyPair ed25519() {
+        try {
+            return KeyPairGenerator.getInstance("Ed25519").generateKeyPair();
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,82 @@
+package me.omniops.security;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import me.omniops.ConfigFixtures;
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class VerifiedClaimsCacheTest {
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private final VerifiedClaimsCache cache = new VerifiedClaimsCache(ConfigFixtures.config(SecurityConfig.class), registry);
+    private final AtomicInteger loads = new AtomicInteger();
+
+    @Test
+    void loadsOncePerTokenAndPublishesHitsAndMisses() {
+        VerifiedClaims first = cache.get("token-a", this::load);
+        VerifiedClaims second = cache.get("token-a", this::load);
+        cache.get("token-b", this::load);
+
+        assertSame(first, second);
+        assertEquals(2, loads.get());
+        assertEquals(1.0, registry.get("cache.gets").tags("cache", "portal.security.claims", "result", "hit").functionCounter().count());
+        assertEquals(2.0, registry.get("cache.gets").tags("cache", "portal.security.claims", "result", "miss").functionCounter().count());
+    }
+
+    @Test
+    void handsOutCopiesOfTheCachedUserInfo() {
+        VerifiedClaims claims = cache.get("token-a", this::load);
+        String header = claims.getUserInfoHeader();
+
+        UserInfo first = claims.getUserInfo();
+        first.setUsername("mallory");
+        first.getRoles().add("Admin");
+        first.getAttributes().get("team").add("red");
+
+        UserInfo second = cache.get("token-a", this::load).getUserInfo();
+        assertEquals("jane", second.getUsername());
+        assertEquals(List.of("MEMBER"), second.getRoles());
+        assertEquals(List.of("blue"), second.getAttributes().get("team"));
+        assertEquals(header, UserInfoHeaderEncoder.encode(second));
+    }
+
+    @Test
+    void remembersRejectedTokens() {
+        assertThrows(TokenVerificationException.class, () -> cache.get("bad", this::reject));
+        assertThrows(TokenVerificationException.class, () -> cache.get("bad", this::load));
+
+        assertEquals(1, loads.get());
+        assertEquals(1, cache.rejectedSize());
+    }
+
+    @Test
+    void dropsTheTokensOfALoggedOutSubject() {
+        cache.get("token-a", this::load);
+
+        cache.invalidateSubject("subject-token-a");
+
+        assertEquals(0, cache.size());
+    }
+
+    private VerifiedClaims load(String token) {
+        loads.incrementAndGet();
+        UserInfo user = new UserInfo("subject-" + token, "jane", null, null, null, new ArrayList<>(List.of("MEMBER")), null, null,
+                new HashMap<>(Map.of("team", new ArrayList<>(List.of("blue")))));
+        return new VerifiedClaims(user, 1L, 0L, Instant.now().getEpochSecond() + 60);
+    }
+
+    private VerifiedClaims reject(String token) {
+        loads.incrementAndGet();
+        throw new TokenVerificationException(TokenVerificationException.Reason.MALFORMED, "malformed");
+    }
+}
@@ -0,0 +1,123 @@
+package me.omniops.users;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import me.omniops.ConfigFixtures;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class NotificationStatusWriterTest {
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private final List<Map<String, String>> written = new CopyOnWriteArrayList<>();
+    private NotificationStatusWriter writer;
+
+    @AfterEach
+    void close() {
+        if (writer != null) {
+            writer.close();
+        }
+    }
+
+    @Test
+    void coalescesUpdatesPerUserAndPublishesMeters() throws Exception {
+        writer = writer((userId, attributes) -> written.add(Map.copyOf(attributes)), "initial-backoff=10MS");
+
+        CompletableFuture<Void> first = writer.submit("u1", "welcome", "true");
+        CompletableFuture<Void> second = writer.submit("u1", "digest", "false");
+        assertEquals(2.0, registry.get("portal.users.notifications.queue").gauge().value());
+        writer.flush();
+
+        first.get(5, TimeUnit.SECONDS);
+        second.get(5, TimeUnit.SECONDS);
+        assertEquals(List.of(Map.of("welcome", "true", "digest", "false")), written);
+        assertEquals(0, writer.queueDepth());
+        assertEquals(1L, registry.get("portal.users.notifications.flush").timer().count());
+    }
+
+    @Test
+    void retriesFailedWrites() throws Exception {
+        AtomicInteger attempts = new AtomicInteger();
+        writer = writer((userId, attributes) -> {
+            if (attempts.incrementAndGet() < 3) {
+                throw new IllegalStateException("Keycloak unavailable");
+            }
+        }, "initial-backoff=10MS");
+
+        CompletableFuture<Void> update = writer.submit("u1", "welcome", "true");
+        writer.flush();
+
+        update.get(5, TimeUnit.SECONDS);
+        assertEquals(3, attempts.get());
+        assertEquals(0.0, registry.get("portal.users.notifications.failed").counter().count());
+    }
+
+    @Test
+    void closeFailsUpdatesWhoseRetryIsStillDelayed() {
+        writer = writer((userId, attributes) -> {
+            throw new IllegalStateException("Keycloak unavailable");
+        }, "initial-backoff=1H", "max-backoff=1H", "flush-interval=20MS");
+
+        CompletableFuture<Void> update = writer.submit("u1", "welcome", "true");
+        writer.flush();
+        writer.close();
+
+        assertTrue(update.isDone());
+        ExecutionException error = assertThrows(ExecutionException.class, () -> update.get(1, TimeUnit.SECONDS));
+        assertInstanceOf(RejectedExecutionException.class, error.getCause());
+        assertEquals(1.0, registry.get("portal.users.notifications.failed").counter().count());
+    }
+
+    @Test
+    void closeWaitsForDueRetries() throws Exception {
+        AtomicInteger attempts = new AtomicInteger();
+        writer = writer((userId, attributes) -> {
+            if (attempts.incrementAndGet() < 2) {
+                throw new IllegalStateException("Keycloak unavailable");
+            }
+        }, "initial-backoff=50MS", "flush-interval=100MS");
+
+        CompletableFuture<Void> update = writer.submit("u1", "welcome", "true");
+        writer.close();
+
+        update.get(0, TimeUnit.SECONDS);
+        assertEquals(2, attempts.get());
+    }
+
+    @Test
+    void submitAfterCloseFails() {
+        writer = writer((userId, attributes) -> written.add(attributes));
+        writer.close();
+
+        CompletableFuture<Void> update = writer.submit("u1", "welcome", "true");
+
+        assertTrue(update.isCompletedExceptionally());
+        assertEquals(0, writer.queueDepth());
+    }
+
+    private NotificationStatusWriter writer(NotificationStatusWriter.AttributeWriter attributeWriter, String... overrides) {
+        String[] keys = new String[overrides.length + 4];
+        keys[0] = "portal.config.sso.domain=http://localhost";
+        keys[1] = "portal.config.sso.realm=test";
+        keys[2] = "portal.config.sso.client-id=test";
+        keys[3] = "portal.config.sso.client-secret=test";
+        for (int i = 0; i < overrides.length; i++) {
+            keys[i + 4] = "portal.config.users.notification-writer." + overrides[i];
+        }
+        PortalConfig config = ConfigFixtures.config(PortalConfig.class, keys);
+        return new NotificationStatusWriter(config.config().users().notificationWriter(), registry, attributeWriter);
+    }
+}
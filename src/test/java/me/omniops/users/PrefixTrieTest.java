@@ -0,0 +1,98 @@
+package me.omniops.users;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class PrefixTrieTest {
+
+    private final PrefixTrie trie = new PrefixTrie();
+
+    @Test
+    void findsExactKeysAcrossSplitLeaves() {
+        trie.put("jane", 1);
+        trie.put("janet", 2);
+        trie.put("jan", 3);
+        trie.put("john", 4);
+        trie.put("", 5);
+
+        assertArrayEquals(new int[]{1}, trie.get("jane"));
+        assertArrayEquals(new int[]{2}, trie.get("janet"));
+        assertArrayEquals(new int[]{3}, trie.get("jan"));
+        assertArrayEquals(new int[]{4}, trie.get("john"));
+        assertArrayEquals(new int[]{5}, trie.get(""));
+        assertArrayEquals(new int[0], trie.get("ja"));
+        assertArrayEquals(new int[0], trie.get("janets"));
+        assertArrayEquals(new int[0], trie.get("bob"));
+    }
+
+    @Test
+    void keepsSeveralValuesPerKeyOnce() {
+        trie.put("shared@example.org", 1);
+        trie.put("shared@example.org", 2);
+        trie.put("shared@example.org", 1);
+
+        assertArrayEquals(new int[]{1, 2}, trie.get("shared@example.org"));
+    }
+
+    @Test
+    void listsPrefixMatchesInKeyOrderUntilTheConsumerStops() {
+        trie.put("john", 4);
+        trie.put("janet", 2);
+        trie.put("jane", 1);
+        trie.put("jan", 3);
+        trie.put("bob", 9);
+
+        assertEquals(List.of(3, 1, 2, 4), withPrefix("j", Integer.MAX_VALUE));
+        assertEquals(List.of(1, 2), withPrefix("jane", Integer.MAX_VALUE));
+        assertEquals(List.of(2), withPrefix("janet", Integer.MAX_VALUE));
+        assertEquals(List.of(4), withPrefix("jo", Integer.MAX_VALUE));
+        assertEquals(List.of(), withPrefix("jx", Integer.MAX_VALUE));
+        assertEquals(List.of(), withPrefix("johnny", Integer.MAX_VALUE));
+        assertEquals(List.of(3, 1), withPrefix("j", 2));
+        assertEquals(5, withPrefix("", Integer.MAX_VALUE).size());
+    }
+
+    @Test
+    void removedKeysCanBeAddedAgainAndExtended() {
+        trie.put("ab", 1);
+        trie.remove("ab", 1);
+        trie.remove("ab", 7);
+        trie.remove("missing", 1);
+
+        assertArrayEquals(new int[0], trie.get("ab"));
+        assertEquals(List.of(), withPrefix("a", Integer.MAX_VALUE));
+
+        trie.put("abc", 2);
+        trie.put("ab", 3);
+
+        assertArrayEquals(new int[]{2}, trie.get("abc"));
+        assertArrayEquals(new int[]{3}, trie.get("ab"));
+        assertEquals(List.of(3, 2), withPrefix("a", Integer.MAX_VALUE));
+    }
+
+    @Test
+    void growsPastItsInitialCapacity() {
+        for (int i = 0; i < 1000; i++) {
+            trie.put("user" + i + "@example.org", i);
+        }
+
+        for (int i = 0; i < 1000; i++) {
+            assertArrayEquals(new int[]{i}, trie.get("user" + i + "@example.org"));
+        }
+        assertEquals(111, withPrefix("user1", Integer.MAX_VALUE).size());
+    }
+
+    private List<Integer> withPrefix(String prefix, int max) {
+        List<Integer> values = new ArrayList<>();
+        trie.forEachWithPrefix(prefix, value -> {
+            values.add(value);
+            return values.size() < max;
+        });
+        return values;
+    }
+}
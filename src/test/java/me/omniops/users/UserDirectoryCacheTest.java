@@ -0,0 +1,76 @@
+package me.omniops.users;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import me.omniops.ConfigFixtures;
+import me.omniops.security.UserInfo;
+import org.junit.jupiter.api.Test;
+import org.keycloak.representations.idm.UserRepresentation;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+
+class UserDirectoryCacheTest {
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private final AtomicInteger userLoads = new AtomicInteger();
+    private final UserDirectoryCache cache = new UserDirectoryCache(
+            ConfigFixtures.config(PortalConfig.class, "portal.config.sso.domain=http://localhost", "portal.config.sso.realm=test",
+                    "portal.config.sso.client-id=test", "portal.config.sso.client-secret=test").config().users().cache(),
+            registry, this::loadUser, this::loadRoleMembers);
+
+    @Test
+    void callersGetTheirOwnCopyOfACachedUser() {
+        UserRepresentation first = cache.user("u1");
+        first.setEmail("changed@example.org");
+        first.singleAttribute("template", "true");
+
+        UserRepresentation second = cache.user("u1");
+
+        assertNotSame(first, second);
+        assertEquals("u1@example.org", second.getEmail());
+        assertEquals(Map.of("locale", List.of("en")), second.getAttributes());
+        assertEquals("u1@example.org", cache.email("u1"));
+        assertEquals(Map.of("u1", "u1@example.org", "u2", "u2@example.org"), cache.emails(List.of("u1", "u2")));
+        assertEquals(2, userLoads.get());
+    }
+
+    @Test
+    void callersGetTheirOwnCopyOfCachedRoleMembers() {
+        List<UserInfo> first = cache.roleMembers("MEMBER");
+        first.get(0).setEmail("changed@example.org");
+        first.get(0).getRoles().add("Admin");
+
+        UserInfo second = cache.roleMembers("MEMBER").get(0);
+
+        assertEquals("jane@example.org", second.getEmail());
+        assertEquals(List.of("MEMBER"), second.getRoles());
+    }
+
+    @Test
+    void publishesCacheMeters() {
+        cache.user("u1");
+        cache.user("u1");
+
+        assertEquals(1.0, registry.get("cache.gets").tags("cache", "portal.users.users", "result", "hit").functionCounter().count());
+        assertEquals(1.0, registry.get("cache.gets").tags("cache", "portal.users.users", "result", "miss").functionCounter().count());
+        registry.get("cache.size").tags("cache", "portal.users.role_members").gauge();
+    }
+
+    private UserRepresentation loadUser(String userId) {
+        userLoads.incrementAndGet();
+        UserRepresentation user = new UserRepresentation();
+        user.setId(userId);
+        user.setEmail(userId + "@example.org");
+        user.singleAttribute("locale", "en");
+        return user;
+    }
+
+    private List<UserInfo> loadRoleMembers(String role) {
+        return List.of(new UserInfo("u1", "jane", null, null, "jane@example.org", new ArrayList<>(List.of(role)), null, null, null));
+    }
+}
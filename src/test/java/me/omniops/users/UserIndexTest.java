@@ -0,0 +1,139 @@
+package me.omniops.users;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class UserIndexTest {
+
+    private final UserIndex index = new UserIndex();
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void looksUpUsersCaseInsensitively() {
+        index.put(user("1", "Jane", "Jane@Example.org", List.of("Admin"), List.of("/ops"), List.of("MINIO")));
+
+        assertEquals("1", index.byId("1").id());
+        assertEquals("1", index.byUsername("jane").id());
+        assertEquals("1", index.byEmail("JANE@example.org").id());
+        assertEquals(List.of("1"), ids(index.find("admin", "/OPS", "minio", 10)));
+        assertNull(index.byUsername("john"));
+        assertNull(index.byUsername(null));
+    }
+
+    @Test
+    void replacingAUserDropsItsOldEntries() {
+        index.put(user("1", "jane", "jane@example.org", List.of("Admin"), List.of(), List.of()));
+        index.put(user("1", "jane.doe", "jane.doe@example.org", List.of("MEMBER"), List.of(), List.of()));
+
+        assertEquals(1, index.size());
+        assertNull(index.byUsername("jane"));
+        assertNull(index.byEmail("jane@example.org"));
+        assertEquals("1", index.byUsername("jane.doe").id());
+        assertEquals(List.of(), index.find("Admin", null, null, 10));
+        assertEquals(List.of("1"), ids(index.find("MEMBER", null, null, 10)));
+    }
+
+    @Test
+    void aRemovedUsersOrdinalIsReusedWithoutItsOldMemberships() {
+        index.put(user("1", "jane", "jane@example.org", List.of("Admin"), List.of("/ops"), List.of("MINIO")));
+        index.put(user("2", "john", "john@example.org", List.of("MEMBER"), List.of(), List.of()));
+
+        index.remove("1");
+        index.remove("1");
+        index.put(user("3", "joan", "joan@example.org", List.of("MEMBER"), List.of(), List.of()));
+
+        assertEquals(2, index.size());
+        assertNull(index.byId("1"));
+        assertNull(index.byUsername("jane"));
+        assertEquals(List.of(), index.find("Admin", null, null, 10));
+        assertEquals(List.of(), index.find(null, "/ops", null, 10));
+        assertEquals(List.of(), index.find(null, null, "MINIO", 10));
+        assertEquals(Set.of("2", "3"), Set.copyOf(ids(index.find("MEMBER", null, null, 10))));
+        assertEquals(Set.of("2", "3"), Set.copyOf(ids(index.find(null, null, null, 10))));
+        assertEquals(List.of("joan", "john"), index.search("jo", 10).stream().map(IndexedUser::username).toList());
+    }
+
+    @Test
+    void setRoleMembersAddsAndRemovesTheRole() {
+        index.put(user("1", "jane", null, List.of("Admin", "MEMBER"), List.of(), List.of()));
+        index.put(user("2", "john", null, List.of("MEMBER"), List.of(), List.of()));
+        index.put(user("3", "joan", null, List.of(), List.of(), List.of()));
+
+        index.setRoleMembers("admin", Set.of("2", "3", "unknown"));
+
+        assertEquals(Set.of("2", "3"), Set.copyOf(ids(index.find("Admin", null, null, 10))));
+        assertEquals(List.of("MEMBER"), index.byId("1").roles());
+        assertEquals(List.of("MEMBER", "admin"), index.byId("2").roles());
+        assertEquals(Set.of("1", "2"), Set.copyOf(ids(index.find("MEMBER", null, null, 10))));
+
+        index.setRoleMembers("Admin", Set.of());
+
+        assertEquals(List.of(), index.find("Admin", null, null, 10));
+        assertEquals(List.of(), index.byId("3").roles());
+    }
+
+    @Test
+    void searchesUsernamesBeforeEmails() {
+        index.put(user("1", "alice", "zed@example.org", List.of(), List.of(), List.of()));
+        index.put(user("2", "zed", "alice.z@example.org", List.of(), List.of(), List.of()));
+        index.put(user("3", "zara", "zara@example.org", List.of(), List.of(), List.of()));
+
+        assertEquals(List.of("3", "2", "1"), ids(index.search("Z", 10)));
+        assertEquals(List.of("1", "2"), ids(index.search("alice", 10)));
+        assertEquals(List.of("3"), ids(index.search("z", 1)));
+        assertEquals(List.of(), index.search("z", 0));
+    }
+
+    @Test
+    void snapshotsRoundTripAfterOrdinalsWereReused() throws IOException {
+        index.put(user("1", "jane", "jane@example.org", List.of("Admin"), List.of("/ops"), List.of("MINIO")));
+        index.put(user("2", "john", null, List.of("MEMBER"), List.of(), List.of("GITLAB", "MINIO")));
+        index.remove("1");
+        index.put(user("3", "joan", "joan@example.org", List.of("MEMBER", "Admin"), List.of("/ops/oncall"), List.of()));
+        index.markSynced(1_000L, 2_000L, 3_000L);
+        Path file = dir.resolve("snapshots/users.bin");
+
+        index.save(file);
+        UserIndex loaded = UserIndex.load(file);
+
+        assertEquals(2, loaded.size());
+        assertEquals(index.byId("2"), loaded.byId("2"));
+        assertEquals(index.byId("3"), loaded.byId("3"));
+        assertNull(loaded.byId("1"));
+        assertEquals("3", loaded.byEmail("joan@example.org").id());
+        assertEquals(List.of("3"), ids(loaded.find("Admin", "/ops/oncall", null, 10)));
+        assertEquals(List.of("2"), ids(loaded.find(null, null, "gitlab", 10)));
+        assertEquals(1_000L, loaded.getSyncedAt());
+        assertEquals(2_000L, loaded.getUserEventsSeen());
+        assertEquals(3_000L, loaded.getAdminEventsSeen());
+    }
+
+    @Test
+    void rejectsFilesThatAreNotSnapshots() throws IOException {
+        Path file = dir.resolve("users.bin");
+        Files.write(file, new byte[]{1, 2, 3, 4, 5, 6, 7, 8});
+
+        assertThrows(IOException.class, () -> UserIndex.load(file));
+    }
+
+    private static IndexedUser user(String id, String username, String email, List<String> roles, List<String> groups,
+                                    List<String> modules) {
+        return new IndexedUser(id, username, email, null, null, roles, groups, modules);
+    }
+
+    private static List<String> ids(List<IndexedUser> users) {
+        return users.stream().map(IndexedUser::id).toList();
+    }
+}